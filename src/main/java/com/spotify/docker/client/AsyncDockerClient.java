@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.spotify.docker.client.DockerClient.AttachParameter;
+import com.spotify.docker.client.DockerClient.ExecCreateParam;
+import com.spotify.docker.client.DockerClient.ExecStartParameter;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.DockerClient.ListImagesParam;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.messages.AuthConfig;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.ExecState;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageInfo;
+import com.spotify.docker.client.messages.ImageSearchResult;
+import com.spotify.docker.client.messages.Info;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.NetworkConfig;
+import com.spotify.docker.client.messages.NetworkCreation;
+import com.spotify.docker.client.messages.RemovedImage;
+import com.spotify.docker.client.messages.Version;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * A non-blocking client for interacting with dockerd. Every method mirrors the {@link DockerClient}
+ * method of the same name, but returns immediately with a future instead of parking the calling
+ * thread until the daemon responds.
+ *
+ * <p>Futures fail with the same exceptions the blocking methods throw, e.g. {@link
+ * com.spotify.docker.client.exceptions.ContainerNotFoundException} for an unknown container, or
+ * {@link InterruptedException} if the underlying I/O was interrupted.</p>
+ *
+ * <p>Operations that stream progress into a {@link ProgressHandler} (build, load, pull, push) and
+ * {@link DockerClient#events(DockerClient.EventsParam...)} have no asynchronous variant, since
+ * consuming their responses is inherently blocking.</p>
+ */
+public interface AsyncDockerClient extends Closeable {
+
+  /**
+   * @see DockerClient#ping()
+   * @return A future holding "OK"
+   */
+  ListenableFuture<String> ping();
+
+  /**
+   * @see DockerClient#version()
+   * @return A future holding the {@link Version}
+   */
+  ListenableFuture<Version> version();
+
+  /**
+   * @see DockerClient#auth(AuthConfig)
+   * @param authConfig The authentication config needed to pull the image.
+   * @return A future holding the HTTP status code
+   */
+  ListenableFuture<Integer> auth(AuthConfig authConfig);
+
+  /**
+   * @see DockerClient#info()
+   * @return A future holding the {@link Info}
+   */
+  ListenableFuture<Info> info();
+
+  /**
+   * @see DockerClient#listContainers(ListContainersParam...)
+   * @param params Container listing and filtering options.
+   * @return A future holding the list of containers
+   */
+  ListenableFuture<List<Container>> listContainers(ListContainersParam... params);
+
+  /**
+   * @see DockerClient#listImages(ListImagesParam...)
+   * @param params Image listing and filtering options.
+   * @return A future holding the list of images
+   */
+  ListenableFuture<List<Image>> listImages(ListImagesParam... params);
+
+  /**
+   * @see DockerClient#inspectContainer(String)
+   * @param containerId The id of the container to inspect.
+   * @return A future holding the {@link ContainerInfo}
+   */
+  ListenableFuture<ContainerInfo> inspectContainer(String containerId);
+
+  /**
+   * @see DockerClient#commitContainer(String, String, String, ContainerConfig, String, String)
+   * @param containerId The id of the container to commit.
+   * @param comment     commit message.
+   * @param author      image author.
+   * @param tag         image tag.
+   * @param repo        repository to commit to.
+   * @param config      ContainerConfig to commit.
+   * @return A future holding the {@link ContainerCreation}
+   */
+  ListenableFuture<ContainerCreation> commitContainer(String containerId, String repo, String tag,
+                                                      ContainerConfig config, String comment,
+                                                      String author);
+
+  /**
+   * @see DockerClient#inspectImage(String)
+   * @param image The image to inspect.
+   * @return A future holding the {@link ImageInfo}
+   */
+  ListenableFuture<ImageInfo> inspectImage(String image);
+
+  /**
+   * @see DockerClient#removeImage(String)
+   * @param image The image to remove.
+   * @return A future holding the list of removed images
+   */
+  ListenableFuture<List<RemovedImage>> removeImage(String image);
+
+  /**
+   * @see DockerClient#removeImage(String, boolean, boolean)
+   * @param image   The image to remove.
+   * @param force   Force image removal.
+   * @param noPrune Do not delete untagged parents.
+   * @return A future holding the list of removed images
+   */
+  ListenableFuture<List<RemovedImage>> removeImage(String image, boolean force, boolean noPrune);
+
+  /**
+   * @see DockerClient#searchImages(String)
+   * @param term The search term.
+   * @return A future holding the list of search results
+   */
+  ListenableFuture<List<ImageSearchResult>> searchImages(String term);
+
+  /**
+   * @see DockerClient#save(String, AuthConfig)
+   * @param image      The image to save.
+   * @param authConfig The authentication config needed to pull the image.
+   * @return A future holding the image's tarball stream
+   */
+  ListenableFuture<InputStream> save(String image, AuthConfig authConfig);
+
+  /**
+   * @see DockerClient#tag(String, String, boolean)
+   * @param image The image to tag.
+   * @param name  The new name that will be applied to the image.
+   * @param force Whether to force the tag
+   * @return A future that completes when the image has been tagged
+   */
+  ListenableFuture<Void> tag(String image, String name, boolean force);
+
+  /**
+   * @see DockerClient#createContainer(ContainerConfig, String)
+   * @param config The container configuration.
+   * @param name   The container name, or null.
+   * @return A future holding the {@link ContainerCreation}
+   */
+  ListenableFuture<ContainerCreation> createContainer(ContainerConfig config, String name);
+
+  /**
+   * @see DockerClient#renameContainer(String, String)
+   * @param containerId The id of the container to rename.
+   * @param name        The new name the container will have
+   * @return A future that completes when the container has been renamed
+   */
+  ListenableFuture<Void> renameContainer(String containerId, String name);
+
+  /**
+   * @see DockerClient#startContainer(String)
+   * @param containerId The id of the container to start.
+   * @return A future that completes when the container has been started
+   */
+  ListenableFuture<Void> startContainer(String containerId);
+
+  /**
+   * @see DockerClient#stopContainer(String, int)
+   * @param containerId                The id of the container to stop.
+   * @param secondsToWaitBeforeKilling Number of seconds to wait before killing the container.
+   * @return A future that completes when the container has been stopped
+   */
+  ListenableFuture<Void> stopContainer(String containerId, int secondsToWaitBeforeKilling);
+
+  /**
+   * @see DockerClient#pauseContainer(String)
+   * @param containerId The id of the container to pause.
+   * @return A future that completes when the container has been paused
+   */
+  ListenableFuture<Void> pauseContainer(String containerId);
+
+  /**
+   * @see DockerClient#unpauseContainer(String)
+   * @param containerId The id of the container to unpause.
+   * @return A future that completes when the container has been unpaused
+   */
+  ListenableFuture<Void> unpauseContainer(String containerId);
+
+  /**
+   * @see DockerClient#restartContainer(String, int)
+   * @param containerId                The id of the container to restart.
+   * @param secondsToWaitBeforeRestart Number of seconds to wait before restarting the container.
+   * @return A future that completes when the container has been restarted
+   */
+  ListenableFuture<Void> restartContainer(String containerId, int secondsToWaitBeforeRestart);
+
+  /**
+   * @see DockerClient#waitContainer(String)
+   * @param containerId The id of the container to wait for.
+   * @return A future holding the {@link ContainerExit}
+   */
+  ListenableFuture<ContainerExit> waitContainer(String containerId);
+
+  /**
+   * @see DockerClient#killContainer(String)
+   * @param containerId The id of the container to kill.
+   * @return A future that completes when the container has been killed
+   */
+  ListenableFuture<Void> killContainer(String containerId);
+
+  /**
+   * @see DockerClient#removeContainer(String, RemoveContainerParam...)
+   * @param containerId The id of the container to remove.
+   * @param params      {@link RemoveContainerParam}
+   * @return A future that completes when the container has been removed
+   */
+  ListenableFuture<Void> removeContainer(String containerId, RemoveContainerParam... params);
+
+  /**
+   * @see DockerClient#exportContainer(String)
+   * @param containerId The id of the container to export.
+   * @return A future holding the container's tarball stream
+   */
+  ListenableFuture<InputStream> exportContainer(String containerId);
+
+  /**
+   * @see DockerClient#copyContainer(String, String)
+   * @param containerId The id of the container to copy from.
+   * @param path        The path inside the container
+   * @return A future holding the tarball stream of the copied path
+   */
+  ListenableFuture<InputStream> copyContainer(String containerId, String path);
+
+  /**
+   * @see DockerClient#logs(String, LogsParam...)
+   * @param containerId The id of the container to get logs for.
+   * @param params      Params for controlling what streams to get and the tail size
+   * @return A future holding the {@link LogStream}
+   */
+  ListenableFuture<LogStream> logs(String containerId, LogsParam... params);
+
+  /**
+   * @see DockerClient#attachContainer(String, AttachParameter...)
+   * @param containerId The id of the container to attach to.
+   * @param params      Params for controlling what streams to attach to.
+   * @return A future holding the {@link LogStream}
+   */
+  ListenableFuture<LogStream> attachContainer(String containerId, AttachParameter... params);
+
+  /**
+   * @see DockerClient#execCreate(String, String[], ExecCreateParam...)
+   * @param containerId The id of the container to execute in.
+   * @param cmd         The command to execute.
+   * @param params      Exec params
+   * @return A future holding the id of the new exec instance
+   */
+  ListenableFuture<String> execCreate(String containerId, String[] cmd,
+                                      ExecCreateParam... params);
+
+  /**
+   * @see DockerClient#execStart(String, ExecStartParameter...)
+   * @param execId The id of the exec instance to start.
+   * @param params Exec start params
+   * @return A future holding the {@link LogStream} of the exec'ed process
+   */
+  ListenableFuture<LogStream> execStart(String execId, ExecStartParameter... params);
+
+  /**
+   * @see DockerClient#execInspect(String)
+   * @param execId The id of the exec instance to inspect.
+   * @return A future holding the {@link ExecState}
+   */
+  ListenableFuture<ExecState> execInspect(String execId);
+
+  /**
+   * @see DockerClient#stats(String)
+   * @param containerId The id of the container to retrieve stats for.
+   * @return A future holding the {@link ContainerStats}
+   */
+  ListenableFuture<ContainerStats> stats(String containerId);
+
+  /**
+   * @see DockerClient#listNetworks()
+   * @return A future holding the list of networks
+   */
+  ListenableFuture<List<Network>> listNetworks();
+
+  /**
+   * @see DockerClient#inspectNetwork(String)
+   * @param networkId The id of the network to inspect.
+   * @return A future holding the {@link Network}
+   */
+  ListenableFuture<Network> inspectNetwork(String networkId);
+
+  /**
+   * @see DockerClient#createNetwork(NetworkConfig)
+   * @param networkConfig The network configuration.
+   * @return A future holding the {@link NetworkCreation}
+   */
+  ListenableFuture<NetworkCreation> createNetwork(NetworkConfig networkConfig);
+
+  /**
+   * @see DockerClient#removeNetwork(String)
+   * @param networkId The id of the network to remove.
+   * @return A future that completes when the network has been removed
+   */
+  ListenableFuture<Void> removeNetwork(String networkId);
+
+  /**
+   * @see DockerClient#connectToNetwork(String, String)
+   * @param containerId The id of the container to connect.
+   * @param networkId   The id of the network to connect to.
+   * @return A future that completes when the container has been connected
+   */
+  ListenableFuture<Void> connectToNetwork(String containerId, String networkId);
+
+  /**
+   * @see DockerClient#disconnectFromNetwork(String, String)
+   * @param containerId The id of the container to disconnect.
+   * @param networkId   The id of the network to disconnect from.
+   * @return A future that completes when the container has been disconnected
+   */
+  ListenableFuture<Void> disconnectFromNetwork(String containerId, String networkId);
+
+  /**
+   * Closes the underlying client and releases its connections.
+   */
+  @Override
+  void close();
+}
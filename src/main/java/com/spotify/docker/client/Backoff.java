@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter, for retrying requests and reconnecting to the daemon.
+ */
+final class Backoff {
+
+  private Backoff() {
+  }
+
+  /**
+   * @param initialMillis The longest backoff after the first failure.
+   * @param maxMillis     The longest backoff after any failure.
+   * @param failures      The number of failures before this one, in a row.
+   * @return A random time of up to {@code initialMillis}, doubled with every further failure, but
+   *         at most {@code maxMillis}.
+   */
+  static long millis(final long initialMillis, final long maxMillis, final int failures) {
+    final long ceiling = Math.min(maxMillis, initialMillis << Math.min(failures, 30));
+    return (ceiling <= 0) ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of heap buffers, so that short-lived readers such as the one behind each log stream do
+ * not each allocate their own.
+ */
+class ByteBufferPool {
+
+  /**
+   * Buffers for log frames. Most frames are a line or two, but a frame can be as large as the
+   * chunk the daemon read from the container, so buffers grow as needed.
+   */
+  static final ByteBufferPool LOG_BUFFERS = new ByteBufferPool(8192, 1024 * 1024, 64);
+
+  private final int initialCapacity;
+  private final int maxPooledCapacity;
+  private final int maxPooled;
+
+  private final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooled = new AtomicInteger();
+
+  /**
+   * @param initialCapacity   The capacity of newly allocated buffers.
+   * @param maxPooledCapacity Buffers that have grown larger are not kept.
+   * @param maxPooled         The number of buffers kept.
+   */
+  ByteBufferPool(final int initialCapacity, final int maxPooledCapacity, final int maxPooled) {
+    this.initialCapacity = initialCapacity;
+    this.maxPooledCapacity = maxPooledCapacity;
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * @return A cleared buffer with a backing array.
+   */
+  ByteBuffer acquire() {
+    final ByteBuffer buffer = buffers.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocate(initialCapacity);
+    }
+    pooled.decrementAndGet();
+    ((Buffer) buffer).clear();
+    return buffer;
+  }
+
+  /**
+   * Replace a buffer with one that can hold at least {@code capacity} bytes. The contents are not
+   * copied.
+   */
+  ByteBuffer grow(final ByteBuffer buffer, final int capacity) {
+    if (buffer.capacity() >= capacity) {
+      return buffer;
+    }
+    release(buffer);
+    return ByteBuffer.allocate(Math.max(capacity, Integer.highestOneBit(capacity - 1) << 1));
+  }
+
+  /**
+   * Return a buffer to the pool. It must not be used afterwards.
+   */
+  void release(final ByteBuffer buffer) {
+    if (buffer.capacity() > maxPooledCapacity) {
+      return;
+    }
+    if (pooled.incrementAndGet() > maxPooled) {
+      pooled.decrementAndGet();
+      return;
+    }
+    buffers.offer(buffer);
+  }
+}
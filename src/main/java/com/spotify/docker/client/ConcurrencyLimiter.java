@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Limits the number of concurrent requests to a docker daemon, adapting the limit to the latency
+ * the daemon responds with.
+ *
+ * <p>The limit is tuned like TCP Vegas: the lowest latency seen for an endpoint is taken as its
+ * latency on an idle daemon, and the ratio of that to the latency of a request estimates how many
+ * requests are queued up inside the daemon. Endpoints are compared to their own lowest latency, so
+ * that slow requests such as creating a container do not look like queueing next to fast ones
+ * such as inspecting it. While that queue is short the limit grows; when it gets long, or a request
+ * fails with a server error or a timeout, the limit shrinks. Requests over the limit wait for a
+ * permit on the calling thread, and the time they spend waiting is exposed by
+ * {@link #queueWaitMillis()}.</p>
+ *
+ * <p>A limiter can be shared by clients talking to the same daemon.</p>
+ */
+public class ConcurrencyLimiter {
+
+  // Samples after which the no-load latency is re-measured, in case the daemon got slower for good
+  private static final int PROBE_INTERVAL = 1000;
+  // Factor applied to the limit when a request fails
+  private static final double BACKOFF_RATIO = 0.9;
+  // Weight of the latest sample in the queue wait moving average
+  private static final double QUEUE_WAIT_ALPHA = 0.1;
+
+  private final int minLimit;
+  private final int maxLimit;
+
+  private final ReentrantLock lock = new ReentrantLock(true);
+  private final Condition available = lock.newCondition();
+
+  // Guarded by lock
+  private double limit;
+  private int inFlight;
+  private int queued;
+  private final Map<String, Baseline> baselines = new HashMap<>();
+  private double queueWaitNanos;
+  private long totalQueueWaitNanos;
+
+  /**
+   * Create a new limiter.
+   *
+   * @param initialLimit The number of concurrent requests to allow at first.
+   * @param minLimit     The number of concurrent requests that are always allowed.
+   * @param maxLimit     The highest number of concurrent requests to allow.
+   */
+  public ConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit) {
+    checkArgument(minLimit > 0, "minLimit must be positive");
+    checkArgument(minLimit <= initialLimit && initialLimit <= maxLimit,
+                  "initialLimit must be between minLimit and maxLimit");
+    this.limit = initialLimit;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+  }
+
+  /**
+   * @return The number of concurrent requests currently allowed.
+   */
+  public int limit() {
+    lock.lock();
+    try {
+      return (int) limit;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of requests in progress.
+   */
+  public int inFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of requests waiting for a permit.
+   */
+  public int queued() {
+    lock.lock();
+    try {
+      return queued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The exponentially weighted moving average of the time requests waited for a permit,
+   *         in milliseconds.
+   */
+  public double queueWaitMillis() {
+    lock.lock();
+    try {
+      return queueWaitNanos / 1e6;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The total time requests waited for a permit, in milliseconds.
+   */
+  public long totalQueueWaitMillis() {
+    lock.lock();
+    try {
+      return totalQueueWaitNanos / 1000000;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Wait until a request may be made.
+   *
+   * @return A permit to release once the request is done.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  Permit acquire() throws InterruptedException {
+    return acquire("");
+  }
+
+  /**
+   * Wait until a request to an endpoint may be made.
+   *
+   * @param endpoint The endpoint of the request, e.g. {@code GET containers/{id}/json}, whose
+   *                 latency the request's latency is compared to.
+   * @return A permit to release once the request is done.
+   * @throws InterruptedException If the thread is interrupted while waiting.
+   */
+  Permit acquire(final String endpoint) throws InterruptedException {
+    final long start = System.nanoTime();
+    lock.lockInterruptibly();
+    try {
+      queued++;
+      try {
+        while (inFlight >= (int) limit) {
+          available.await();
+        }
+      } finally {
+        queued--;
+      }
+      inFlight++;
+
+      final long waited = System.nanoTime() - start;
+      totalQueueWaitNanos += waited;
+      queueWaitNanos = QUEUE_WAIT_ALPHA * waited + (1 - QUEUE_WAIT_ALPHA) * queueWaitNanos;
+      return new Permit(this, endpoint, inFlight);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void release(final String endpoint, final int inFlightAtStart, final long latencyNanos,
+                       final boolean dropped, final boolean sample) {
+    lock.lock();
+    try {
+      inFlight--;
+      if (sample) {
+        update(endpoint, inFlightAtStart, latencyNanos, dropped);
+      }
+      available.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void update(final String endpoint, final int inFlightAtStart, final long latencyNanos,
+                      final boolean dropped) {
+    if (dropped) {
+      limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+      return;
+    }
+
+    Baseline baseline = baselines.get(endpoint);
+    if (baseline == null) {
+      baseline = new Baseline();
+      baselines.put(endpoint, baseline);
+    }
+    if (baseline.noLoadLatencyNanos == 0 || latencyNanos < baseline.noLoadLatencyNanos
+        || ++baseline.samples >= PROBE_INTERVAL) {
+      baseline.noLoadLatencyNanos = Math.max(1, latencyNanos);
+      baseline.samples = 0;
+      return;
+    }
+    final long noLoadLatencyNanos = baseline.noLoadLatencyNanos;
+
+    // With few requests in flight the latency says nothing about how many the daemon could take
+    if (inFlightAtStart * 2 < limit) {
+      return;
+    }
+
+    final double queueSize = limit * (1 - (double) noLoadLatencyNanos / latencyNanos);
+    final double step = Math.max(1, Math.log10(limit));
+    if (queueSize <= 3 * step) {
+      limit = Math.min(maxLimit, limit + step);
+    } else if (queueSize > 6 * step) {
+      limit = Math.max(minLimit, limit - step);
+    }
+  }
+
+  /**
+   * The latency of an endpoint on an idle daemon.
+   */
+  private static class Baseline {
+
+    private long noLoadLatencyNanos;
+    // Samples since the no-load latency was last measured
+    private int samples;
+  }
+
+  /**
+   * Whether a failed request suggests the daemon is overloaded. Client errors do not, timeouts,
+   * server errors and I/O errors do.
+   */
+  static boolean isOverload(final Exception e) {
+    if (e instanceof DockerRequestException) {
+      return ((DockerRequestException) e).status() >= 500;
+    }
+    return e instanceof DockerException;
+  }
+
+  /**
+   * Permission to make a request. Every permit must be released exactly once, by
+   * {@link #completed(Object)}, {@link #failed(Exception)} or, if neither applies,
+   * {@link #release()}. Further calls are ignored, so {@link #release()} can go in a finally
+   * block.
+   */
+  static class Permit {
+
+    private static final Permit NONE = new Permit(null, null, 0);
+
+    private final ConcurrencyLimiter limiter;
+    private final String endpoint;
+    private final int inFlightAtStart;
+    private final long start = System.nanoTime();
+    private boolean released;
+
+    private Permit(final ConcurrencyLimiter limiter, final String endpoint,
+                   final int inFlightAtStart) {
+      this.limiter = limiter;
+      this.endpoint = endpoint;
+      this.inFlightAtStart = inFlightAtStart;
+    }
+
+    /**
+     * @return A permit that is not backed by a limiter, for unlimited requests.
+     */
+    static Permit none() {
+      return NONE;
+    }
+
+    /**
+     * Release the permit of a successful request, returning its result.
+     */
+    <T> T completed(final T result) {
+      release(false, true);
+      return result;
+    }
+
+    /**
+     * Release the permit of a failed request.
+     */
+    void failed(final Exception e) {
+      if (e instanceof InterruptedException) {
+        release(false, false);
+      } else {
+        release(isOverload(e), true);
+      }
+    }
+
+    /**
+     * Release the permit without using the request to tune the limit.
+     */
+    void release() {
+      release(false, false);
+    }
+
+    private void release(final boolean dropped, final boolean sample) {
+      if (limiter == null || released) {
+        return;
+      }
+      released = true;
+      limiter.release(endpoint, inFlightAtStart, System.nanoTime() - start, dropped, sample);
+    }
+  }
+}
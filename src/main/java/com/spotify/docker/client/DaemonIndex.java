@@ -0,0 +1,754 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.Event;
+import com.spotify.docker.client.messages.Image;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.spotify.docker.client.DockerClient.ListContainersParam.allContainers;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Keeps the containers and images of a daemon in memory, so that they can be looked up without
+ * listing them again and again.
+ *
+ * <p>The index is seeded by listing all containers and images when it is built, and kept current
+ * from the events of the daemon, which are followed with an {@link EventTailer}. A container that
+ * an event is about is listed again by id; destroyed containers are dropped right away. Image
+ * events cause the images to be listed again, once for a burst of events. Containers can be
+ * looked up by id or unique id prefix, name, label, image and state:</p>
+ *
+ * <pre>
+ * try (DaemonIndex index = DaemonIndex.builder(docker).build()) {
+ *   for (Container container : index.containersWithLabel("service", "web")) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>Everything is listed again every {@link Builder#reconcileIntervalMillis(long) so often}, and
+ * right away when events may have been lost, to correct whatever the events missed. Every change
+ * to the index bumps its {@link #version()}, so callers can tell cheaply whether anything changed
+ * since they last looked.</p>
+ */
+public class DaemonIndex implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(DaemonIndex.class);
+
+  public static final long DEFAULT_RECONCILE_INTERVAL_MILLIS = 300000;
+  public static final long DEFAULT_IMAGE_REFRESH_DELAY_MILLIS = 1000;
+
+  // Container events that do not change what listing the container returns
+  private static final Set<String> IGNORED_ACTIONS = ImmutableSet.of(
+      "attach", "detach", "top", "resize", "commit", "copy", "export", "archive-path",
+      "extract-to-dir");
+
+  private final DockerClient docker;
+  private final long reconcileIntervalMillis;
+  private final long imageRefreshDelayMillis;
+  private final EventTailer events;
+  private final Thread thread;
+  private final ScheduledExecutorService executor;
+  private final AtomicBoolean reconcilePending = new AtomicBoolean();
+  private final AtomicBoolean imageRefreshPending = new AtomicBoolean();
+
+  private final AtomicLong version = new AtomicLong();
+  private final AtomicLong reconciliations = new AtomicLong();
+  private final AtomicLong corrections = new AtomicLong();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  // Guarded by lock
+  private final NavigableMap<String, Container> containers = new TreeMap<>();
+  private final Map<String, String> containerNames = new HashMap<>();
+  private final SetMultimap<String, String> containerLabels = HashMultimap.create();
+  private final SetMultimap<Map.Entry<String, String>, String> containerLabelValues =
+      HashMultimap.create();
+  private final SetMultimap<String, String> containerImages = HashMultimap.create();
+  private final SetMultimap<String, String> containerStates = HashMultimap.create();
+  private final Map<String, Image> images = new HashMap<>();
+  private final Map<String, String> imageTags = new HashMap<>();
+  // The sequence number of the latest event about a container, so that a reconciliation does
+  // not undo what events told about while it was listing. Only kept while reconciling.
+  private final Map<String, Long> containerUpdates = new HashMap<>();
+  private long sequence;
+  private int reconciling;
+
+  private DaemonIndex(final Builder builder) throws DockerException, InterruptedException {
+    this.docker = builder.docker;
+    this.reconcileIntervalMillis = builder.reconcileIntervalMillis;
+    this.imageRefreshDelayMillis = builder.imageRefreshDelayMillis;
+
+    // Follow the events from before the containers are listed, so that nothing falls in between
+    this.events = EventTailer.builder(docker)
+        .since(System.currentTimeMillis() / 1000)
+        .listener(new EventTailer.ResyncListener() {
+          @Override
+          public void resyncNeeded(final long since) {
+            scheduleReconcile();
+          }
+        })
+        .initialBackoffMillis(builder.initialBackoffMillis)
+        .maxBackoffMillis(builder.maxBackoffMillis)
+        .build();
+    sync();
+
+    final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("docker-client-daemon-index-%d")
+        .setDaemon(true)
+        .build();
+    this.executor = Executors.newSingleThreadScheduledExecutor(threadFactory);
+    if (reconcileIntervalMillis > 0) {
+      executor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          reconcileQuietly();
+        }
+      }, reconcileIntervalMillis, reconcileIntervalMillis, MILLISECONDS);
+    }
+    this.thread = threadFactory.newThread(new Runnable() {
+      @Override
+      public void run() {
+        follow();
+      }
+    });
+    thread.start();
+  }
+
+  /**
+   * @param docker The client of the daemon to index. It needs to have a connection to spare for
+   *               the events.
+   */
+  public static Builder builder(final DockerClient docker) {
+    return new Builder(docker);
+  }
+
+  /**
+   * @return A number that grows every time the index changes.
+   */
+  public long version() {
+    return version.get();
+  }
+
+  /**
+   * @return The number of times everything was listed again to correct the index.
+   */
+  public long reconciliations() {
+    return reconciliations.get();
+  }
+
+  /**
+   * @return The number of containers and images that a reconciliation found to be out of date,
+   *         which is what the events missed.
+   */
+  public long corrections() {
+    return corrections.get();
+  }
+
+  /**
+   * @return The number of containers with events that a reconciliation in progress must keep.
+   */
+  int containerUpdates() {
+    lock.readLock().lock();
+    try {
+      return containerUpdates.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return All containers, running or not.
+   */
+  public List<Container> containers() {
+    lock.readLock().lock();
+    try {
+      return ImmutableList.copyOf(containers.values());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Look up a container like the daemon does.
+   *
+   * @param idOrName The id of the container, a unique prefix of it, or its name.
+   * @return The container, or null if there is no such container.
+   */
+  public Container container(final String idOrName) {
+    lock.readLock().lock();
+    try {
+      final Container container = containers.get(idOrName);
+      if (container != null) {
+        return container;
+      }
+      final String id = containerNames.get(name(idOrName));
+      if (id != null) {
+        return containers.get(id);
+      }
+      // Only a prefix if no other id starts with it
+      final Map.Entry<String, Container> entry = containers.ceilingEntry(idOrName);
+      if (idOrName.isEmpty() || entry == null || !entry.getKey().startsWith(idOrName)) {
+        return null;
+      }
+      final String next = containers.higherKey(entry.getKey());
+      return (next != null && next.startsWith(idOrName)) ? null : entry.getValue();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return The containers that have a label, whatever its value.
+   */
+  public List<Container> containersWithLabel(final String label) {
+    lock.readLock().lock();
+    try {
+      return lookup(containerLabels.get(label));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return The containers that have a label with a value.
+   */
+  public List<Container> containersWithLabel(final String label, final String value) {
+    lock.readLock().lock();
+    try {
+      return lookup(containerLabelValues.get(Maps.immutableEntry(label, value)));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param image The image as the container was created from it, e.g. {@code busybox:latest}, or
+   *              the id of the image.
+   * @return The containers of the image.
+   */
+  public List<Container> containersOfImage(final String image) {
+    lock.readLock().lock();
+    try {
+      return lookup(containerImages.get(image));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param state One of {@code created}, {@code restarting}, {@code running}, {@code paused},
+   *              {@code exited} and {@code dead}, as used by the status filter of
+   *              {@link DockerClient#listContainers(ListContainersParam...)}.
+   * @return The containers in the state.
+   */
+  public List<Container> containersWithState(final String state) {
+    lock.readLock().lock();
+    try {
+      return lookup(containerStates.get(state));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return All images that are listed by default, i.e. without intermediate layers.
+   */
+  public List<Image> images() {
+    lock.readLock().lock();
+    try {
+      return ImmutableList.copyOf(images.values());
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @param idOrTag The id of the image, or a repository tag such as {@code busybox:latest}.
+   * @return The image, or null if there is no such image.
+   */
+  public Image image(final String idOrTag) {
+    lock.readLock().lock();
+    try {
+      final Image image = images.get(idOrTag);
+      if (image != null) {
+        return image;
+      }
+      final String id = imageTags.get(idOrTag);
+      return (id == null) ? null : images.get(id);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private List<Container> lookup(final Collection<String> ids) {
+    final ImmutableList.Builder<Container> builder = ImmutableList.builder();
+    for (final String id : ids) {
+      builder.add(containers.get(id));
+    }
+    return builder.build();
+  }
+
+  /**
+   * The state of a container, derived from its status, e.g. {@code exited} for {@code Exited (0)
+   * 5 minutes ago}.
+   */
+  static String state(final Container container) {
+    final String status = container.status();
+    if (status == null) {
+      return null;
+    }
+    if (status.startsWith("Up")) {
+      return status.contains("(Paused)") ? "paused" : "running";
+    }
+    if (status.startsWith("Exited")) {
+      return "exited";
+    }
+    if (status.startsWith("Created")) {
+      return "created";
+    }
+    if (status.startsWith("Restarting")) {
+      return "restarting";
+    }
+    if (status.startsWith("Dead")) {
+      return "dead";
+    }
+    if (status.startsWith("Removal")) {
+      return "removing";
+    }
+    return null;
+  }
+
+  private static String name(final String name) {
+    return name.startsWith("/") ? name.substring(1) : name;
+  }
+
+  private void follow() {
+    try {
+      while (events.hasNext()) {
+        handle(events.next());
+      }
+    } catch (RuntimeException e) {
+      if (!Thread.currentThread().isInterrupted()) {
+        log.warn("Stopped following events", e);
+      }
+    } catch (InterruptedException e) {
+      // Closed
+    }
+  }
+
+  /**
+   * Update the index for an event.
+   */
+  void handle(final Event event) throws InterruptedException {
+    final String type = (event.type() != null) ? event.type()
+                        // Older daemons only send container and image events, and only
+                        // container events have an image
+                        : (event.from() != null) ? "container" : "image";
+    final String action = (event.action() != null) ? event.action() : event.status();
+    if (action == null) {
+      return;
+    }
+
+    switch (type) {
+      case "container":
+        final String id = (event.id() != null || event.actor() == null) ? event.id()
+                                                                         : event.actor().id();
+        if (id == null || IGNORED_ACTIONS.contains(action) || action.startsWith("exec_")
+            || action.startsWith("health_status")) {
+          return;
+        }
+        if (action.equals("destroy")) {
+          updateContainer(id, null);
+          return;
+        }
+        try {
+          final List<Container> listed = docker.listContainers(
+              allContainers(), ListContainersParam.filter("id", id));
+          updateContainer(id, listed.isEmpty() ? null : listed.get(0));
+        } catch (DockerException e) {
+          log.debug("Failed to list container {}: {}", id, e.toString());
+          scheduleReconcile();
+        }
+        return;
+      case "image":
+        scheduleImageRefresh();
+        return;
+      default:
+    }
+  }
+
+  private void updateContainer(final String id, final Container container) {
+    lock.writeLock().lock();
+    try {
+      ++sequence;
+      if (reconciling > 0) {
+        containerUpdates.put(id, sequence);
+      }
+      put(id, container);
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Put a container in the index, or remove it if null. Must be called with the write lock held.
+   *
+   * @return Whether the index changed.
+   */
+  private boolean put(final String id, final Container container) {
+    final Container previous = (container == null) ? containers.remove(id)
+                                                   : containers.put(id, container);
+    if (previous == null ? container == null
+                         : container != null && indexedAlike(previous, container)) {
+      return false;
+    }
+    if (previous != null) {
+      index(id, previous, false);
+    }
+    if (container != null) {
+      index(id, container, true);
+    }
+    version.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Whether two listings of a container are indexed alike. The status is only compared by the state
+   * derived from it, as the time in it, e.g. {@code Up 5 minutes}, changes between listings
+   * without anything happening to the container.
+   */
+  static boolean indexedAlike(final Container a, final Container b) {
+    return Objects.equal(a.id(), b.id())
+           && Objects.equal(a.names(), b.names())
+           && Objects.equal(a.image(), b.image())
+           && Objects.equal(a.imageId(), b.imageId())
+           && Objects.equal(a.labels(), b.labels())
+           && Objects.equal(state(a), state(b))
+           && Objects.equal(a.ports(), b.ports());
+  }
+
+  private void index(final String id, final Container container, final boolean add) {
+    if (container.names() != null) {
+      for (final String name : container.names()) {
+        if (add) {
+          containerNames.put(name(name), id);
+        } else {
+          containerNames.remove(name(name));
+        }
+      }
+    }
+    if (container.labels() != null) {
+      for (final Map.Entry<String, String> label : container.labels().entrySet()) {
+        update(containerLabels, label.getKey(), id, add);
+        update(containerLabelValues, label, id, add);
+      }
+    }
+    update(containerImages, container.image(), id, add);
+    update(containerImages, container.imageId(), id, add);
+    update(containerStates, state(container), id, add);
+  }
+
+  private static <K> void update(final SetMultimap<K, String> index, final K key, final String id,
+                                 final boolean add) {
+    if (key == null) {
+      return;
+    }
+    if (add) {
+      index.put(key, id);
+    } else {
+      index.remove(key, id);
+    }
+  }
+
+  /**
+   * List all containers and images, and correct the index where it differs.
+   */
+  void reconcile() throws DockerException, InterruptedException {
+    corrections.addAndGet(sync());
+    reconciliations.incrementAndGet();
+  }
+
+  /**
+   * @return The number of containers and images that changed.
+   */
+  private long sync() throws DockerException, InterruptedException {
+    final long mark;
+    lock.writeLock().lock();
+    try {
+      mark = sequence;
+      reconciling++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+    try {
+      return syncContainers(mark) + refreshImages();
+    } finally {
+      lock.writeLock().lock();
+      try {
+        if (--reconciling == 0) {
+          containerUpdates.clear();
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * @param mark The sequence number of the latest update before the containers were listed.
+   * @return The number of containers that changed.
+   */
+  private long syncContainers(final long mark) throws DockerException, InterruptedException {
+    final List<Container> listed = docker.listContainers(allContainers());
+
+    long corrected = 0;
+    lock.writeLock().lock();
+    try {
+      final Map<String, Container> current = new HashMap<>();
+      for (final Container container : listed) {
+        current.put(container.id(), container);
+      }
+      for (final String id : ImmutableList.copyOf(containers.keySet())) {
+        if (!current.containsKey(id) && !updatedSince(id, mark) && put(id, null)) {
+          corrected++;
+        }
+      }
+      for (final Map.Entry<String, Container> entry : current.entrySet()) {
+        if (!updatedSince(entry.getKey(), mark) && put(entry.getKey(), entry.getValue())) {
+          corrected++;
+        }
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return corrected;
+  }
+
+  private boolean updatedSince(final String id, final long mark) {
+    final Long update = containerUpdates.get(id);
+    return update != null && update > mark;
+  }
+
+  /**
+   * @return The number of images that changed.
+   */
+  private long refreshImages() throws DockerException, InterruptedException {
+    imageRefreshPending.set(false);
+    final List<Image> listed = docker.listImages();
+
+    long changed = 0;
+    lock.writeLock().lock();
+    try {
+      final Map<String, Image> current = new HashMap<>();
+      for (final Image image : listed) {
+        current.put(image.id(), image);
+      }
+      if (!current.equals(images)) {
+        for (final Image image : images.values()) {
+          if (!image.equals(current.get(image.id()))) {
+            changed++;
+          }
+        }
+        for (final Image image : current.values()) {
+          if (!images.containsKey(image.id())) {
+            changed++;
+          }
+        }
+        images.clear();
+        images.putAll(current);
+        imageTags.clear();
+        for (final Image image : current.values()) {
+          if (image.repoTags() != null) {
+            for (final String tag : image.repoTags()) {
+              imageTags.put(tag, image.id());
+            }
+          }
+        }
+        version.incrementAndGet();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    return changed;
+  }
+
+  private void reconcileQuietly() {
+    reconcilePending.set(false);
+    try {
+      reconcile();
+    } catch (DockerException e) {
+      log.warn("Failed to reconcile the index: {}", e.toString());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void scheduleReconcile() {
+    if (reconcilePending.compareAndSet(false, true)) {
+      submit(new Runnable() {
+        @Override
+        public void run() {
+          reconcileQuietly();
+        }
+      }, 0);
+    }
+  }
+
+  private void scheduleImageRefresh() {
+    if (imageRefreshPending.compareAndSet(false, true)) {
+      submit(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            refreshImages();
+          } catch (DockerException e) {
+            log.debug("Failed to list images: {}", e.toString());
+            scheduleReconcile();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }, imageRefreshDelayMillis);
+    }
+  }
+
+  private void submit(final Runnable task, final long delayMillis) {
+    try {
+      executor.schedule(task, delayMillis, MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // Closed
+    }
+  }
+
+  /**
+   * Stop following events and reconciling. The index keeps what it has.
+   */
+  @Override
+  public void close() {
+    events.close();
+    thread.interrupt();
+    executor.shutdownNow();
+  }
+
+  public static class Builder {
+
+    private final DockerClient docker;
+    private long reconcileIntervalMillis = DEFAULT_RECONCILE_INTERVAL_MILLIS;
+    private long imageRefreshDelayMillis = DEFAULT_IMAGE_REFRESH_DELAY_MILLIS;
+    private long initialBackoffMillis = EventTailer.DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = EventTailer.DEFAULT_MAX_BACKOFF_MILLIS;
+
+    private Builder(final DockerClient docker) {
+      this.docker = checkNotNull(docker, "docker");
+    }
+
+    /**
+     * Set how often all containers and images are listed to correct the index.
+     *
+     * @param reconcileIntervalMillis Time between reconciliations, or 0 to only reconcile when
+     *                                events may have been lost
+     * @return Builder
+     */
+    public Builder reconcileIntervalMillis(final long reconcileIntervalMillis) {
+      checkArgument(reconcileIntervalMillis >= 0, "reconcileIntervalMillis must not be negative");
+      this.reconcileIntervalMillis = reconcileIntervalMillis;
+      return this;
+    }
+
+    /**
+     * Set how long to wait after an image event before listing the images, so that the events of
+     * e.g. a pull are handled with one listing.
+     *
+     * @param imageRefreshDelayMillis Delay before listing images
+     * @return Builder
+     */
+    public Builder imageRefreshDelayMillis(final long imageRefreshDelayMillis) {
+      checkArgument(imageRefreshDelayMillis >= 0, "imageRefreshDelayMillis must not be negative");
+      this.imageRefreshDelayMillis = imageRefreshDelayMillis;
+      return this;
+    }
+
+    /**
+     * Set the backoff before following the events again after the connection was lost.
+     *
+     * @param initialBackoffMillis Backoff before the first reconnect
+     * @return Builder
+     */
+    public Builder initialBackoffMillis(final long initialBackoffMillis) {
+      checkArgument(initialBackoffMillis >= 0, "initialBackoffMillis must not be negative");
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    /**
+     * Set the highest backoff between reconnects.
+     *
+     * @param maxBackoffMillis Maximum backoff
+     * @return Builder
+     */
+    public Builder maxBackoffMillis(final long maxBackoffMillis) {
+      checkArgument(maxBackoffMillis >= 0, "maxBackoffMillis must not be negative");
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    /**
+     * Build the index, listing all containers and images.
+     *
+     * @return The index
+     * @throws DockerException      If the containers or images could not be listed.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    public DaemonIndex build() throws DockerException, InterruptedException {
+      return new DaemonIndex(this);
+    }
+  }
+}
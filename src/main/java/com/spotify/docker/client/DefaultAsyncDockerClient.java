@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import com.spotify.docker.client.DefaultDockerClient.Endpoint;
+import com.spotify.docker.client.DockerClient.AttachParameter;
+import com.spotify.docker.client.DockerClient.ExecCreateParam;
+import com.spotify.docker.client.DockerClient.ExecStartParameter;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.DockerClient.ListImagesParam;
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.AuthConfig;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.ExecState;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageInfo;
+import com.spotify.docker.client.messages.ImageSearchResult;
+import com.spotify.docker.client.messages.Info;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.NetworkConfig;
+import com.spotify.docker.client.messages.NetworkCreation;
+import com.spotify.docker.client.messages.RemovedImage;
+import com.spotify.docker.client.messages.Version;
+
+import java.io.InputStream;
+import java.util.List;
+
+import javax.ws.rs.core.Response;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.util.concurrent.Futures.immediateFailedFuture;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+
+/**
+ * An {@link AsyncDockerClient} that issues its requests through the connection pools of a {@link
+ * DefaultDockerClient}. Use {@link DefaultDockerClient#async()} to create one.
+ *
+ * <p>Requests are built and their errors mapped by the same {@link Endpoint endpoints} as those of
+ * the blocking client, so the two only differ in how they wait for the response. Unlike blocking
+ * requests, they skip the client's {@link ConcurrencyLimiter}, {@link RequestScheduler}, {@link
+ * RetryPolicy} and single-flight coalescing, which all park the calling thread.
+ */
+class DefaultAsyncDockerClient implements AsyncDockerClient {
+
+  private static final Function<Object, Void> TO_VOID = Functions.<Void>constant(null);
+
+  private static final Function<Response, Integer> TO_STATUS = new Function<Response, Integer>() {
+    @Override
+    public Integer apply(final Response response) {
+      return response.getStatus();
+    }
+  };
+
+  private final DefaultDockerClient docker;
+
+  DefaultAsyncDockerClient(final DefaultDockerClient docker) {
+    this.docker = checkNotNull(docker, "docker");
+  }
+
+  /**
+   * Does nothing: the view is closed together with the {@link DefaultDockerClient} it came from.
+   */
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public ListenableFuture<String> ping() {
+    return docker.pingEndpoint().executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<Version> version() {
+    return docker.versionEndpoint().executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<Integer> auth(final AuthConfig authConfig) {
+    return Futures.transform(docker.authEndpoint(authConfig).executeAsync(), TO_STATUS);
+  }
+
+  @Override
+  public ListenableFuture<Info> info() {
+    return docker.infoEndpoint().executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<List<Container>> listContainers(final ListContainersParam... params) {
+    try {
+      return docker.listContainersEndpoint(params).executeAsync();
+    } catch (DockerException e) {
+      return immediateFailedFuture(e);
+    }
+  }
+
+  @Override
+  public ListenableFuture<List<Image>> listImages(final ListImagesParam... params) {
+    try {
+      return docker.listImagesEndpoint(params).executeAsync();
+    } catch (DockerException e) {
+      return immediateFailedFuture(e);
+    }
+  }
+
+  @Override
+  public ListenableFuture<ContainerInfo> inspectContainer(final String containerId) {
+    return docker.inspectContainerEndpoint(containerId).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<ContainerCreation> commitContainer(final String containerId,
+                                                             final String repo,
+                                                             final String tag,
+                                                             final ContainerConfig config,
+                                                             final String comment,
+                                                             final String author) {
+    return docker.commitContainerEndpoint(containerId, repo, tag, config, comment, author)
+        .executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<ImageInfo> inspectImage(final String image) {
+    return docker.inspectImageEndpoint(image).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<List<RemovedImage>> removeImage(final String image) {
+    return removeImage(image, false, false);
+  }
+
+  @Override
+  public ListenableFuture<List<RemovedImage>> removeImage(final String image, final boolean force,
+                                                          final boolean noPrune) {
+    return docker.removeImageEndpoint(image, force, noPrune).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<List<ImageSearchResult>> searchImages(final String term) {
+    return docker.searchImagesEndpoint(term).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<InputStream> save(final String image, final AuthConfig authConfig) {
+    try {
+      return docker.saveEndpoint(image, authConfig).executeAsync();
+    } catch (DockerException e) {
+      return immediateFailedFuture(e);
+    }
+  }
+
+  @Override
+  public ListenableFuture<Void> tag(final String image, final String name, final boolean force) {
+    return toVoid(docker.tagEndpoint(image, name, force));
+  }
+
+  @Override
+  public ListenableFuture<ContainerCreation> createContainer(final ContainerConfig config,
+                                                             final String name) {
+    return docker.createContainerEndpoint(config, name).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<Void> renameContainer(final String containerId, final String name) {
+    return toVoid(docker.renameContainerEndpoint(containerId, name));
+  }
+
+  @Override
+  public ListenableFuture<Void> startContainer(final String containerId) {
+    checkNotNull(containerId, "containerId");
+    return toVoid(docker.startContainerEndpoint(containerId));
+  }
+
+  @Override
+  public ListenableFuture<Void> stopContainer(final String containerId,
+                                              final int secondsToWaitBeforeKilling) {
+    return toVoid(docker.stopContainerEndpoint(containerId, secondsToWaitBeforeKilling));
+  }
+
+  @Override
+  public ListenableFuture<Void> pauseContainer(final String containerId) {
+    checkNotNull(containerId, "containerId");
+    return toVoid(docker.pauseContainerEndpoint(containerId));
+  }
+
+  @Override
+  public ListenableFuture<Void> unpauseContainer(final String containerId) {
+    checkNotNull(containerId, "containerId");
+    return toVoid(docker.unpauseContainerEndpoint(containerId));
+  }
+
+  @Override
+  public ListenableFuture<Void> restartContainer(final String containerId,
+                                                 final int secondsToWaitBeforeRestart) {
+    checkNotNull(containerId, "containerId");
+    return toVoid(docker.restartContainerEndpoint(containerId, secondsToWaitBeforeRestart));
+  }
+
+  @Override
+  public ListenableFuture<ContainerExit> waitContainer(final String containerId) {
+    return docker.waitContainerEndpoint(containerId).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<Void> killContainer(final String containerId) {
+    return toVoid(docker.killContainerEndpoint(containerId));
+  }
+
+  @Override
+  public ListenableFuture<Void> removeContainer(final String containerId,
+                                                final RemoveContainerParam... params) {
+    return toVoid(docker.removeContainerEndpoint(containerId, params));
+  }
+
+  @Override
+  public ListenableFuture<InputStream> exportContainer(final String containerId) {
+    return docker.exportContainerEndpoint(containerId).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<InputStream> copyContainer(final String containerId,
+                                                     final String path) {
+    return docker.copyContainerEndpoint(containerId, path).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<LogStream> logs(final String containerId, final LogsParam... params) {
+    return docker.logsEndpoint(containerId, params).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<LogStream> attachContainer(final String containerId,
+                                                     final AttachParameter... params) {
+    return docker.attachContainerEndpoint(containerId, params).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<String> execCreate(final String containerId, final String[] cmd,
+                                             final ExecCreateParam... params) {
+    final ListenableFuture<String> response;
+    try {
+      response = docker.execCreateEndpoint(containerId, cmd, params).executeAsync();
+    } catch (DockerException e) {
+      return immediateFailedFuture(e);
+    }
+
+    return Futures.transform(response, new AsyncFunction<String, String>() {
+      @Override
+      public ListenableFuture<String> apply(final String response) {
+        try {
+          return immediateFuture(DefaultDockerClient.execId(response));
+        } catch (DockerException e) {
+          return immediateFailedFuture(e);
+        }
+      }
+    });
+  }
+
+  @Override
+  public ListenableFuture<LogStream> execStart(final String execId,
+                                               final ExecStartParameter... params) {
+    final ListenableFuture<LogStream> stream;
+    try {
+      stream = docker.execStartEndpoint(execId, params).executeAsync();
+    } catch (DockerException e) {
+      return immediateFailedFuture(e);
+    }
+
+    return Futures.transform(stream, new Function<LogStream, LogStream>() {
+      @Override
+      public LogStream apply(final LogStream stream) {
+        return DefaultDockerClient.execStream(stream, params);
+      }
+    });
+  }
+
+  @Override
+  public ListenableFuture<ExecState> execInspect(final String execId) {
+    return docker.execInspectEndpoint(execId).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<ContainerStats> stats(final String containerId) {
+    return docker.statsEndpoint(containerId).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<List<Network>> listNetworks() {
+    return docker.listNetworksEndpoint().executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<Network> inspectNetwork(final String networkId) {
+    return docker.inspectNetworkEndpoint(networkId).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<NetworkCreation> createNetwork(final NetworkConfig networkConfig) {
+    return docker.createNetworkEndpoint(networkConfig).executeAsync();
+  }
+
+  @Override
+  public ListenableFuture<Void> removeNetwork(final String networkId) {
+    return toVoid(docker.removeNetworkEndpoint(networkId));
+  }
+
+  @Override
+  public ListenableFuture<Void> connectToNetwork(final String containerId,
+                                                 final String networkId) {
+    return toVoid(docker.connectToNetworkEndpoint(containerId, networkId));
+  }
+
+  @Override
+  public ListenableFuture<Void> disconnectFromNetwork(final String containerId,
+                                                      final String networkId) {
+    return toVoid(docker.disconnectFromNetworkEndpoint(containerId, networkId));
+  }
+
+  private static ListenableFuture<Void> toVoid(final Endpoint<?> endpoint) {
+    return Futures.transform(endpoint.executeAsync(), TO_VOID);
+  }
+}
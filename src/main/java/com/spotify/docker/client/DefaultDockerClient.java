@@ -66,23 +66,37 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.CharStreams;
 import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.commons.compress.utils.IOUtils;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.client.utils.URIUtils;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.DefaultSchemePortResolver;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.jersey.apache.connector.ApacheClientProperties;
 import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
 import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.internal.util.Base64;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.slf4j.Logger;
@@ -95,26 +109,34 @@ import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.channels.ClosedByInterruptException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.ResponseProcessingException;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.GenericType;
@@ -131,6 +153,7 @@ import static com.spotify.docker.client.VersionCompare.compareVersion;
 import static java.lang.System.getProperty;
 import static java.lang.System.getenv;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static javax.ws.rs.HttpMethod.DELETE;
 import static javax.ws.rs.HttpMethod.GET;
@@ -199,33 +222,35 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   private static final long DEFAULT_CONNECT_TIMEOUT_MILLIS = SECONDS.toMillis(5);
   private static final long DEFAULT_READ_TIMEOUT_MILLIS = SECONDS.toMillis(30);
-  private static final int DEFAULT_CONNECTION_POOL_SIZE = 100;
+  static final int DEFAULT_CONNECTION_POOL_SIZE = 100;
+  private static final int DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
 
-  private static final ClientConfig DEFAULT_CONFIG = new ClientConfig(
-      ObjectMapperProvider.class,
-      JacksonFeature.class,
-      LogsResponseReader.class,
-      ProgressResponseReader.class);
+  private static final String CONTAINER_JSON = "containers/{id}/json";
+  private static final String CONTAINER_START = "containers/{id}/start";
+  private static final String CONTAINER_STOP = "containers/{id}/stop";
+  private static final String CONTAINER_PAUSE = "containers/{id}/pause";
+  private static final String CONTAINER_UNPAUSE = "containers/{id}/unpause";
+  private static final String CONTAINER_KILL = "containers/{id}/kill";
 
-  private static final Pattern CONTAINER_NAME_PATTERN = Pattern.compile("/?[a-zA-Z0-9_-]+");
+  static final Pattern CONTAINER_NAME_PATTERN = Pattern.compile("/?[a-zA-Z0-9_-]+");
 
-  private static final GenericType<List<Container>> CONTAINER_LIST =
+  static final GenericType<List<Container>> CONTAINER_LIST =
       new GenericType<List<Container>>() {
       };
 
-  private static final GenericType<List<Image>> IMAGE_LIST =
+  static final GenericType<List<Image>> IMAGE_LIST =
       new GenericType<List<Image>>() {
       };
 
-  private static final GenericType<List<Network>> NETWORK_LIST =
+  static final GenericType<List<Network>> NETWORK_LIST =
       new GenericType<List<Network>>() {
       };
 
-  private static final GenericType<List<ImageSearchResult>> IMAGES_SEARCH_RESULT_LIST =
+  static final GenericType<List<ImageSearchResult>> IMAGES_SEARCH_RESULT_LIST =
       new GenericType<List<ImageSearchResult>>() {
       };
 
-  private static final GenericType<List<RemovedImage>> REMOVED_IMAGE_LIST =
+  static final GenericType<List<RemovedImage>> REMOVED_IMAGE_LIST =
       new GenericType<List<RemovedImage>>() {
       };
 
@@ -238,7 +263,15 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       };
 
   private final Client client;
-  private final Client noTimeoutClient;
+  private final RequestConfig requestConfig;
+  private final DockerTransport transport;
+  private final boolean synchronousRequests;
+  private final IdleConnectionEvictor connectionEvictor;
+  private final ConcurrencyLimiter unaryLimiter;
+  private final ConcurrencyLimiter streamingLimiter;
+  private final SingleFlight singleFlight;
+  private final RetryPolicy retryPolicy;
+  private final RequestScheduler scheduler;
 
   private final URI uri;
   private final String apiVersion;
@@ -246,12 +279,24 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   private final Map<String, Object> headers;
 
+  // Base targets and parsed endpoint templates, created on first use. A WebTarget is immutable
+  // apart from property(), so these are safe to share as long as nobody sets properties on them;
+  // noTimeoutResource is a separate instance for that reason.
+  private volatile WebTarget resource;
+  private volatile WebTarget noTimeoutResource;
+  private final ConcurrentMap<String, WebTarget> templates = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, WebTarget> noTimeoutTemplates = new ConcurrentHashMap<>();
+
   Client getClient() {
     return client;
   }
 
-  Client getNoTimeoutClient() {
-    return noTimeoutClient;
+  URI getUri() {
+    return uri;
+  }
+
+  AuthConfig getAuthConfig() {
+    return authConfig;
   }
 
   /**
@@ -308,36 +353,76 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
 
     final PoolingHttpClientConnectionManager cm = getConnectionManager(builder);
-    final PoolingHttpClientConnectionManager noTimeoutCm = getConnectionManager(builder);
 
-    final RequestConfig requestConfig = RequestConfig.custom()
+    this.requestConfig = RequestConfig.custom()
         .setConnectionRequestTimeout((int) builder.connectTimeoutMillis)
         .setConnectTimeout((int) builder.connectTimeoutMillis)
         .setSocketTimeout((int) builder.readTimeoutMillis)
         .build();
 
-    final ClientConfig config = DEFAULT_CONFIG
+    // Not shared between clients, as the logs reader depends on the API version
+    final ClientConfig config = new ClientConfig(
+        ObjectMapperProvider.class,
+        JacksonFeature.class,
+        ProgressResponseReader.class)
+        .register(new LogsResponseReader(apiVersion))
         .connectorProvider(new ApacheConnectorProvider())
         .property(ApacheClientProperties.CONNECTION_MANAGER, cm)
         .property(ApacheClientProperties.REQUEST_CONFIG, requestConfig);
 
     this.authConfig = builder.authConfig;
 
+    // A single client and connection pool serves all requests. Requests that may legitimately
+    // stay silent for a long time (waitContainer, stopContainer, attachContainer, logs, build
+    // and events) override the read timeout per request, see noTimeoutResource().
     this.client = clientBuilderSupplier.get().withConfig(config).build();
 
-    // ApacheConnector doesn't respect per-request timeout settings.
-    // Workaround: instead create a client with infinite read timeout,
-    // and use it for waitContainer, stopContainer, attachContainer, logs, and build
-    final RequestConfig noReadTimeoutRequestConfig = RequestConfig.copy(requestConfig)
-        .setSocketTimeout((int) NO_TIMEOUT)
-        .build();
-    this.noTimeoutClient = clientBuilderSupplier.get()
-        .withConfig(config)
-        .property(ApacheClientProperties.CONNECTION_MANAGER, noTimeoutCm)
-        .property(ApacheClientProperties.REQUEST_CONFIG, noReadTimeoutRequestConfig)
-        .build();
+    if (builder.idleConnectionTimeoutMillis > 0) {
+      this.connectionEvictor = new IdleConnectionEvictor(
+          cm,
+          new ThreadFactoryBuilder()
+              .setNameFormat("docker-client-connection-evictor-%d")
+              .setDaemon(true)
+              .build(),
+          builder.idleConnectionTimeoutMillis, MILLISECONDS,
+          builder.idleConnectionTimeoutMillis, MILLISECONDS);
+      this.connectionEvictor.start();
+    } else {
+      this.connectionEvictor = null;
+    }
+
+    if (builder.warmupConnections > 0) {
+      warmUp(cm, Math.min(builder.warmupConnections, builder.connectionPoolSize),
+             (int) builder.connectTimeoutMillis);
+    }
 
     this.headers = new HashMap<>(builder.headers());
+    this.transport = builder.transport;
+    this.synchronousRequests = builder.synchronousRequests;
+    this.unaryLimiter = builder.unaryConcurrencyLimiter;
+    this.streamingLimiter = builder.streamingConcurrencyLimiter;
+    this.singleFlight = builder.coalesceReads ? new SingleFlight() : null;
+    this.retryPolicy = builder.retryPolicy;
+    this.scheduler = builder.requestScheduler;
+  }
+
+  @VisibleForTesting
+  SingleFlight singleFlight() {
+    return singleFlight;
+  }
+
+  /**
+   * @return The limiter for requests other than streams, or null if they are not limited.
+   */
+  public ConcurrencyLimiter getUnaryConcurrencyLimiter() {
+    return unaryLimiter;
+  }
+
+  /**
+   * @return The limiter for streaming requests, or null if they are not limited.
+   */
+  public ConcurrencyLimiter getStreamingConcurrencyLimiter() {
+    return streamingLimiter;
   }
 
   public String getHost() {
@@ -352,9 +437,53 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     cm.setMaxTotal(builder.connectionPoolSize);
     cm.setDefaultMaxPerRoute(cm.getMaxTotal());
 
+    // Check that pooled connections that sat idle for a while are still alive before reusing
+    // them, so that a restarted daemon doesn't fail the next request.
+    cm.setValidateAfterInactivity(builder.validateAfterInactivityMillis);
+
     return cm;
   }
 
+  /**
+   * Open connections to Docker before the first requests need them. Failures are logged rather
+   * than thrown, since Docker may not be up yet.
+   */
+  private void warmUp(final PoolingHttpClientConnectionManager cm, final int connections,
+                      final int connectTimeoutMillis) {
+    HttpHost target = URIUtils.extractHost(uri);
+    final List<HttpClientConnection> opened = Lists.newArrayList();
+    try {
+      if (target.getPort() <= 0) {
+        target = new HttpHost(target.getHostName(),
+                              DefaultSchemePortResolver.INSTANCE.resolve(target),
+                              target.getSchemeName());
+      }
+      // The same route the client's route planner picks for requests to this host
+      final HttpRoute route = new HttpRoute(target, null, "https".equals(uri.getScheme()));
+      final HttpClientContext context = HttpClientContext.create();
+
+      // Hold on to every connection until all are open, or the pool would hand out the same one
+      while (opened.size() < connections) {
+        final HttpClientConnection connection =
+            cm.requestConnection(route, null).get(connectTimeoutMillis, MILLISECONDS);
+        opened.add(connection);
+        if (!connection.isOpen()) {
+          cm.connect(connection, route, connectTimeoutMillis, context);
+          cm.routeComplete(connection, route, context);
+        }
+      }
+    } catch (IOException | ExecutionException e) {
+      log.warn("Failed to open connections to {} ahead of time", uri, e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      for (final HttpClientConnection connection : opened) {
+        cm.releaseConnection(connection, null, 0, MILLISECONDS);
+      }
+    }
+    log.debug("Opened {} connections to {}", opened.size(), uri);
+  }
+
   private Registry<ConnectionSocketFactory> getSchemeRegistry(final Builder builder) {
     final SSLConnectionSocketFactory https;
     if (builder.dockerCertificates == null) {
@@ -378,54 +507,85 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   @Override
   public void close() {
+    if (connectionEvictor != null) {
+      connectionEvictor.shutdown();
+    }
     client.close();
-    noTimeoutClient.close();
+    if (transport != null) {
+      transport.close();
+    }
+  }
+
+  /**
+   * Get an {@link AsyncDockerClient} view of this client. The view shares this client's connection
+   * pools, headers and auth configuration, and is closed together with it. Closing the view itself
+   * does nothing, so views can be handed out freely.
+   *
+   * <p>Requests made through the view go straight to the connection pool: they are not limited,
+   * scheduled, retried or coalesced, even if this client is configured to do so.</p>
+   *
+   * @return An {@link AsyncDockerClient} backed by this client.
+   */
+  public AsyncDockerClient async() {
+    return new DefaultAsyncDockerClient(this);
   }
 
   @Override
   public String ping() throws DockerException, InterruptedException {
+    return pingEndpoint().execute();
+  }
+
+  Endpoint<String> pingEndpoint() {
     final WebTarget resource = client.target(uri).path("_ping");
-    return request(GET, String.class, resource, resource.request());
+    return endpoint(GET, String.class, resource, resource.request()).unary();
   }
 
   @Override
   public Version version() throws DockerException, InterruptedException {
+    return versionEndpoint().execute();
+  }
+
+  Endpoint<Version> versionEndpoint() {
     final WebTarget resource = resource().path("version");
-    return request(GET, Version.class, resource, resource.request(APPLICATION_JSON_TYPE));
+    return endpoint(GET, Version.class, resource, resource.request(APPLICATION_JSON_TYPE));
   }
 
   @Override
   public int auth(final AuthConfig authConfig) throws DockerException, InterruptedException {
+    return authEndpoint(authConfig).execute().getStatus();
+  }
+
+  Endpoint<Response> authEndpoint(final AuthConfig authConfig) {
     final WebTarget resource = resource().path("auth");
-    final Response response =
-        request(POST, Response.class, resource, resource.request(APPLICATION_JSON_TYPE),
-                Entity.json(authConfig));
-    return response.getStatus();
+    return endpoint(POST, Response.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .entity(Entity.json(authConfig));
   }
 
   @Override
   public Info info() throws DockerException, InterruptedException {
+    return infoEndpoint().execute();
+  }
+
+  Endpoint<Info> infoEndpoint() {
     final WebTarget resource = resource().path("info");
-    return request(GET, Info.class, resource, resource.request(APPLICATION_JSON_TYPE));
+    return endpoint(GET, Info.class, resource, resource.request(APPLICATION_JSON_TYPE));
   }
 
   @Override
   public List<Container> listContainers(final ListContainersParam... params)
       throws DockerException, InterruptedException {
+    return listContainersEndpoint(params).execute();
+  }
+
+  Endpoint<List<Container>> listContainersEndpoint(final ListContainersParam... params)
+      throws DockerException {
     WebTarget resource = resource()
         .path("containers").path("json");
 
     final Map<String, List<String>> filters = newHashMap();
     for (final ListContainersParam param : params) {
       if (param instanceof ListContainersFilterParam) {
-        List<String> filterValueList;
-        if (filters.containsKey(param.name())) {
-          filterValueList = filters.get(param.name());
-        } else {
-          filterValueList = Lists.newArrayList();
-        }
-        filterValueList.add(param.value());
-        filters.put(param.name(), filterValueList);
+        addFilter(filters, param.name(), param.value());
       } else {
         resource = resource.queryParam(urlEncode(param.name()), urlEncode(param.value()));
       }
@@ -438,16 +598,22 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       resource = resource.queryParam("filters", urlEncodeFilters(filters));
     }
 
-    try {
-      return request(GET, CONTAINER_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 400:
-          throw new BadParamException(getQueryParamMap(resource), e);
-        default:
-          throw e;
-      }
+    return endpoint(GET, CONTAINER_LIST, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(badParam(resource))
+        .unary();
+  }
+
+  /**
+   * Add a filter value. Repeated filters with the same name match any of their values.
+   */
+  private static void addFilter(final Map<String, List<String>> filters, final String name,
+                                final String value) {
+    List<String> filterValueList = filters.get(name);
+    if (filterValueList == null) {
+      filterValueList = Lists.newArrayList();
+      filters.put(name, filterValueList);
     }
+    filterValueList.add(value);
   }
 
   private Map<String, String> getQueryParamMap(final WebTarget resource) {
@@ -498,20 +664,18 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public List<Image> listImages(final ListImagesParam... params)
       throws DockerException, InterruptedException {
+    return listImagesEndpoint(params).execute();
+  }
+
+  Endpoint<List<Image>> listImagesEndpoint(final ListImagesParam... params)
+      throws DockerException {
     WebTarget resource = resource()
         .path("images").path("json");
 
     final Map<String, List<String>> filters = newHashMap();
     for (final ListImagesParam param : params) {
       if (param instanceof ListImagesFilterParam) {
-        final List<String> filterValueList;
-        if (filters.containsKey(param.name())) {
-          filterValueList = filters.get(param.name());
-        } else {
-          filterValueList = Lists.newArrayList();
-        }
-        filterValueList.add(param.value());
-        filters.put(param.name(), filterValueList);
+        addFilter(filters, param.name(), param.value());
       } else {
         resource = resource.queryParam(urlEncode(param.name()), urlEncode(param.value()));
       }
@@ -524,7 +688,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       resource = resource.queryParam("filters", urlEncodeFilters(filters));
     }
 
-    return request(GET, IMAGE_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+    return endpoint(GET, IMAGE_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
   }
 
   @Override
@@ -536,6 +700,11 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public ContainerCreation createContainer(final ContainerConfig config, final String name)
       throws DockerException, InterruptedException {
+    return createContainerEndpoint(config, name).execute();
+  }
+
+  Endpoint<ContainerCreation> createContainerEndpoint(final ContainerConfig config,
+                                                      final String name) {
     WebTarget resource = resource()
         .path("containers").path("create");
 
@@ -547,19 +716,22 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
     log.info("Creating container with ContainerConfig: {}", config);
 
-    try {
-      return request(POST, ContainerCreation.class, resource, resource
-          .request(APPLICATION_JSON_TYPE), Entity.json(config));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ImageNotFoundException(config.image(), e);
-        case 406:
-          throw new DockerException("Impossible to attach. Container not running.", e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(POST, ContainerCreation.class, resource, resource
+        .request(APPLICATION_JSON_TYPE))
+        .entity(Entity.json(config))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                return new ImageNotFoundException(config.image(), e);
+              case 406:
+                return new DockerException("Impossible to attach. Container not running.", e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
@@ -569,37 +741,50 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
     log.info("Starting container with Id: {}", containerId);
 
-    containerAction(containerId, "start");
+    containerAction(containerId, CONTAINER_START);
   }
 
-  private void containerAction(final String containerId, final String action)
+  private void containerAction(final String containerId, final String template)
       throws DockerException, InterruptedException {
-    try {
-      final WebTarget resource = resource()
-          .path("containers").path(containerId).path(action);
-      request(POST, resource, resource.request());
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    containerActionEndpoint(containerId, template).execute();
+  }
+
+  Endpoint<String> startContainerEndpoint(final String containerId) {
+    return containerActionEndpoint(containerId, CONTAINER_START);
+  }
+
+  Endpoint<String> pauseContainerEndpoint(final String containerId) {
+    return containerActionEndpoint(containerId, CONTAINER_PAUSE);
+  }
+
+  Endpoint<String> unpauseContainerEndpoint(final String containerId) {
+    return containerActionEndpoint(containerId, CONTAINER_UNPAUSE);
+  }
+
+  Endpoint<String> killContainerEndpoint(final String containerId) {
+    return containerActionEndpoint(containerId, CONTAINER_KILL);
+  }
+
+  private Endpoint<String> containerActionEndpoint(final String containerId,
+                                                   final String template) {
+    final WebTarget resource = resource(template, containerId);
+    return endpoint(POST, String.class, resource, resource.request())
+        .mapStatus(containerNotFound(containerId))
+        .unary();
   }
 
   @Override
   public void pauseContainer(final String containerId)
       throws DockerException, InterruptedException {
     checkNotNull(containerId, "containerId");
-    containerAction(containerId, "pause");
+    containerAction(containerId, CONTAINER_PAUSE);
   }
 
   @Override
   public void unpauseContainer(final String containerId)
       throws DockerException, InterruptedException {
     checkNotNull(containerId, "containerId");
-    containerAction(containerId, "unpause");
+    containerAction(containerId, CONTAINER_UNPAUSE);
   }
 
   @Override
@@ -612,64 +797,62 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       throws DockerException, InterruptedException {
     checkNotNull(containerId, "containerId");
     checkNotNull(secondsToWaitBeforeRestart, "secondsToWait");
-    try {
-      final WebTarget resource = resource().path("containers").path(containerId)
-          .path("restart")
-          .queryParam("t", String.valueOf(secondsToWaitBeforeRestart));
-      request(POST, resource, resource.request());
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    restartContainerEndpoint(containerId, secondsToWaitBeforeRestart).execute();
+  }
+
+  Endpoint<String> restartContainerEndpoint(final String containerId,
+                                            final int secondsToWaitBeforeRestart) {
+    final WebTarget resource = resource().path("containers").path(containerId)
+        .path("restart")
+        .queryParam("t", String.valueOf(secondsToWaitBeforeRestart));
+    return endpoint(POST, String.class, resource, resource.request())
+        .mapStatus(containerNotFound(containerId));
   }
 
 
   @Override
   public void killContainer(final String containerId) throws DockerException, InterruptedException {
-    containerAction(containerId, "kill");
+    containerAction(containerId, CONTAINER_KILL);
   }
 
   @Override
   public void stopContainer(final String containerId, final int secondsToWaitBeforeKilling)
       throws DockerException, InterruptedException {
-    try {
-      final WebTarget resource = noTimeoutResource()
-          .path("containers").path(containerId).path("stop")
-          .queryParam("t", String.valueOf(secondsToWaitBeforeKilling));
-      request(POST, resource, resource.request());
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 304: // already stopped, so we're cool
-          return;
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    stopContainerEndpoint(containerId, secondsToWaitBeforeKilling).execute();
+  }
+
+  Endpoint<String> stopContainerEndpoint(final String containerId,
+                                         final int secondsToWaitBeforeKilling) {
+    final WebTarget resource = noTimeoutResource(CONTAINER_STOP, containerId)
+        .queryParam("t", String.valueOf(secondsToWaitBeforeKilling));
+    return endpoint(POST, String.class, resource, resource.request())
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 304: // already stopped, so we're cool
+                return null;
+              case 404:
+                return new ContainerNotFoundException(containerId, e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
   public ContainerExit waitContainer(final String containerId)
       throws DockerException, InterruptedException {
-    try {
-      final WebTarget resource = noTimeoutResource()
-          .path("containers").path(containerId).path("wait");
-      // Wait forever
-      return request(POST, ContainerExit.class, resource,
-                     resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    return waitContainerEndpoint(containerId).execute();
+  }
+
+  Endpoint<ContainerExit> waitContainerEndpoint(final String containerId) {
+    final WebTarget resource = noTimeoutResource()
+        .path("containers").path(containerId).path("wait");
+    // Wait forever
+    return endpoint(POST, ContainerExit.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(containerNotFound(containerId));
   }
 
   @Override
@@ -688,48 +871,56 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public void removeContainer(final String containerId, final RemoveContainerParam... params)
       throws DockerException, InterruptedException {
-    try {
-      WebTarget resource = resource().path("containers").path(containerId);
+    removeContainerEndpoint(containerId, params).execute();
+  }
 
-      for (final RemoveContainerParam param : params) {
-        resource = resource.queryParam(param.name(), param.value());
-      }
+  Endpoint<String> removeContainerEndpoint(final String containerId,
+                                           final RemoveContainerParam... params) {
+    WebTarget resource = resource().path("containers").path(containerId);
 
-      request(DELETE, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 400:
-          throw new BadParamException(getQueryParamMap(resource()), e);
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
+    for (final RemoveContainerParam param : params) {
+      resource = resource.queryParam(param.name(), param.value());
     }
+
+    final WebTarget target = resource;
+    return endpoint(DELETE, String.class, target, target.request(APPLICATION_JSON_TYPE))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 400:
+                return new BadParamException(getQueryParamMap(target), e);
+              case 404:
+                return new ContainerNotFoundException(containerId, e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
   public InputStream exportContainer(String containerId)
       throws DockerException, InterruptedException {
+    return exportContainerEndpoint(containerId).execute();
+  }
+
+  Endpoint<InputStream> exportContainerEndpoint(final String containerId) {
     final WebTarget resource = resource()
         .path("containers").path(containerId).path("export");
-    try {
-      return request(GET, InputStream.class, resource,
-                   resource.request(APPLICATION_OCTET_STREAM_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(GET, InputStream.class, resource,
+                    resource.request(APPLICATION_OCTET_STREAM_TYPE))
+        .mapStatus(containerNotFound(containerId));
   }
 
 
   @Override
   public InputStream copyContainer(String containerId, String path)
       throws DockerException, InterruptedException {
+    return copyContainerEndpoint(containerId, path).execute();
+  }
+
+  Endpoint<InputStream> copyContainerEndpoint(final String containerId, final String path) {
     final WebTarget resource = resource()
         .path("containers").path(containerId).path("copy");
 
@@ -737,18 +928,10 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     final JsonNodeFactory nf = JsonNodeFactory.instance;
     final JsonNode params = nf.objectNode().set("Resource", nf.textNode(path));
 
-    try {
-      return request(POST, InputStream.class, resource,
-          resource.request(APPLICATION_OCTET_STREAM_TYPE),
-          Entity.json(params));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(POST, InputStream.class, resource,
+                    resource.request(APPLICATION_OCTET_STREAM_TYPE))
+        .entity(Entity.json(params))
+        .mapStatus(containerNotFound(containerId));
   }
 
   @Override
@@ -787,17 +970,14 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public ContainerInfo inspectContainer(final String containerId)
       throws DockerException, InterruptedException {
-    try {
-      final WebTarget resource = resource().path("containers").path(containerId).path("json");
-      return request(GET, ContainerInfo.class, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    return inspectContainerEndpoint(containerId).execute();
+  }
+
+  Endpoint<ContainerInfo> inspectContainerEndpoint(final String containerId) {
+    final WebTarget resource = resource(CONTAINER_JSON, containerId);
+    return endpoint(GET, ContainerInfo.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(containerNotFound(containerId))
+        .unary();
   }
 
   @Override
@@ -808,7 +988,15 @@ public class DefaultDockerClient implements DockerClient, Closeable {
                                            final String comment,
                                            final String author)
       throws DockerException, InterruptedException {
+    return commitContainerEndpoint(containerId, repo, tag, config, comment, author).execute();
+  }
 
+  Endpoint<ContainerCreation> commitContainerEndpoint(final String containerId,
+                                                      final String repo,
+                                                      final String tag,
+                                                      final ContainerConfig config,
+                                                      final String comment,
+                                                      final String author) {
     checkNotNull(containerId, "containerId");
     checkNotNull(repo, "repo");
     checkNotNull(config, "containerConfig");
@@ -832,22 +1020,19 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     log.info("Committing container id: {} to repository: {} with ContainerConfig: {}", containerId,
              repo, config);
 
-    try {
-      return request(POST, ContainerCreation.class, resource, resource
-          .request(APPLICATION_JSON_TYPE), Entity.json(config));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(POST, ContainerCreation.class, resource, resource
+        .request(APPLICATION_JSON_TYPE))
+        .entity(Entity.json(config))
+        .mapStatus(containerNotFound(containerId));
   }
 
   @Override
   public void renameContainer(final String containerId, final String name)
       throws DockerException, InterruptedException {
+    renameContainerEndpoint(containerId, name).execute();
+  }
+
+  Endpoint<String> renameContainerEndpoint(final String containerId, final String name) {
     WebTarget resource = resource()
         .path("containers").path(containerId).path("rename");
 
@@ -861,26 +1046,32 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
     log.info("Renaming container with id {}. New name {}.", containerId, name);
 
-    try {
-      request(POST, resource, resource.request());
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        case 409:
-          throw new ContainerRenameConflictException(containerId, name, e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(POST, String.class, resource, resource.request())
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                return new ContainerNotFoundException(containerId, e);
+              case 409:
+                return new ContainerRenameConflictException(containerId, name, e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
   public List<ImageSearchResult> searchImages(final String term)
       throws DockerException, InterruptedException {
+    return searchImagesEndpoint(term).execute();
+  }
+
+  Endpoint<List<ImageSearchResult>> searchImagesEndpoint(final String term) {
     final WebTarget resource = resource().path("images").path("search").queryParam("term", term);
-    return request(GET, IMAGES_SEARCH_RESULT_LIST, resource,
-                   resource.request(APPLICATION_JSON_TYPE));
+    return endpoint(GET, IMAGES_SEARCH_RESULT_LIST, resource,
+                    resource.request(APPLICATION_JSON_TYPE));
   }
 
   @Override
@@ -940,9 +1131,14 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public InputStream save(final String image, final AuthConfig authConfig)
       throws DockerException, IOException, InterruptedException {
+    return saveEndpoint(image, authConfig).execute();
+  }
+
+  Endpoint<InputStream> saveEndpoint(final String image, final AuthConfig authConfig)
+      throws DockerException {
     final WebTarget resource = resource().path("images").path(image).path("get");
 
-    return request(
+    return endpoint(
         GET,
         InputStream.class,
         resource,
@@ -979,14 +1175,28 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       resource = resource.queryParam("tag", imageRef.getTag());
     }
 
-    try (ProgressStream pull =
-             request(POST, ProgressStream.class, resource,
-                     resource
-                         .request(APPLICATION_JSON_TYPE)
-                         .header("X-Registry-Auth", authHeader(authConfig)))) {
-      pull.tail(handler, POST, resource.getUri());
-    } catch (IOException e) {
-      throw new DockerException(e);
+    final WebTarget target = resource;
+    final DockerCall<Void> pull = new DockerCall<Void>() {
+      @Override
+      public Void call() throws DockerException, InterruptedException {
+        try (ProgressStream pull =
+                 request(POST, ProgressStream.class, target,
+                         target
+                             .request(APPLICATION_JSON_TYPE)
+                             .header("X-Registry-Auth", authHeader(authConfig)))) {
+          pull.tail(handler, POST, target.getUri());
+        } catch (IOException e) {
+          throw new DockerException(e);
+        }
+        return null;
+      }
+    };
+
+    // Pulling is idempotent, so a pull that fails halfway can be retried as a whole
+    if (retryPolicy != null) {
+      retryPolicy.execute(POST, resource.getUri(), pull);
+    } else {
+      pull.call();
     }
   }
 
@@ -1027,6 +1237,10 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public void tag(final String image, final String name, final boolean force)
       throws DockerException, InterruptedException {
+    tagEndpoint(image, name, force).execute();
+  }
+
+  Endpoint<String> tagEndpoint(final String image, final String name, final boolean force) {
     final ImageRef imageRef = new ImageRef(name);
 
     WebTarget resource = resource().path("images").path(image).path("tag");
@@ -1040,20 +1254,23 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       resource = resource.queryParam("force", true);
     }
 
-    try {
-      request(POST, resource, resource.request());
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 400:
-          throw new BadParamException(getQueryParamMap(resource), e);
-        case 404:
-          throw new ImageNotFoundException(image, e);
-        case 409:
-          throw new ConflictException(e);
-        default:
-          throw e;
-      }
-    }
+    final WebTarget target = resource;
+    return endpoint(POST, String.class, target, target.request())
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 400:
+                return new BadParamException(getQueryParamMap(target), e);
+              case 404:
+                return new ImageNotFoundException(image, e);
+              case 409:
+                return new ConflictException(e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
@@ -1138,17 +1355,13 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   @Override
   public ImageInfo inspectImage(final String image) throws DockerException, InterruptedException {
-    try {
-      final WebTarget resource = resource().path("images").path(image).path("json");
-      return request(GET, ImageInfo.class, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ImageNotFoundException(image, e);
-        default:
-          throw e;
-      }
-    }
+    return inspectImageEndpoint(image).execute();
+  }
+
+  Endpoint<ImageInfo> inspectImageEndpoint(final String image) {
+    final WebTarget resource = resource().path("images").path(image).path("json");
+    return endpoint(GET, ImageInfo.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(imageNotFound(image));
   }
 
   @Override
@@ -1160,26 +1373,37 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public List<RemovedImage> removeImage(String image, boolean force, boolean noPrune)
       throws DockerException, InterruptedException {
-    try {
-      final WebTarget resource = resource().path("images").path(image)
-          .queryParam("force", String.valueOf(force))
-          .queryParam("noprune", String.valueOf(noPrune));
-      return request(DELETE, REMOVED_IMAGE_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ImageNotFoundException(image, e);
-        case 409:
-          throw new ConflictException(e);
-        default:
-          throw e;
-      }
-    }
+    return removeImageEndpoint(image, force, noPrune).execute();
+  }
+
+  Endpoint<List<RemovedImage>> removeImageEndpoint(final String image, final boolean force,
+                                                   final boolean noPrune) {
+    final WebTarget resource = resource().path("images").path(image)
+        .queryParam("force", String.valueOf(force))
+        .queryParam("noprune", String.valueOf(noPrune));
+    return endpoint(DELETE, REMOVED_IMAGE_LIST, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                return new ImageNotFoundException(image, e);
+              case 409:
+                return new ConflictException(e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
   public LogStream logs(final String containerId, final LogsParam... params)
       throws DockerException, InterruptedException {
+    return logsEndpoint(containerId, params).execute();
+  }
+
+  Endpoint<LogStream> logsEndpoint(final String containerId, final LogsParam... params) {
     WebTarget resource = noTimeoutResource()
         .path("containers").path(containerId)
         .path("logs");
@@ -1188,49 +1412,42 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       resource = resource.queryParam(param.name(), param.value());
     }
 
-    return getLogStream(GET, resource, containerId);
+    return logStreamEndpoint(GET, resource, containerId);
   }
 
   @Override
   public EventStream events(EventsParam... params)
       throws DockerException, InterruptedException {
     WebTarget resource = noTimeoutResource().path("events");
-    final Map<String, String> filters = newHashMap();
+    final Map<String, List<String>> filters = newHashMap();
     for (final EventsParam param : params) {
       if (param instanceof EventsFilterParam) {
-        filters.put(param.name(), param.value());
+        addFilter(filters, param.name(), param.value());
       } else {
         resource = resource.queryParam(param.name(), param.value());
       }
     }
 
-    try {
-      if (!filters.isEmpty()) {
-        final StringWriter writer = new StringWriter();
-        final JsonGenerator generator = objectMapper().getFactory().createGenerator(writer);
-        generator.writeStartObject();
-        for (final Map.Entry<String, String> entry : filters.entrySet()) {
-          generator.writeArrayFieldStart(entry.getKey());
-          generator.writeString(entry.getValue());
-          generator.writeEndArray();
-        }
-        generator.writeEndObject();
-        generator.close();
-        // We must URL encode the string, otherwise Jersey chokes on the double-quotes in the json.
-        final String encoded = URLEncoder.encode(writer.toString(), UTF_8.name());
-        resource = resource.queryParam("filters", encoded);
-      }
-    } catch (IOException exception) {
-      throw new DockerException(exception);
+    if (!filters.isEmpty()) {
+      resource = resource.queryParam("filters", urlEncodeFilters(filters));
     }
 
+    final ConcurrencyLimiter.Permit permit = acquire(EventStream.class, GET, resource);
     try {
       final CloseableHttpClient client = (CloseableHttpClient) ApacheConnectorProvider
-          .getHttpClient(noTimeoutClient);
-      final CloseableHttpResponse response = client.execute(new HttpGet(resource.getUri()));
-      return new EventStream(response, objectMapper());
+          .getHttpClient(this.client);
+      final HttpGet request = new HttpGet(resource.getUri());
+      request.setConfig(RequestConfig.copy(requestConfig)
+                            .setSocketTimeout((int) NO_TIMEOUT)
+                            .build());
+      final CloseableHttpResponse response = client.execute(request);
+      return permit.completed(new EventStream(response, objectMapper()));
     } catch (IOException exception) {
-      throw new DockerException(exception);
+      final DockerException e = new DockerException(exception);
+      permit.failed(e);
+      throw e;
+    } finally {
+      permit.release();
     }
   }
 
@@ -1238,31 +1455,37 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   public LogStream attachContainer(final String containerId,
                                    final AttachParameter... params) throws DockerException,
                                                                            InterruptedException {
+    return attachContainerEndpoint(containerId, params).execute();
+  }
+
+  Endpoint<LogStream> attachContainerEndpoint(final String containerId,
+                                              final AttachParameter... params) {
     WebTarget resource = noTimeoutResource().path("containers").path(containerId).path("attach");
 
     for (final AttachParameter param : params) {
       resource = resource.queryParam(param.name().toLowerCase(Locale.ROOT), String.valueOf(true));
     }
 
-    return getLogStream(POST, resource, containerId);
+    return logStreamEndpoint(POST, resource, containerId);
   }
 
-  private LogStream getLogStream(final String method, final WebTarget resource,
-                                 final String containerId)
-      throws DockerException, InterruptedException {
-    try {
-      final Invocation.Builder request = resource.request("application/vnd.docker.raw-stream");
-      return request(method, LogStream.class, resource, request);
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 400:
-          throw new BadParamException(getQueryParamMap(resource), e);
-        case 404:
-          throw new ContainerNotFoundException(containerId);
-        default:
-          throw e;
-      }
-    }
+  private Endpoint<LogStream> logStreamEndpoint(final String method, final WebTarget resource,
+                                                final String containerId) {
+    return endpoint(method, LogStream.class, resource,
+                    resource.request("application/vnd.docker.raw-stream"))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 400:
+                return new BadParamException(getQueryParamMap(resource), e);
+              case 404:
+                return new ContainerNotFoundException(containerId);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
@@ -1270,6 +1493,12 @@ public class DefaultDockerClient implements DockerClient, Closeable {
                            final String[] cmd,
                            final ExecCreateParam... params)
       throws DockerException, InterruptedException {
+    return execId(execCreateEndpoint(containerId, cmd, params).execute());
+  }
+
+  Endpoint<String> execCreateEndpoint(final String containerId, final String[] cmd,
+                                      final ExecCreateParam... params)
+      throws DockerException {
     final WebTarget resource = resource().path("containers").path(containerId).path("exec");
 
     final StringWriter writer = new StringWriter();
@@ -1297,21 +1526,27 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       throw new DockerException(e);
     }
 
-    final String response;
-    try {
-      response = request(POST, String.class, resource, resource.request(APPLICATION_JSON_TYPE),
-                         Entity.json(writer.toString()));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        case 409:
-          throw new ExecCreateConflictException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(POST, String.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .entity(Entity.json(writer.toString()))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                return new ContainerNotFoundException(containerId, e);
+              case 409:
+                return new ExecCreateConflictException(containerId, e);
+              default:
+                return e;
+            }
+          }
+        });
+  }
 
+  /**
+   * Read the id of a created exec instance from the response to {@link #execCreateEndpoint}.
+   */
+  static String execId(final String response) throws DockerException {
     try {
       final JsonNode json = objectMapper().readTree(response);
       return json.findValue("Id").textValue();
@@ -1324,6 +1559,11 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public LogStream execStart(final String execId, final ExecStartParameter... params)
       throws DockerException, InterruptedException {
+    return execStream(execStartEndpoint(execId, params).execute(), params);
+  }
+
+  Endpoint<LogStream> execStartEndpoint(final String execId, final ExecStartParameter... params)
+      throws DockerException {
     final WebTarget resource = resource().path("exec").path(execId).path("start");
 
     final StringWriter writer = new StringWriter();
@@ -1341,108 +1581,122 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       throw new DockerException(e);
     }
 
-    try {
-      return request(POST, LogStream.class, resource,
-                     resource.request("application/vnd.docker.raw-stream"),
-                     Entity.json(writer.toString()));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ExecNotFoundException(execId, e);
-        case 409:
-          throw new ExecStartConflictException(execId, e);
-        default:
-          throw e;
-      }
+    return endpoint(POST, LogStream.class, resource,
+                    resource.request("application/vnd.docker.raw-stream"))
+        .entity(Entity.json(writer.toString()))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                return new ExecNotFoundException(execId, e);
+              case 409:
+                return new ExecStartConflictException(execId, e);
+              default:
+                return e;
+            }
+          }
+        });
+  }
+
+  /**
+   * Mark the output of an exec instance started with a TTY as raw.
+   */
+  static LogStream execStream(final LogStream stream, final ExecStartParameter... params) {
+    if (Arrays.asList(params).contains(ExecStartParameter.TTY)) {
+      stream.tty(true);
     }
+    return stream;
   }
 
   @Override
   public ExecState execInspect(final String execId) throws DockerException, InterruptedException {
-    final WebTarget resource = resource().path("exec").path(execId).path("json");
+    return execInspectEndpoint(execId).execute();
+  }
 
-    try {
-      return request(GET, ExecState.class, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ExecNotFoundException(execId, e);
-        default:
-          throw e;
-      }
-    }
+  Endpoint<ExecState> execInspectEndpoint(final String execId) {
+    final WebTarget resource = resource().path("exec").path(execId).path("json");
+    return endpoint(GET, ExecState.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                return new ExecNotFoundException(execId, e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
   public ContainerStats stats(final String containerId)
       throws DockerException, InterruptedException {
+    return statsEndpoint(containerId).execute();
+  }
+
+  Endpoint<ContainerStats> statsEndpoint(final String containerId) {
     final WebTarget resource = resource().path("containers").path(containerId).path("stats")
         .queryParam("stream", "0");
-
-    try {
-      return request(GET, ContainerStats.class, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new ContainerNotFoundException(containerId, e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(GET, ContainerStats.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(containerNotFound(containerId))
+        .unary();
   }
 
   @Override
   public List<Network> listNetworks() throws DockerException, InterruptedException {
+    return listNetworksEndpoint().execute();
+  }
+
+  Endpoint<List<Network>> listNetworksEndpoint() {
     final WebTarget resource = resource().path("networks");
-    return request(GET, NETWORK_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+    return endpoint(GET, NETWORK_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
   }
 
   @Override
   public Network inspectNetwork(String networkId) throws DockerException, InterruptedException {
+    return inspectNetworkEndpoint(networkId).execute();
+  }
+
+  Endpoint<Network> inspectNetworkEndpoint(final String networkId) {
     final WebTarget resource = resource().path("networks").path(networkId);
-    try {
-      return request(GET, Network.class, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new NetworkNotFoundException(networkId, e);
-        default:
-          throw e;
-      }
-    }
+    return endpoint(GET, Network.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(networkNotFound(networkId));
   }
 
   @Override
   public NetworkCreation createNetwork(NetworkConfig networkConfig)
       throws DockerException, InterruptedException {
-    final WebTarget resource = resource().path("networks").path("create");
+    return createNetworkEndpoint(networkConfig).execute();
+  }
 
-    try {
-      return request(POST, NetworkCreation.class, resource, resource.request(APPLICATION_JSON_TYPE),
-          Entity.json(networkConfig));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new NotFoundException("Plugin not found", e);
-        default:
-          throw e;
-      }
-    }
+  Endpoint<NetworkCreation> createNetworkEndpoint(final NetworkConfig networkConfig) {
+    final WebTarget resource = resource().path("networks").path("create");
+    return endpoint(POST, NetworkCreation.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .entity(Entity.json(networkConfig))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                return new NotFoundException("Plugin not found", e);
+              default:
+                return e;
+            }
+          }
+        });
   }
 
   @Override
   public void removeNetwork(String networkId) throws DockerException, InterruptedException {
-    try {
-      final WebTarget resource = resource().path("networks").path(networkId);
-      request(DELETE, resource, resource.request(APPLICATION_JSON_TYPE));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          throw new NetworkNotFoundException(networkId, e);
-        default:
-          throw e;
-      }
-    }
+    removeNetworkEndpoint(networkId).execute();
+  }
+
+  Endpoint<String> removeNetworkEndpoint(final String networkId) {
+    final WebTarget resource = resource().path("networks").path(networkId);
+    return endpoint(DELETE, String.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .mapStatus(networkNotFound(networkId));
   }
 
   @Override
@@ -1459,59 +1713,418 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   private void manageNetworkConnection(String containerId, String methodname, String networkId)
       throws DockerException, InterruptedException {
+    manageNetworkConnectionEndpoint(containerId, methodname, networkId).execute();
+  }
+
+  Endpoint<Response> connectToNetworkEndpoint(final String containerId, final String networkId) {
+    return manageNetworkConnectionEndpoint(containerId, "connect", networkId);
+  }
+
+  Endpoint<Response> disconnectFromNetworkEndpoint(final String containerId,
+                                                   final String networkId) {
+    return manageNetworkConnectionEndpoint(containerId, "disconnect", networkId);
+  }
+
+  private Endpoint<Response> manageNetworkConnectionEndpoint(final String containerId,
+                                                             final String methodname,
+                                                             final String networkId) {
     final WebTarget resource = resource().path("networks").path(networkId).path(methodname);
 
     final Map<String, String> request = new HashMap<>();
     request.put("Container", containerId);
 
-    try {
-      request(POST, Response.class, resource, resource.request(APPLICATION_JSON_TYPE),
-          Entity.json(request));
-    } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 404:
-          final String message = String.format("Container %s or network %s not found.",
-              containerId, networkId);
-          throw new NotFoundException(message, e);
-        case 500:
-          throw e;
+    return endpoint(POST, Response.class, resource, resource.request(APPLICATION_JSON_TYPE))
+        .entity(Entity.json(request))
+        .mapStatus(new StatusMapper() {
+          @Override
+          public DockerException map(final DockerRequestException e) {
+            switch (e.status()) {
+              case 404:
+                final String message = String.format("Container %s or network %s not found.",
+                                                     containerId, networkId);
+                return new NotFoundException(message, e);
+              case 500:
+                return e;
+              default:
+                return null;
+            }
+          }
+        });
+  }
+
+  private StatusMapper badParam(final WebTarget resource) {
+    return new StatusMapper() {
+      @Override
+      public DockerException map(final DockerRequestException e) {
+        switch (e.status()) {
+          case 400:
+            return new BadParamException(getQueryParamMap(resource), e);
+          default:
+            return e;
+        }
+      }
+    };
+  }
+
+  private static StatusMapper containerNotFound(final String containerId) {
+    return new StatusMapper() {
+      @Override
+      public DockerException map(final DockerRequestException e) {
+        switch (e.status()) {
+          case 404:
+            return new ContainerNotFoundException(containerId, e);
+          default:
+            return e;
+        }
       }
+    };
+  }
+
+  private static StatusMapper imageNotFound(final String image) {
+    return new StatusMapper() {
+      @Override
+      public DockerException map(final DockerRequestException e) {
+        switch (e.status()) {
+          case 404:
+            return new ImageNotFoundException(image, e);
+          default:
+            return e;
+        }
+      }
+    };
+  }
+
+  private static StatusMapper networkNotFound(final String networkId) {
+    return new StatusMapper() {
+      @Override
+      public DockerException map(final DockerRequestException e) {
+        switch (e.status()) {
+          case 404:
+            return new NetworkNotFoundException(networkId, e);
+          default:
+            return e;
+        }
+      }
+    };
+  }
+
+  WebTarget resource() {
+    WebTarget target = resource;
+    if (target == null) {
+      target = versioned(client.target(uri));
+      resource = target;
     }
+    return target;
   }
 
-  private WebTarget resource() {
-    final WebTarget target = client.target(uri);
+  private WebTarget versioned(final WebTarget target) {
     if (!isNullOrEmpty(apiVersion)) {
       return target.path(apiVersion);
     }
     return target;
   }
 
-  private WebTarget noTimeoutResource() {
-    final WebTarget target = noTimeoutClient.target(uri);
-    if (!isNullOrEmpty(apiVersion)) {
-      return target.path(apiVersion);
+  /**
+   * A versioned resource whose requests have no read timeout. The ApacheConnector applies
+   * {@link ClientProperties#READ_TIMEOUT} per request, so these share the connection pool with
+   * every other request.
+   */
+  WebTarget noTimeoutResource() {
+    WebTarget target = noTimeoutResource;
+    if (target == null) {
+      target = versioned(client.target(uri)).property(ClientProperties.READ_TIMEOUT,
+                                                      (int) NO_TIMEOUT);
+      noTimeoutResource = target;
     }
     return target;
   }
 
+  /**
+   * A versioned resource for an endpoint template with a single {@code {id}} parameter, e.g.
+   * {@code containers/{id}/json}. The template is parsed once per client, so resolving it costs a
+   * single WebTarget instead of one per path segment.
+   */
+  WebTarget resource(final String template, final String id) {
+    return template(templates, resource(), template).resolveTemplate("id", id, false);
+  }
+
+  /**
+   * Like {@link #resource(String, String)}, for requests without a read timeout.
+   */
+  WebTarget noTimeoutResource(final String template, final String id) {
+    return template(noTimeoutTemplates, noTimeoutResource(), template)
+        .resolveTemplate("id", id, false);
+  }
+
+  private static WebTarget template(final ConcurrentMap<String, WebTarget> cache,
+                                    final WebTarget base, final String template) {
+    WebTarget target = cache.get(template);
+    if (target == null) {
+      target = base.path(template);
+      cache.putIfAbsent(template, target);
+    }
+    return target;
+  }
+
+  /**
+   * Translates the status of a failed request into an endpoint-specific exception.
+   */
+  interface StatusMapper {
+
+    /**
+     * @param e The failed request.
+     * @return The exception to fail with, or null if the status means that the request succeeded.
+     */
+    DockerException map(DockerRequestException e);
+  }
+
+  <T> Endpoint<T> endpoint(final String method, final Class<T> clazz, final WebTarget resource,
+                           final Invocation.Builder request) {
+    return new Endpoint<>(method, clazz, new GenericType<T>(clazz), resource, request);
+  }
+
+  <T> Endpoint<T> endpoint(final String method, final GenericType<T> type,
+                           final WebTarget resource, final Invocation.Builder request) {
+    return new Endpoint<>(method, null, type, resource, request);
+  }
+
+  /**
+   * A request to one endpoint of the daemon. Endpoints are built in one place for both this client
+   * and its {@link #async()} view, which only differ in how they make the request.
+   */
+  final class Endpoint<T> {
+
+    private final String method;
+    private final Class<T> clazz;
+    private final GenericType<T> type;
+    private final WebTarget resource;
+    private final Invocation.Builder request;
+    private Entity<?> entity;
+    private StatusMapper mapper;
+    private boolean unary;
+
+    private Endpoint(final String method, final Class<T> clazz, final GenericType<T> type,
+                     final WebTarget resource, final Invocation.Builder request) {
+      this.method = method;
+      this.clazz = clazz;
+      this.type = type;
+      this.resource = resource;
+      this.request = request;
+    }
+
+    /**
+     * Send an entity as the request body.
+     */
+    Endpoint<T> entity(final Entity<?> entity) {
+      this.entity = entity;
+      return this;
+    }
+
+    /**
+     * Map error statuses to endpoint-specific exceptions.
+     */
+    Endpoint<T> mapStatus(final StatusMapper mapper) {
+      this.mapper = mapper;
+      return this;
+    }
+
+    /**
+     * Allow the blocking request to go through the configured {@link DockerTransport}, if any.
+     */
+    Endpoint<T> unary() {
+      this.unary = true;
+      return this;
+    }
+
+    T execute() throws DockerException, InterruptedException {
+      try {
+        if (unary && transport != null) {
+          return transportRequest(method, type.getType(), resource);
+        }
+        return (clazz != null)
+               ? request(method, clazz, resource, request, entity)
+               : request(method, type, resource, request, entity);
+      } catch (DockerRequestException e) {
+        final DockerException mapped = (mapper == null) ? e : mapper.map(e);
+        if (mapped == null) {
+          return null;
+        }
+        throw mapped;
+      }
+    }
+
+    ListenableFuture<T> executeAsync() {
+      final ListenableFuture<T> future = requestAsync(method, type, resource, request, entity);
+      if (mapper == null) {
+        return future;
+      }
+      return Futures.withFallback(future, new FutureFallback<T>() {
+        @Override
+        public ListenableFuture<T> create(final Throwable t) {
+          if (t instanceof DockerRequestException) {
+            final DockerException mapped = mapper.map((DockerRequestException) t);
+            return (mapped == null)
+                   ? Futures.<T>immediateFuture(null)
+                   : Futures.<T>immediateFailedFuture(mapped);
+          }
+          return Futures.immediateFailedFuture(t);
+        }
+      });
+    }
+  }
+
+  private <T> T transportRequest(final String method, final Type type, final WebTarget resource)
+      throws DockerException, InterruptedException {
+    return execute(method, resource, type, singleFlight != null && GET.equals(method),
+                   new DockerCall<T>() {
+                     @Override
+                     public T call() throws DockerException, InterruptedException {
+                       return invokeTransport(method, type, resource);
+                     }
+                   });
+  }
+
+  /**
+   * Make a call, waiting for its turn if a {@link RequestScheduler} is configured and retrying it
+   * if it is idempotent and a {@link RetryPolicy} is configured.
+   *
+   * @param coalesce Whether concurrent identical calls may share a single execution, retries
+   *                 included.
+   */
+  private <T> T execute(final String method, final WebTarget resource, final Type type,
+                        final boolean coalesce, final DockerCall<T> call)
+      throws DockerException, InterruptedException {
+    final DockerCall<T> scheduled;
+    if (scheduler != null) {
+      scheduled = new DockerCall<T>() {
+        @Override
+        public T call() throws DockerException, InterruptedException {
+          return scheduler.execute(method, resource.getUri(), call);
+        }
+      };
+    } else {
+      scheduled = call;
+    }
+
+    final DockerCall<T> retrying;
+    if (retryPolicy != null && RetryPolicy.isIdempotent(method, resource.getUri())) {
+      retrying = new DockerCall<T>() {
+        @Override
+        public T call() throws DockerException, InterruptedException {
+          return retryPolicy.execute(method, resource.getUri(), scheduled);
+        }
+      };
+    } else {
+      retrying = scheduled;
+    }
+    return coalesce ? singleFlight.execute(flightKey(resource, type), retrying) : retrying.call();
+  }
+
+  private <T> T invokeTransport(final String method, final Type type, final WebTarget resource)
+      throws DockerException, InterruptedException {
+    final ConcurrencyLimiter.Permit permit = acquire(null, method, resource);
+    try {
+      return permit.completed(transport.<T>request(method, resource.getUri(), headers, type, null));
+    } catch (DockerException | InterruptedException e) {
+      permit.failed(e);
+      throw e;
+    } finally {
+      permit.release();
+    }
+  }
+
+  /**
+   * Whether a request may share the response of an identical request in flight. Only reads
+   * qualify, and not streams since those can only be consumed once.
+   */
+  private boolean coalesce(final String method, final Class<?> type) {
+    return singleFlight != null && GET.equals(method) && !isStream(type);
+  }
+
+  private static String flightKey(final WebTarget resource, final Type type) {
+    return resource.getUri() + " " + type;
+  }
+
+  private static boolean isStream(final Class<?> type) {
+    return InputStream.class.isAssignableFrom(type) || Closeable.class.isAssignableFrom(type);
+  }
+
+  /**
+   * Wait for permission to make a request that returns the given type. Streams are limited
+   * separately from other requests, and only until the response headers arrive: reading a stream
+   * can take arbitrarily long without putting load on the daemon.
+   */
+  private ConcurrencyLimiter.Permit acquire(final Class<?> type, final String method,
+                                            final WebTarget resource)
+      throws InterruptedException {
+    final ConcurrencyLimiter limiter =
+        (type != null && isStream(type)) ? streamingLimiter : unaryLimiter;
+    return (limiter == null)
+           ? ConcurrencyLimiter.Permit.none()
+           : limiter.acquire(RetryPolicy.endpoint(method, resource.getUri()));
+  }
+
   private <T> T request(final String method, final GenericType<T> type,
                         final WebTarget resource, final Invocation.Builder request)
       throws DockerException, InterruptedException {
+    // Once for all attempts, since the builder keeps the headers of earlier ones
+    headers(request);
+    return execute(method, resource, type.getType(), coalesce(method, type.getRawType()),
+                   new DockerCall<T>() {
+                     @Override
+                     public T call() throws DockerException, InterruptedException {
+                       return invoke(method, type, resource, request);
+                     }
+                   });
+  }
+
+  private <T> T invoke(final String method, final GenericType<T> type,
+                       final WebTarget resource, final Invocation.Builder request)
+      throws DockerException, InterruptedException {
+    final ConcurrencyLimiter.Permit permit = acquire(type.getRawType(), method, resource);
     try {
-      return headers(request).async().method(method, type).get();
+      if (synchronousRequests) {
+        checkInterrupted(method, resource);
+        return permit.completed(request.method(method, type));
+      }
+      return permit.completed(request.async().method(method, type).get());
     } catch (ExecutionException | MultiException e) {
-      throw propagate(method, resource, e);
+      throw propagate(permit, method, resource, e);
+    } catch (ProcessingException | WebApplicationException e) {
+      throw propagate(permit, method, resource, e, e);
+    } finally {
+      permit.release();
     }
   }
 
   private <T> T request(final String method, final Class<T> clazz,
                         final WebTarget resource, final Invocation.Builder request)
       throws DockerException, InterruptedException {
+    headers(request);
+    return execute(method, resource, clazz, coalesce(method, clazz), new DockerCall<T>() {
+      @Override
+      public T call() throws DockerException, InterruptedException {
+        return invoke(method, clazz, resource, request);
+      }
+    });
+  }
+
+  private <T> T invoke(final String method, final Class<T> clazz,
+                       final WebTarget resource, final Invocation.Builder request)
+      throws DockerException, InterruptedException {
+    final ConcurrencyLimiter.Permit permit = acquire(clazz, method, resource);
     try {
-      return headers(request).async().method(method, clazz).get();
+      if (synchronousRequests) {
+        checkInterrupted(method, resource);
+        return permit.completed(request.method(method, clazz));
+      }
+      return permit.completed(request.async().method(method, clazz).get());
     } catch (ExecutionException | MultiException e) {
-      throw propagate(method, resource, e);
+      throw propagate(permit, method, resource, e);
+    } catch (ProcessingException | WebApplicationException e) {
+      throw propagate(permit, method, resource, e, e);
+    } finally {
+      permit.release();
     }
   }
 
@@ -1519,24 +2132,131 @@ public class DefaultDockerClient implements DockerClient, Closeable {
                         final WebTarget resource, final Invocation.Builder request,
                         final Entity<?> entity)
       throws DockerException, InterruptedException {
+    if (entity == null) {
+      return request(method, clazz, resource, request);
+    }
+    headers(request);
+    return execute(method, resource, clazz, false, new DockerCall<T>() {
+      @Override
+      public T call() throws DockerException, InterruptedException {
+        return invoke(method, clazz, resource, request, entity);
+      }
+    });
+  }
+
+  private <T> T invoke(final String method, final Class<T> clazz,
+                       final WebTarget resource, final Invocation.Builder request,
+                       final Entity<?> entity)
+      throws DockerException, InterruptedException {
+    final ConcurrencyLimiter.Permit permit = acquire(clazz, method, resource);
     try {
-      return headers(request).async().method(method, entity, clazz).get();
+      if (synchronousRequests) {
+        checkInterrupted(method, resource);
+        return permit.completed(request.method(method, entity, clazz));
+      }
+      return permit.completed(request.async().method(method, entity, clazz).get());
     } catch (ExecutionException | MultiException e) {
-      throw propagate(method, resource, e);
+      throw propagate(permit, method, resource, e);
+    } catch (ProcessingException | WebApplicationException e) {
+      throw propagate(permit, method, resource, e, e);
+    } finally {
+      permit.release();
     }
   }
 
-  private void request(final String method,
-                       final WebTarget resource,
-                       final Invocation.Builder request)
+  private <T> T request(final String method, final GenericType<T> type,
+                        final WebTarget resource, final Invocation.Builder request,
+                        final Entity<?> entity)
+      throws DockerException, InterruptedException {
+    if (entity == null) {
+      return request(method, type, resource, request);
+    }
+    headers(request);
+    return execute(method, resource, type.getType(), false, new DockerCall<T>() {
+      @Override
+      public T call() throws DockerException, InterruptedException {
+        return invoke(method, type, resource, request, entity);
+      }
+    });
+  }
+
+  private <T> T invoke(final String method, final GenericType<T> type,
+                       final WebTarget resource, final Invocation.Builder request,
+                       final Entity<?> entity)
       throws DockerException, InterruptedException {
+    final ConcurrencyLimiter.Permit permit = acquire(type.getRawType(), method, resource);
     try {
-      headers(request).async().method(method, String.class).get();
+      if (synchronousRequests) {
+        checkInterrupted(method, resource);
+        return permit.completed(request.method(method, entity, type));
+      }
+      return permit.completed(request.async().method(method, entity, type).get());
     } catch (ExecutionException | MultiException e) {
-      throw propagate(method, resource, e);
+      throw propagate(permit, method, resource, e);
+    } catch (ProcessingException | WebApplicationException e) {
+      throw propagate(permit, method, resource, e, e);
+    } finally {
+      permit.release();
     }
   }
 
+  /**
+   * Issue a request without blocking the calling thread. The response is read on a Jersey
+   * executor thread and errors are mapped the same way as for the blocking requests.
+   */
+  private <T> ListenableFuture<T> requestAsync(final String method, final GenericType<T> type,
+                                               final WebTarget resource,
+                                               final Invocation.Builder request,
+                                               final Entity<?> entity) {
+    final SettableFuture<T> future = SettableFuture.create();
+
+    final InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public void completed(final Response response) {
+        try {
+          if (type.getRawType() == Response.class) {
+            future.set((T) response);
+          } else if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            future.setException(new DockerRequestException(
+                method, resource.getUri(), response.getStatus(), message(response), null));
+          } else {
+            future.set(response.readEntity(type));
+          }
+        } catch (Exception e) {
+          future.setException(mapException(method, resource, e, e));
+        }
+      }
+
+      @Override
+      public void failed(final Throwable throwable) {
+        future.setException(mapException(method, resource, throwable, throwable));
+      }
+    };
+
+    final AsyncInvoker invoker = headers(request).async();
+    final Future<Response> responseFuture;
+    try {
+      responseFuture = (entity == null)
+                       ? invoker.method(method, callback)
+                       : invoker.method(method, entity, callback);
+    } catch (MultiException e) {
+      future.setException(mapException(method, resource, e, e.getCause().getCause()));
+      return future;
+    }
+
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        if (future.isCancelled()) {
+          responseFuture.cancel(true);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+
+    return future;
+  }
+
   private Invocation.Builder headers(final Invocation.Builder request) {
     final Set<Map.Entry<String, Object>> entries = headers.entrySet();
 
@@ -1547,7 +2267,19 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     return request;
   }
 
-  private RuntimeException propagate(final String method, final WebTarget resource,
+  /**
+   * Fail a synchronous request before it starts if the calling thread was interrupted. Like every
+   * {@link InterruptedException} of a synchronous request, this leaves the interrupt flag set.
+   */
+  private void checkInterrupted(final String method, final WebTarget resource)
+      throws InterruptedException {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedException("Interrupted: " + method + " " + resource);
+    }
+  }
+
+  private RuntimeException propagate(final ConcurrencyLimiter.Permit permit,
+                                     final String method, final WebTarget resource,
                                      final Exception e)
       throws DockerException, InterruptedException {
     Throwable cause = e.getCause();
@@ -1559,6 +2291,40 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       cause = cause.getCause();
     }
 
+    throw propagate(permit, method, resource, e, cause);
+  }
+
+  private RuntimeException propagate(final ConcurrencyLimiter.Permit permit,
+                                     final String method, final WebTarget resource,
+                                     final Exception e, final Throwable cause)
+      throws DockerException, InterruptedException {
+    // A synchronous request runs blocking I/O on the calling thread, which an interrupt does not
+    // necessarily abort. Report the interrupt rather than whatever error the I/O ended with.
+    final Exception exception =
+        (synchronousRequests && Thread.currentThread().isInterrupted())
+        ? new InterruptedException("Interrupted: " + method + " " + resource)
+        : mapException(method, resource, e, cause);
+    permit.failed(exception);
+    if (exception instanceof InterruptedException) {
+      if (synchronousRequests) {
+        // The I/O may have consumed the interrupt, so set it again for the caller to see
+        Thread.currentThread().interrupt();
+      }
+      throw (InterruptedException) exception;
+    }
+    throw (DockerException) exception;
+  }
+
+  /**
+   * Map a failed request to the {@link DockerException} (or {@link InterruptedException}) that
+   * callers of this client expect.
+   *
+   * @param e     The exception the request failed with.
+   * @param cause The unwrapped cause of {@code e}.
+   * @return A {@link DockerException} or an {@link InterruptedException}.
+   */
+  private Exception mapException(final String method, final WebTarget resource,
+                                 final Throwable e, Throwable cause) {
     Response response = null;
     if (cause instanceof ResponseProcessingException) {
       response = ((ResponseProcessingException) cause).getResponse();
@@ -1571,16 +2337,17 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
 
     if (response != null) {
-      throw new DockerRequestException(method, resource.getUri(), response.getStatus(),
-                                       message(response), cause);
+      return new DockerRequestException(method, resource.getUri(), response.getStatus(),
+                                        message(response), cause);
     } else if ((cause instanceof SocketTimeoutException) ||
                (cause instanceof ConnectTimeoutException)) {
-      throw new DockerTimeoutException(method, resource.getUri(), e);
+      return new DockerTimeoutException(method, resource.getUri(), e);
     } else if ((cause instanceof InterruptedIOException)
+               || (cause instanceof ClosedByInterruptException)
                || (cause instanceof InterruptedException)) {
-      throw new InterruptedException("Interrupted: " + method + " " + resource);
+      return new InterruptedException("Interrupted: " + method + " " + resource);
     } else {
-      throw new DockerException(e);
+      return new DockerException(e);
     }
   }
 
@@ -1708,6 +2475,16 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     private DockerCertificates dockerCertificates;
     private AuthConfig authConfig;
     private Map<String, Object> headers = new HashMap<>();
+    private DockerTransport transport;
+    private boolean synchronousRequests;
+    private int warmupConnections;
+    private long idleConnectionTimeoutMillis;
+    private int validateAfterInactivityMillis = DEFAULT_VALIDATE_AFTER_INACTIVITY_MILLIS;
+    private ConcurrencyLimiter unaryConcurrencyLimiter;
+    private ConcurrencyLimiter streamingConcurrencyLimiter;
+    private boolean coalesceReads;
+    private RetryPolicy retryPolicy;
+    private RequestScheduler requestScheduler;
 
     public URI uri() {
       return uri;
@@ -1795,10 +2572,8 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
 
     /**
-     * Set the size of the connection pool for connections to Docker. Note that due to a known
-     * issue, DefaultDockerClient maintains two separate connection pools, each of which is capped
-     * at this size. Therefore, the maximum number of concurrent connections to Docker may be up to
-     * 2 * connectionPoolSize.
+     * Set the size of the connection pool for connections to Docker. The pool is shared by all
+     * requests, including long-running streams such as logs, attach and events.
      *
      * @param connectionPoolSize connection pool size
      * @return Builder
@@ -1808,6 +2583,57 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       return this;
     }
 
+    public int warmupConnections() {
+      return warmupConnections;
+    }
+
+    /**
+     * Open this many pooled connections when the client is built, so that the first requests
+     * don't pay for connecting. Connection failures are logged and otherwise ignored.
+     *
+     * @param warmupConnections number of connections to open up front, at most the pool size
+     * @return Builder
+     */
+    public Builder warmupConnections(final int warmupConnections) {
+      this.warmupConnections = warmupConnections;
+      return this;
+    }
+
+    public long idleConnectionTimeoutMillis() {
+      return idleConnectionTimeoutMillis;
+    }
+
+    /**
+     * Close pooled connections that have been idle for longer than this, and expired ones, from a
+     * background thread. Zero, the default, keeps idle connections open.
+     *
+     * @param idleConnectionTimeoutMillis idle time in milliseconds after which to close a
+     *                                    connection
+     * @return Builder
+     */
+    public Builder idleConnectionTimeoutMillis(final long idleConnectionTimeoutMillis) {
+      this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+      return this;
+    }
+
+    public int validateAfterInactivityMillis() {
+      return validateAfterInactivityMillis;
+    }
+
+    /**
+     * Check that a pooled connection is still alive before reusing it if it has been idle for
+     * longer than this. Applies to unix socket and TCP connections alike. Defaults to two
+     * seconds; a non-positive value disables the check.
+     *
+     * @param validateAfterInactivityMillis inactivity in milliseconds after which to validate a
+     *                                      connection
+     * @return Builder
+     */
+    public Builder validateAfterInactivityMillis(final int validateAfterInactivityMillis) {
+      this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+      return this;
+    }
+
     public AuthConfig authConfig() {
       return authConfig;
     }
@@ -1823,6 +2649,125 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       return this;
     }
 
+    public DockerTransport transport() {
+      return transport;
+    }
+
+    /**
+     * Use a {@link DockerTransport} instead of Jersey for the most frequent unary requests: ping,
+     * listing and inspecting containers, start/pause/unpause/kill and stats. The transport is
+     * closed together with the client.
+     *
+     * @param transport DockerTransport, e.g. a {@link UnixHttpTransport}
+     * @return Builder
+     */
+    public Builder transport(final DockerTransport transport) {
+      this.transport = transport;
+      return this;
+    }
+
+    public boolean synchronousRequests() {
+      return synchronousRequests;
+    }
+
+    /**
+     * Execute requests on the calling thread instead of handing them to Jersey's async executor
+     * and waiting for the result. This saves a thread hop per request and is not limited by the
+     * size of the executor. Interrupting the calling thread still makes the request fail with an
+     * {@link InterruptedException}, which leaves the thread's interrupt flag set, but blocking
+     * socket reads may only notice the interrupt once they complete or time out.
+     *
+     * @param synchronousRequests true to execute requests synchronously
+     * @return Builder
+     */
+    public Builder synchronousRequests(final boolean synchronousRequests) {
+      this.synchronousRequests = synchronousRequests;
+      return this;
+    }
+
+    public ConcurrencyLimiter unaryConcurrencyLimiter() {
+      return unaryConcurrencyLimiter;
+    }
+
+    /**
+     * Limit concurrent requests other than streams, such as creating and starting containers,
+     * with a limit that adapts to the daemon's latency. Requests over the limit wait on the calling
+     * thread. Requests made through {@link DefaultDockerClient#async()} are not limited.
+     *
+     * @param limiter ConcurrencyLimiter, or null to not limit requests (the default)
+     * @return Builder
+     */
+    public Builder unaryConcurrencyLimiter(final ConcurrencyLimiter limiter) {
+      this.unaryConcurrencyLimiter = limiter;
+      return this;
+    }
+
+    public ConcurrencyLimiter streamingConcurrencyLimiter() {
+      return streamingConcurrencyLimiter;
+    }
+
+    /**
+     * Limit concurrent streaming requests, such as logs, events, pull, push and build. A stream
+     * holds its permit only until the response headers arrive.
+     *
+     * @param limiter ConcurrencyLimiter, or null to not limit streams (the default)
+     * @return Builder
+     */
+    public Builder streamingConcurrencyLimiter(final ConcurrencyLimiter limiter) {
+      this.streamingConcurrencyLimiter = limiter;
+      return this;
+    }
+
+    public boolean coalesceReads() {
+      return coalesceReads;
+    }
+
+    /**
+     * Let concurrent identical GET requests, e.g. many threads inspecting the same container,
+     * share a single request to the daemon. All callers get the same response object or the same
+     * exception, so callers must not modify the objects returned. Streams are never shared.
+     *
+     * @param coalesceReads true to coalesce identical GET requests
+     * @return Builder
+     */
+    public Builder coalesceReads(final boolean coalesceReads) {
+      this.coalesceReads = coalesceReads;
+      return this;
+    }
+
+    public RetryPolicy retryPolicy() {
+      return retryPolicy;
+    }
+
+    /**
+     * Retry idempotent requests that fail for transient reasons, such as timeouts, connection
+     * resets and 5xx responses. Requests are not retried by default.
+     *
+     * @param retryPolicy RetryPolicy, or null to not retry requests
+     * @return Builder
+     */
+    public Builder retryPolicy(final RetryPolicy retryPolicy) {
+      this.retryPolicy = retryPolicy;
+      return this;
+    }
+
+    public RequestScheduler requestScheduler() {
+      return requestScheduler;
+    }
+
+    /**
+     * Send requests in order of the priority set with {@link RequestScheduler#scope}, instead of
+     * letting them all compete for connections. Streams hold their place only until the response
+     * headers arrive, and event streams are not scheduled at all.
+     *
+     * @param requestScheduler RequestScheduler, or null to send requests right away
+     * @return Builder
+     */
+    public Builder requestScheduler(final RequestScheduler requestScheduler) {
+      this.requestScheduler = requestScheduler;
+      return this;
+    }
+
     public DefaultDockerClient build() {
       return new DefaultDockerClient(this);
     }
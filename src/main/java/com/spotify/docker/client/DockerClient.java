@@ -1804,7 +1804,8 @@ public interface DockerClient extends Closeable {
     }
 
     /**
-     * Apply filters to the returned events
+     * Apply filters to the returned events. Filters with the same name match events with any of
+     * their values, filters with different names must all match.
      *
      * @param name  Name
      * @param value Value
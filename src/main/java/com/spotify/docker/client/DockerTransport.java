@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.exceptions.DockerException;
+
+import java.io.Closeable;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.Map;
+
+/**
+ * A transport that {@link DefaultDockerClient} can use instead of Jersey for unary requests, i.e.
+ * requests whose response is a single, fully read entity. Streaming requests (logs, attach,
+ * events, build, pull, ...) always go through Jersey.
+ *
+ * <p>Implementations must be thread safe and report errors the same way {@link
+ * DefaultDockerClient} does: a {@link com.spotify.docker.client.exceptions.DockerRequestException}
+ * for unsuccessful responses, a {@link com.spotify.docker.client.exceptions.DockerTimeoutException}
+ * for timeouts and an {@link InterruptedException} if the calling thread was interrupted.</p>
+ *
+ * @see DefaultDockerClient.Builder#transport(DockerTransport)
+ */
+public interface DockerTransport extends Closeable {
+
+  /**
+   * Execute a request and read its response.
+   *
+   * @param method  The HTTP method.
+   * @param uri     The request URI, as built by {@link DefaultDockerClient}.
+   * @param headers Additional request headers.
+   * @param type    The type to decode the response body into. {@link String} bodies are returned
+   *                as is.
+   * @param entity  An entity to send as the JSON request body, or null.
+   * @param <T>     The response type.
+   * @return The decoded response body, or null if a non-{@link String} response had no body.
+   * @throws DockerException      if the request failed.
+   * @throws InterruptedException if the thread was interrupted.
+   */
+  <T> T request(String method, URI uri, Map<String, Object> headers, Type type, Object entity)
+      throws DockerException, InterruptedException;
+
+  @Override
+  void close();
+}
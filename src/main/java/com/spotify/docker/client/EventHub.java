@@ -0,0 +1,475 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.spotify.docker.client.DockerClient.EventsFilterParam;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Shares one stream of daemon events among many subscribers.
+ *
+ * <p>The stream is opened when the first subscriber subscribes and every event is parsed once.
+ * Each subscriber has a filter, which is evaluated here rather than by the daemon, and a bounded
+ * queue of the events that matched it:</p>
+ *
+ * <pre>
+ * EventHub hub = EventHub.builder(docker).build();
+ * try (EventHub.Subscription deaths = hub.subscribe(filter("event", "die"))) {
+ *   for (Event event; (event = deaths.take()) != null; ) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ *
+ * <p>When the queue of a subscriber is full, new events are either dropped for that subscriber
+ * and counted, or the hub waits for room, holding up all other subscribers as well; see
+ * {@link Overflow}. If the stream fails or ends, it is opened again after a backoff. Events sent
+ * by the daemon in the meantime are not seen.</p>
+ */
+public class EventHub implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(EventHub.class);
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000;
+
+  // Put in the queue of a subscription once it ended
+  private static final Event END = new Event();
+
+  /**
+   * What to do with an event for a subscriber whose queue is full.
+   */
+  public enum Overflow {
+    /**
+     * Drop the event for this subscriber.
+     */
+    DROP,
+    /**
+     * Wait until the subscriber takes an event. No subscriber gets new events in the meantime.
+     */
+    BLOCK
+  }
+
+  private final DockerClient docker;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final AtomicLong dispatched = new AtomicLong();
+  private final AtomicLong reconnects = new AtomicLong();
+  private final Object lock = new Object();
+
+  // Guarded by lock
+  private Thread thread;
+  private EventStream stream;
+  private boolean closed;
+
+  private EventHub(final Builder builder) {
+    this.docker = builder.docker;
+    this.initialBackoffMillis = builder.initialBackoffMillis;
+    this.maxBackoffMillis = builder.maxBackoffMillis;
+  }
+
+  public static Builder builder(final DockerClient docker) {
+    return new Builder(docker);
+  }
+
+  /**
+   * Build a filter from event filter parameters, which are evaluated like the daemon does.
+   * Parameters with the same name match an event if any of them does, and parameters with
+   * different names if all of them do. The supported names are:
+   *
+   * <ul>
+   * <li>{@code container}: the id of the container of container events</li>
+   * <li>{@code image}: the image of container events, or the image of image events</li>
+   * <li>{@code event}: the status, e.g. {@code die}</li>
+   * </ul>
+   *
+   * @param filters Parameters created by {@link EventsParam#filter(String, String)}.
+   * @return A filter matching the events the daemon would send for the parameters.
+   */
+  public static Predicate<Event> filter(final EventsParam... filters) {
+    final ListMultimap<String, String> values = ArrayListMultimap.create();
+    for (final EventsParam param : filters) {
+      checkArgument(param instanceof EventsFilterParam, "Not a filter: %s", param.name());
+      checkArgument(param.name().equals("container") || param.name().equals("image")
+                    || param.name().equals("event"), "Unsupported filter: %s", param.name());
+      values.put(param.name(), param.value());
+    }
+    if (values.isEmpty()) {
+      return Predicates.alwaysTrue();
+    }
+
+    final ImmutableList.Builder<Predicate<Event>> builder = ImmutableList.builder();
+    for (final Map.Entry<String, Collection<String>> entry : values.asMap().entrySet()) {
+      builder.add(new FieldPredicate(entry.getKey(), ImmutableList.copyOf(entry.getValue())));
+    }
+    return Predicates.and(builder.build());
+  }
+
+  /**
+   * Subscribe to the events matching filter parameters, with a queue of the default capacity
+   * that drops events when full.
+   *
+   * @see #filter(EventsParam...)
+   */
+  public Subscription subscribe(final EventsParam... filters) {
+    return subscribe(filter(filters), DEFAULT_QUEUE_CAPACITY, Overflow.DROP);
+  }
+
+  /**
+   * Subscribe to the events matching a filter. The filter is called by the thread of the hub.
+   *
+   * @param filter   Which events to queue for the subscriber.
+   * @param capacity The number of events that can be queued.
+   * @param overflow What to do with an event once the queue is full.
+   */
+  public Subscription subscribe(final Predicate<? super Event> filter, final int capacity,
+                                final Overflow overflow) {
+    checkArgument(capacity > 0, "capacity must be positive");
+    final Subscription subscription = new Subscription(checkNotNull(filter, "filter"), capacity,
+                                                       checkNotNull(overflow, "overflow"));
+    synchronized (lock) {
+      checkState(!closed, "Event hub is closed");
+      subscriptions.add(subscription);
+      if (thread == null) {
+        thread = new ThreadFactoryBuilder()
+            .setNameFormat("docker-client-event-hub-%d")
+            .setDaemon(true)
+            .build()
+            .newThread(new Runnable() {
+              @Override
+              public void run() {
+                EventHub.this.run();
+              }
+            });
+        thread.start();
+      }
+    }
+    return subscription;
+  }
+
+  /**
+   * @return The number of subscriptions.
+   */
+  public int subscribers() {
+    return subscriptions.size();
+  }
+
+  /**
+   * @return The number of events read from the daemon.
+   */
+  public long dispatched() {
+    return dispatched.get();
+  }
+
+  /**
+   * @return The number of times the stream was opened again after it failed or ended.
+   */
+  public long reconnects() {
+    return reconnects.get();
+  }
+
+  /**
+   * Close the stream, ending all subscriptions.
+   */
+  @Override
+  public void close() {
+    final Thread thread;
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      thread = this.thread;
+      closeStream();
+    }
+    if (thread != null) {
+      thread.interrupt();
+    }
+    for (final Subscription subscription : subscriptions) {
+      subscription.close();
+    }
+  }
+
+  private void run() {
+    int failures = 0;
+    try {
+      while (true) {
+        final EventStream stream;
+        try {
+          stream = docker.events();
+        } catch (DockerException | RuntimeException e) {
+          log.warn("Failed to open event stream: {}", e.toString());
+          backoff(failures++);
+          reconnects.incrementAndGet();
+          continue;
+        }
+        synchronized (lock) {
+          if (closed) {
+            stream.close();
+            return;
+          }
+          this.stream = stream;
+        }
+
+        try {
+          while (stream.hasNext()) {
+            failures = 0;
+            dispatch(stream.next());
+          }
+          log.debug("Event stream ended");
+        } catch (RuntimeException e) {
+          if (isClosed()) {
+            return;
+          }
+          log.warn("Event stream failed: {}", e.toString());
+        } finally {
+          synchronized (lock) {
+            closeStream();
+          }
+        }
+        backoff(failures++);
+        reconnects.incrementAndGet();
+      }
+    } catch (InterruptedException e) {
+      log.debug("Event hub closed");
+    }
+  }
+
+  private void dispatch(final Event event) throws InterruptedException {
+    dispatched.incrementAndGet();
+    for (final Subscription subscription : subscriptions) {
+      final boolean matches;
+      try {
+        matches = subscription.filter.apply(event);
+      } catch (RuntimeException e) {
+        log.warn("Event filter failed", e);
+        continue;
+      }
+      if (matches) {
+        subscription.offer(event);
+      }
+    }
+  }
+
+  private void backoff(final int failures) throws InterruptedException {
+    MILLISECONDS.sleep(Backoff.millis(initialBackoffMillis, maxBackoffMillis, failures));
+    if (isClosed()) {
+      throw new InterruptedException();
+    }
+  }
+
+  private boolean isClosed() {
+    synchronized (lock) {
+      return closed;
+    }
+  }
+
+  private void closeStream() {
+    if (stream == null) {
+      return;
+    }
+    try {
+      stream.close();
+    } catch (RuntimeException e) {
+      log.debug("Failed to close event stream: {}", e.toString());
+    }
+    stream = null;
+  }
+
+  /**
+   * The events of a subscriber. Closing the subscription unsubscribes.
+   */
+  public class Subscription implements Closeable {
+
+    private final Predicate<? super Event> filter;
+    private final Overflow overflow;
+    private final BlockingQueue<Event> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean closed;
+
+    private Subscription(final Predicate<? super Event> filter, final int capacity,
+                         final Overflow overflow) {
+      this.filter = filter;
+      this.overflow = overflow;
+      this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Wait for the next event.
+     *
+     * @return The event, or null once the subscription is closed.
+     */
+    public Event take() throws InterruptedException {
+      return closed ? null : next(queue.take());
+    }
+
+    /**
+     * Wait for the next event, up to a timeout.
+     *
+     * @return The event, or null if there was none before the timeout or the subscription is
+     *         closed.
+     */
+    public Event poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+      return closed ? null : next(queue.poll(timeout, unit));
+    }
+
+    private Event next(final Event event) {
+      if (event == END) {
+        // For anyone else waiting
+        queue.offer(END);
+        return null;
+      }
+      return event;
+    }
+
+    /**
+     * @return The number of events dropped because the queue was full.
+     */
+    public long dropped() {
+      return dropped.get();
+    }
+
+    public boolean isClosed() {
+      return closed;
+    }
+
+    private void offer(final Event event) throws InterruptedException {
+      if (closed || queue.offer(event)) {
+        return;
+      }
+      if (overflow == Overflow.DROP) {
+        dropped.incrementAndGet();
+        return;
+      }
+      while (!closed && !queue.offer(event, 100, MILLISECONDS)) {
+        // Waiting for room, or for the subscription to be closed
+      }
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      subscriptions.remove(this);
+      queue.clear();
+      // Wakes up anyone waiting. If the hub got an event in first, that does.
+      queue.offer(END);
+    }
+  }
+
+  private static class FieldPredicate implements Predicate<Event> {
+
+    private final String name;
+    private final List<String> values;
+
+    private FieldPredicate(final String name, final List<String> values) {
+      this.name = name;
+      this.values = values;
+    }
+
+    @Override
+    public boolean apply(final Event event) {
+      final String value;
+      switch (name) {
+        case "container":
+          // Only container events have the image they came from
+          value = (event.from() == null) ? null : event.id();
+          break;
+        case "image":
+          value = (event.from() == null) ? event.id() : event.from();
+          break;
+        default:
+          value = event.status();
+          break;
+      }
+      return value != null && values.contains(value);
+    }
+  }
+
+  public static class Builder {
+
+    private final DockerClient docker;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    private Builder(final DockerClient docker) {
+      this.docker = checkNotNull(docker, "docker");
+    }
+
+    /**
+     * Set the backoff before opening the stream again after it failed. It doubles with every
+     * further failure, and the actual delay is a random time up to the backoff.
+     *
+     * @param initialBackoffMillis Backoff after the first failure
+     * @return Builder
+     */
+    public Builder initialBackoffMillis(final long initialBackoffMillis) {
+      checkArgument(initialBackoffMillis >= 0, "initialBackoffMillis must not be negative");
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    /**
+     * Set the highest backoff between attempts to open the stream.
+     *
+     * @param maxBackoffMillis Maximum backoff
+     * @return Builder
+     */
+    public Builder maxBackoffMillis(final long maxBackoffMillis) {
+      checkArgument(maxBackoffMillis >= 0, "maxBackoffMillis must not be negative");
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    public EventHub build() {
+      return new EventHub(this);
+    }
+  }
+}
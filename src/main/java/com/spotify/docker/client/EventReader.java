@@ -17,7 +17,10 @@
 
 package com.spotify.docker.client;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.spotify.docker.client.messages.Event;
 
@@ -26,20 +29,61 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
+/**
+ * Reads events from the response to an events request. Events are decoded token by token rather
+ * than through data binding: the strings that keep coming back, the types of objects and the
+ * actions on them, are looked up in a table of known strings instead of being allocated for every
+ * event. Events are otherwise the same as read by data binding, and serialize the same way.
+ */
 public class EventReader implements Closeable {
 
   private static final Logger log = LoggerFactory.getLogger(LogReader.class);
+  private static final StringTable STRINGS = new StringTable(StringTable.KNOWN);
+
   private final ObjectMapper objectMapper;
   private final CloseableHttpResponse response;
   private JsonParser parser;
+  // Only set when reusing events
+  private DecodedEvent event;
 
   private volatile boolean closed;
 
   public EventReader(final CloseableHttpResponse response, final ObjectMapper objectMapper) {
+    this(response, objectMapper, false);
+  }
+
+  /**
+   * Create a reader.
+   *
+   * @param response     The response to an events request.
+   * @param objectMapper The mapper whose JSON factory is used to parse the response.
+   * @param reuseEvents  Whether to return the same {@link Event} from every call to
+   *                     {@link #nextMessage()}. An event, its actor and their attributes are then
+   *                     only valid until the next call. This reads events with little allocation
+   *                     per event.
+   */
+  public EventReader(final CloseableHttpResponse response, final ObjectMapper objectMapper,
+                     final boolean reuseEvents) {
     this.response = response;
     this.objectMapper = objectMapper;
+    if (reuseEvents) {
+      reuseEvents();
+    }
+  }
+
+  /**
+   * Return the same {@link Event} from every further call to {@link #nextMessage()}.
+   */
+  void reuseEvents() {
+    if (event == null) {
+      event = new DecodedEvent();
+    }
   }
 
   public Event nextMessage() throws IOException {
@@ -53,11 +97,93 @@ public class EventReader implements Closeable {
     }
 
     // Read tokens until we get a start object
-    if (parser.nextToken() == null) {
+    final JsonToken token = parser.nextToken();
+    if (token == null) {
+      return null;
+    }
+    if (token != JsonToken.START_OBJECT) {
+      throw new JsonParseException("Expected an event object but found " + token,
+                                   parser.getCurrentLocation());
+    }
+
+    final DecodedEvent event = (this.event == null) ? new DecodedEvent() : this.event.clear();
+    decode(event);
+    return event;
+  }
+
+  private void decode(final DecodedEvent event) throws IOException {
+    JsonToken token;
+    while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+      // Field names are canonicalized by the parser, so this does not allocate
+      final String name = parser.getCurrentName();
+      token = parser.nextToken();
+      event.field(this, name, token);
+    }
+    if (token != JsonToken.END_OBJECT) {
+      throw new EOFException("Event ended before it was complete");
+    }
+  }
+
+  private DecodedActor actor(final DecodedEvent event, final JsonToken token) throws IOException {
+    if (token != JsonToken.START_OBJECT) {
+      parser.skipChildren();
       return null;
     }
+    final DecodedActor actor = event.clearedActor();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String name = parser.getCurrentName();
+      actor.field(this, event, name, parser.nextToken());
+    }
+    return actor;
+  }
+
+  private String string(final JsonToken token, final boolean canonical) throws IOException {
+    if (token == null) {
+      throw new EOFException("Event ended before it was complete");
+    }
+    switch (token) {
+      case VALUE_STRING:
+        if (canonical) {
+          return STRINGS.get(parser.getTextCharacters(), parser.getTextOffset(),
+                             parser.getTextLength());
+        }
+        return parser.getText();
+      case VALUE_NULL:
+        return null;
+      case START_OBJECT:
+      case START_ARRAY:
+        parser.skipChildren();
+        return null;
+      default:
+        return parser.getText();
+    }
+  }
 
-    return parser.readValueAs(Event.class);
+  /**
+   * Read a string that is likely to be equal to one already read, returning that one if so.
+   */
+  private String string(final JsonToken token, final String likely) throws IOException {
+    if (likely != null && token == JsonToken.VALUE_STRING
+        && StringTable.matches(likely, parser.getTextCharacters(), parser.getTextOffset(),
+                               parser.getTextLength())) {
+      return likely;
+    }
+    return string(token, false);
+  }
+
+  private long number(final JsonToken token) throws IOException {
+    if (token == null) {
+      throw new EOFException("Event ended before it was complete");
+    }
+    switch (token) {
+      case VALUE_NUMBER_INT:
+        return parser.getLongValue();
+      case VALUE_STRING:
+        return Long.parseLong(parser.getText().trim());
+      default:
+        parser.skipChildren();
+        return 0;
+    }
   }
 
   @Override
@@ -75,4 +201,171 @@ public class EventReader implements Closeable {
     response.close();
   }
 
+  /**
+   * An event decoded by the reader, into the fields of {@link Event} so that it serializes like an
+   * event read by data binding. When events are reused it is cleared for every event, along with
+   * its actor.
+   */
+  private static class DecodedEvent extends Event {
+
+    // Kept when events are reused, so that the actor, its attributes map and the time are too
+    @JsonIgnore private DecodedActor reusedActor;
+    @JsonIgnore private Date reusedTime;
+
+    private DecodedEvent clear() {
+      setStatus(null);
+      setId(null);
+      setFrom(null);
+      setType(null);
+      setAction(null);
+      setActor(null);
+      setTime(null);
+      setTimeNano(0);
+      return this;
+    }
+
+    private DecodedActor clearedActor() {
+      if (reusedActor == null) {
+        reusedActor = new DecodedActor();
+      } else {
+        reusedActor.clear();
+      }
+      return reusedActor;
+    }
+
+    private void field(final EventReader reader, final String name, final JsonToken token)
+        throws IOException {
+      switch (name) {
+        case "status":
+          setStatus(reader.string(token, true));
+          break;
+        case "id":
+          setId(reader.string(token, false));
+          break;
+        case "from":
+          setFrom(reader.string(token, false));
+          break;
+        case "Type":
+          setType(reader.string(token, true));
+          break;
+        case "Action":
+          setAction(reader.string(token, true));
+          break;
+        case "Actor":
+          setActor(reader.actor(this, token));
+          break;
+        case "time":
+          final long millis = reader.number(token) * 1000;
+          if (reusedTime == null) {
+            reusedTime = new Date(millis);
+          } else {
+            reusedTime.setTime(millis);
+          }
+          setTime(reusedTime);
+          break;
+        case "timeNano":
+          setTimeNano(reader.number(token));
+          break;
+        default:
+          reader.parser.skipChildren();
+      }
+    }
+  }
+
+  private static class DecodedActor extends Event.Actor {
+
+    // Kept when events are reused
+    @JsonIgnore private final Map<String, String> reusedAttributes = new HashMap<>();
+
+    private void clear() {
+      setId(null);
+      setAttributes(null);
+    }
+
+    private void field(final EventReader reader, final Event event, final String name,
+                       final JsonToken token) throws IOException {
+      if (name.equals("ID")) {
+        // Usually the id of the event once more
+        setId(reader.string(token, event.id()));
+      } else if (name.equals("Attributes") && token == JsonToken.START_OBJECT) {
+        reusedAttributes.clear();
+        setAttributes(reusedAttributes);
+        while (reader.parser.nextToken() == JsonToken.FIELD_NAME) {
+          final String key = reader.parser.getCurrentName();
+          final JsonToken value = reader.parser.nextToken();
+          reusedAttributes.put(key, key.equals("image") ? reader.string(value, event.from())
+                                                        : reader.string(value, false));
+        }
+      } else {
+        reader.parser.skipChildren();
+      }
+    }
+  }
+
+  /**
+   * Canonical copies of the strings that keep coming back in events: the types of objects and the
+   * actions on them. The table is fixed, so that one-off strings, such as the actions of exec
+   * events that include the command, are not kept.
+   */
+  static class StringTable {
+
+    static final String[] KNOWN = {
+        // Types
+        "container", "image", "volume", "network", "daemon", "plugin", "service", "node",
+        "secret", "config", "builder",
+        // Actions
+        "attach", "commit", "connect", "copy", "create", "delete", "destroy", "detach", "die",
+        "disable", "disconnect", "enable", "exec_create", "exec_detach", "exec_die", "exec_start",
+        "export", "import", "install", "kill", "load", "mount", "oom", "pause", "prune", "pull",
+        "push", "reload", "remove", "rename", "resize", "restart", "save", "start", "stop", "tag",
+        "top", "unmount", "unpause", "untag", "update"
+    };
+
+    private final String[] strings;
+
+    StringTable(final String... known) {
+      // At most half full, so that a lookup of an unknown string soon finds an empty slot
+      strings = new String[Integer.highestOneBit(Math.max(known.length, 1) * 4)];
+      for (final String string : known) {
+        int slot = slot(string.hashCode());
+        while (strings[slot] != null && !strings[slot].equals(string)) {
+          slot = (slot + 1) & (strings.length - 1);
+        }
+        strings[slot] = string;
+      }
+    }
+
+    /**
+     * @return The canonical copy of a known string, or a new string.
+     */
+    String get(final char[] chars, final int offset, final int length) {
+      int hash = 0;
+      for (int i = 0; i < length; i++) {
+        hash = 31 * hash + chars[offset + i];
+      }
+      for (int slot = slot(hash); strings[slot] != null; slot = (slot + 1) & (strings.length - 1)) {
+        if (matches(strings[slot], chars, offset, length)) {
+          return strings[slot];
+        }
+      }
+      return new String(chars, offset, length);
+    }
+
+    private int slot(final int hash) {
+      return (hash ^ (hash >>> 16)) & (strings.length - 1);
+    }
+
+    static boolean matches(final String string, final char[] chars, final int offset,
+                                   final int length) {
+      if (string.length() != length) {
+        return false;
+      }
+      for (int i = 0; i < length; i++) {
+        if (string.charAt(i) != chars[offset + i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
 }
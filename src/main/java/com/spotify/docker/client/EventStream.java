@@ -30,17 +30,35 @@ import org.slf4j.LoggerFactory;
 import java.io.Closeable;
 import java.io.IOException;
 
+import static com.google.common.base.Preconditions.checkState;
+
 public class EventStream extends AbstractIterator<Event> implements Closeable {
 
   private static final Logger log = LoggerFactory.getLogger(EventStream.class);
 
   private final EventReader reader;
+  private boolean started;
   private volatile boolean closed;
 
   EventStream(final CloseableHttpResponse response, final ObjectMapper objectMapper) {
     this.reader = new EventReader(response, objectMapper);
   }
 
+  /**
+   * Read the events without allocating a new {@link Event} per event. Every event returned by
+   * {@link #next()} is then the same object, and it is only valid until the next call to
+   * {@link #hasNext()} or {@link #next()}. Copy whatever needs to be kept.
+   *
+   * <p>Must be called before reading any events.</p>
+   *
+   * @return This stream.
+   */
+  public EventStream reuseEvents() {
+    checkState(!started, "Events have already been read");
+    reader.reuseEvents();
+    return this;
+  }
+
   @Override
   protected void finalize() throws Throwable {
     super.finalize();
@@ -52,6 +70,7 @@ public class EventStream extends AbstractIterator<Event> implements Closeable {
 
   @Override
   protected Event computeNext() {
+    started = true;
     final Event event;
     try {
       event = reader.nextMessage();
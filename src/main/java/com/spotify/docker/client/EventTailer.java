@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+
+import com.spotify.docker.client.DockerClient.EventsFilterParam;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Follows the events of a daemon, reconnecting when the connection is lost.
+ *
+ * <p>The time of the last event returned is remembered. After a disconnect, the events since
+ * that second are requested up to now, and the events of that second that were already returned
+ * are skipped, so that no event is lost or returned twice. Then the events are followed again.
+ * Reconnects are spaced by an exponential backoff with full jitter.</p>
+ *
+ * <p>The daemon only keeps a limited number of recent events, and none from before it
+ * restarted. If the events requested after a disconnect do not include the last events that were
+ * returned, events in between may have been lost too. The {@link ResyncListener} is then told to
+ * get the current state some other way, e.g. by listing containers, before iteration goes on.</p>
+ *
+ * <pre>
+ * try (EventTailer events = EventTailer.builder(docker).listener(resync).build()) {
+ *   while (events.hasNext()) {
+ *     handle(events.next());
+ *   }
+ * }
+ * </pre>
+ */
+public class EventTailer extends AbstractIterator<Event> implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(EventTailer.class);
+
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000;
+
+  /**
+   * Told when events may have been lost.
+   */
+  public interface ResyncListener {
+
+    /**
+     * Called by the thread iterating over the events, before the events after the gap are
+     * returned.
+     *
+     * @param since The time of the last event returned before the gap, in seconds.
+     */
+    void resyncNeeded(long since);
+  }
+
+  private final DockerClient docker;
+  private final List<EventsParam> filters;
+  private final Long since;
+  private final ResyncListener listener;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  // Closed by close(), possibly from another thread
+  private volatile EventStream stream;
+  private final Deque<Event> replayed = new ArrayDeque<>();
+  private int failures;
+  private volatile boolean closed;
+
+  // The latest time returned, and the events returned with it
+  private long lastTime = Long.MIN_VALUE;
+  private final Multiset<String> lastEvents = HashMultiset.create();
+  // After a reconnect, events up to the latest time that have not been replayed yet
+  private boolean replaying;
+  // Whether missing replayed events mean that events were lost
+  private boolean checkingGap;
+  private long replayTime;
+  private final Multiset<String> replayEvents = HashMultiset.create();
+
+  private final AtomicLong reconnects = new AtomicLong();
+  private final AtomicLong duplicates = new AtomicLong();
+  private final AtomicLong resyncs = new AtomicLong();
+
+  private EventTailer(final Builder builder) {
+    this.docker = builder.docker;
+    this.filters = builder.filters;
+    this.since = builder.since;
+    this.listener = builder.listener;
+    this.initialBackoffMillis = builder.initialBackoffMillis;
+    this.maxBackoffMillis = builder.maxBackoffMillis;
+  }
+
+  /**
+   * @param filters Parameters created by {@link EventsParam#filter(String, String)}, passed on to
+   *                {@link DockerClient#events(EventsParam...)}.
+   */
+  public static Builder builder(final DockerClient docker, final EventsParam... filters) {
+    return new Builder(docker, filters);
+  }
+
+  /**
+   * @return The number of times the events were requested again after the connection was lost.
+   */
+  public long reconnects() {
+    return reconnects.get();
+  }
+
+  /**
+   * @return The number of events skipped because they had been returned before a reconnect.
+   */
+  public long duplicates() {
+    return duplicates.get();
+  }
+
+  /**
+   * @return The number of times events may have been lost.
+   */
+  public long resyncs() {
+    return resyncs.get();
+  }
+
+  @Override
+  protected Event computeNext() {
+    try {
+      while (!closed) {
+        try {
+          if (!replayed.isEmpty()) {
+            return replayed.poll();
+          }
+          if (stream == null) {
+            connect();
+            continue;
+          }
+          if (stream.hasNext()) {
+            final Event event = accept(stream.next());
+            if (event != null) {
+              failures = 0;
+              return event;
+            }
+            continue;
+          }
+          // Something in between closed the connection, and may keep doing so right away
+          log.debug("Event stream ended");
+          disconnect();
+        } catch (RuntimeException e) {
+          if (closed) {
+            break;
+          }
+          log.debug("Lost events: {}", e.toString());
+          disconnect();
+        } catch (DockerException e) {
+          log.debug("Failed to get events: {}", e.toString());
+        }
+        backoff();
+      }
+      return endOfData();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private void connect() throws DockerException, InterruptedException {
+    if (lastTime == Long.MIN_VALUE) {
+      // Nothing returned yet, so there is nothing to replay
+      if (since != null) {
+        lastTime = since;
+      } else {
+        lastTime = System.currentTimeMillis() / 1000;
+      }
+      open(params(EventsParam.since(lastTime)));
+      return;
+    }
+
+    reconnects.incrementAndGet();
+    // Read what was missed up to now first, to find out right away whether the daemon still had
+    // the events before the gap. Then follow from the last event read, in case the daemon clock
+    // is behind and more events of the gap come in.
+    final long until = Math.max(lastTime, System.currentTimeMillis() / 1000);
+    replay(true);
+    try (EventStream missed = docker.events(params(EventsParam.since(lastTime),
+                                                   EventsParam.until(until)))) {
+      while (missed.hasNext()) {
+        final Event event = accept(missed.next());
+        if (event != null) {
+          replayed.add(event);
+        }
+      }
+    }
+    if (replaying && checkingGap && !replayEvents.isEmpty()) {
+      // The daemon no longer has the last events that were returned
+      gap(replayTime);
+    }
+
+    replay(false);
+    open(params(EventsParam.since(lastTime)));
+  }
+
+  private void open(final EventsParam... params) throws DockerException, InterruptedException {
+    final EventStream opened = docker.events(params);
+    synchronized (this) {
+      if (!closed) {
+        stream = opened;
+        return;
+      }
+    }
+    // Closed while connecting, by another thread that did not see this stream
+    opened.close();
+  }
+
+  private EventsParam[] params(final EventsParam... params) {
+    final List<EventsParam> all = newArrayList(filters);
+    for (final EventsParam param : params) {
+      all.add(param);
+    }
+    return all.toArray(new EventsParam[all.size()]);
+  }
+
+  /**
+   * Skip the events returned so far if they come again.
+   */
+  private void replay(final boolean checkGap) {
+    replaying = true;
+    checkingGap = checkGap;
+    replayTime = lastTime;
+    replayEvents.clear();
+    replayEvents.addAll(lastEvents);
+  }
+
+  /**
+   * @return The event, or null if it is a duplicate.
+   */
+  private Event accept(final Event event) {
+    final Date date = event.time();
+    if (date == null) {
+      return event;
+    }
+    final long time = date.getTime() / 1000;
+    final String key = key(event);
+
+    if (replaying) {
+      if (time < replayTime || (time == replayTime && replayEvents.remove(key))) {
+        duplicates.incrementAndGet();
+        return null;
+      }
+      if (time > replayTime) {
+        replaying = false;
+        if (checkingGap && !replayEvents.isEmpty()) {
+          // Events before the gap were dropped by the daemon, so others may have been too
+          gap(replayTime);
+        }
+      }
+    }
+
+    if (time > lastTime) {
+      lastTime = time;
+      lastEvents.clear();
+    }
+    if (time == lastTime) {
+      lastEvents.add(key);
+    }
+    return event;
+  }
+
+  private void gap(final long since) {
+    log.info("Events since {} may have been lost", since);
+    resyncs.incrementAndGet();
+    replayEvents.clear();
+    if (listener != null) {
+      listener.resyncNeeded(since);
+    }
+  }
+
+  private static String key(final Event event) {
+    return event.status() + " " + event.id() + " " + event.from();
+  }
+
+  private void disconnect() {
+    final EventStream current;
+    synchronized (this) {
+      current = stream;
+      stream = null;
+    }
+    if (current == null) {
+      return;
+    }
+    try {
+      current.close();
+    } catch (RuntimeException e) {
+      log.debug("Failed to close event stream: {}", e.toString());
+    }
+  }
+
+  private void backoff() throws InterruptedException {
+    MILLISECONDS.sleep(Backoff.millis(initialBackoffMillis, maxBackoffMillis, failures++));
+  }
+
+  /**
+   * Stop following the events. Can be called by another thread to end iteration.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    disconnect();
+  }
+
+  public static class Builder {
+
+    private final DockerClient docker;
+    private final List<EventsParam> filters;
+    private Long since;
+    private ResyncListener listener;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    private Builder(final DockerClient docker, final EventsParam... filters) {
+      this.docker = checkNotNull(docker, "docker");
+      for (final EventsParam param : filters) {
+        checkArgument(param instanceof EventsFilterParam,
+                      "Only filters can be passed, not %s", param.name());
+      }
+      this.filters = ImmutableList.copyOf(filters);
+    }
+
+    /**
+     * Start with the events since a time, rather than with new events.
+     *
+     * @param since Unix timestamp in seconds
+     * @return Builder
+     */
+    public Builder since(final long since) {
+      this.since = since;
+      return this;
+    }
+
+    /**
+     * @param listener Told when events may have been lost.
+     * @return Builder
+     */
+    public Builder listener(final ResyncListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    /**
+     * Set the backoff before the first reconnect. It doubles with every further failure to
+     * reconnect, and the actual delay is a random time up to the backoff.
+     *
+     * @param initialBackoffMillis Backoff before the first reconnect
+     * @return Builder
+     */
+    public Builder initialBackoffMillis(final long initialBackoffMillis) {
+      checkArgument(initialBackoffMillis >= 0, "initialBackoffMillis must not be negative");
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    /**
+     * Set the highest backoff between reconnects.
+     *
+     * @param maxBackoffMillis Maximum backoff
+     * @return Builder
+     */
+    public Builder maxBackoffMillis(final long maxBackoffMillis) {
+      checkArgument(maxBackoffMillis >= 0, "maxBackoffMillis must not be negative");
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    public EventTailer build() {
+      return new EventTailer(this);
+    }
+  }
+}
@@ -0,0 +1,854 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.LogMessage.Stream;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.MediaType;
+
+import static com.google.common.base.Charsets.US_ASCII;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Follows the logs of many containers with a few threads.
+ *
+ * <p>Every container's logs are requested over a non-blocking unix domain socket channel, and a
+ * small, fixed set of selector threads reads all of them, decoding the multiplexed stdout/stderr
+ * frames as {@link LogReader} does. Messages are put in a queue to {@link #take()} from, or
+ * handed to a {@link Listener} on the selector thread.</p>
+ *
+ * <p>Each container may have up to {@code containerCapacity} messages in the queue. When it has
+ * that many, its channel is not read until half of them have been taken, so a container that logs
+ * faster than its messages are consumed is slowed down without affecting the others. A listener
+ * can do the same with {@link #pause(String)} and {@link #resume(String)}.</p>
+ *
+ * <p>Unix domain socket channels require Java 16 or later, see
+ * {@link UnixDomainSocket#isSupported()}.</p>
+ */
+public class LogAggregator implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(LogAggregator.class);
+
+  public static final int DEFAULT_SELECTOR_THREADS = 2;
+  public static final int DEFAULT_CONTAINER_CAPACITY = 1024;
+
+  private static final int BUFFER_SIZE = 8192;
+  private static final int MAX_LINE_LENGTH = 8192;
+  // Frames hold tens of KiB of output at most, so a header claiming more than 16 MiB is corrupt
+  private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * Receives the messages of all containers, on the selector threads. Must not block.
+   */
+  public interface Listener {
+
+    void message(String containerId, LogMessage message);
+
+    /**
+     * The logs of a container ended, because the container stopped, it was unfollowed, or the
+     * logs could not be read.
+     *
+     * @param error Why the logs could not be read, or null.
+     */
+    void ended(String containerId, DockerException error);
+  }
+
+  /**
+   * A message of a container, or the end of its logs.
+   */
+  public static class Entry {
+
+    private final String containerId;
+    private final LogMessage message;
+    private final DockerException error;
+    private final Follow follow;
+
+    private Entry(final String containerId, final LogMessage message,
+                  final DockerException error, final Follow follow) {
+      this.containerId = containerId;
+      this.message = message;
+      this.error = error;
+      this.follow = follow;
+    }
+
+    public String containerId() {
+      return containerId;
+    }
+
+    /**
+     * @return The message, or null if the logs of the container ended.
+     */
+    public LogMessage message() {
+      return message;
+    }
+
+    /**
+     * @return Why the logs of the container could not be read, or null.
+     */
+    public DockerException error() {
+      return error;
+    }
+  }
+
+  private final SocketAddress address;
+  private final String apiVersion;
+  private final String pathPrefix;
+  private final int containerCapacity;
+  private final Listener listener;
+
+  private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+  private final ConcurrentMap<String, Follow> follows = new ConcurrentHashMap<>();
+  private final List<Worker> workers = newArrayList();
+  private final AtomicInteger nextWorker = new AtomicInteger();
+  private volatile boolean closed;
+
+  private LogAggregator(final Builder builder) throws IOException {
+    checkState(UnixDomainSocket.isSupported(),
+               "unix domain socket channels require Java 16 or later");
+    this.address = UnixDomainSocket.address(
+        UnixConnectionSocketFactory.socketFile(builder.socketUri));
+    this.apiVersion = builder.apiVersion;
+    this.pathPrefix = (apiVersion == null) ? "" : "/" + apiVersion;
+    this.containerCapacity = builder.containerCapacity;
+    this.listener = builder.listener;
+
+    final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("docker-client-log-aggregator-%d")
+        .setDaemon(true)
+        .build();
+    for (int i = 0; i < builder.selectorThreads; i++) {
+      final Worker worker = new Worker(Selector.open());
+      workers.add(worker);
+      threadFactory.newThread(worker).start();
+    }
+  }
+
+  /**
+   * @param socketUri The unix socket URI of the daemon, e.g. unix:///var/run/docker.sock
+   */
+  public static Builder builder(final URI socketUri) {
+    return new Builder(socketUri);
+  }
+
+  /**
+   * Start following the logs of a container.
+   *
+   * @param containerId The id or name of the container.
+   * @param params      Parameters such as {@link LogsParam#timestamps()} or
+   *                    {@link LogsParam#tail(int)}. Both stdout and stderr are followed unless
+   *                    either is given.
+   */
+  public void follow(final String containerId, final LogsParam... params) {
+    checkState(!closed, "closed");
+    final Worker worker = workers.get(Math.abs(nextWorker.getAndIncrement() % workers.size()));
+    final Follow follow = new Follow(containerId, worker, request(containerId, params));
+    checkState(follows.putIfAbsent(containerId, follow) == null,
+               "Already following %s", containerId);
+    worker.execute(new Runnable() {
+      @Override
+      public void run() {
+        follow.start();
+      }
+    });
+  }
+
+  /**
+   * Stop following the logs of a container. The end of its logs is reported as usual.
+   */
+  public void unfollow(final String containerId) {
+    final Follow follow = follows.get(containerId);
+    if (follow != null) {
+      follow.worker.execute(new Runnable() {
+        @Override
+        public void run() {
+          follow.end(null);
+        }
+      });
+    }
+  }
+
+  /**
+   * Stop reading the logs of a container until {@link #resume(String)} is called.
+   */
+  public void pause(final String containerId) {
+    setPaused(containerId, true);
+  }
+
+  public void resume(final String containerId) {
+    setPaused(containerId, false);
+  }
+
+  private void setPaused(final String containerId, final boolean paused) {
+    final Follow follow = follows.get(containerId);
+    if (follow != null) {
+      follow.paused = paused;
+      follow.updateInterest();
+    }
+  }
+
+  /**
+   * @return The containers whose logs are being followed.
+   */
+  public Set<String> following() {
+    return ImmutableSet.copyOf(follows.keySet());
+  }
+
+  /**
+   * Wait for the next message of any container.
+   */
+  public Entry take() throws InterruptedException {
+    checkState(listener == null, "Messages are handed to the listener");
+    return taken(queue.take());
+  }
+
+  /**
+   * Wait for the next message of any container, up to a timeout.
+   *
+   * @return The next entry, or null if there was none before the timeout.
+   */
+  public Entry poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+    checkState(listener == null, "Messages are handed to the listener");
+    return taken(queue.poll(timeout, unit));
+  }
+
+  @VisibleForTesting
+  int queued() {
+    return queue.size();
+  }
+
+  private Entry taken(final Entry entry) {
+    if (entry != null && entry.follow != null) {
+      entry.follow.taken();
+    }
+    return entry;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (final Worker worker : workers) {
+      worker.selector.wakeup();
+    }
+  }
+
+  private byte[] request(final String containerId, final LogsParam... params) {
+    final List<String> query = newArrayList("follow=1");
+    boolean streams = false;
+    try {
+      for (final LogsParam param : params) {
+        if (param.name().equals("follow")) {
+          continue;
+        }
+        streams |= param.name().equals("stdout") || param.name().equals("stderr");
+        query.add(param.name() + "=" + URLEncoder.encode(param.value(), "UTF-8"));
+      }
+      if (!streams) {
+        query.add("stdout=1");
+        query.add("stderr=1");
+      }
+      return ("GET " + path(containerId) + "?" + Joiner.on('&').join(query) + " HTTP/1.1\r\n"
+              + "Host: docker\r\n"
+              + "Accept: application/vnd.docker.raw-stream\r\n"
+              + "\r\n").getBytes(US_ASCII);
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private String path(final String containerId) {
+    try {
+      return pathPrefix + "/containers/" + URLEncoder.encode(containerId, "UTF-8") + "/logs";
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * A selector thread.
+   */
+  private class Worker implements Runnable {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile Thread thread;
+
+    private Worker(final Selector selector) {
+      this.selector = selector;
+    }
+
+    private void execute(final Runnable task) {
+      tasks.add(task);
+      selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+      thread = Thread.currentThread();
+      try {
+        while (!closed) {
+          selector.select();
+          for (Runnable task; (task = tasks.poll()) != null; ) {
+            try {
+              task.run();
+            } catch (RuntimeException e) {
+              log.error("Log aggregator task failed", e);
+            }
+          }
+          final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+          while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            ((Follow) key.attachment()).ready(key);
+          }
+        }
+      } catch (IOException | ClosedSelectorException e) {
+        log.error("Log aggregator selector failed", e);
+      } finally {
+        for (final Follow follow : follows.values()) {
+          if (follow.worker == this) {
+            follow.end(null);
+          }
+        }
+        try {
+          selector.close();
+        } catch (IOException e) {
+          log.debug("Failed to close selector", e);
+        }
+      }
+    }
+  }
+
+  private enum State {
+    STATUS_LINE,
+    HEADERS,
+    CHUNK_SIZE,
+    CHUNK_DATA,
+    CHUNK_END,
+    BODY
+  }
+
+  /**
+   * The logs of one container. Apart from the fields used for backpressure, everything is only
+   * used by the container's selector thread.
+   */
+  private class Follow {
+
+    private final String containerId;
+    private final Worker worker;
+    private final ByteBuffer request;
+    private final URI uri;
+
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer in;
+    private boolean reading;
+    private boolean ended;
+
+    // HTTP response
+    private State state = State.STATUS_LINE;
+    private final StringBuilder line = new StringBuilder();
+    private int status;
+    private boolean chunked;
+    private long remaining = -1;
+    private String contentType;
+
+    // Frames
+    private Boolean tty;
+    private final ByteBuffer header = ByteBuffer.allocate(LogReader.HEADER_SIZE);
+    private ByteBuffer frame;
+    private Stream frameStream;
+
+    // Backpressure
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean throttled = new AtomicBoolean();
+    private volatile boolean paused;
+
+    private Follow(final String containerId, final Worker worker, final byte[] request) {
+      this.containerId = containerId;
+      this.worker = worker;
+      this.request = ByteBuffer.wrap(request);
+      this.uri = URI.create("unix://localhost:80" + path(containerId));
+    }
+
+    private void start() {
+      try {
+        channel = UnixDomainSocket.openChannel();
+        if (channel.connect(address)) {
+          key = channel.register(worker.selector, SelectionKey.OP_WRITE, this);
+        } else {
+          key = channel.register(worker.selector, SelectionKey.OP_CONNECT, this);
+        }
+      } catch (IOException e) {
+        end(new DockerException(e));
+      } catch (RuntimeException e) {
+        end(new DockerException("Failed to request logs: " + uri, e));
+      }
+    }
+
+    /**
+     * Handle the channel being ready. Fails only the logs of this container, whatever goes wrong,
+     * so that the selector thread keeps serving the others.
+     */
+    private void ready(final SelectionKey key) {
+      try {
+        if (key.isConnectable() && channel.finishConnect()) {
+          key.interestOps(SelectionKey.OP_WRITE);
+        }
+        if (key.isValid() && key.isWritable()) {
+          channel.write(request);
+          if (!request.hasRemaining()) {
+            in = ByteBufferPool.LOG_BUFFERS.acquire();
+            reading = true;
+            updateInterest();
+          }
+        }
+        if (key.isValid() && key.isReadable()) {
+          read();
+        }
+      } catch (IOException e) {
+        end(new DockerException(e));
+      } catch (DockerException e) {
+        end(e);
+      } catch (RuntimeException e) {
+        end(new DockerException("Failed to read logs: " + uri, e));
+      }
+    }
+
+    private void read() throws IOException, DockerException {
+      final int n = channel.read(in);
+      flip(in);
+      try {
+        process();
+      } finally {
+        if (!ended) {
+          in.compact();
+        }
+      }
+      if (n < 0 && !ended) {
+        if (state == State.BODY && remaining < 0) {
+          end(null);
+        } else {
+          throw new DockerException("Connection closed by the daemon: " + uri);
+        }
+      }
+    }
+
+    private void process() throws DockerException {
+      while (!ended && in.hasRemaining()) {
+        switch (state) {
+          case CHUNK_DATA:
+            body((int) Math.min(in.remaining(), remaining));
+            if (remaining == 0) {
+              state = State.CHUNK_END;
+            }
+            break;
+          case BODY:
+            body((remaining < 0) ? in.remaining() : (int) Math.min(in.remaining(), remaining));
+            if (remaining == 0) {
+              end(null);
+            }
+            break;
+          default:
+            if (readLine()) {
+              line(line.toString());
+              line.setLength(0);
+            }
+            break;
+        }
+      }
+    }
+
+    /**
+     * @return Whether a whole line has been read.
+     */
+    private boolean readLine() throws DockerException {
+      while (in.hasRemaining()) {
+        final byte b = in.get();
+        if (b == '\n') {
+          if (line.length() > 0 && line.charAt(line.length() - 1) == '\r') {
+            line.setLength(line.length() - 1);
+          }
+          return true;
+        }
+        if (line.length() >= MAX_LINE_LENGTH) {
+          throw new DockerException("Malformed response: " + uri);
+        }
+        line.append((char) (b & 0xff));
+      }
+      return false;
+    }
+
+    private void line(final String line) throws DockerException {
+      switch (state) {
+        case STATUS_LINE:
+          final String[] parts = line.split(" ", 3);
+          try {
+            status = Integer.parseInt(parts[1]);
+          } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new DockerException("Malformed response: " + uri);
+          }
+          state = State.HEADERS;
+          break;
+        case HEADERS:
+          if (line.isEmpty()) {
+            headersRead();
+          } else {
+            header(line);
+          }
+          break;
+        case CHUNK_SIZE:
+          final int semicolon = line.indexOf(';');
+          try {
+            remaining = Long.parseLong(
+                (semicolon < 0 ? line : line.substring(0, semicolon)).trim(), 16);
+          } catch (NumberFormatException e) {
+            throw new DockerException("Malformed chunk size: " + uri);
+          }
+          if (remaining < 0) {
+            throw new DockerException("Malformed chunk size: " + uri);
+          }
+          if (remaining == 0) {
+            end(null);
+          } else {
+            state = State.CHUNK_DATA;
+          }
+          break;
+        case CHUNK_END:
+          state = State.CHUNK_SIZE;
+          break;
+        default:
+          throw new IllegalStateException(state.toString());
+      }
+    }
+
+    private void header(final String line) throws DockerException {
+      final int colon = line.indexOf(':');
+      if (colon < 0) {
+        return;
+      }
+      final String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+      final String value = line.substring(colon + 1).trim();
+      switch (name) {
+        case "transfer-encoding":
+          chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+          break;
+        case "content-length":
+          try {
+            remaining = Long.parseLong(value);
+          } catch (NumberFormatException e) {
+            throw new DockerException("Malformed content length: " + uri);
+          }
+          if (remaining < 0) {
+            throw new DockerException("Malformed content length: " + uri);
+          }
+          break;
+        case "content-type":
+          contentType = value;
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void headersRead() throws DockerException {
+      if (status == 404) {
+        throw new ContainerNotFoundException(containerId);
+      }
+      if (status != 200) {
+        throw new DockerRequestException("GET", uri, status);
+      }
+      tty = LogsResponseReader.tty(mediaType(contentType), apiVersion);
+      if (chunked) {
+        state = State.CHUNK_SIZE;
+        remaining = -1;
+      } else {
+        state = State.BODY;
+      }
+    }
+
+    /**
+     * Decode frames from the next bytes of the body.
+     */
+    private void body(final int length) throws DockerException {
+      final int end = in.position() + length;
+      if (remaining > 0) {
+        remaining -= length;
+      }
+      while (in.position() < end && !ended) {
+        if (Boolean.TRUE.equals(tty)) {
+          emit(Stream.STDOUT, copy(in, end - in.position()));
+          return;
+        }
+
+        if (frame == null) {
+          while (header.hasRemaining() && in.position() < end) {
+            header.put(in.get());
+          }
+          if (header.hasRemaining()) {
+            return;
+          }
+          final int idZ = header.getInt(0);
+          if (!LogReader.isHeader(idZ)) {
+            if (tty != null) {
+              throw new DockerException("Invalid frame header: " + uri);
+            }
+            // No header, so the container has a TTY
+            tty = true;
+            flip(header);
+            emit(Stream.STDOUT, copy(header, header.remaining()));
+            ((Buffer) header).clear();
+            continue;
+          }
+          final int frameSize = header.getInt(LogReader.FRAME_SIZE_OFFSET);
+          if (frameSize < 0 || frameSize > MAX_FRAME_SIZE) {
+            throw new DockerException("Invalid frame header: " + uri);
+          }
+          tty = false;
+          frameStream = Stream.of(idZ >>> 24);
+          frame = ByteBuffer.allocate(frameSize);
+          ((Buffer) header).clear();
+        }
+
+        final int count = Math.min(frame.remaining(), end - in.position());
+        final ByteBuffer slice = in.duplicate();
+        ((Buffer) slice).limit(in.position() + count);
+        frame.put(slice);
+        ((Buffer) in).position(in.position() + count);
+        if (!frame.hasRemaining()) {
+          flip(frame);
+          emit(frameStream, frame);
+          frame = null;
+        }
+      }
+    }
+
+    private void emit(final Stream stream, final ByteBuffer content) {
+      final LogMessage message = new LogMessage(stream, content);
+      if (listener != null) {
+        try {
+          listener.message(containerId, message);
+        } catch (RuntimeException e) {
+          log.warn("Log aggregator listener failed", e);
+        }
+        return;
+      }
+
+      queue.add(new Entry(containerId, message, null, this));
+      if (pending.incrementAndGet() >= containerCapacity) {
+        throttled.set(true);
+        // Unless the consumer caught up in the meantime, without seeing the flag
+        if (pending.get() <= containerCapacity / 2 && throttled.compareAndSet(true, false)) {
+          return;
+        }
+        updateInterest();
+      }
+    }
+
+    /**
+     * Called by the consumer when it took a message from the queue.
+     */
+    private void taken() {
+      if (pending.decrementAndGet() <= containerCapacity / 2
+          && throttled.compareAndSet(true, false)) {
+        updateInterest();
+      }
+    }
+
+    private void updateInterest() {
+      if (Thread.currentThread() == worker.thread) {
+        applyInterest();
+        return;
+      }
+      worker.execute(new Runnable() {
+        @Override
+        public void run() {
+          applyInterest();
+        }
+      });
+    }
+
+    private void applyInterest() {
+      if (reading && !ended && key.isValid()) {
+        key.interestOps((paused || throttled.get()) ? 0 : SelectionKey.OP_READ);
+      }
+    }
+
+    private void end(final DockerException error) {
+      if (ended) {
+        return;
+      }
+      ended = true;
+      follows.remove(containerId, this);
+      if (key != null) {
+        key.cancel();
+      }
+      if (channel != null) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          log.debug("Failed to close logs of container {}", containerId, e);
+        }
+      }
+      if (in != null) {
+        ByteBufferPool.LOG_BUFFERS.release(in);
+        in = null;
+      }
+
+      if (error != null) {
+        log.debug("Logs of container {} failed: {}", containerId, error.toString());
+      }
+      if (listener != null) {
+        try {
+          listener.ended(containerId, error);
+        } catch (RuntimeException e) {
+          log.warn("Log aggregator listener failed", e);
+        }
+      } else {
+        queue.add(new Entry(containerId, null, error, null));
+      }
+    }
+  }
+
+  private static MediaType mediaType(final String contentType) {
+    if (contentType == null) {
+      return null;
+    }
+    final String type = contentType.split(";", 2)[0].trim();
+    final int slash = type.indexOf('/');
+    return (slash < 0) ? null : new MediaType(type.substring(0, slash), type.substring(slash + 1));
+  }
+
+  private static ByteBuffer copy(final ByteBuffer source, final int length) {
+    final ByteBuffer copy = ByteBuffer.allocate(length);
+    final ByteBuffer slice = source.duplicate();
+    ((Buffer) slice).limit(source.position() + length);
+    copy.put(slice);
+    ((Buffer) source).position(source.position() + length);
+    flip(copy);
+    return copy;
+  }
+
+  private static void flip(final Buffer buffer) {
+    // Through Buffer, as ByteBuffer only overrides this method as of Java 9
+    buffer.flip();
+  }
+
+  public static class Builder {
+
+    private final URI socketUri;
+    private String apiVersion;
+    private int selectorThreads = DEFAULT_SELECTOR_THREADS;
+    private int containerCapacity = DEFAULT_CONTAINER_CAPACITY;
+    private Listener listener;
+
+    private Builder(final URI socketUri) {
+      checkArgument("unix".equals(socketUri.getScheme()), "Not a unix socket URI: %s", socketUri);
+      this.socketUri = socketUri;
+    }
+
+    /**
+     * @param apiVersion The API version to request logs with, e.g. v1.22. By default none is given
+     *                   and the daemon uses its own.
+     * @return Builder
+     */
+    public Builder apiVersion(final String apiVersion) {
+      this.apiVersion = apiVersion;
+      return this;
+    }
+
+    /**
+     * @param selectorThreads The number of threads reading the logs of all containers.
+     * @return Builder
+     */
+    public Builder selectorThreads(final int selectorThreads) {
+      checkArgument(selectorThreads > 0, "selectorThreads must be positive");
+      this.selectorThreads = selectorThreads;
+      return this;
+    }
+
+    /**
+     * Set the number of messages of a container that may be waiting in the queue before its logs
+     * are not read anymore. A few more may be queued, from data that was already read.
+     *
+     * @param containerCapacity Maximum number of queued messages per container
+     * @return Builder
+     */
+    public Builder containerCapacity(final int containerCapacity) {
+      checkArgument(containerCapacity > 0, "containerCapacity must be positive");
+      this.containerCapacity = containerCapacity;
+      return this;
+    }
+
+    /**
+     * Hand messages to a listener rather than putting them in the queue.
+     *
+     * @param listener Listener called on the selector threads.
+     * @return Builder
+     */
+    public Builder listener(final Listener listener) {
+      this.listener = checkNotNull(listener, "listener");
+      return this;
+    }
+
+    public LogAggregator build() throws IOException {
+      return new LogAggregator(this);
+    }
+  }
+}
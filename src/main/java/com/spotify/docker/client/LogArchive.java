@@ -0,0 +1,753 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Keeps the logs of containers on disk, so that the logs of a time range can still be read after
+ * the container is gone, without asking the daemon again.
+ *
+ * <pre>
+ * LogArchive archive = LogArchive.builder(Paths.get("/var/lib/container-logs")).build();
+ * archive.append(id, docker.logs(id, stdout(), stderr(), timestamps(), follow()));
+ * ...
+ * List&lt;LogArchive.Record&gt; records = archive.read(id, fromNanos, toNanos);
+ * </pre>
+ *
+ * <p>The lines of a container are appended to segment files in a directory of its own. A segment
+ * is rolled once it reaches {@code segmentBytes} or spans {@code segmentMillis}, and the oldest
+ * segments are deleted by {@link #enforceRetention()}, which also runs whenever a segment is
+ * rolled. Every {@code indexIntervalBytes} the timestamp and position of a line are added to an
+ * index next to the segment, so a range is read by looking up where it starts and scanning the
+ * memory mapped segment from there. Ranges are looked up assuming that the timestamps of a
+ * container's lines do not decrease, which is the order the daemon logs them in.</p>
+ *
+ * <p>A segment left with a partly written line by a crash is repaired when the archive is
+ * opened.</p>
+ */
+public class LogArchive implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(LogArchive.class);
+
+  public static final long DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+  public static final long DEFAULT_SEGMENT_MILLIS = TimeUnit.HOURS.toMillis(1);
+  public static final int DEFAULT_INDEX_INTERVAL_BYTES = 4096;
+
+  // A record is the timestamp in nanoseconds, the stream id, the length of the content and the
+  // content. The stream id is or'ed with PARTIAL for all but the last part of a line that was cut.
+  static final int RECORD_HEADER_SIZE = 8 + 1 + 4;
+  private static final int PARTIAL = 0x80;
+  // An index entry is the timestamp and position of a record
+  private static final int INDEX_ENTRY_SIZE = 8 + 4;
+
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String INDEX_SUFFIX = ".idx";
+
+  private final Path directory;
+  private final long segmentBytes;
+  private final long segmentNanos;
+  private final int indexIntervalBytes;
+  private final long retentionMillis;
+  private final long maxBytesPerContainer;
+  private final int maxLineLength;
+
+  private final ConcurrentMap<String, ContainerLog> logs = new ConcurrentHashMap<>();
+  private volatile boolean closed;
+
+  private LogArchive(final Builder builder) throws IOException {
+    this.directory = builder.directory;
+    this.segmentBytes = builder.segmentBytes;
+    this.segmentNanos = MILLISECONDS.toNanos(builder.segmentMillis);
+    this.indexIntervalBytes = builder.indexIntervalBytes;
+    this.retentionMillis = builder.retentionMillis;
+    this.maxBytesPerContainer = builder.maxBytesPerContainer;
+    this.maxLineLength = builder.maxLineLength;
+
+    Files.createDirectories(directory);
+    try (DirectoryStream<Path> containers = Files.newDirectoryStream(directory)) {
+      for (final Path path : containers) {
+        if (Files.isDirectory(path)) {
+          final String containerId = URLDecoder.decode(path.getFileName().toString(), "UTF-8");
+          final ContainerLog containerLog = new ContainerLog(path);
+          containerLog.load();
+          logs.put(containerId, containerLog);
+        }
+      }
+    }
+  }
+
+  public static Builder builder(final Path directory) {
+    return new Builder(directory);
+  }
+
+  /**
+   * @return The ids of the containers that have logs in the archive.
+   */
+  public Set<String> containers() {
+    final ImmutableSet.Builder<String> containers = ImmutableSet.builder();
+    for (final Map.Entry<String, ContainerLog> entry : logs.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        containers.add(entry.getKey());
+      }
+    }
+    return containers.build();
+  }
+
+  /**
+   * Append the logs of a container until the stream ends. The logs must have been requested with
+   * {@link DockerClient.LogsParam#timestamps()}. The stream is closed when done.
+   *
+   * @return The number of lines appended.
+   * @throws IllegalArgumentException If a line does not start with a timestamp.
+   */
+  public long append(final String containerId, final LogStream stream) throws IOException {
+    final ContainerLog containerLog = containerLog(containerId);
+    final CharsetEncoder encoder = UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // Large enough for a whole line, so encoding never overflows
+    final ByteBuffer bytes = ByteBuffer.allocate(
+        (int) Math.ceil(maxLineLength * (double) encoder.maxBytesPerChar()));
+    // The timestamp of the line each stream is in the middle of, if it was cut off
+    final long[] continued = new long[Stream.values().length];
+    Arrays.fill(continued, Timestamps.INVALID);
+
+    long count = 0;
+    final LogLineStream lines = stream.lines(maxLineLength);
+    try {
+      while (lines.hasNext()) {
+        final LogLine line = lines.next();
+        final CharBuffer content = line.content();
+        long timestamp = continued[line.stream().ordinal()];
+        if (timestamp == Timestamps.INVALID) {
+          final int space = Timestamps.spaceAfter(content);
+          timestamp = (space < 0) ? Timestamps.INVALID : Timestamps.parseNanos(content, 0, space);
+          checkArgument(timestamp != Timestamps.INVALID,
+                        "Log line without a timestamp, request the logs with timestamps()");
+          ((Buffer) content).position(space + 1);
+        }
+        continued[line.stream().ordinal()] = line.partial() ? timestamp : Timestamps.INVALID;
+
+        ((Buffer) bytes).clear();
+        encoder.reset();
+        encoder.encode(content, bytes, true);
+        encoder.flush(bytes);
+        ((Buffer) bytes).flip();
+        containerLog.append(line.stream(), line.partial(), timestamp, bytes);
+        count++;
+      }
+    } finally {
+      lines.close();
+    }
+    return count;
+  }
+
+  /**
+   * Append a line of a container.
+   *
+   * @param timestampNanos The time the line was logged, in nanoseconds since the epoch.
+   * @param content        The line, without a line feed.
+   */
+  public void append(final String containerId, final Stream stream, final long timestampNanos,
+                     final ByteBuffer content) throws IOException {
+    containerLog(containerId).append(checkNotNull(stream, "stream"), false, timestampNanos,
+                                     content.duplicate());
+  }
+
+  /**
+   * Read the lines of a container logged in a time range.
+   *
+   * @param fromNanos The start of the range in nanoseconds since the epoch, inclusive.
+   * @param toNanos   The end of the range in nanoseconds since the epoch, exclusive.
+   * @return The lines in the order they were appended. Their content is a view of the archive,
+   *         which stays valid after the lines are deleted by {@link #enforceRetention()}.
+   */
+  public List<Record> read(final String containerId, final long fromNanos, final long toNanos)
+      throws IOException {
+    checkState(!closed, "Archive is closed");
+    final ContainerLog containerLog = logs.get(containerId);
+    if (containerLog == null || fromNanos >= toNanos) {
+      return ImmutableList.of();
+    }
+    return containerLog.read(fromNanos, toNanos);
+  }
+
+  /**
+   * Delete the segments that are older than {@code retentionMillis}, then the oldest segments of
+   * containers with more than {@code maxBytesPerContainer} in the archive.
+   */
+  public void enforceRetention() throws IOException {
+    final long now = System.currentTimeMillis();
+    for (final ContainerLog containerLog : logs.values()) {
+      containerLog.enforceRetention(now);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    for (final ContainerLog containerLog : logs.values()) {
+      containerLog.close();
+    }
+  }
+
+  private ContainerLog containerLog(final String containerId) throws IOException {
+    checkState(!closed, "Archive is closed");
+    ContainerLog containerLog = logs.get(checkNotNull(containerId, "containerId"));
+    if (containerLog == null) {
+      containerLog = new ContainerLog(directory.resolve(URLEncoder.encode(containerId, "UTF-8")));
+      final ContainerLog existing = logs.putIfAbsent(containerId, containerLog);
+      if (existing != null) {
+        containerLog = existing;
+      }
+    }
+    return containerLog;
+  }
+
+  /**
+   * A line read back from the archive.
+   */
+  public static class Record extends LogMessage {
+
+    private final long timestamp;
+    private final boolean partial;
+
+    private Record(final Stream stream, final ByteBuffer content, final long timestamp,
+                   final boolean partial) {
+      super(stream, content);
+      this.timestamp = timestamp;
+      this.partial = partial;
+    }
+
+    /**
+     * @return The time the line was logged, in nanoseconds since the epoch.
+     */
+    public long timestamp() {
+      return timestamp;
+    }
+
+    /**
+     * @return Whether the line was cut off, and continues in the next record of the same stream.
+     */
+    public boolean partial() {
+      return partial;
+    }
+  }
+
+  /**
+   * The segments of a container. The last segment is the one appended to.
+   */
+  private class ContainerLog {
+
+    private final Path directory;
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+    private final ByteBuffer indexEntry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+
+    // Guarded by this
+    private final List<Segment> segments = newArrayList();
+    private FileChannel channel;
+    private FileChannel indexChannel;
+
+    private ContainerLog(final Path directory) {
+      this.directory = directory;
+    }
+
+    private synchronized boolean isEmpty() {
+      return segments.isEmpty();
+    }
+
+    private synchronized void load() throws IOException {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                                                                  "*" + SEGMENT_SUFFIX)) {
+        for (final Path file : files) {
+          final String name = file.getFileName().toString();
+          try {
+            segments.add(new Segment(
+                directory, Long.parseLong(name.substring(0, name.indexOf(SEGMENT_SUFFIX)))));
+          } catch (NumberFormatException e) {
+            log.warn("Ignoring unknown file in log archive: {}", file);
+          }
+        }
+      }
+      Collections.sort(segments);
+      for (final Segment segment : segments) {
+        recover(segment);
+      }
+    }
+
+    /**
+     * Load the index of a segment, and check the records after the last indexed one. Records
+     * that were not indexed yet are, and a record cut off by a crash is dropped.
+     */
+    private void recover(final Segment segment) throws IOException {
+      try (FileChannel file = FileChannel.open(segment.file, READ, WRITE);
+           FileChannel index = FileChannel.open(segment.indexFile, READ, WRITE, CREATE)) {
+        final long size = file.size();
+        final ByteBuffer entries = ByteBuffer.allocate(
+            (int) (index.size() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE));
+        readFully(index, entries, 0);
+        ((Buffer) entries).flip();
+        while (entries.hasRemaining()) {
+          final long nanos = entries.getLong();
+          final int position = entries.getInt();
+          if (position >= size
+              || (segment.indexSize > 0 && position <= segment.lastIndexedPosition())) {
+            break;
+          }
+          segment.index(nanos, position);
+        }
+
+        long position = (segment.indexSize == 0) ? 0 : segment.lastIndexedPosition();
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= size) {
+          ((Buffer) record).clear();
+          readFully(file, record, position);
+          final long nanos = record.getLong(0);
+          final int streamId = (record.get(8) & 0xff) & ~PARTIAL;
+          final int length = record.getInt(9);
+          if (streamId > Stream.STDERR.id() || length < 0
+              || position + RECORD_HEADER_SIZE + length > size) {
+            break;
+          }
+          if (segment.indexSize == 0
+              || position - segment.lastIndexedPosition() >= indexIntervalBytes) {
+            segment.index(nanos, (int) position);
+          }
+          segment.lastNanos = nanos;
+          position += RECORD_HEADER_SIZE + length;
+        }
+        if (position < size) {
+          log.warn("Dropping {} bytes of a partly written line from {}", size - position,
+                   segment.file);
+          file.truncate(position);
+        }
+        segment.size = position;
+
+        final ByteBuffer rewritten = ByteBuffer.allocate(segment.indexSize * INDEX_ENTRY_SIZE);
+        for (int i = 0; i < segment.indexSize; i++) {
+          rewritten.putLong(segment.indexNanos[i]).putInt(segment.indexPositions[i]);
+        }
+        ((Buffer) rewritten).flip();
+        index.truncate(0);
+        writeFully(index, 0, rewritten);
+      }
+    }
+
+    private synchronized void append(final Stream stream, final boolean partial,
+                                     final long nanos, final ByteBuffer content)
+        throws IOException {
+      checkState(!closed, "Archive is closed");
+      final int recordSize = RECORD_HEADER_SIZE + content.remaining();
+      checkArgument(recordSize <= segmentBytes, "Line does not fit in a segment");
+
+      Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+      if (segment == null
+          || (segment.size > 0 && (segment.size + recordSize > segmentBytes
+                                   || nanos - segment.baseNanos >= segmentNanos))) {
+        segment = roll(nanos);
+      } else if (channel == null) {
+        open(segment);
+      }
+
+      try {
+        ((Buffer) header).clear();
+        header.putLong(nanos).put((byte) (stream.id() | (partial ? PARTIAL : 0)))
+            .putInt(content.remaining());
+        ((Buffer) header).flip();
+        writeFully(channel, segment.size, header, content);
+
+        if (segment.indexSize == 0
+            || segment.size - segment.lastIndexedPosition() >= indexIntervalBytes) {
+          ((Buffer) indexEntry).clear();
+          indexEntry.putLong(nanos).putInt((int) segment.size);
+          ((Buffer) indexEntry).flip();
+          writeFully(indexChannel, (long) segment.indexSize * INDEX_ENTRY_SIZE, indexEntry);
+          segment.index(nanos, (int) segment.size);
+        }
+      } catch (IOException e) {
+        // Reopened on the next append, dropping whatever part was written
+        closeChannels();
+        throw e;
+      }
+      segment.size += recordSize;
+      segment.lastNanos = nanos;
+    }
+
+    private Segment roll(final long nanos) throws IOException {
+      closeChannels();
+      enforceRetention(System.currentTimeMillis());
+
+      // Segments are named after their first timestamp, which must be unique
+      final long base = segments.isEmpty()
+                        ? nanos
+                        : Math.max(nanos, segments.get(segments.size() - 1).baseNanos + 1);
+      Files.createDirectories(directory);
+      final Segment segment = new Segment(directory, base);
+      open(segment);
+      segments.add(segment);
+      return segment;
+    }
+
+    private void open(final Segment segment) throws IOException {
+      channel = FileChannel.open(segment.file, WRITE, CREATE);
+      indexChannel = FileChannel.open(segment.indexFile, WRITE, CREATE);
+      channel.truncate(segment.size);
+      indexChannel.truncate((long) segment.indexSize * INDEX_ENTRY_SIZE);
+    }
+
+    private List<Record> read(final long fromNanos, final long toNanos) throws IOException {
+      final List<Segment> range = newArrayList();
+      final List<Long> sizes = newArrayList();
+      final int start;
+      synchronized (this) {
+        // The range starts in the last segment that starts before it
+        int first = 0;
+        for (int i = 1; i < segments.size(); i++) {
+          if (segments.get(i).baseNanos < fromNanos) {
+            first = i;
+          }
+        }
+        for (final Segment segment : segments.subList(first, segments.size())) {
+          range.add(segment);
+          sizes.add(segment.size);
+        }
+        start = range.isEmpty() ? 0 : range.get(0).floor(fromNanos);
+      }
+
+      final List<Record> records = newArrayList();
+      for (int i = 0; i < range.size(); i++) {
+        final int size = sizes.get(i).intValue();
+        final ByteBuffer buffer;
+        try {
+          buffer = range.get(i).map(size);
+        } catch (NoSuchFileException e) {
+          // Deleted by retention in the meantime
+          continue;
+        }
+        int position = (i == 0) ? start : 0;
+        while (position + RECORD_HEADER_SIZE <= size) {
+          final long nanos = buffer.getLong(position);
+          final int length = buffer.getInt(position + 9);
+          if (nanos >= toNanos) {
+            return records;
+          }
+          if (nanos >= fromNanos) {
+            final int flags = buffer.get(position + 8) & 0xff;
+            final ByteBuffer content = buffer.duplicate();
+            ((Buffer) content).limit(position + RECORD_HEADER_SIZE + length);
+            ((Buffer) content).position(position + RECORD_HEADER_SIZE);
+            records.add(new Record(Stream.of(flags & ~PARTIAL), content.slice(), nanos,
+                                   (flags & PARTIAL) != 0));
+          }
+          position += RECORD_HEADER_SIZE + length;
+        }
+      }
+      return records;
+    }
+
+    private synchronized void enforceRetention(final long nowMillis) throws IOException {
+      final long cutoff = (retentionMillis > 0)
+                          ? MILLISECONDS.toNanos(nowMillis - retentionMillis)
+                          : Long.MIN_VALUE;
+      long total = 0;
+      for (final Segment segment : segments) {
+        total += segment.size;
+      }
+      while (!segments.isEmpty()) {
+        final Segment oldest = segments.get(0);
+        final boolean expired = oldest.lastNanos < cutoff;
+        // The segment appended to is kept unless all of it expired
+        final boolean full = maxBytesPerContainer > 0 && total > maxBytesPerContainer
+                             && segments.size() > 1;
+        if (!expired && !full) {
+          break;
+        }
+        if (segments.size() == 1) {
+          closeChannels();
+        }
+        segments.remove(0);
+        total -= oldest.size;
+        Files.deleteIfExists(oldest.file);
+        Files.deleteIfExists(oldest.indexFile);
+      }
+      if (segments.isEmpty()) {
+        try {
+          Files.deleteIfExists(directory);
+        } catch (IOException e) {
+          log.debug("Failed to delete {}: {}", directory, e.toString());
+        }
+      }
+    }
+
+    private synchronized void close() {
+      closeChannels();
+    }
+
+    private void closeChannels() {
+      for (final FileChannel fileChannel : new FileChannel[]{channel, indexChannel}) {
+        if (fileChannel != null) {
+          try {
+            fileChannel.close();
+          } catch (IOException e) {
+            log.debug("Failed to close log archive segment", e);
+          }
+        }
+      }
+      channel = null;
+      indexChannel = null;
+    }
+  }
+
+  /**
+   * A segment file and its index. Written under the lock of its {@link ContainerLog}, the index
+   * is only ever added to, so a copy of its arrays and size can be read without the lock.
+   */
+  private static class Segment implements Comparable<Segment> {
+
+    private final Path file;
+    private final Path indexFile;
+    private final long baseNanos;
+
+    private long size;
+    private long lastNanos = Long.MIN_VALUE;
+    private long[] indexNanos = new long[16];
+    private int[] indexPositions = new int[16];
+    private int indexSize;
+
+    // Guarded by this
+    private MappedByteBuffer mapped;
+
+    private Segment(final Path directory, final long baseNanos) {
+      final String name = String.format(Locale.ROOT, "%020d", baseNanos);
+      this.file = directory.resolve(name + SEGMENT_SUFFIX);
+      this.indexFile = directory.resolve(name + INDEX_SUFFIX);
+      this.baseNanos = baseNanos;
+    }
+
+    private void index(final long nanos, final int position) {
+      if (indexSize == indexNanos.length) {
+        indexNanos = Arrays.copyOf(indexNanos, indexSize * 2);
+        indexPositions = Arrays.copyOf(indexPositions, indexSize * 2);
+      }
+      indexNanos[indexSize] = nanos;
+      indexPositions[indexSize] = position;
+      indexSize++;
+    }
+
+    private int lastIndexedPosition() {
+      return indexPositions[indexSize - 1];
+    }
+
+    /**
+     * @return The position of the last indexed record before a time, or 0.
+     */
+    private int floor(final long nanos) {
+      int low = 0;
+      int high = indexSize - 1;
+      int floor = 0;
+      while (low <= high) {
+        final int mid = (low + high) >>> 1;
+        if (indexNanos[mid] < nanos) {
+          floor = indexPositions[mid];
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return floor;
+    }
+
+    /**
+     * Map the first {@code size} bytes of the segment. The mapping is kept until the segment
+     * has grown past it.
+     */
+    private synchronized ByteBuffer map(final int size) throws IOException {
+      if (mapped == null || mapped.capacity() < size) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+          mapped = channel.map(READ_ONLY, 0, size);
+        }
+      }
+      return mapped.duplicate();
+    }
+
+    @Override
+    public int compareTo(final Segment other) {
+      return Long.compare(baseNanos, other.baseNanos);
+    }
+  }
+
+  private static void readFully(final FileChannel channel, final ByteBuffer buffer,
+                                final long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+  }
+
+  private static void writeFully(final FileChannel channel, final long position,
+                                 final ByteBuffer... buffers) throws IOException {
+    long offset = position;
+    for (final ByteBuffer buffer : buffers) {
+      while (buffer.hasRemaining()) {
+        offset += channel.write(buffer, offset);
+      }
+    }
+  }
+
+  public static class Builder {
+
+    private final Path directory;
+    private long segmentBytes = DEFAULT_SEGMENT_BYTES;
+    private long segmentMillis = DEFAULT_SEGMENT_MILLIS;
+    private int indexIntervalBytes = DEFAULT_INDEX_INTERVAL_BYTES;
+    private long retentionMillis;
+    private long maxBytesPerContainer;
+    private int maxLineLength = LogLineStream.DEFAULT_MAX_LINE_LENGTH;
+
+    private Builder(final Path directory) {
+      this.directory = checkNotNull(directory, "directory");
+    }
+
+    /**
+     * Set the size at which a segment is rolled.
+     *
+     * @param segmentBytes Maximum size of a segment
+     * @return Builder
+     */
+    public Builder segmentBytes(final long segmentBytes) {
+      checkArgument(segmentBytes > RECORD_HEADER_SIZE && segmentBytes <= Integer.MAX_VALUE,
+                    "segmentBytes must be between %s and %s", RECORD_HEADER_SIZE + 1,
+                    Integer.MAX_VALUE);
+      this.segmentBytes = segmentBytes;
+      return this;
+    }
+
+    /**
+     * Set the time span at which a segment is rolled. Retention deletes whole segments, so this
+     * is how precisely retention is applied.
+     *
+     * @param segmentMillis Maximum time between the first and last line of a segment
+     * @return Builder
+     */
+    public Builder segmentMillis(final long segmentMillis) {
+      checkArgument(segmentMillis > 0, "segmentMillis must be positive");
+      this.segmentMillis = segmentMillis;
+      return this;
+    }
+
+    /**
+     * Set the number of bytes between index entries. A smaller interval means a larger index and
+     * less scanning to find where a range starts.
+     *
+     * @param indexIntervalBytes Bytes between index entries
+     * @return Builder
+     */
+    public Builder indexIntervalBytes(final int indexIntervalBytes) {
+      checkArgument(indexIntervalBytes > 0, "indexIntervalBytes must be positive");
+      this.indexIntervalBytes = indexIntervalBytes;
+      return this;
+    }
+
+    /**
+     * Set how long logs are kept. By default they are kept until deleted for size.
+     *
+     * @param retentionMillis Time after which logs are deleted, or 0 to keep them
+     * @return Builder
+     */
+    public Builder retentionMillis(final long retentionMillis) {
+      checkArgument(retentionMillis >= 0, "retentionMillis must not be negative");
+      this.retentionMillis = retentionMillis;
+      return this;
+    }
+
+    /**
+     * Set how many bytes of logs are kept per container. By default there is no limit.
+     *
+     * @param maxBytesPerContainer Size above which the oldest logs are deleted, or 0
+     * @return Builder
+     */
+    public Builder maxBytesPerContainer(final long maxBytesPerContainer) {
+      checkArgument(maxBytesPerContainer >= 0, "maxBytesPerContainer must not be negative");
+      this.maxBytesPerContainer = maxBytesPerContainer;
+      return this;
+    }
+
+    /**
+     * Set the number of characters after which a line appended from a {@link LogStream} is
+     * split into several records.
+     *
+     * @param maxLineLength Maximum line length, at least 2
+     * @return Builder
+     * @see LogStream#lines(int)
+     */
+    public Builder maxLineLength(final int maxLineLength) {
+      checkArgument(maxLineLength > 1, "maxLineLength must be greater than 1");
+      this.maxLineLength = maxLineLength;
+      return this;
+    }
+
+    public LogArchive build() throws IOException {
+      return new LogArchive(this);
+    }
+  }
+}
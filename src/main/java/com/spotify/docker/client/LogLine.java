@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import java.nio.CharBuffer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A line of output of a container, without the line feed that ended it.
+ */
+public class LogLine {
+
+  final Stream stream;
+  final CharBuffer content;
+  final boolean partial;
+
+  public LogLine(final Stream stream, final CharSequence content, final boolean partial) {
+    this.stream = checkNotNull(stream, "stream");
+    this.content = CharBuffer.wrap(checkNotNull(content, "content"));
+    this.partial = partial;
+  }
+
+  public Stream stream() {
+    return stream;
+  }
+
+  public CharBuffer content() {
+    return content.asReadOnlyBuffer();
+  }
+
+  /**
+   * @return Whether the line was cut off at the maximum line length, and continues in the next
+   *         line of the same stream.
+   */
+  public boolean partial() {
+    return partial;
+  }
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.AbstractIterator;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import java.io.Closeable;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * The output of a container as lines, per stream. Obtained from {@link LogStream#lines()}.
+ *
+ * <p>Output is decoded as UTF-8 as it is read, with a decoder per stream, so characters that span
+ * frames are decoded correctly and lines from stdout and stderr are not mixed up. Lines longer than
+ * the maximum line length are returned in parts, see {@link LogLine#partial()}.</p>
+ */
+public class LogLineStream extends AbstractIterator<LogLine> implements Closeable {
+
+  public static final int DEFAULT_MAX_LINE_LENGTH = 16 * 1024;
+
+  private final LogStream logStream;
+  private final int maxLineLength;
+  private final Map<Stream, Lines> lines = new EnumMap<>(Stream.class);
+
+  private boolean reuseBuffers;
+  private boolean started;
+  private boolean endOfInput;
+
+  // The stream whose lines are being returned, and what is left of its current message
+  private Lines current;
+  private ByteBuffer input;
+
+  LogLineStream(final LogStream logStream, final int maxLineLength) {
+    checkArgument(maxLineLength > 1, "maxLineLength must be greater than 1");
+    this.logStream = logStream;
+    this.maxLineLength = maxLineLength;
+  }
+
+  /**
+   * Decode into buffers that are reused. Every {@link LogLine} returned by {@link #next()} of a
+   * stream is then the same object, and it and its content are only valid until the next call to
+   * {@link #hasNext()} or {@link #next()}. Copy whatever needs to be kept.
+   *
+   * <p>Must be called before reading any lines.</p>
+   *
+   * @return This stream.
+   */
+  public LogLineStream reuseBuffers() {
+    checkState(!started, "Lines have already been read");
+    reuseBuffers = true;
+    return this;
+  }
+
+  @Override
+  protected LogLine computeNext() {
+    started = true;
+    while (true) {
+      if (current != null) {
+        final LogLine line = current.nextLine();
+        if (line != null) {
+          return line;
+        }
+        if (input != null) {
+          if (current.decode(input)) {
+            input = null;
+          }
+          continue;
+        }
+      }
+
+      if (endOfInput) {
+        // Whatever is left without a line feed at the end
+        for (final Lines remaining : lines.values()) {
+          final LogLine line = remaining.lastLine();
+          if (line != null) {
+            current = null;
+            return line;
+          }
+        }
+        return endOfData();
+      }
+
+      if (logStream.hasNext()) {
+        final LogMessage message = logStream.next();
+        current = lines(message.stream());
+        input = message.content();
+      } else {
+        endOfInput = true;
+        for (final Lines remaining : lines.values()) {
+          remaining.finish();
+        }
+      }
+    }
+  }
+
+  private Lines lines(final Stream stream) {
+    Lines streamLines = lines.get(stream);
+    if (streamLines == null) {
+      streamLines = new Lines(stream);
+      lines.put(stream, streamLines);
+    }
+    return streamLines;
+  }
+
+  @Override
+  public void close() {
+    logStream.close();
+  }
+
+  /**
+   * The decoding state of one stream.
+   */
+  private class Lines {
+
+    private final Stream stream;
+    private final CharsetDecoder decoder = UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // Room for one more character than a line may have, so a surrogate pair always fits
+    private final CharBuffer chars = CharBuffer.allocate(maxLineLength + 1);
+    // The bytes of a character that is split between messages
+    private final ByteBuffer carry = ByteBuffer.allocate(16);
+    private final ReusedLogLine line;
+
+    // Decoded characters are in chars, from start to its position. Up to scanned there is no line
+    // feed.
+    private int start;
+    private int scanned;
+
+    private Lines(final Stream stream) {
+      this.stream = stream;
+      this.line = reuseBuffers ? new ReusedLogLine(stream, chars) : null;
+    }
+
+    /**
+     * Decode as much of the input as fits.
+     *
+     * @return Whether the input is used up. The bytes of an incomplete character at the end are
+     *         kept for the next message.
+     */
+    private boolean decode(final ByteBuffer input) {
+      compact();
+      while (carry.position() > 0 && input.hasRemaining() && chars.remaining() >= 2) {
+        carry.put(input.get());
+        flip(carry);
+        decoder.decode(carry, chars, false);
+        carry.compact();
+      }
+      if (chars.remaining() < 2) {
+        return false;
+      }
+      final CoderResult result = decoder.decode(input, chars, false);
+      if (result.isOverflow()) {
+        return false;
+      }
+      carry.put(input);
+      return true;
+    }
+
+    /**
+     * Decode what is left once there is no more input.
+     */
+    private void finish() {
+      compact();
+      flip(carry);
+      decoder.decode(carry, chars, true);
+      decoder.flush(chars);
+      ((Buffer) carry).clear();
+    }
+
+    private LogLine nextLine() {
+      final int end = chars.position();
+      for (int i = scanned; i < end; i++) {
+        if (chars.get(i) == '\n') {
+          final LogLine next = line(start, i, false);
+          start = i + 1;
+          scanned = start;
+          return next;
+        }
+      }
+      scanned = end;
+
+      if (end - start >= maxLineLength) {
+        int cut = start + maxLineLength;
+        if (Character.isHighSurrogate(chars.get(cut - 1))) {
+          cut--;
+        }
+        final LogLine next = line(start, cut, true);
+        start = cut;
+        return next;
+      }
+      return null;
+    }
+
+    private LogLine lastLine() {
+      final LogLine next = nextLine();
+      if (next != null || chars.position() == start) {
+        return next;
+      }
+      final LogLine last = line(start, chars.position(), false);
+      start = chars.position();
+      scanned = start;
+      return last;
+    }
+
+    private LogLine line(final int from, final int to, final boolean partial) {
+      if (line != null) {
+        line.set(from, to, partial);
+        return line;
+      }
+      return new LogLine(stream, new String(chars.array(), from, to - from), partial);
+    }
+
+    private void compact() {
+      if (start == 0) {
+        return;
+      }
+      final Buffer buffer = chars;
+      final int end = buffer.position();
+      buffer.limit(end);
+      buffer.position(start);
+      chars.compact();
+      scanned -= start;
+      start = 0;
+    }
+  }
+
+  private static void flip(final Buffer buffer) {
+    // Through Buffer, as ByteBuffer only overrides this method as of Java 9
+    buffer.flip();
+  }
+
+  /**
+   * The line returned by a stream that reuses buffers. Its content is a read-only view of the
+   * characters decoded for the stream.
+   */
+  private static class ReusedLogLine extends LogLine {
+
+    private final CharBuffer view;
+    private int from;
+    private int to;
+    private boolean isPartial;
+
+    private ReusedLogLine(final Stream stream, final CharBuffer chars) {
+      super(stream, "", false);
+      this.view = chars.asReadOnlyBuffer();
+    }
+
+    private void set(final int from, final int to, final boolean partial) {
+      this.from = from;
+      this.to = to;
+      this.isPartial = partial;
+    }
+
+    @Override
+    public CharBuffer content() {
+      final Buffer content = view;
+      content.clear();
+      content.limit(to);
+      content.position(from);
+      return view;
+    }
+
+    @Override
+    public boolean partial() {
+      return isPartial;
+    }
+  }
+}
@@ -17,12 +17,18 @@
 
 package com.spotify.docker.client;
 
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 public class LogMessage {
 
+  /**
+   * Returned by {@link #timestamp()} for messages that do not start with a timestamp.
+   */
+  public static final long NO_TIMESTAMP = Timestamps.INVALID;
+
   final Stream stream;
   final ByteBuffer content;
 
@@ -43,6 +49,40 @@ public class LogMessage {
     return content.asReadOnlyBuffer();
   }
 
+  /**
+   * The time the message was logged, for logs requested with
+   * {@link DockerClient.LogsParam#timestamps()}. The daemon puts it in front of every message,
+   * followed by a space.
+   *
+   * @return The time in nanoseconds since the epoch, or {@link #NO_TIMESTAMP}.
+   */
+  public long timestamp() {
+    final ByteBuffer buffer = buffer();
+    final int space = Timestamps.spaceAfter(buffer);
+    return (space < 0) ? NO_TIMESTAMP : Timestamps.parseNanos(buffer, buffer.position(), space);
+  }
+
+  /**
+   * @return The content after the timestamp and the space that follows it, or all of the content
+   *         if it does not start with a timestamp.
+   */
+  public ByteBuffer payload() {
+    final ByteBuffer content = content();
+    final int space = Timestamps.spaceAfter(content);
+    if (space >= 0
+        && Timestamps.parseNanos(content, content.position(), space) != NO_TIMESTAMP) {
+      ((Buffer) content).position(space + 1);
+    }
+    return content;
+  }
+
+  /**
+   * @return The content, which is not to be modified.
+   */
+  ByteBuffer buffer() {
+    return content;
+  }
+
   public enum Stream {
     STDIN(0),
     STDOUT(1),
@@ -28,7 +28,9 @@ import java.io.Closeable;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static com.google.common.io.ByteStreams.copy;
 import static com.google.common.io.ByteStreams.nullOutputStream;
@@ -39,15 +41,71 @@ public class LogReader implements Closeable {
   private final InputStream stream;
   public static final int HEADER_SIZE = 8;
   public static final int FRAME_SIZE_OFFSET = 4;
+  public static final int RAW_CHUNK_SIZE = 8192;
 
   private volatile boolean closed;
 
+  // Whether the stream is raw output, null until known
+  private Boolean tty;
+  // Only used for raw output when not reusing buffers
+  private byte[] chunk;
+
+  // Only used when reusing buffers
+  private final byte[] headerBytes;
+  private final ByteBuffer header;
+  private final ReusedLogMessage message;
+  private ByteBuffer buffer;
+
   public LogReader(final InputStream stream) {
+    this(stream, false);
+  }
+
+  public LogReader(final InputStream stream, final boolean reuseBuffers) {
+    this(stream, reuseBuffers, null);
+  }
+
+  /**
+   * Create a reader.
+   *
+   * @param stream       The stream of multiplexed stdout/stderr frames, or the raw output of a
+   *                     container with a TTY.
+   * @param reuseBuffers Whether to return the same {@link LogMessage} from every call to
+   *                     {@link #nextMessage()}, with its content in a buffer that is reused. A
+   *                     message and its content are then only valid until the next call. This
+   *                     reads logs without allocating memory per message.
+   * @param tty          Whether the stream is raw output, or null if not known. Raw output is
+   *                     read in chunks of up to {@link #RAW_CHUNK_SIZE} bytes, as they arrive.
+   *                     If not known, a stream that does not start with a frame header is taken
+   *                     to be raw.
+   */
+  public LogReader(final InputStream stream, final boolean reuseBuffers, final Boolean tty) {
     this.stream = stream;
+    this.tty = tty;
+    if (reuseBuffers) {
+      this.headerBytes = new byte[HEADER_SIZE];
+      this.header = ByteBuffer.wrap(headerBytes);
+      this.message = new ReusedLogMessage();
+      this.buffer = ByteBufferPool.LOG_BUFFERS.acquire();
+    } else {
+      this.headerBytes = null;
+      this.header = null;
+      this.message = null;
+      this.buffer = null;
+    }
   }
 
   public LogMessage nextMessage() throws IOException {
-    stream.mark(HEADER_SIZE);
+    if (Boolean.TRUE.equals(tty)) {
+      return nextChunk();
+    }
+    if (message != null) {
+      return nextReusedMessage();
+    }
+
+    final boolean detect = (tty == null);
+    if (detect) {
+      stream.mark(HEADER_SIZE);
+    }
 
     // Read header
     final byte[] headerBytes = new byte[HEADER_SIZE];
@@ -55,27 +113,129 @@ public class LogReader implements Closeable {
     if (n == 0) {
       return null;
     }
-    if (n != HEADER_SIZE) {
-      throw new EOFException();
-    }
     final ByteBuffer header = ByteBuffer.wrap(headerBytes);
-    int streamId = header.get();
-    final int idZ = header.getInt(0);
+    final int idZ = (n == HEADER_SIZE) ? header.getInt(0) : -1;
 
-    // Read frame
-    final byte[] frame;
     // Header format is : {STREAM_TYPE, 0, 0, 0, SIZE1, SIZE2, SIZE3, SIZE4}
-    if (idZ == 0 || idZ == 0x01000000 || idZ == 0x02000000) {
-      header.position(FRAME_SIZE_OFFSET);
-      final int frameSize = header.getInt();
-      frame = new byte[frameSize];
-    } else {
+    if (!isHeader(idZ)) {
+      if (!detect) {
+        throw invalidHeader(n);
+      }
       stream.reset();
-      streamId = Stream.STDOUT.id();
-      frame = new byte[stream.available()];
+      tty = true;
+      return nextChunk();
     }
+    tty = false;
+
+    // Read frame
+    final byte[] frame = new byte[header.getInt(FRAME_SIZE_OFFSET)];
     ByteStreams.readFully(stream, frame);
-    return new LogMessage(streamId, ByteBuffer.wrap(frame));
+    return new LogMessage(idZ >>> 24, ByteBuffer.wrap(frame));
+  }
+
+  private LogMessage nextReusedMessage() throws IOException {
+    final int n = ByteStreams.read(stream, headerBytes, 0, HEADER_SIZE);
+    if (n == 0) {
+      return null;
+    }
+
+    final int idZ = (n == HEADER_SIZE) ? header.getInt(0) : -1;
+    if (isHeader(idZ)) {
+      tty = false;
+      final int frameSize = header.getInt(FRAME_SIZE_OFFSET);
+      buffer = ByteBufferPool.LOG_BUFFERS.grow(buffer, frameSize);
+      ByteStreams.readFully(stream, buffer.array(), buffer.arrayOffset(), frameSize);
+      message.set(Stream.of(idZ >>> 24), buffer, frameSize);
+    } else if (tty == null) {
+      // The container has a TTY, so what we took for a header is content. Return it on its own,
+      // and read the rest in chunks.
+      tty = true;
+      buffer = ByteBufferPool.LOG_BUFFERS.grow(buffer, HEADER_SIZE);
+      System.arraycopy(headerBytes, 0, buffer.array(), buffer.arrayOffset(), n);
+      message.set(Stream.STDOUT, buffer, n);
+    } else {
+      throw invalidHeader(n);
+    }
+    return message;
+  }
+
+  /**
+   * Read raw output. Blocks until at least one byte has arrived, and returns what has arrived up
+   * to {@link #RAW_CHUNK_SIZE} bytes.
+   */
+  private LogMessage nextChunk() throws IOException {
+    if (message != null) {
+      buffer = ByteBufferPool.LOG_BUFFERS.grow(buffer, RAW_CHUNK_SIZE);
+      final int n = stream.read(buffer.array(), buffer.arrayOffset(), RAW_CHUNK_SIZE);
+      if (n < 0) {
+        return null;
+      }
+      message.set(Stream.STDOUT, buffer, n);
+      return message;
+    }
+
+    if (chunk == null) {
+      chunk = new byte[RAW_CHUNK_SIZE];
+    }
+    final int n = stream.read(chunk);
+    if (n < 0) {
+      return null;
+    }
+    return new LogMessage(Stream.STDOUT, ByteBuffer.wrap(Arrays.copyOf(chunk, n)));
+  }
+
+  static boolean isHeader(final int idZ) {
+    return idZ == 0 || idZ == 0x01000000 || idZ == 0x02000000;
+  }
+
+  private static IOException invalidHeader(final int n) {
+    return (n < HEADER_SIZE) ? new EOFException() : new IOException("Invalid frame header");
+  }
+
+  /**
+   * The message returned by a reader that reuses buffers. Its content is a read-only view of the
+   * reader's buffer, which is only replaced when a larger frame comes along.
+   */
+  private static class ReusedLogMessage extends LogMessage {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private Stream currentStream;
+    private ByteBuffer view;
+    private ByteBuffer viewed;
+    private int length;
+
+    private ReusedLogMessage() {
+      super(Stream.STDOUT, EMPTY);
+    }
+
+    private void set(final Stream stream, final ByteBuffer buffer, final int length) {
+      this.currentStream = stream;
+      this.length = length;
+      if (buffer != viewed) {
+        viewed = buffer;
+        view = buffer.asReadOnlyBuffer();
+      }
+    }
+
+    @Override
+    public Stream stream() {
+      return currentStream;
+    }
+
+    @Override
+    public ByteBuffer content() {
+      // Through Buffer, as ByteBuffer only overrides these methods as of Java 9
+      final Buffer content = view;
+      content.clear();
+      content.limit(length);
+      return view;
+    }
+
+    @Override
+    ByteBuffer buffer() {
+      return content();
+    }
   }
 
   @Override
@@ -89,6 +249,9 @@ public class LogReader implements Closeable {
 
   @Override
   public void close() throws IOException {
+    if (!closed && buffer != null) {
+      ByteBufferPool.LOG_BUFFERS.release(buffer);
+    }
     closed = true;
     // Jersey will close the stream and release the connection after we read all the data.
     // We cannot call the stream's close method because it an instance of UncloseableInputStream,
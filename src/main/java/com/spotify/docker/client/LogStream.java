@@ -31,16 +31,91 @@ import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkState;
 
 public class LogStream extends AbstractIterator<LogMessage> implements Closeable {
 
   private static final Logger log = LoggerFactory.getLogger(LogStream.class);
 
-  private final LogReader reader;
+  private final InputStream stream;
+  private LogReader reader;
+  private Boolean tty;
+  private boolean reuseBuffers;
+  private boolean started;
   private volatile boolean closed;
 
   LogStream(final InputStream stream) {
-    this.reader = new LogReader(stream);
+    this(stream, null);
+  }
+
+  /**
+   * @param tty Whether the stream is the raw output of a container with a TTY rather than
+   *            multiplexed stdout and stderr, or null if not known.
+   */
+  LogStream(final InputStream stream, final Boolean tty) {
+    this.stream = stream;
+    this.tty = tty;
+    this.reader = new LogReader(stream, false, tty);
+  }
+
+  /**
+   * Read the output as lines of at most {@link LogLineStream#DEFAULT_MAX_LINE_LENGTH} characters.
+   *
+   * @return A view of this stream as lines.
+   * @see #lines(int)
+   */
+  public LogLineStream lines() {
+    return lines(LogLineStream.DEFAULT_MAX_LINE_LENGTH);
+  }
+
+  /**
+   * Read the output as lines. The output is decoded as it is read, so no more than a line per
+   * stream is held in memory. Lines should be read from the returned view only.
+   *
+   * @param maxLineLength The number of characters after which a line is split.
+   * @return A view of this stream as lines.
+   */
+  public LogLineStream lines(final int maxLineLength) {
+    if (!started) {
+      // Messages are decoded before the next one is read, so their buffers can be reused
+      reuseBuffers();
+    }
+    return new LogLineStream(this, maxLineLength);
+  }
+
+  /**
+   * Tell the stream whether it is raw output, if it was not known when the stream was opened.
+   */
+  LogStream tty(final boolean tty) {
+    if (this.tty == null && !started) {
+      this.tty = tty;
+      reader = new LogReader(stream, reuseBuffers, tty);
+    }
+    return this;
+  }
+
+  /**
+   * @return Whether the stream is known to be the raw output of a container with a TTY, known not
+   *         to be, or null if it has not been determined yet.
+   */
+  Boolean tty() {
+    return tty;
+  }
+
+  /**
+   * Read the logs without allocating memory per message. Every {@link LogMessage} returned by
+   * {@link #next()} is then the same object, and it and its content are only valid until the next
+   * call to {@link #hasNext()} or {@link #next()}. Copy whatever needs to be kept.
+   *
+   * <p>Must be called before reading any messages.</p>
+   *
+   * @return This stream.
+   */
+  public LogStream reuseBuffers() {
+    checkState(!started, "Messages have already been read");
+    reuseBuffers = true;
+    reader = new LogReader(stream, true, tty);
+    return this;
   }
 
   @Override
@@ -54,6 +129,7 @@ public class LogStream extends AbstractIterator<LogMessage> implements Closeable
 
   @Override
   protected LogMessage computeNext() {
+    started = true;
     final LogMessage message;
     try {
       message = reader.nextMessage();
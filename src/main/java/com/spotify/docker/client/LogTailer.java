@@ -0,0 +1,436 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.math.LongMath;
+
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.LogMessage.Stream;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.NotFoundException;
+import com.spotify.docker.client.messages.ContainerInfo;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.math.RoundingMode;
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Follows the logs of a container, reconnecting when the connection is lost.
+ *
+ * <p>Logs are requested with timestamps. After a disconnect they are requested again from the
+ * second of the last line that was returned, and the lines of that second that were already
+ * returned are skipped, so that no line is lost or returned twice. Reconnects are spaced by an
+ * exponential backoff with full jitter.</p>
+ *
+ * <p>Iteration ends once the container has stopped and all its logs have been returned, or when
+ * it is removed. {@link #lagMillis()} tells how far behind the container the returned lines
+ * are.</p>
+ *
+ * <pre>
+ * try (LogTailer tailer = LogTailer.builder(docker, containerId).build()) {
+ *   while (tailer.hasNext()) {
+ *     forward(tailer.next());
+ *   }
+ * }
+ * </pre>
+ */
+public class LogTailer extends AbstractIterator<LogTailer.Line> implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(LogTailer.class);
+
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 500;
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000;
+
+  private static final long NANOS_PER_SECOND = 1000000000L;
+
+  private final DockerClient docker;
+  private final String containerId;
+  private final boolean stdout;
+  private final boolean stderr;
+  private final Integer since;
+  private final int maxLineLength;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+
+  private LogLineStream lines;
+  // Cleared once the container has stopped, to read the rest of the logs
+  private boolean following = true;
+  // Reconnects since a line was last returned, to back off by
+  private int failures;
+  private volatile boolean closed;
+
+  // The latest timestamp returned, and the lines returned with it
+  private long lastTimestamp = Long.MIN_VALUE;
+  private final Multiset<String> lastLines = HashMultiset.create();
+  // After a reconnect, lines up to the latest timestamp that have not been replayed yet
+  private boolean replaying;
+  private long replayTimestamp;
+  private final Multiset<String> replayLines = HashMultiset.create();
+  // Streams whose last line was partial, with whether the rest of it is skipped
+  private final Set<Stream> continued = EnumSet.noneOf(Stream.class);
+  private final Set<Stream> skipped = EnumSet.noneOf(Stream.class);
+  private final long[] continuedTimestamps = new long[Stream.values().length];
+
+  private final AtomicLong reconnects = new AtomicLong();
+  private final AtomicLong duplicates = new AtomicLong();
+  private volatile long lagMillis;
+
+  private LogTailer(final Builder builder) {
+    this.docker = builder.docker;
+    this.containerId = builder.containerId;
+    this.stdout = builder.stdout;
+    this.stderr = builder.stderr;
+    this.since = builder.since;
+    this.maxLineLength = builder.maxLineLength;
+    this.initialBackoffMillis = builder.initialBackoffMillis;
+    this.maxBackoffMillis = builder.maxBackoffMillis;
+  }
+
+  public static Builder builder(final DockerClient docker, final String containerId) {
+    return new Builder(docker, containerId);
+  }
+
+  /**
+   * A line of output with the time the container wrote it.
+   */
+  public static class Line extends LogLine {
+
+    private final long timestamp;
+
+    Line(final Stream stream, final CharSequence content, final boolean partial,
+         final long timestamp) {
+      super(stream, content, partial);
+      this.timestamp = timestamp;
+    }
+
+    /**
+     * @return The time the line was written, in nanoseconds since the epoch.
+     */
+    public long timestamp() {
+      return timestamp;
+    }
+  }
+
+  /**
+   * @return The time between the container writing the last returned line and it being returned,
+   *         in milliseconds.
+   */
+  public long lagMillis() {
+    return lagMillis;
+  }
+
+  /**
+   * @return The number of times the logs were requested again after the connection was lost.
+   */
+  public long reconnects() {
+    return reconnects.get();
+  }
+
+  /**
+   * @return The number of lines skipped because they had been returned before a reconnect.
+   */
+  public long duplicates() {
+    return duplicates.get();
+  }
+
+  @Override
+  protected Line computeNext() {
+    try {
+      while (!closed) {
+        try {
+          if (lines == null && !connect()) {
+            return endOfData();
+          }
+          if (lines.hasNext()) {
+            final Line line = accept(lines.next());
+            if (line != null) {
+              failures = 0;
+              return line;
+            }
+            continue;
+          }
+
+          // The daemon ended the logs, either because the container stopped or because something
+          // in between closed the connection. If it stopped, read what is left without following.
+          // If not, back off like after an error, as the connection may keep getting closed.
+          disconnect();
+          if (!following) {
+            return endOfData();
+          }
+          following = isRunning();
+          if (following) {
+            backoff();
+          }
+          continue;
+        } catch (RuntimeException e) {
+          // Reading the logs failed
+          log.debug("Lost logs of container {}: {}", containerId, e.toString());
+          disconnect();
+        } catch (DockerException e) {
+          log.debug("Failed to get logs of container {}: {}", containerId, e.toString());
+        }
+        backoff();
+      }
+      return endOfData();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * @return Whether the logs could be requested, false if the container does not exist anymore.
+   */
+  private boolean connect() throws DockerException, InterruptedException {
+    final List<LogsParam> params = newArrayList(LogsParam.timestamps(),
+                                                LogsParam.stdout(stdout),
+                                                LogsParam.stderr(stderr));
+    if (lastTimestamp != Long.MIN_VALUE) {
+      params.add(LogsParam.since(
+          (int) LongMath.divide(lastTimestamp, NANOS_PER_SECOND, RoundingMode.FLOOR)));
+      reconnects.incrementAndGet();
+      replaying = true;
+      replayTimestamp = lastTimestamp;
+      replayLines.clear();
+      replayLines.addAll(lastLines);
+    } else if (since != null) {
+      params.add(LogsParam.since(since));
+    }
+    if (following) {
+      params.add(LogsParam.follow());
+    }
+    // A line that was cut off is not continued on the new connection
+    continued.clear();
+    skipped.clear();
+
+    try {
+      lines = docker.logs(containerId, params.toArray(new LogsParam[params.size()]))
+          .lines(maxLineLength);
+      return true;
+    } catch (NotFoundException e) {
+      log.debug("Container {} is gone: {}", containerId, e.toString());
+      return false;
+    }
+  }
+
+  private boolean isRunning() throws DockerException, InterruptedException {
+    try {
+      final ContainerInfo info = docker.inspectContainer(containerId);
+      return info.state() != null && Boolean.TRUE.equals(info.state().running());
+    } catch (NotFoundException e) {
+      return false;
+    }
+  }
+
+  private void disconnect() {
+    if (lines == null) {
+      return;
+    }
+    try {
+      lines.close();
+    } catch (RuntimeException e) {
+      log.debug("Failed to close logs of container {}: {}", containerId, e.toString());
+    }
+    lines = null;
+  }
+
+  private void backoff() throws InterruptedException {
+    MILLISECONDS.sleep(Backoff.millis(initialBackoffMillis, maxBackoffMillis, failures++));
+  }
+
+  /**
+   * @return The line without its timestamp, or null if it is a duplicate.
+   */
+  private Line accept(final LogLine line) {
+    final Stream stream = line.stream();
+    final CharBuffer content = line.content();
+
+    if (continued.contains(stream)) {
+      // The rest of a line that was cut off, without a timestamp of its own
+      if (!line.partial()) {
+        continued.remove(stream);
+      }
+      if (skipped.contains(stream)) {
+        if (!line.partial()) {
+          skipped.remove(stream);
+        }
+        return null;
+      }
+      return deliver(stream, content, line.partial(), continuedTimestamps[stream.ordinal()]);
+    }
+
+    final int space = Timestamps.spaceAfter(content);
+    final long timestamp = (space < 0)
+                           ? Timestamps.INVALID
+                           : Timestamps.parseNanos(content, 0, space);
+    if (timestamp == Timestamps.INVALID) {
+      // Not expected from the daemon, so pass the line on as it is
+      return deliver(stream, content, line.partial(), Math.max(lastTimestamp, 0));
+    }
+    ((Buffer) content).position(space + 1);
+
+    if (line.partial()) {
+      continued.add(stream);
+      continuedTimestamps[stream.ordinal()] = timestamp;
+    }
+
+    if (replaying) {
+      if (timestamp < replayTimestamp
+          || (timestamp == replayTimestamp && replayLines.remove(key(stream, content)))) {
+        duplicates.incrementAndGet();
+        if (line.partial()) {
+          skipped.add(stream);
+        }
+        return null;
+      }
+      if (timestamp > replayTimestamp) {
+        replaying = false;
+      }
+    }
+
+    if (timestamp > lastTimestamp) {
+      lastTimestamp = timestamp;
+      lastLines.clear();
+    }
+    if (timestamp == lastTimestamp) {
+      lastLines.add(key(stream, content));
+    }
+    return deliver(stream, content, line.partial(), timestamp);
+  }
+
+  private Line deliver(final Stream stream, final CharSequence content, final boolean partial,
+                       final long timestamp) {
+    lagMillis = Math.max(0, System.currentTimeMillis() - timestamp / 1000000);
+    return new Line(stream, content.toString(), partial, timestamp);
+  }
+
+  private static String key(final Stream stream, final CharSequence content) {
+    return stream.id() + content.toString();
+  }
+
+  /**
+   * Stop following the logs. Must be called on the thread reading the lines, as closing the
+   * underlying {@link LogStream} reads it to the end.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    disconnect();
+  }
+
+  public static class Builder {
+
+    private final DockerClient docker;
+    private final String containerId;
+    private boolean stdout = true;
+    private boolean stderr = true;
+    private Integer since;
+    private int maxLineLength = LogLineStream.DEFAULT_MAX_LINE_LENGTH;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+
+    private Builder(final DockerClient docker, final String containerId) {
+      this.docker = checkNotNull(docker, "docker");
+      this.containerId = checkNotNull(containerId, "containerId");
+    }
+
+    /**
+     * @param stdout Whether to follow stdout.
+     * @return Builder
+     */
+    public Builder stdout(final boolean stdout) {
+      this.stdout = stdout;
+      return this;
+    }
+
+    /**
+     * @param stderr Whether to follow stderr.
+     * @return Builder
+     */
+    public Builder stderr(final boolean stderr) {
+      this.stderr = stderr;
+      return this;
+    }
+
+    /**
+     * Start with the lines written since a time, rather than with all the logs.
+     *
+     * @param since Unix timestamp in seconds
+     * @return Builder
+     */
+    public Builder since(final int since) {
+      this.since = since;
+      return this;
+    }
+
+    /**
+     * @param maxLineLength The number of characters after which a line is split.
+     * @return Builder
+     * @see LogStream#lines(int)
+     */
+    public Builder maxLineLength(final int maxLineLength) {
+      checkArgument(maxLineLength > 1, "maxLineLength must be greater than 1");
+      this.maxLineLength = maxLineLength;
+      return this;
+    }
+
+    /**
+     * Set the backoff before the first reconnect. It doubles with every further failure to
+     * reconnect, and the actual delay is a random time up to the backoff.
+     *
+     * @param initialBackoffMillis Backoff before the first reconnect
+     * @return Builder
+     */
+    public Builder initialBackoffMillis(final long initialBackoffMillis) {
+      checkArgument(initialBackoffMillis >= 0, "initialBackoffMillis must not be negative");
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    /**
+     * @param maxBackoffMillis Maximum backoff between reconnects
+     * @return Builder
+     */
+    public Builder maxBackoffMillis(final long maxBackoffMillis) {
+      checkArgument(maxBackoffMillis >= 0, "maxBackoffMillis must not be negative");
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    public LogTailer build() {
+      return new LogTailer(this);
+    }
+  }
+}
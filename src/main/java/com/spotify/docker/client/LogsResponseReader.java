@@ -29,6 +29,25 @@ import javax.ws.rs.ext.MessageBodyReader;
 
 public class LogsResponseReader implements MessageBodyReader<LogStream> {
 
+  static final MediaType RAW_STREAM_TYPE =
+      new MediaType("application", "vnd.docker.raw-stream");
+  static final MediaType MULTIPLEXED_STREAM_TYPE =
+      new MediaType("application", "vnd.docker.multiplexed-stream");
+
+  private final String apiVersion;
+
+  public LogsResponseReader() {
+    this(null);
+  }
+
+  /**
+   * @param apiVersion The API version requests are made with, e.g. v1.42, or null if none is given
+   *                   and the daemon picks its own.
+   */
+  public LogsResponseReader(final String apiVersion) {
+    this.apiVersion = apiVersion;
+  }
+
   @Override
   public boolean isReadable(final Class<?> type, final Type genericType,
                             final Annotation[] annotations,
@@ -43,6 +62,38 @@ public class LogsResponseReader implements MessageBodyReader<LogStream> {
                             final MultivaluedMap<String, String> httpHeaders,
                             final InputStream entityStream)
       throws IOException, WebApplicationException {
-    return new LogStream(entityStream);
+    return new LogStream(entityStream, tty(mediaType, apiVersion));
+  }
+
+  /**
+   * Tell raw output from multiplexed stdout and stderr by the content type. As of API version 1.42
+   * the daemon uses different content types for them. With older API versions it uses the raw
+   * stream type for both, or no particular type. What counts is the version requested, not the
+   * version of the daemon, which answers older requests the old way.
+   *
+   * @param mediaType  The content type of the response.
+   * @param apiVersion The API version the request was made with, or null if none was given.
+   * @return Whether the response is raw output, or null if that cannot be told.
+   */
+  static Boolean tty(final MediaType mediaType, final String apiVersion) {
+    if (mediaType == null) {
+      return null;
+    }
+    if (mediaType.isCompatible(MULTIPLEXED_STREAM_TYPE)) {
+      return false;
+    }
+    if (mediaType.isCompatible(RAW_STREAM_TYPE) && apiVersion != null) {
+      final String version = apiVersion.startsWith("v") ? apiVersion.substring(1) : apiVersion;
+      final String[] parts = version.split("\\.");
+      try {
+        if (parts.length == 2 && (Integer.parseInt(parts[0]) > 1
+                                  || Integer.parseInt(parts[1]) >= 42)) {
+          return true;
+        }
+      } catch (NumberFormatException ignored) {
+        // Fall through
+      }
+    }
+    return null;
   }
 }
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Schedules requests by priority, so that requests someone is waiting on are not stuck behind
+ * background work.
+ *
+ * <p>At most {@code maxConcurrentRequests} requests are in progress at a time, and the others wait
+ * in a queue per {@link Priority}. {@link Priority#INTERACTIVE} requests always go first.
+ * {@link Priority#NORMAL} and {@link Priority#BATCH} requests share what is left by weight, so
+ * batch work is slowed down but never starved. Each queue is bounded; a request that finds its
+ * queue full fails right away.</p>
+ *
+ * <p>The priority and deadline of requests are set per thread with a {@link Scope}:</p>
+ *
+ * <pre>
+ * try (RequestScheduler.Scope scope = RequestScheduler.scope(Priority.BATCH, 30, SECONDS)) {
+ *   docker.removeImage(image);
+ * }
+ * </pre>
+ *
+ * <p>A request still waiting when its deadline passes fails with a
+ * {@link DockerTimeoutException}, without having been sent. Requests made outside a scope have
+ * {@link Priority#NORMAL} and no deadline.</p>
+ */
+public class RequestScheduler {
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+  public static final int DEFAULT_NORMAL_WEIGHT = 4;
+  public static final int DEFAULT_BATCH_WEIGHT = 1;
+
+  public enum Priority {
+    INTERACTIVE,
+    NORMAL,
+    BATCH
+  }
+
+  private static final ThreadLocal<Scope> SCOPE = new ThreadLocal<>();
+
+  private final int maxConcurrentRequests;
+  private final Map<Priority, Integer> weights;
+  private final Map<Priority, Integer> queueCapacities;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Map<Priority, ArrayDeque<Waiter>> queues = new EnumMap<>(Priority.class);
+  // Stride scheduling between the weighted classes: the class with the lowest pass goes next
+  private final Map<Priority, Double> passes = new EnumMap<>(Priority.class);
+  private double virtualTime;
+  private int inFlight;
+
+  private final AtomicLong expired = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+
+  private RequestScheduler(final Builder builder) {
+    this.maxConcurrentRequests = builder.maxConcurrentRequests;
+    this.weights = new EnumMap<>(builder.weights);
+    this.queueCapacities = new EnumMap<>(builder.queueCapacities);
+    for (final Priority priority : Priority.values()) {
+      queues.put(priority, new ArrayDeque<Waiter>());
+      passes.put(priority, 0.0);
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Set the priority of requests made by this thread until the scope is closed.
+   */
+  public static Scope scope(final Priority priority) {
+    return new Scope(checkNotNull(priority, "priority"), 0);
+  }
+
+  /**
+   * Set the priority and deadline of requests made by this thread until the scope is closed.
+   *
+   * @param timeout The time from now after which requests that are still queued are dropped.
+   */
+  public static Scope scope(final Priority priority, final long timeout, final TimeUnit unit) {
+    checkArgument(timeout > 0, "timeout must be positive");
+    // Zero means no deadline, so make sure a deadline never ends up exactly there
+    final long deadline = System.nanoTime() + unit.toNanos(timeout);
+    return new Scope(checkNotNull(priority, "priority"), (deadline == 0) ? 1 : deadline);
+  }
+
+  /**
+   * The priority and deadline of the requests made by a thread. Closing a scope restores the
+   * scope that was in effect when it was opened.
+   */
+  public static class Scope implements Closeable {
+
+    private final Priority priority;
+    private final long deadlineNanos;
+    private final Scope previous;
+    private final Thread thread;
+
+    private Scope(final Priority priority, final long deadlineNanos) {
+      this.priority = priority;
+      this.deadlineNanos = deadlineNanos;
+      this.previous = SCOPE.get();
+      this.thread = Thread.currentThread();
+      SCOPE.set(this);
+    }
+
+    public Priority priority() {
+      return priority;
+    }
+
+    @Override
+    public void close() {
+      checkState(Thread.currentThread() == thread, "Scope closed by another thread");
+      if (previous == null) {
+        SCOPE.remove();
+      } else {
+        SCOPE.set(previous);
+      }
+    }
+  }
+
+  /**
+   * @return The number of requests in progress.
+   */
+  public int inFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of requests of a priority waiting to be sent.
+   */
+  public int queued(final Priority priority) {
+    lock.lock();
+    try {
+      return queues.get(priority).size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return The number of requests dropped because their deadline passed while they were queued.
+   */
+  public long expired() {
+    return expired.get();
+  }
+
+  /**
+   * @return The number of requests that failed because their queue was full.
+   */
+  public long rejected() {
+    return rejected.get();
+  }
+
+  private static class Waiter {
+
+    private final Condition condition;
+    private final long deadlineNanos;
+    private boolean granted;
+    private boolean dropped;
+
+    private Waiter(final Condition condition, final long deadlineNanos) {
+      this.condition = condition;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    private boolean expired(final long now) {
+      return deadlineNanos != 0 && now - deadlineNanos >= 0;
+    }
+  }
+
+  /**
+   * Make a call once the priority of the calling thread's scope allows it.
+   */
+  <T> T execute(final String method, final URI uri, final DockerCall<T> call)
+      throws DockerException, InterruptedException {
+    acquire(method, uri);
+    try {
+      return call.call();
+    } finally {
+      release();
+    }
+  }
+
+  private void acquire(final String method, final URI uri)
+      throws DockerException, InterruptedException {
+    final Scope scope = SCOPE.get();
+    final Priority priority = (scope == null) ? Priority.NORMAL : scope.priority;
+    final long deadline = (scope == null) ? 0 : scope.deadlineNanos;
+    final Waiter waiter = new Waiter(lock.newCondition(), deadline);
+
+    lock.lockInterruptibly();
+    try {
+      if (waiter.expired(System.nanoTime())) {
+        throw expired(method, uri);
+      }
+      if (inFlight < maxConcurrentRequests && isEmpty()) {
+        inFlight++;
+        return;
+      }
+
+      final ArrayDeque<Waiter> queue = queues.get(priority);
+      if (queue.size() >= queueCapacities.get(priority)) {
+        rejected.incrementAndGet();
+        throw new DockerException("Too many queued " + priority + " requests: " + method + " "
+                                  + uri);
+      }
+      if (queue.isEmpty()) {
+        // A class that was idle does not get to catch up on the turns it did not use
+        passes.put(priority, Math.max(passes.get(priority), virtualTime));
+      }
+      queue.add(waiter);
+
+      try {
+        while (!waiter.granted && !waiter.dropped) {
+          if (deadline == 0) {
+            waiter.condition.await();
+          } else {
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+              waiter.dropped = true;
+              queue.remove(waiter);
+              break;
+            }
+            waiter.condition.awaitNanos(remaining);
+          }
+        }
+      } catch (InterruptedException e) {
+        if (waiter.granted) {
+          release();
+        } else {
+          queue.remove(waiter);
+        }
+        throw e;
+      }
+
+      if (waiter.dropped) {
+        throw expired(method, uri);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private DockerTimeoutException expired(final String method, final URI uri) {
+    expired.incrementAndGet();
+    return new DockerTimeoutException(
+        method, uri, new TimeoutException("Deadline passed while waiting to be sent"));
+  }
+
+  private void release() {
+    lock.lock();
+    try {
+      inFlight--;
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Hand out free slots to waiting requests. Must be called with the lock held.
+   */
+  private void dispatch() {
+    final long now = System.nanoTime();
+    while (inFlight < maxConcurrentRequests) {
+      final Priority priority = next();
+      if (priority == null) {
+        return;
+      }
+      final Waiter waiter = queues.get(priority).poll();
+      if (waiter.expired(now)) {
+        // Do not spend a slot on a request nobody is waiting for anymore
+        waiter.dropped = true;
+      } else {
+        waiter.granted = true;
+        inFlight++;
+        if (priority != Priority.INTERACTIVE) {
+          final double pass = passes.get(priority) + 1.0 / weights.get(priority);
+          passes.put(priority, pass);
+          virtualTime = pass;
+        }
+      }
+      waiter.condition.signal();
+    }
+  }
+
+  private Priority next() {
+    if (!queues.get(Priority.INTERACTIVE).isEmpty()) {
+      return Priority.INTERACTIVE;
+    }
+    Priority next = null;
+    for (final Priority priority : new Priority[]{Priority.NORMAL, Priority.BATCH}) {
+      if (!queues.get(priority).isEmpty()
+          && (next == null || passes.get(priority) < passes.get(next))) {
+        next = priority;
+      }
+    }
+    return next;
+  }
+
+  private boolean isEmpty() {
+    for (final ArrayDeque<Waiter> queue : queues.values()) {
+      if (!queue.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static class Builder {
+
+    private int maxConcurrentRequests = DefaultDockerClient.DEFAULT_CONNECTION_POOL_SIZE;
+    private final Map<Priority, Integer> weights = new EnumMap<>(Priority.class);
+    private final Map<Priority, Integer> queueCapacities = new EnumMap<>(Priority.class);
+
+    private Builder() {
+      weights.put(Priority.NORMAL, DEFAULT_NORMAL_WEIGHT);
+      weights.put(Priority.BATCH, DEFAULT_BATCH_WEIGHT);
+      for (final Priority priority : Priority.values()) {
+        queueCapacities.put(priority, DEFAULT_QUEUE_CAPACITY);
+      }
+    }
+
+    /**
+     * Set the number of requests in progress at a time, e.g. the size of the connection pool.
+     *
+     * @param maxConcurrentRequests Maximum number of concurrent requests
+     * @return Builder
+     */
+    public Builder maxConcurrentRequests(final int maxConcurrentRequests) {
+      checkArgument(maxConcurrentRequests > 0, "maxConcurrentRequests must be positive");
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      return this;
+    }
+
+    /**
+     * Set the share of {@link Priority#NORMAL} or {@link Priority#BATCH} requests. With the
+     * default weights of 4 and 1, one batch request is sent for every four normal requests while
+     * both have requests waiting.
+     *
+     * @param priority NORMAL or BATCH
+     * @param weight   Relative share of the priority
+     * @return Builder
+     */
+    public Builder weight(final Priority priority, final int weight) {
+      checkArgument(priority != Priority.INTERACTIVE, "INTERACTIVE requests always go first");
+      checkArgument(weight > 0, "weight must be positive");
+      weights.put(priority, weight);
+      return this;
+    }
+
+    /**
+     * Set the number of requests of a priority that may wait to be sent.
+     *
+     * @param priority Priority
+     * @param capacity Maximum number of queued requests
+     * @return Builder
+     */
+    public Builder queueCapacity(final Priority priority, final int capacity) {
+      checkArgument(capacity >= 0, "capacity must not be negative");
+      queueCapacities.put(priority, capacity);
+      return this;
+    }
+
+    public RequestScheduler build() {
+      return new RequestScheduler(this);
+    }
+  }
+}
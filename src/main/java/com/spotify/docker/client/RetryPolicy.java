@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Retries requests that failed for transient reasons: timeouts, I/O errors such as connection
+ * resets, and 500, 502, 503 and 504 responses.
+ *
+ * <p>Only requests that can safely be repeated are retried: GET and HEAD requests, stopping and
+ * killing containers, and pulling images. Retries are spaced by an exponential backoff with full
+ * jitter, and limited by a budget: every request earns a fraction of a retry, and a retry is only
+ * made if enough has been earned. This keeps a struggling daemon from being flooded with retries.
+ * The number of retries per endpoint is exposed by {@link #retries()}.</p>
+ *
+ * <p>A policy can be shared by several clients, in which case they share the budget.</p>
+ */
+public class RetryPolicy {
+
+  private static final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+  public static final int DEFAULT_MAX_RETRIES = 3;
+  public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+  public static final long DEFAULT_MAX_BACKOFF_MILLIS = 5000;
+  public static final double DEFAULT_BUDGET_RATIO = 0.1;
+  public static final int DEFAULT_MAX_BUDGET = 10;
+
+  private static final Set<Integer> RETRYABLE_STATUSES = ImmutableSet.of(500, 502, 503, 504);
+
+  private static final Pattern VERSION = Pattern.compile("^/v[0-9.]+/");
+  // Pulls are retried as a whole by DefaultDockerClient#pull, including reading the progress
+  private static final Pattern IDEMPOTENT_POST = Pattern.compile("^containers/[^/]+/(stop|kill)$");
+  private static final Set<String> IMAGE_ACTIONS = ImmutableSet.of(
+      "json", "history", "push", "tag", "get");
+
+  private final int maxRetries;
+  private final long initialBackoffMillis;
+  private final long maxBackoffMillis;
+  private final double budgetRatio;
+  private final int maxBudget;
+
+  private final ConcurrentMap<String, AtomicLong> retries = new ConcurrentHashMap<>();
+  private final AtomicLong budgetExhausted = new AtomicLong();
+
+  // Guarded by this
+  private double budget;
+
+  private RetryPolicy(final Builder builder) {
+    this.maxRetries = builder.maxRetries;
+    this.initialBackoffMillis = builder.initialBackoffMillis;
+    this.maxBackoffMillis = builder.maxBackoffMillis;
+    this.budgetRatio = builder.budgetRatio;
+    this.maxBudget = builder.maxBudget;
+    this.budget = builder.maxBudget;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int maxRetries() {
+    return maxRetries;
+  }
+
+  public long initialBackoffMillis() {
+    return initialBackoffMillis;
+  }
+
+  public long maxBackoffMillis() {
+    return maxBackoffMillis;
+  }
+
+  public double budgetRatio() {
+    return budgetRatio;
+  }
+
+  public int maxBudget() {
+    return maxBudget;
+  }
+
+  /**
+   * @return The number of retries made per endpoint, e.g. {@code GET containers/{id}/json}.
+   */
+  public Map<String, Long> retries() {
+    final ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+    for (final Map.Entry<String, AtomicLong> entry : retries.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue().get());
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return The number of retries that were not made because the retry budget was used up.
+   */
+  public long budgetExhausted() {
+    return budgetExhausted.get();
+  }
+
+  /**
+   * @return Whether a request can be repeated without changing its outcome.
+   */
+  static boolean isIdempotent(final String method, final URI uri) {
+    switch (method) {
+      case "GET":
+      case "HEAD":
+        return true;
+      case "POST":
+        return IDEMPOTENT_POST.matcher(path(uri)).find();
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return The endpoint of a request, with container, image, exec and network ids replaced by
+   *         placeholders.
+   */
+  static String endpoint(final String method, final URI uri) {
+    final String path = path(uri);
+    final String[] segments = path.split("/");
+    if (segments.length < 2) {
+      return method + " " + path;
+    }
+    switch (segments[0]) {
+      case "containers":
+      case "exec":
+      case "networks":
+        if (segments[1].equals("json") || segments[1].equals("create")) {
+          return method + " " + path;
+        }
+        segments[1] = "{id}";
+        return method + " " + Joiner.on('/').join(segments);
+      case "images":
+        if (segments.length == 2) {
+          // images/json, images/create or removing an image without a slash in its name
+          return method + " " + (segments[1].matches("json|create|search|load|get")
+                                 ? path : "images/{name}");
+        }
+        final String action = segments[segments.length - 1];
+        return method + " " + (IMAGE_ACTIONS.contains(action)
+                               ? "images/{name}/" + action : "images/{name}");
+      default:
+        return method + " " + path;
+    }
+  }
+
+  private static String path(final URI uri) {
+    return VERSION.matcher(uri.getPath()).replaceFirst("").replaceFirst("^/", "");
+  }
+
+  /**
+   * @return Whether a request that failed with the exception might succeed if made again.
+   */
+  static boolean isRetryable(final DockerException e) {
+    if (e instanceof DockerTimeoutException) {
+      return true;
+    }
+    if (e instanceof DockerRequestException) {
+      return RETRYABLE_STATUSES.contains(((DockerRequestException) e).status());
+    }
+    // Failures to talk to the daemon at all are mapped to a plain DockerException with the I/O
+    // error as cause. Subclasses such as ImageNotFoundException describe permanent failures.
+    if (e.getClass() != DockerException.class) {
+      return false;
+    }
+    boolean io = false;
+    for (final Throwable cause : Throwables.getCausalChain(e)) {
+      if (cause instanceof JsonProcessingException) {
+        // A response that cannot be parsed will not parse any better the next time
+        return false;
+      }
+      io |= cause instanceof IOException;
+    }
+    return io;
+  }
+
+  /**
+   * Make a call, retrying it as this policy allows. The caller decides whether the call is
+   * idempotent.
+   */
+  <T> T execute(final String method, final URI uri, final DockerCall<T> call)
+      throws DockerException, InterruptedException {
+    deposit();
+    int attempt = 0;
+    while (true) {
+      try {
+        return call.call();
+      } catch (DockerException e) {
+        if (attempt >= maxRetries || !isRetryable(e)) {
+          throw e;
+        }
+        if (!withdraw()) {
+          budgetExhausted.incrementAndGet();
+          throw e;
+        }
+        final String endpoint = endpoint(method, uri);
+        counter(endpoint).incrementAndGet();
+        final long backoff = backoffMillis(attempt++);
+        log.debug("Retrying {} in {} ms after: {}", endpoint, backoff, e.toString());
+        MILLISECONDS.sleep(backoff);
+      }
+    }
+  }
+
+  long backoffMillis(final int attempt) {
+    return Backoff.millis(initialBackoffMillis, maxBackoffMillis, attempt);
+  }
+
+  private AtomicLong counter(final String endpoint) {
+    AtomicLong counter = retries.get(endpoint);
+    if (counter == null) {
+      counter = new AtomicLong();
+      final AtomicLong existing = retries.putIfAbsent(endpoint, counter);
+      if (existing != null) {
+        counter = existing;
+      }
+    }
+    return counter;
+  }
+
+  private synchronized void deposit() {
+    // Capped so that a long quiet period does not save up for a storm of retries
+    budget = Math.min(maxBudget, budget + budgetRatio);
+  }
+
+  private synchronized boolean withdraw() {
+    if (budget < 1) {
+      return false;
+    }
+    budget -= 1;
+    return true;
+  }
+
+  public static class Builder {
+
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private long initialBackoffMillis = DEFAULT_INITIAL_BACKOFF_MILLIS;
+    private long maxBackoffMillis = DEFAULT_MAX_BACKOFF_MILLIS;
+    private double budgetRatio = DEFAULT_BUDGET_RATIO;
+    private int maxBudget = DEFAULT_MAX_BUDGET;
+
+    /**
+     * Set the highest number of times a request is retried.
+     *
+     * @param maxRetries Maximum number of retries per request
+     * @return Builder
+     */
+    public Builder maxRetries(final int maxRetries) {
+      checkArgument(maxRetries >= 0, "maxRetries must not be negative");
+      this.maxRetries = maxRetries;
+      return this;
+    }
+
+    /**
+     * Set the backoff before the first retry. It doubles with every further retry, and the actual
+     * delay is a random time up to the backoff.
+     *
+     * @param initialBackoffMillis Backoff before the first retry
+     * @return Builder
+     */
+    public Builder initialBackoffMillis(final long initialBackoffMillis) {
+      checkArgument(initialBackoffMillis >= 0, "initialBackoffMillis must not be negative");
+      this.initialBackoffMillis = initialBackoffMillis;
+      return this;
+    }
+
+    /**
+     * Set the highest backoff between retries.
+     *
+     * @param maxBackoffMillis Maximum backoff
+     * @return Builder
+     */
+    public Builder maxBackoffMillis(final long maxBackoffMillis) {
+      checkArgument(maxBackoffMillis >= 0, "maxBackoffMillis must not be negative");
+      this.maxBackoffMillis = maxBackoffMillis;
+      return this;
+    }
+
+    /**
+     * Set the number of retries each retryable request earns, e.g. 0.1 to allow one retry per ten
+     * requests once the budget is used up.
+     *
+     * @param budgetRatio Retries earned per request
+     * @return Builder
+     */
+    public Builder budgetRatio(final double budgetRatio) {
+      checkArgument(budgetRatio >= 0, "budgetRatio must not be negative");
+      this.budgetRatio = budgetRatio;
+      return this;
+    }
+
+    /**
+     * Set the size of the retry budget, which is the number of retries that can be made in a
+     * burst. The budget starts out full.
+     *
+     * @param maxBudget Maximum number of retries saved up
+     * @return Builder
+     */
+    public Builder maxBudget(final int maxBudget) {
+      checkArgument(maxBudget >= 0, "maxBudget must not be negative");
+      this.maxBudget = maxBudget;
+      return this;
+    }
+
+    public RetryPolicy build() {
+      return new RetryPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,1415 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.ExecNotFoundException;
+import com.spotify.docker.client.exceptions.NetworkNotFoundException;
+import com.spotify.docker.client.exceptions.NotFoundException;
+import com.spotify.docker.client.messages.AuthConfig;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.ExecState;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageInfo;
+import com.spotify.docker.client.messages.ImageSearchResult;
+import com.spotify.docker.client.messages.Info;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.NetworkConfig;
+import com.spotify.docker.client.messages.NetworkCreation;
+import com.spotify.docker.client.messages.RemovedImage;
+import com.spotify.docker.client.messages.Version;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A {@link DockerClient} spread over many daemons, each with its own client, connection pool and
+ * metrics.
+ *
+ * <p>Calls that concern a container, exec instance or network go to the daemon that owns it. This
+ * client learns owners from the calls it makes (create, list, exec create) and otherwise finds
+ * them by asking all daemons at once. Owners are forgotten when their container, exec instance or
+ * network is removed or not found, and the least recently used ones are forgotten once there are
+ * too many. Image operations go to the daemon that last pulled, built, loaded, tagged or
+ * committed the image, and containers are created on the daemon that has their image.</p>
+ *
+ * <p>Everything else, e.g. pulling images or getting the version, goes to the least loaded
+ * daemon: of two daemons picked at random, the one with the lower product of in-flight requests
+ * and recent latency. So do containers whose image is not known to be on any daemon.
+ * listContainers, listImages and listNetworks ask all daemons at once and return the results of
+ * those that answered in time. Daemons that failed or timed out are logged and counted in their
+ * {@link Daemon#errors()}, and the call only fails if every daemon did. Use {@link
+ * #client(String)} to talk to a specific daemon, e.g. for its events.</p>
+ */
+public class RoutingDockerClient implements DockerClient {
+
+  private static final Logger log = LoggerFactory.getLogger(RoutingDockerClient.class);
+
+  public static final long DEFAULT_FAN_OUT_TIMEOUT_MILLIS = 10000;
+  public static final long DEFAULT_MAX_OWNERS = 10000;
+  public static final int DEFAULT_FAN_OUT_THREADS = 32;
+
+  private final List<Daemon> daemons;
+  private final Map<String, Daemon> daemonsByName;
+  private final long fanOutTimeoutMillis;
+  private final ExecutorService executor;
+
+  private final Owners containers;
+  private final Owners execs;
+  private final Owners networks;
+  private final Owners images;
+
+  /**
+   * Create a new client with default settings.
+   *
+   * @param clients A client per daemon, keyed by a name for the daemon such as its host name.
+   *                The clients are closed when this client is closed.
+   */
+  public RoutingDockerClient(final Map<String, ? extends DockerClient> clients) {
+    this(builder(clients));
+  }
+
+  private RoutingDockerClient(final Builder builder) {
+    final ImmutableList.Builder<Daemon> daemons = ImmutableList.builder();
+    final ImmutableMap.Builder<String, Daemon> daemonsByName = ImmutableMap.builder();
+    for (final Map.Entry<String, ? extends DockerClient> entry : builder.clients.entrySet()) {
+      final Daemon daemon = new Daemon(entry.getKey(), entry.getValue());
+      daemons.add(daemon);
+      daemonsByName.put(daemon.name(), daemon);
+    }
+    this.daemons = daemons.build();
+    this.daemonsByName = daemonsByName.build();
+    this.fanOutTimeoutMillis = builder.fanOutTimeoutMillis;
+    this.containers = new Owners(builder.maxOwners);
+    this.execs = new Owners(builder.maxOwners);
+    this.networks = new Owners(builder.maxOwners);
+    this.images = new Owners(builder.maxOwners);
+    this.executor = Executors.newFixedThreadPool(
+        builder.fanOutThreads,
+        new ThreadFactoryBuilder()
+            .setNameFormat("docker-client-routing-%d")
+            .setDaemon(true)
+            .build());
+  }
+
+  /**
+   * @param clients A client per daemon, keyed by a name for the daemon such as its host name.
+   *                The clients are closed when the built client is closed.
+   * @return A builder for a client spread over the given daemons.
+   */
+  public static Builder builder(final Map<String, ? extends DockerClient> clients) {
+    return new Builder(clients);
+  }
+
+  /**
+   * @param name The name of a daemon.
+   * @return The client for the daemon.
+   */
+  public DockerClient client(final String name) {
+    final Daemon daemon = daemonsByName.get(name);
+    checkArgument(daemon != null, "Unknown daemon: %s", name);
+    return daemon.client();
+  }
+
+  /**
+   * @return The daemons of this client along with their load metrics.
+   */
+  public List<Daemon> daemons() {
+    return daemons;
+  }
+
+  /**
+   * A daemon and its load metrics.
+   */
+  public static class Daemon {
+
+    // Weight of the latest sample in the latency moving average
+    private static final double LATENCY_ALPHA = 0.2;
+
+    private final String name;
+    private final DockerClient client;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile double latencyNanos;
+
+    Daemon(final String name, final DockerClient client) {
+      this.name = name;
+      this.client = client;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public DockerClient client() {
+      return client;
+    }
+
+    /**
+     * @return The number of requests to this daemon in progress.
+     */
+    public int inFlight() {
+      return inFlight.get();
+    }
+
+    /**
+     * @return The total number of requests made to this daemon.
+     */
+    public long requests() {
+      return requests.get();
+    }
+
+    /**
+     * @return The number of requests that failed for reasons other than a 4xx response.
+     */
+    public long errors() {
+      return errors.get();
+    }
+
+    /**
+     * @return The exponentially weighted moving average of request latency in milliseconds.
+     */
+    public double latencyMillis() {
+      return latencyNanos / 1e6;
+    }
+
+    double load() {
+      // Daemons without latency samples yet look cheap, so they get tried
+      return (inFlight.get() + 1) * (latencyNanos + 1);
+    }
+
+    private synchronized void recordLatency(final long nanos) {
+      latencyNanos = (latencyNanos == 0)
+                     ? nanos
+                     : LATENCY_ALPHA * nanos + (1 - LATENCY_ALPHA) * latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  private interface Call<T> {
+
+    T call(DockerClient client) throws DockerException, InterruptedException, IOException;
+  }
+
+  /**
+   * Make a call to a daemon, tracking it in the daemon's metrics.
+   *
+   * @param timed Whether the call's latency says something about the daemon's load. Calls that
+   *              wait on purpose, like stopping a container or pulling an image, are not timed.
+   */
+  private <T> T callWithIo(final Daemon daemon, final boolean timed, final Call<T> call)
+      throws DockerException, InterruptedException, IOException {
+    daemon.requests.incrementAndGet();
+    daemon.inFlight.incrementAndGet();
+    final long start = System.nanoTime();
+    try {
+      final T result = call.call(daemon.client);
+      if (timed) {
+        daemon.recordLatency(System.nanoTime() - start);
+      }
+      return result;
+    } catch (DockerRequestException e) {
+      if (e.status() >= 500) {
+        daemon.errors.incrementAndGet();
+      } else if (timed) {
+        daemon.recordLatency(System.nanoTime() - start);
+      }
+      throw e;
+    } catch (DockerException | IOException | RuntimeException e) {
+      // Includes the not found exceptions, which are mapped from 404 responses
+      if (!(e instanceof ContainerNotFoundException || e instanceof ExecNotFoundException
+            || e instanceof NetworkNotFoundException)) {
+        daemon.errors.incrementAndGet();
+      }
+      throw e;
+    } finally {
+      daemon.inFlight.decrementAndGet();
+    }
+  }
+
+  private <T> T call(final Daemon daemon, final boolean timed, final Call<T> call)
+      throws DockerException, InterruptedException {
+    try {
+      return callWithIo(daemon, timed, call);
+    } catch (IOException e) {
+      // Only calls of methods that throw IOException themselves use callWithIo directly
+      throw new DockerException(e);
+    }
+  }
+
+  private <T> T call(final Daemon daemon, final Call<T> call)
+      throws DockerException, InterruptedException {
+    return call(daemon, true, call);
+  }
+
+  Daemon leastLoaded() {
+    final int n = daemons.size();
+    if (n == 1) {
+      return daemons.get(0);
+    }
+    // Power of two choices: nearly as good as picking the best, without looking at every daemon
+    final ThreadLocalRandom random = ThreadLocalRandom.current();
+    final int first = random.nextInt(n);
+    final int second = (first + 1 + random.nextInt(n - 1)) % n;
+    final Daemon a = daemons.get(first);
+    final Daemon b = daemons.get(second);
+    return (a.load() <= b.load()) ? a : b;
+  }
+
+  /**
+   * Make a call to every daemon at once, waiting at most {@link Builder#fanOutTimeoutMillis} for
+   * all of them to answer.
+   *
+   * @param what What the call does, for logging.
+   * @return The results of the daemons that answered, in the order of {@link #daemons()}.
+   * @throws DockerException if no daemon answered.
+   */
+  private <T> Map<Daemon, T> fanOut(final String what, final Call<T> call)
+      throws DockerException, InterruptedException {
+    final Map<Daemon, Future<T>> futures = new LinkedHashMap<>();
+    for (final Daemon daemon : daemons) {
+      futures.put(daemon, submit(daemon, call));
+    }
+
+    final long deadline = System.nanoTime() + MILLISECONDS.toNanos(fanOutTimeoutMillis);
+    final Map<Daemon, T> results = new LinkedHashMap<>();
+    DockerException failure = null;
+    try {
+      for (final Map.Entry<Daemon, Future<T>> entry : futures.entrySet()) {
+        final Daemon daemon = entry.getKey();
+        try {
+          results.put(daemon, entry.getValue().get(deadline - System.nanoTime(), NANOSECONDS));
+        } catch (ExecutionException e) {
+          log.warn("Failed to {} on {}, leaving it out", what, daemon, e.getCause());
+          failure = dockerException(e.getCause());
+        } catch (TimeoutException e) {
+          log.warn("Timed out after {} ms trying to {} on {}, leaving it out",
+                   fanOutTimeoutMillis, what, daemon);
+          daemon.errors.incrementAndGet();
+          failure = new DockerException(
+              "Timed out after " + fanOutTimeoutMillis + " ms trying to " + what + " on "
+              + daemon);
+        }
+      }
+    } finally {
+      for (final Future<T> future : futures.values()) {
+        future.cancel(true);
+      }
+    }
+
+    if (results.isEmpty() && failure != null) {
+      throw failure;
+    }
+    return results;
+  }
+
+  /**
+   * Ask every daemon at once for something that at most one of them has, like a container.
+   *
+   * @param errors Collects errors other than {@link NotFoundException}.
+   * @return The daemon that has it along with its answer, or null if no daemon answered that it
+   *     has it within {@link Builder#fanOutTimeoutMillis}.
+   */
+  private <T> Map.Entry<Daemon, T> find(final Call<T> call, final List<DockerException> errors)
+      throws InterruptedException {
+    final CompletionService<Map.Entry<Daemon, T>> completion =
+        new ExecutorCompletionService<>(executor);
+    final List<Future<Map.Entry<Daemon, T>>> futures = Lists.newArrayList();
+    for (final Daemon daemon : daemons) {
+      futures.add(completion.submit(new Callable<Map.Entry<Daemon, T>>() {
+        @Override
+        public Map.Entry<Daemon, T> call() throws Exception {
+          return Maps.immutableEntry(daemon, RoutingDockerClient.this.call(daemon, call));
+        }
+      }));
+    }
+
+    final long deadline = System.nanoTime() + MILLISECONDS.toNanos(fanOutTimeoutMillis);
+    try {
+      for (int i = 0; i < futures.size(); i++) {
+        final Future<Map.Entry<Daemon, T>> future =
+            completion.poll(deadline - System.nanoTime(), NANOSECONDS);
+        if (future == null) {
+          errors.add(new DockerException("Timed out after " + fanOutTimeoutMillis + " ms"));
+          return null;
+        }
+        try {
+          return future.get();
+        } catch (ExecutionException e) {
+          if (!(e.getCause() instanceof NotFoundException)) {
+            errors.add(dockerException(e.getCause()));
+          }
+        }
+      }
+      return null;
+    } finally {
+      for (final Future<Map.Entry<Daemon, T>> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private <T> Future<T> submit(final Daemon daemon, final Call<T> call) {
+    return executor.submit(new Callable<T>() {
+      @Override
+      public T call() throws Exception {
+        return RoutingDockerClient.this.call(daemon, call);
+      }
+    });
+  }
+
+  private static DockerException dockerException(final Throwable t) {
+    return (t instanceof DockerException) ? (DockerException) t : new DockerException(t);
+  }
+
+  private static DockerException lastError(final List<DockerException> errors) {
+    return errors.isEmpty() ? null : errors.get(errors.size() - 1);
+  }
+
+  private void learnContainer(final Container container, final Daemon daemon) {
+    final List<String> keys = Lists.newArrayList(container.id());
+    if (container.names() != null) {
+      for (final String name : container.names()) {
+        // Names are listed with a leading slash, but are used without
+        keys.add(name.startsWith("/") ? name.substring(1) : name);
+      }
+    }
+    containers.learn(daemon, keys.toArray(new String[keys.size()]));
+  }
+
+  private Daemon imageOwner(final String image) {
+    final Daemon daemon = (image != null) ? images.get(image) : null;
+    return (daemon != null) ? daemon : leastLoaded();
+  }
+
+  private Daemon containerOwner(final String containerId)
+      throws DockerException, InterruptedException {
+    final Daemon known = containers.get(containerId);
+    if (known != null) {
+      return known;
+    }
+
+    final List<DockerException> errors = Lists.newArrayList();
+    final Map.Entry<Daemon, ContainerInfo> found = find(new Call<ContainerInfo>() {
+      @Override
+      public ContainerInfo call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.inspectContainer(containerId);
+      }
+    }, errors);
+    if (found == null) {
+      throw new ContainerNotFoundException(containerId, lastError(errors));
+    }
+    containers.learn(found.getKey(), containerId, found.getValue().id());
+    return found.getKey();
+  }
+
+  private Daemon execOwner(final String execId) throws DockerException, InterruptedException {
+    final Daemon known = execs.get(execId);
+    if (known != null) {
+      return known;
+    }
+
+    final List<DockerException> errors = Lists.newArrayList();
+    final Map.Entry<Daemon, ExecState> found = find(new Call<ExecState>() {
+      @Override
+      public ExecState call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.execInspect(execId);
+      }
+    }, errors);
+    if (found == null) {
+      throw new ExecNotFoundException(execId, lastError(errors));
+    }
+    execs.learn(found.getKey(), execId);
+    return found.getKey();
+  }
+
+  private Daemon networkOwner(final String networkId)
+      throws DockerException, InterruptedException {
+    final Daemon known = networks.get(networkId);
+    if (known != null) {
+      return known;
+    }
+
+    final List<DockerException> errors = Lists.newArrayList();
+    final Map.Entry<Daemon, Network> found = find(new Call<Network>() {
+      @Override
+      public Network call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.inspectNetwork(networkId);
+      }
+    }, errors);
+    if (found == null) {
+      throw new NetworkNotFoundException(networkId, lastError(errors));
+    }
+    networks.learn(found.getKey(), networkId, found.getValue().id());
+    return found.getKey();
+  }
+
+  /**
+   * Call the daemon owning a container, forgetting the owner if the container is gone.
+   */
+  private <T> T onContainer(final String containerId, final boolean timed, final Call<T> call)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = containerOwner(containerId);
+    try {
+      return call(daemon, timed, call);
+    } catch (ContainerNotFoundException e) {
+      containers.forget(containerId, daemon);
+      throw e;
+    }
+  }
+
+  private <T> T onContainer(final String containerId, final Call<T> call)
+      throws DockerException, InterruptedException {
+    return onContainer(containerId, true, call);
+  }
+
+  private <T> T onNetwork(final String networkId, final Call<T> call)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = networkOwner(networkId);
+    try {
+      return call(daemon, call);
+    } catch (NetworkNotFoundException e) {
+      networks.forget(networkId, daemon);
+      throw e;
+    }
+  }
+
+  @Override
+  public String ping() throws DockerException, InterruptedException {
+    return call(leastLoaded(), new Call<String>() {
+      @Override
+      public String call(final DockerClient client) throws DockerException, InterruptedException {
+        return client.ping();
+      }
+    });
+  }
+
+  @Override
+  public Version version() throws DockerException, InterruptedException {
+    return call(leastLoaded(), new Call<Version>() {
+      @Override
+      public Version call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.version();
+      }
+    });
+  }
+
+  @Override
+  public int auth(final AuthConfig authConfig) throws DockerException, InterruptedException {
+    return call(leastLoaded(), new Call<Integer>() {
+      @Override
+      public Integer call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.auth(authConfig);
+      }
+    });
+  }
+
+  @Override
+  public Info info() throws DockerException, InterruptedException {
+    return call(leastLoaded(), new Call<Info>() {
+      @Override
+      public Info call(final DockerClient client) throws DockerException, InterruptedException {
+        return client.info();
+      }
+    });
+  }
+
+  @Override
+  public List<Container> listContainers(final ListContainersParam... params)
+      throws DockerException, InterruptedException {
+    final Map<Daemon, List<Container>> results =
+        fanOut("list containers", new Call<List<Container>>() {
+          @Override
+          public List<Container> call(final DockerClient client)
+              throws DockerException, InterruptedException {
+            return client.listContainers(params);
+          }
+        });
+    final List<Container> all = Lists.newArrayList();
+    for (final Map.Entry<Daemon, List<Container>> result : results.entrySet()) {
+      for (final Container container : result.getValue()) {
+        learnContainer(container, result.getKey());
+      }
+      all.addAll(result.getValue());
+    }
+    return all;
+  }
+
+  @Override
+  public List<Image> listImages(final ListImagesParam... params)
+      throws DockerException, InterruptedException {
+    final Map<Daemon, List<Image>> results = fanOut("list images", new Call<List<Image>>() {
+      @Override
+      public List<Image> call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.listImages(params);
+      }
+    });
+    final List<Image> all = Lists.newArrayList();
+    for (final List<Image> images : results.values()) {
+      all.addAll(images);
+    }
+    return all;
+  }
+
+  @Override
+  public ContainerInfo inspectContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    return onContainer(containerId, new Call<ContainerInfo>() {
+      @Override
+      public ContainerInfo call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.inspectContainer(containerId);
+      }
+    });
+  }
+
+  @Override
+  public ContainerCreation commitContainer(final String containerId, final String repo,
+                                           final String tag, final ContainerConfig config,
+                                           final String comment, final String author)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = containerOwner(containerId);
+    final ContainerCreation creation = call(daemon, false, new Call<ContainerCreation>() {
+      @Override
+      public ContainerCreation call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.commitContainer(containerId, repo, tag, config, comment, author);
+      }
+    });
+    // Committing without a tag tags the image as latest
+    images.learn(daemon, repo, repo + ":" + ((tag == null) ? "latest" : tag));
+    return creation;
+  }
+
+  @Override
+  public ImageInfo inspectImage(final String image) throws DockerException, InterruptedException {
+    return call(imageOwner(image), new Call<ImageInfo>() {
+      @Override
+      public ImageInfo call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.inspectImage(image);
+      }
+    });
+  }
+
+  @Override
+  public List<RemovedImage> removeImage(final String image)
+      throws DockerException, InterruptedException {
+    return removeImage(image, false, false);
+  }
+
+  @Override
+  public List<RemovedImage> removeImage(final String image, final boolean force,
+                                        final boolean noPrune)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = imageOwner(image);
+    final List<RemovedImage> removed = call(daemon, new Call<List<RemovedImage>>() {
+      @Override
+      public List<RemovedImage> call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.removeImage(image, force, noPrune);
+      }
+    });
+    images.forget(image, daemon);
+    return removed;
+  }
+
+  @Override
+  public List<ImageSearchResult> searchImages(final String term)
+      throws DockerException, InterruptedException {
+    return call(leastLoaded(), new Call<List<ImageSearchResult>>() {
+      @Override
+      public List<ImageSearchResult> call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.searchImages(term);
+      }
+    });
+  }
+
+  @Override
+  public void load(final String image, final InputStream imagePayload)
+      throws DockerException, InterruptedException {
+    load(image, imagePayload, null, null);
+  }
+
+  @Override
+  public void load(final String image, final InputStream imagePayload,
+                   final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    load(image, imagePayload, null, handler);
+  }
+
+  @Override
+  public void load(final String image, final InputStream imagePayload,
+                   final AuthConfig authConfig)
+      throws DockerException, InterruptedException {
+    load(image, imagePayload, authConfig, null);
+  }
+
+  @Override
+  public void load(final String image, final InputStream imagePayload,
+                   final AuthConfig authConfig, final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = leastLoaded();
+    call(daemon, false, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        if (authConfig == null && handler == null) {
+          client.load(image, imagePayload);
+        } else if (authConfig == null) {
+          client.load(image, imagePayload, handler);
+        } else if (handler == null) {
+          client.load(image, imagePayload, authConfig);
+        } else {
+          client.load(image, imagePayload, authConfig, handler);
+        }
+        return null;
+      }
+    });
+    images.learn(daemon, image);
+  }
+
+  @Override
+  public InputStream save(final String image)
+      throws DockerException, IOException, InterruptedException {
+    return callWithIo(imageOwner(image), false, new Call<InputStream>() {
+      @Override
+      public InputStream call(final DockerClient client)
+          throws DockerException, InterruptedException, IOException {
+        return client.save(image);
+      }
+    });
+  }
+
+  @Override
+  public InputStream save(final String image, final AuthConfig authConfig)
+      throws DockerException, IOException, InterruptedException {
+    return callWithIo(imageOwner(image), false, new Call<InputStream>() {
+      @Override
+      public InputStream call(final DockerClient client)
+          throws DockerException, InterruptedException, IOException {
+        return client.save(image, authConfig);
+      }
+    });
+  }
+
+  @Override
+  public void pull(final String image) throws DockerException, InterruptedException {
+    pull(image, null, null);
+  }
+
+  @Override
+  public void pull(final String image, final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    pull(image, null, handler);
+  }
+
+  @Override
+  public void pull(final String image, final AuthConfig authConfig)
+      throws DockerException, InterruptedException {
+    pull(image, authConfig, null);
+  }
+
+  @Override
+  public void pull(final String image, final AuthConfig authConfig,
+                   final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = leastLoaded();
+    call(daemon, false, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        if (authConfig == null && handler == null) {
+          client.pull(image);
+        } else if (authConfig == null) {
+          client.pull(image, handler);
+        } else if (handler == null) {
+          client.pull(image, authConfig);
+        } else {
+          client.pull(image, authConfig, handler);
+        }
+        return null;
+      }
+    });
+    images.learn(daemon, image);
+  }
+
+  @Override
+  public void push(final String image) throws DockerException, InterruptedException {
+    push(image, null);
+  }
+
+  @Override
+  public void push(final String image, final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    call(imageOwner(image), false, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        if (handler == null) {
+          client.push(image);
+        } else {
+          client.push(image, handler);
+        }
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void tag(final String image, final String name)
+      throws DockerException, InterruptedException {
+    tag(image, name, false);
+  }
+
+  @Override
+  public void tag(final String image, final String name, final boolean force)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = imageOwner(image);
+    call(daemon, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.tag(image, name, force);
+        return null;
+      }
+    });
+    images.learn(daemon, name);
+  }
+
+  @Override
+  public String build(final Path directory, final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return build(directory, null, null, null, params);
+  }
+
+  @Override
+  public String build(final Path directory, final String name, final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return build(directory, name, null, null, params);
+  }
+
+  @Override
+  public String build(final Path directory, final ProgressHandler handler,
+                      final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return build(directory, null, null, handler, params);
+  }
+
+  @Override
+  public String build(final Path directory, final String name, final ProgressHandler handler,
+                      final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return build(directory, name, null, handler, params);
+  }
+
+  @Override
+  public String build(final Path directory, final String name, final String dockerfile,
+                      final ProgressHandler handler, final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    final Daemon daemon = leastLoaded();
+    final String imageId = callWithIo(daemon, false, new Call<String>() {
+      @Override
+      public String call(final DockerClient client)
+          throws DockerException, InterruptedException, IOException {
+        return client.build(directory, name, dockerfile, handler, params);
+      }
+    });
+    images.learn(daemon, name, imageId);
+    return imageId;
+  }
+
+  @Override
+  public ContainerCreation createContainer(final ContainerConfig config)
+      throws DockerException, InterruptedException {
+    return createContainer(config, null);
+  }
+
+  @Override
+  public ContainerCreation createContainer(final ContainerConfig config, final String name)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = imageOwner(config.image());
+    final ContainerCreation creation = call(daemon, new Call<ContainerCreation>() {
+      @Override
+      public ContainerCreation call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return (name == null) ? client.createContainer(config)
+                              : client.createContainer(config, name);
+      }
+    });
+    containers.learn(daemon, creation.id(), name);
+    return creation;
+  }
+
+  @Override
+  public void renameContainer(final String containerId, final String name)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = containerOwner(containerId);
+    call(daemon, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.renameContainer(containerId, name);
+        return null;
+      }
+    });
+    containers.learn(daemon, containerId, name);
+  }
+
+  @Override
+  public void startContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.startContainer(containerId);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void stopContainer(final String containerId, final int secondsToWaitBeforeKilling)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, false, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.stopContainer(containerId, secondsToWaitBeforeKilling);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void pauseContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.pauseContainer(containerId);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void unpauseContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.unpauseContainer(containerId);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void restartContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, false, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.restartContainer(containerId);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void restartContainer(final String containerId, final int secondsToWaitBeforeRestart)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, false, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.restartContainer(containerId, secondsToWaitBeforeRestart);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public ContainerExit waitContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    // Not tracked: waiting for a container says nothing about the daemon's load.
+    final Daemon daemon = containerOwner(containerId);
+    try {
+      return daemon.client().waitContainer(containerId);
+    } catch (ContainerNotFoundException e) {
+      containers.forget(containerId, daemon);
+      throw e;
+    }
+  }
+
+  @Override
+  public void killContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.killContainer(containerId);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void removeContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    removeContainer(containerId, new RemoveContainerParam[0]);
+  }
+
+  @Override
+  public void removeContainer(final String containerId, final RemoveContainerParam... params)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = containerOwner(containerId);
+    try {
+      call(daemon, new Call<Void>() {
+        @Override
+        public Void call(final DockerClient client)
+            throws DockerException, InterruptedException {
+          if (params.length == 0) {
+            client.removeContainer(containerId);
+          } else {
+            client.removeContainer(containerId, params);
+          }
+          return null;
+        }
+      });
+    } finally {
+      containers.forget(containerId, daemon);
+    }
+  }
+
+  @Override
+  @Deprecated
+  public void removeContainer(final String containerId, final boolean removeVolumes)
+      throws DockerException, InterruptedException {
+    removeContainer(containerId, RemoveContainerParam.removeVolumes(removeVolumes));
+  }
+
+  @Override
+  public InputStream exportContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    return onContainer(containerId, false, new Call<InputStream>() {
+      @Override
+      public InputStream call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.exportContainer(containerId);
+      }
+    });
+  }
+
+  @Override
+  public InputStream copyContainer(final String containerId, final String path)
+      throws DockerException, InterruptedException {
+    return onContainer(containerId, false, new Call<InputStream>() {
+      @Override
+      public InputStream call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.copyContainer(containerId, path);
+      }
+    });
+  }
+
+  @Override
+  public void copyToContainer(final Path directory, final String containerId, final String path)
+      throws DockerException, InterruptedException, IOException {
+    callWithIo(containerOwner(containerId), false, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client)
+          throws DockerException, InterruptedException, IOException {
+        client.copyToContainer(directory, containerId, path);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public LogStream logs(final String containerId, final LogsParam... params)
+      throws DockerException, InterruptedException {
+    return onContainer(containerId, false, new Call<LogStream>() {
+      @Override
+      public LogStream call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.logs(containerId, params);
+      }
+    });
+  }
+
+  /**
+   * Events of the least loaded daemon. Use {@link #client(String)} to get the events of a
+   * specific daemon.
+   */
+  @Override
+  public EventStream events(final EventsParam... params)
+      throws DockerException, InterruptedException {
+    return call(leastLoaded(), false, new Call<EventStream>() {
+      @Override
+      public EventStream call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.events(params);
+      }
+    });
+  }
+
+  @Override
+  public String execCreate(final String containerId, final String[] cmd,
+                           final ExecCreateParam... params)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = containerOwner(containerId);
+    final String execId = call(daemon, new Call<String>() {
+      @Override
+      public String call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.execCreate(containerId, cmd, params);
+      }
+    });
+    execs.learn(daemon, execId);
+    return execId;
+  }
+
+  @Override
+  public LogStream execStart(final String execId, final ExecStartParameter... params)
+      throws DockerException, InterruptedException {
+    return call(execOwner(execId), false, new Call<LogStream>() {
+      @Override
+      public LogStream call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.execStart(execId, params);
+      }
+    });
+  }
+
+  @Override
+  public ExecState execInspect(final String execId) throws DockerException, InterruptedException {
+    return call(execOwner(execId), new Call<ExecState>() {
+      @Override
+      public ExecState call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.execInspect(execId);
+      }
+    });
+  }
+
+  @Override
+  public ContainerStats stats(final String containerId)
+      throws DockerException, InterruptedException {
+    return onContainer(containerId, new Call<ContainerStats>() {
+      @Override
+      public ContainerStats call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.stats(containerId);
+      }
+    });
+  }
+
+  @Override
+  public List<Network> listNetworks() throws DockerException, InterruptedException {
+    final Map<Daemon, List<Network>> results = fanOut("list networks", new Call<List<Network>>() {
+      @Override
+      public List<Network> call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.listNetworks();
+      }
+    });
+    final List<Network> all = Lists.newArrayList();
+    for (final Map.Entry<Daemon, List<Network>> result : results.entrySet()) {
+      for (final Network network : result.getValue()) {
+        networks.learn(result.getKey(), network.id(), network.name());
+      }
+      all.addAll(result.getValue());
+    }
+    return all;
+  }
+
+  @Override
+  public Network inspectNetwork(final String networkId)
+      throws DockerException, InterruptedException {
+    return onNetwork(networkId, new Call<Network>() {
+      @Override
+      public Network call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.inspectNetwork(networkId);
+      }
+    });
+  }
+
+  @Override
+  public NetworkCreation createNetwork(final NetworkConfig networkConfig)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = leastLoaded();
+    final NetworkCreation creation = call(daemon, new Call<NetworkCreation>() {
+      @Override
+      public NetworkCreation call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.createNetwork(networkConfig);
+      }
+    });
+    networks.learn(daemon, creation.id(), networkConfig.name());
+    return creation;
+  }
+
+  @Override
+  public void removeNetwork(final String networkId)
+      throws DockerException, InterruptedException {
+    final Daemon daemon = networkOwner(networkId);
+    try {
+      call(daemon, new Call<Void>() {
+        @Override
+        public Void call(final DockerClient client)
+            throws DockerException, InterruptedException {
+          client.removeNetwork(networkId);
+          return null;
+        }
+      });
+    } finally {
+      networks.forget(networkId, daemon);
+    }
+  }
+
+  @Override
+  public void connectToNetwork(final String containerId, final String networkId)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.connectToNetwork(containerId, networkId);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public void disconnectFromNetwork(final String containerId, final String networkId)
+      throws DockerException, InterruptedException {
+    onContainer(containerId, new Call<Void>() {
+      @Override
+      public Void call(final DockerClient client) throws DockerException, InterruptedException {
+        client.disconnectFromNetwork(containerId, networkId);
+        return null;
+      }
+    });
+  }
+
+  @Override
+  public LogStream attachContainer(final String containerId, final AttachParameter... params)
+      throws DockerException, InterruptedException {
+    return onContainer(containerId, false, new Call<LogStream>() {
+      @Override
+      public LogStream call(final DockerClient client)
+          throws DockerException, InterruptedException {
+        return client.attachContainer(containerId, params);
+      }
+    });
+  }
+
+  /**
+   * @return The hosts of all daemons, separated by commas.
+   */
+  @Override
+  public String getHost() {
+    final List<String> hosts = Lists.newArrayList();
+    for (final Daemon daemon : daemons) {
+      hosts.add(daemon.client().getHost());
+    }
+    return Joiner.on(',').join(hosts);
+  }
+
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    for (final Daemon daemon : daemons) {
+      daemon.client().close();
+    }
+  }
+
+  /**
+   * The daemons owning containers, exec instances, networks or images, by every key they are
+   * known by, e.g. a container's id and name. Forgetting a key forgets all keys of the same thing.
+   */
+  private static class Owners {
+
+    private final ConcurrentMap<String, Owner> owners;
+
+    Owners(final long maxSize) {
+      this.owners = CacheBuilder.newBuilder()
+          .maximumSize(maxSize)
+          .<String, Owner>build()
+          .asMap();
+    }
+
+    Daemon get(final String key) {
+      final Owner owner = owners.get(key);
+      return (owner != null) ? owner.daemon : null;
+    }
+
+    /**
+     * Remember that some keys, e.g. an id and a name, refer to the same thing on a daemon. Null
+     * keys are ignored.
+     */
+    void learn(final Daemon daemon, final String... keys) {
+      Owner owner = null;
+      for (final String key : keys) {
+        final Owner known = (key != null) ? owners.get(key) : null;
+        if (known != null && known.daemon == daemon) {
+          owner = known;
+          break;
+        }
+      }
+      if (owner == null) {
+        owner = new Owner(daemon);
+      }
+      for (final String key : keys) {
+        if (key != null) {
+          owner.keys.add(key);
+          final Owner previous = owners.put(key, owner);
+          if (previous != null && previous != owner) {
+            previous.keys.remove(key);
+          }
+        }
+      }
+    }
+
+    /**
+     * Forget a key and the other keys of the same thing, if the daemon still owns it.
+     */
+    void forget(final String key, final Daemon daemon) {
+      final Owner owner = owners.get(key);
+      if (owner != null && owner.daemon == daemon) {
+        for (final String alias : owner.keys) {
+          owners.remove(alias, owner);
+        }
+      }
+    }
+  }
+
+  private static class Owner {
+
+    private final Daemon daemon;
+    private final Set<String> keys = Sets.newConcurrentHashSet();
+
+    Owner(final Daemon daemon) {
+      this.daemon = daemon;
+    }
+  }
+
+  public static class Builder {
+
+    private final Map<String, ? extends DockerClient> clients;
+    private long fanOutTimeoutMillis = DEFAULT_FAN_OUT_TIMEOUT_MILLIS;
+    private long maxOwners = DEFAULT_MAX_OWNERS;
+    private int fanOutThreads = DEFAULT_FAN_OUT_THREADS;
+
+    private Builder(final Map<String, ? extends DockerClient> clients) {
+      checkArgument(!clients.isEmpty(), "at least one client is required");
+      this.clients = clients;
+    }
+
+    /**
+     * Set how long calls that ask all daemons, like listContainers or looking up the daemon of a
+     * container, wait for the daemons to answer. Daemons that take longer are left out.
+     *
+     * @param fanOutTimeoutMillis Time to wait for all daemons to answer
+     * @return Builder
+     */
+    public Builder fanOutTimeoutMillis(final long fanOutTimeoutMillis) {
+      checkArgument(fanOutTimeoutMillis > 0, "fanOutTimeoutMillis must be positive");
+      this.fanOutTimeoutMillis = fanOutTimeoutMillis;
+      return this;
+    }
+
+    /**
+     * Set how many owners of containers, exec instances, networks and images are remembered,
+     * each. The least recently used ones are forgotten first.
+     *
+     * @param maxOwners Maximum number of remembered keys per kind of owned thing
+     * @return Builder
+     */
+    public Builder maxOwners(final long maxOwners) {
+      checkArgument(maxOwners > 0, "maxOwners must be positive");
+      this.maxOwners = maxOwners;
+      return this;
+    }
+
+    /**
+     * Set how many threads ask daemons at once in calls that ask all daemons. With more daemons
+     * than threads, the remaining daemons are asked as threads become free, within the same
+     * {@link #fanOutTimeoutMillis(long) timeout}.
+     *
+     * @param fanOutThreads Number of threads asking daemons
+     * @return Builder
+     */
+    public Builder fanOutThreads(final int fanOutThreads) {
+      checkArgument(fanOutThreads > 0, "fanOutThreads must be positive");
+      this.fanOutThreads = fanOutThreads;
+      return this;
+    }
+
+    public RoutingDockerClient build() {
+      return new RoutingDockerClient(this);
+    }
+  }
+}
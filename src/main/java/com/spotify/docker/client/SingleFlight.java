@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.SettableFuture;
+
+import com.spotify.docker.client.exceptions.DockerException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets concurrent identical calls share a single execution: the first caller for a key makes the
+ * call and everyone asking for the same key while it is in progress gets its result or exception.
+ * Results are not kept once the call completes.
+ */
+class SingleFlight {
+
+  private final ConcurrentMap<String, SettableFuture<Object>> calls = new ConcurrentHashMap<>();
+  private final AtomicLong coalesced = new AtomicLong();
+
+  /**
+   * @return The number of calls that were answered by another caller's call.
+   */
+  long coalesced() {
+    return coalesced.get();
+  }
+
+  @SuppressWarnings("unchecked")
+  <T> T execute(final String key, final DockerCall<T> call)
+      throws DockerException, InterruptedException {
+    while (true) {
+      final SettableFuture<Object> future = SettableFuture.create();
+      final SettableFuture<Object> inFlight = calls.putIfAbsent(key, future);
+      if (inFlight == null) {
+        return lead(key, future, call);
+      }
+
+      coalesced.incrementAndGet();
+      try {
+        return (T) inFlight.get();
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof InterruptedException) {
+          // The interrupt was meant for the caller that made the call, not for us. Try again.
+          continue;
+        }
+        Throwables.propagateIfInstanceOf(cause, DockerException.class);
+        throw Throwables.propagate(cause);
+      }
+    }
+  }
+
+  private <T> T lead(final String key, final SettableFuture<Object> future,
+                     final DockerCall<T> call)
+      throws DockerException, InterruptedException {
+    try {
+      final T result = call.call();
+      calls.remove(key, future);
+      future.set(result);
+      return result;
+    } catch (Throwable t) {
+      calls.remove(key, future);
+      future.setException(t);
+      throw t;
+    }
+  }
+}
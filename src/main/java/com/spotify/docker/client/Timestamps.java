@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Parses the RFC 3339 timestamps the daemon puts in front of log lines, e.g.
+ * {@code 2016-03-09T12:34:56.123456789Z}, without allocating.
+ */
+final class Timestamps {
+
+  /**
+   * Returned for text that is not a timestamp.
+   */
+  static final long INVALID = Long.MIN_VALUE;
+
+  private static final long NANOS_PER_SECOND = 1000000000L;
+
+  // The layout the daemon uses for logs, 2016-03-09T12:34:56.123456789Z
+  private static final int FIXED_LENGTH = 30;
+  // With an offset instead of Z
+  private static final int MAX_LENGTH = 35;
+
+  private Timestamps() {
+  }
+
+  /**
+   * @return The time in nanoseconds since the epoch, or {@link #INVALID}.
+   */
+  static long parseNanos(final CharSequence s, final int start, final int end) {
+    return parseNanos(s, null, start, end);
+  }
+
+  /**
+   * Parse a timestamp from ASCII bytes, without changing the position of the buffer. Timestamps
+   * in the layout the daemon uses for logs are parsed field by field at fixed offsets.
+   *
+   * @return The time in nanoseconds since the epoch, or {@link #INVALID}.
+   */
+  static long parseNanos(final ByteBuffer b, final int start, final int end) {
+    if (end - start != FIXED_LENGTH || b.get(start + 19) != '.' || b.get(start + 29) != 'Z') {
+      return parseNanos(null, b, start, end);
+    }
+    if (b.get(start + 4) != '-' || b.get(start + 7) != '-' || b.get(start + 10) != 'T'
+        || b.get(start + 13) != ':' || b.get(start + 16) != ':') {
+      return INVALID;
+    }
+    final int nanos = digits(null, b, start + 20, 9);
+    if (nanos < 0) {
+      return INVALID;
+    }
+    return toNanos(digits(null, b, start, 4), digits(null, b, start + 5, 2),
+                   digits(null, b, start + 8, 2), digits(null, b, start + 11, 2),
+                   digits(null, b, start + 14, 2), digits(null, b, start + 17, 2), nanos, 0);
+  }
+
+  /**
+   * Parse a timestamp in any layout from either characters or ASCII bytes, whichever is not null.
+   */
+  private static long parseNanos(final CharSequence s, final ByteBuffer b, final int start,
+                                 final int end) {
+    // yyyy-MM-ddTHH:mm:ss, then an optional fraction and Z or an offset
+    if (end - start < 20 || charAt(s, b, start + 4) != '-' || charAt(s, b, start + 7) != '-'
+        || charAt(s, b, start + 10) != 'T' || charAt(s, b, start + 13) != ':'
+        || charAt(s, b, start + 16) != ':') {
+      return INVALID;
+    }
+    final int year = digits(s, b, start, 4);
+    final int month = digits(s, b, start + 5, 2);
+    final int day = digits(s, b, start + 8, 2);
+    final int hour = digits(s, b, start + 11, 2);
+    final int minute = digits(s, b, start + 14, 2);
+    final int second = digits(s, b, start + 17, 2);
+
+    int i = start + 19;
+    long nanos = 0;
+    if (charAt(s, b, i) == '.') {
+      i++;
+      long scale = NANOS_PER_SECOND;
+      final int fractionStart = i;
+      while (i < end && charAt(s, b, i) >= '0' && charAt(s, b, i) <= '9') {
+        if (scale > 1) {
+          scale /= 10;
+          nanos += (charAt(s, b, i) - '0') * scale;
+        }
+        i++;
+      }
+      if (i == fractionStart || i == end) {
+        return INVALID;
+      }
+    }
+
+    long offsetSeconds = 0;
+    final char zone = charAt(s, b, i);
+    if (zone == 'Z' || zone == 'z') {
+      i++;
+    } else if ((zone == '+' || zone == '-') && end - i >= 6 && charAt(s, b, i + 3) == ':') {
+      final int offsetHours = digits(s, b, i + 1, 2);
+      final int offsetMinutes = digits(s, b, i + 4, 2);
+      if (offsetHours < 0 || offsetMinutes < 0) {
+        return INVALID;
+      }
+      offsetSeconds = (zone == '+' ? 1 : -1) * (offsetHours * 3600L + offsetMinutes * 60L);
+      i += 6;
+    } else {
+      return INVALID;
+    }
+    if (i != end) {
+      return INVALID;
+    }
+    return toNanos(year, month, day, hour, minute, second, nanos, offsetSeconds);
+  }
+
+  /**
+   * @return The index of the space after the timestamp a string starts with, or -1 if there is
+   *         none within the length of a timestamp.
+   */
+  static int spaceAfter(final CharSequence s) {
+    final int limit = Math.min(s.length(), MAX_LENGTH + 1);
+    if (FIXED_LENGTH < limit && s.charAt(FIXED_LENGTH) == ' ') {
+      return FIXED_LENGTH;
+    }
+    for (int i = 0; i < limit; i++) {
+      if (s.charAt(i) == ' ') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return The index of the space after the timestamp the bytes between the position and limit
+   *         of a buffer start with, or -1 if there is none within the length of a timestamp.
+   */
+  static int spaceAfter(final ByteBuffer b) {
+    final int start = b.position();
+    final int limit = Math.min(b.limit(), start + MAX_LENGTH + 1);
+    if (start + FIXED_LENGTH < limit && b.get(start + FIXED_LENGTH) == ' ') {
+      return start + FIXED_LENGTH;
+    }
+    for (int i = start; i < limit; i++) {
+      if (b.get(i) == ' ') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static long toNanos(final int year, final int month, final int day, final int hour,
+                              final int minute, final int second, final long nanos,
+                              final long offsetSeconds) {
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+        || minute < 0 || minute > 59 || second < 0 || second > 60) {
+      return INVALID;
+    }
+    final long seconds = daysSinceEpoch(year, month, day) * 86400L
+                         + hour * 3600L + minute * 60L + second - offsetSeconds;
+    return seconds * NANOS_PER_SECOND + nanos;
+  }
+
+  /**
+   * @return The value of {@code count} decimal digits, or -1 if they are not all digits.
+   */
+  private static int digits(final CharSequence s, final ByteBuffer b, final int start,
+                            final int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      final int digit = charAt(s, b, i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static char charAt(final CharSequence s, final ByteBuffer b, final int index) {
+    return (s != null) ? s.charAt(index) : (char) (b.get(index) & 0xff);
+  }
+
+  /**
+   * Days from 1970-01-01 to a date in the proleptic Gregorian calendar.
+   */
+  static long daysSinceEpoch(final int year, final int month, final int day) {
+    // Count years from March, so that the leap day is the last day of the year
+    final long y = (month <= 2) ? year - 1 : year;
+    final long era = (y >= 0 ? y : y - 399) / 400;
+    final long yearOfEra = y - era * 400;
+    final long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    final long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097 + dayOfEra - 719468;
+  }
+}
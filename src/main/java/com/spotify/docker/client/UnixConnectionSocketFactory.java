@@ -27,13 +27,16 @@ import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 
 import jnr.unixsocket.UnixSocketAddress;
 
 /**
- * Provides a ConnectionSocketFactory for connecting Apache HTTP clients to Unix sockets.
+ * Provides a ConnectionSocketFactory for connecting Apache HTTP clients to Unix sockets. On Java 16
+ * and later the sockets are backed by JDK socket channels, see {@link UnixDomainSocket}; older JVMs
+ * fall back to jnr-unixsocket.
  */
 @Immutable
 public class UnixConnectionSocketFactory implements ConnectionSocketFactory {
@@ -43,11 +46,15 @@ public class UnixConnectionSocketFactory implements ConnectionSocketFactory {
   public UnixConnectionSocketFactory(final URI socketUri) {
     super();
 
+    this.socketFile = socketFile(socketUri);
+  }
+
+  static File socketFile(final URI socketUri) {
     final String filename = socketUri.toString()
         .replaceAll("^unix:///", "unix://localhost/")
         .replaceAll("^unix://localhost", "");
 
-    this.socketFile = new File(filename);
+    return new File(filename);
   }
 
   public static URI sanitizeUri(final URI uri) {
@@ -60,7 +67,7 @@ public class UnixConnectionSocketFactory implements ConnectionSocketFactory {
 
   @Override
   public Socket createSocket(final HttpContext context) throws IOException {
-    return new ApacheUnixSocket();
+    return UnixDomainSocket.isSupported() ? new UnixDomainSocket() : new ApacheUnixSocket();
   }
 
   @Override
@@ -71,7 +78,10 @@ public class UnixConnectionSocketFactory implements ConnectionSocketFactory {
                               final InetSocketAddress localAddress,
                               final HttpContext context) throws IOException {
     try {
-      socket.connect(new UnixSocketAddress(socketFile), connectTimeout);
+      final SocketAddress address = (socket instanceof UnixDomainSocket)
+                                    ? UnixDomainSocket.address(socketFile)
+                                    : new UnixSocketAddress(socketFile);
+      socket.connect(address, connectTimeout);
     } catch (SocketTimeoutException e) {
       throw new ConnectTimeoutException(e, null, remoteAddress.getAddress());
     }
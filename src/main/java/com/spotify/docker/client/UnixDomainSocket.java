@@ -0,0 +1,504 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Throwables;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Provides a socket over a JDK {@link SocketChannel} connected to a unix domain socket, which is
+ * available on Java 16 and later. Unlike {@link ApacheUnixSocket} it needs no native bindings,
+ * supports the send and receive buffer sizes, and honours both the connect timeout and SO_TIMEOUT.
+ *
+ * The JDK does not offer a blocking socket adaptor for unix domain channels, so the channel is
+ * non-blocking and reads, writes and connects wait on a selector when they cannot make progress.
+ * The JDK classes are looked up reflectively so that this class can be loaded on older JVMs; use
+ * {@link #isSupported()} before creating an instance.
+ */
+public class UnixDomainSocket extends Socket {
+
+  private static final ProtocolFamily UNIX;
+  private static final Method OPEN;
+  private static final Method ADDRESS_OF;
+
+  static {
+    ProtocolFamily unix = null;
+    Method open = null;
+    Method addressOf = null;
+    try {
+      unix = StandardProtocolFamily.valueOf("UNIX");
+      open = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+      addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class);
+    } catch (IllegalArgumentException | ReflectiveOperationException e) {
+      open = null;
+    }
+    UNIX = unix;
+    OPEN = open;
+    ADDRESS_OF = addressOf;
+  }
+
+  private final SocketChannel channel;
+  private final InputStream inputStream = new ChannelInputStream();
+  private final OutputStream outputStream = new ChannelOutputStream();
+
+  // Separate selectors so that one thread can read while another one writes.
+  private Selector readSelector;
+  private Selector writeSelector;
+
+  private SocketAddress addr;
+  private volatile int soTimeout;
+  private int lingerTime;
+  private boolean bound;
+  private boolean inputShutdown;
+  private boolean outputShutdown;
+
+  /**
+   * @return true if the running JVM supports unix domain socket channels.
+   */
+  public static boolean isSupported() {
+    return OPEN != null;
+  }
+
+  /**
+   * @param file The socket file.
+   * @return A java.net.UnixDomainSocketAddress for the file.
+   */
+  public static SocketAddress address(final File file) {
+    checkState(isSupported(), "unix domain socket channels require Java 16 or later");
+    try {
+      return (SocketAddress) ADDRESS_OF.invoke(null, file.getPath());
+    } catch (IllegalAccessException | InvocationTargetException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  public UnixDomainSocket() throws IOException {
+    this.channel = openChannel();
+  }
+
+  /**
+   * @return A new non-blocking unix domain socket channel.
+   */
+  static SocketChannel openChannel() throws IOException {
+    checkState(isSupported(), "unix domain socket channels require Java 16 or later");
+    final SocketChannel channel;
+    try {
+      channel = (SocketChannel) OPEN.invoke(null, UNIX);
+    } catch (IllegalAccessException e) {
+      throw Throwables.propagate(e);
+    } catch (InvocationTargetException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+    channel.configureBlocking(false);
+    return channel;
+  }
+
+  @Override
+  public void connect(final SocketAddress endpoint) throws IOException {
+    connect(endpoint, 0);
+  }
+
+  @Override
+  public synchronized void connect(final SocketAddress endpoint, final int timeout)
+      throws IOException {
+    addr = endpoint;
+    if (channel.connect(endpoint)) {
+      return;
+    }
+    final long deadline = System.currentTimeMillis() + timeout;
+    while (!channel.finishConnect()) {
+      final long wait = (timeout > 0) ? deadline - System.currentTimeMillis() : 0;
+      final boolean expired = timeout > 0 && wait <= 0;
+      if (expired || !await(writeSelector(), SelectionKey.OP_CONNECT, wait)) {
+        close();
+        throw new SocketTimeoutException("connect timed out");
+      }
+    }
+  }
+
+  private synchronized Selector readSelector() throws IOException {
+    if (readSelector == null) {
+      readSelector = Selector.open();
+      channel.register(readSelector, SelectionKey.OP_READ);
+    }
+    return readSelector;
+  }
+
+  private synchronized Selector writeSelector() throws IOException {
+    if (writeSelector == null) {
+      writeSelector = Selector.open();
+      channel.register(writeSelector, 0);
+    }
+    return writeSelector;
+  }
+
+  /**
+   * Wait until the channel is ready for the given operations.
+   *
+   * @return false if the timeout expired first.
+   */
+  private boolean await(final Selector selector, final int ops, final long timeout)
+      throws IOException {
+    final int ready;
+    try {
+      selector.keys().iterator().next().interestOps(ops);
+      ready = selector.select(timeout);
+      selector.selectedKeys().clear();
+    } catch (ClosedSelectorException | CancelledKeyException e) {
+      throw new SocketException("Socket closed");
+    }
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException();
+    }
+    return ready > 0;
+  }
+
+  @Override
+  public synchronized void bind(final SocketAddress bindpoint) throws IOException {
+    channel.bind(bindpoint);
+    bound = true;
+  }
+
+  @Override
+  public InetAddress getInetAddress() {
+    if (channel.isConnected()) {
+      try {
+        return InetAddress.getByName("localhost");
+      } catch (UnknownHostException e) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public InetAddress getLocalAddress() {
+    try {
+      return InetAddress.getByAddress(new byte[] {0, 0, 0, 0}); // not bound
+    } catch (UnknownHostException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public int getPort() {
+    return -1; // meaningless for UNIX sockets
+  }
+
+  @Override
+  public int getLocalPort() {
+    return -1; // not bound
+  }
+
+  @Override
+  public SocketAddress getRemoteSocketAddress() {
+    return addr;
+  }
+
+  @Override
+  public SocketAddress getLocalSocketAddress() {
+    return null; // not bound
+  }
+
+  @Override
+  public SocketChannel getChannel() {
+    return channel;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return inputStream;
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    return outputStream;
+  }
+
+  private <T> void setChannelOption(final SocketOption<T> option, final T value)
+      throws SocketException {
+    try {
+      channel.setOption(option, value);
+    } catch (IOException e) {
+      throw socketException(e);
+    }
+  }
+
+  private <T> T getChannelOption(final SocketOption<T> option) throws SocketException {
+    try {
+      return channel.getOption(option);
+    } catch (IOException e) {
+      throw socketException(e);
+    }
+  }
+
+  private static SocketException socketException(final IOException e) {
+    final SocketException socketException = new SocketException(e.getMessage());
+    socketException.initCause(e);
+    return socketException;
+  }
+
+  @Override
+  public void setTcpNoDelay(final boolean on) throws SocketException {
+  }
+
+  @Override
+  public boolean getTcpNoDelay() throws SocketException {
+    return false;
+  }
+
+  @Override
+  public void setSoLinger(final boolean on, final int linger) throws SocketException {
+    if (on) {
+      lingerTime = linger;
+    }
+  }
+
+  @Override
+  public int getSoLinger() throws SocketException {
+    return lingerTime;
+  }
+
+  @Override
+  public void sendUrgentData(final int data) throws IOException {
+    throw new SocketException("Urgent data is not supported by unix domain sockets");
+  }
+
+  @Override
+  public void setOOBInline(final boolean on) throws SocketException {
+    if (on) {
+      throw new SocketException("Urgent data is not supported by unix domain sockets");
+    }
+  }
+
+  @Override
+  public boolean getOOBInline() throws SocketException {
+    return false;
+  }
+
+  @Override
+  public void setSoTimeout(final int timeout) throws SocketException {
+    soTimeout = timeout;
+  }
+
+  @Override
+  public int getSoTimeout() throws SocketException {
+    return soTimeout;
+  }
+
+  @Override
+  public void setSendBufferSize(final int size) throws SocketException {
+    setChannelOption(StandardSocketOptions.SO_SNDBUF, size);
+  }
+
+  @Override
+  public int getSendBufferSize() throws SocketException {
+    return getChannelOption(StandardSocketOptions.SO_SNDBUF);
+  }
+
+  @Override
+  public void setReceiveBufferSize(final int size) throws SocketException {
+    setChannelOption(StandardSocketOptions.SO_RCVBUF, size);
+  }
+
+  @Override
+  public int getReceiveBufferSize() throws SocketException {
+    return getChannelOption(StandardSocketOptions.SO_RCVBUF);
+  }
+
+  @Override
+  public void setKeepAlive(final boolean on) throws SocketException {
+    // not supported by unix domain sockets: Apache client sets it, but we want to just ignore it
+  }
+
+  @Override
+  public boolean getKeepAlive() throws SocketException {
+    return false;
+  }
+
+  @Override
+  public void setTrafficClass(final int tc) throws SocketException {
+    // only a hint, and meaningless without IP: ignore it like a TCP socket may
+  }
+
+  @Override
+  public int getTrafficClass() throws SocketException {
+    return 0;
+  }
+
+  @Override
+  public void setReuseAddress(final boolean on) throws SocketException {
+    // not supported: Apache client tries to set it, but we want to just ignore it
+  }
+
+  @Override
+  public boolean getReuseAddress() throws SocketException {
+    return false;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    // Closing the selectors deregisters the channel, which lets the channel close right away.
+    try {
+      if (readSelector != null) {
+        readSelector.close();
+      }
+    } finally {
+      try {
+        if (writeSelector != null) {
+          writeSelector.close();
+        }
+      } finally {
+        channel.close();
+      }
+    }
+  }
+
+  @Override
+  public void shutdownInput() throws IOException {
+    channel.shutdownInput();
+    inputShutdown = true;
+  }
+
+  @Override
+  public void shutdownOutput() throws IOException {
+    channel.shutdownOutput();
+    outputShutdown = true;
+  }
+
+  @Override
+  public String toString() {
+    if (addr != null) {
+      return addr.toString();
+    }
+    return channel.toString();
+  }
+
+  @Override
+  public boolean isConnected() {
+    return channel.isConnected();
+  }
+
+  @Override
+  public synchronized boolean isBound() {
+    return bound;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return !channel.isOpen();
+  }
+
+  @Override
+  public boolean isInputShutdown() {
+    return inputShutdown;
+  }
+
+  @Override
+  public boolean isOutputShutdown() {
+    return outputShutdown;
+  }
+
+  @Override
+  public void setPerformancePreferences(final int connectionTime, final int latency,
+                                        final int bandwidth) {
+    // only a hint, which the JDK's own sockets ignore as well
+  }
+
+  private class ChannelInputStream extends InputStream {
+
+    @Override
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      while (true) {
+        final int n = channel.read(buffer);
+        if (n != 0) {
+          return n;
+        }
+        if (!await(readSelector(), SelectionKey.OP_READ, soTimeout)) {
+          throw new SocketTimeoutException("Read timed out");
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      UnixDomainSocket.this.close();
+    }
+  }
+
+  private class ChannelOutputStream extends OutputStream {
+
+    @Override
+    public void write(final int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(final byte[] b, final int off, final int len)
+        throws IOException {
+      final ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      while (buffer.hasRemaining()) {
+        if (channel.write(buffer) == 0) {
+          // Like a plain socket, writes block until the peer reads without timing out.
+          await(writeSelector(), SelectionKey.OP_WRITE, 0);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      UnixDomainSocket.this.close();
+    }
+  }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.CharStreams;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.spotify.docker.client.ObjectMapperProvider.objectMapper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static javax.ws.rs.HttpMethod.GET;
+import static javax.ws.rs.HttpMethod.HEAD;
+
+/**
+ * A {@link DockerTransport} that speaks a minimal subset of HTTP/1.1 directly over the Docker unix
+ * socket. Connections are kept alive and pooled, each with its own reusable read and write
+ * buffers, and JSON responses are decoded straight from the socket stream.
+ *
+ * <p>Only what dockerd needs is supported: fixed-length, chunked and close-delimited response
+ * bodies, and JSON request bodies. Anything else should go through Jersey.</p>
+ */
+public class UnixHttpTransport implements DockerTransport {
+
+  private static final Logger log = LoggerFactory.getLogger(UnixHttpTransport.class);
+
+  private static final int BUFFER_SIZE = 8192;
+
+  // UnixConnectionSocketFactory ignores the address; it is only used in timeout exceptions.
+  private static final InetSocketAddress UNIX_ADDRESS =
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 80);
+
+  private final UnixConnectionSocketFactory socketFactory;
+  private final int connectTimeoutMillis;
+  private final int readTimeoutMillis;
+  private final Semaphore permits;
+  private final BlockingQueue<Connection> idle;
+
+  private volatile boolean closed;
+
+  /**
+   * Create a new transport.
+   *
+   * @param socketUri            The unix socket URI, e.g. unix:///var/run/docker.sock
+   * @param connectTimeoutMillis Connect timeout, also used when waiting for a free connection.
+   *                             Zero means no timeout.
+   * @param readTimeoutMillis    SO_TIMEOUT of the connections. Zero means no timeout.
+   * @param poolSize             The maximum number of concurrent connections.
+   */
+  public UnixHttpTransport(final URI socketUri, final long connectTimeoutMillis,
+                           final long readTimeoutMillis, final int poolSize) {
+    checkArgument("unix".equals(socketUri.getScheme()), "Not a unix socket URI: %s", socketUri);
+    checkArgument(poolSize > 0, "poolSize must be positive");
+    this.socketFactory = new UnixConnectionSocketFactory(socketUri);
+    this.connectTimeoutMillis = (int) connectTimeoutMillis;
+    this.readTimeoutMillis = (int) readTimeoutMillis;
+    this.permits = new Semaphore(poolSize);
+    this.idle = new ArrayBlockingQueue<>(poolSize);
+  }
+
+  @Override
+  public <T> T request(final String method, final URI uri, final Map<String, Object> headers,
+                       final Type type, final Object entity)
+      throws DockerException, InterruptedException {
+    checkState(!closed, "transport is closed");
+    checkNotNull(type, "type");
+
+    final byte[] body;
+    try {
+      body = (entity == null) ? null : objectMapper().writeValueAsBytes(entity);
+    } catch (JsonProcessingException e) {
+      throw new DockerException(e);
+    }
+
+    acquire(method, uri);
+    try {
+      Connection connection = idle.poll();
+      final boolean reused = connection != null;
+      if (connection == null) {
+        connection = newConnection(method, uri);
+      }
+      try {
+        return exchange(connection, method, uri, headers, type, body);
+      } catch (IOException e) {
+        // A pooled connection may have been closed by the daemon while it was idle. That is only
+        // safe to retry if the daemon never saw the request, or if the request is idempotent.
+        if (reused && !connection.responseStarted
+            && (e instanceof NoHttpResponseException || isIdempotent(method))) {
+          log.debug("Retrying {} {} on a new connection", method, uri, e);
+          try {
+            return exchange(newConnection(method, uri), method, uri, headers, type, body);
+          } catch (IOException retryException) {
+            throw propagate(method, uri, retryException);
+          }
+        }
+        throw propagate(method, uri, e);
+      }
+    } finally {
+      permits.release();
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    Connection connection;
+    while ((connection = idle.poll()) != null) {
+      connection.close();
+    }
+  }
+
+  private void acquire(final String method, final URI uri)
+      throws DockerTimeoutException, InterruptedException {
+    if (connectTimeoutMillis <= 0) {
+      permits.acquire();
+    } else if (!permits.tryAcquire(connectTimeoutMillis, MILLISECONDS)) {
+      throw new DockerTimeoutException(method, uri, new ConnectionPoolTimeoutException(
+          "Timeout waiting for connection from pool"));
+    }
+  }
+
+  private Connection newConnection(final String method, final URI uri)
+      throws DockerException, InterruptedException {
+    try {
+      return new Connection(connect());
+    } catch (IOException e) {
+      throw propagate(method, uri, e);
+    }
+  }
+
+  @VisibleForTesting
+  Socket connect() throws IOException {
+    final Socket socket = socketFactory.createSocket(null);
+    socket.setSoTimeout(readTimeoutMillis);
+    return socketFactory.connectSocket(connectTimeoutMillis, socket, null, UNIX_ADDRESS, null,
+                                       null);
+  }
+
+  private <T> T exchange(final Connection connection, final String method, final URI uri,
+                         final Map<String, Object> headers, final Type type, final byte[] body)
+      throws DockerException, IOException {
+    boolean release = false;
+    try {
+      connection.writeRequest(method, uri, headers, body);
+      final InputStream responseBody = connection.readResponse(method);
+
+      final T result;
+      if (connection.status < 200 || connection.status >= 300) {
+        final String message = CharStreams.toString(new InputStreamReader(responseBody, UTF_8));
+        release = connection.keepAlive;
+        throw new DockerRequestException(method, uri, connection.status, message);
+      } else {
+        result = decode(responseBody, type);
+        connection.drain(responseBody);
+      }
+
+      release = connection.keepAlive;
+      return result;
+    } finally {
+      if (release && !closed && idle.offer(connection)) {
+        connection.responseStarted = false;
+      } else {
+        connection.close();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T decode(final InputStream body, final Type type) throws IOException {
+    if (type == String.class) {
+      return (T) CharStreams.toString(new InputStreamReader(body, UTF_8));
+    }
+    final JsonParser parser = objectMapper().getFactory().createParser(body);
+    if (parser.nextToken() == null) {
+      return null;
+    }
+    return objectMapper().readValue(parser, objectMapper().getTypeFactory().constructType(type));
+  }
+
+  private static boolean isIdempotent(final String method) {
+    return GET.equals(method) || HEAD.equals(method);
+  }
+
+  private static DockerException propagate(final String method, final URI uri,
+                                           final IOException e)
+      throws InterruptedException {
+    if (e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException) {
+      return new DockerTimeoutException(method, uri, e);
+    } else if (e instanceof InterruptedIOException || e instanceof ClosedByInterruptException) {
+      throw new InterruptedException("Interrupted: " + method + " " + uri);
+    }
+    return new DockerException(e);
+  }
+
+  /**
+   * A single keep-alive connection to the daemon. Not thread safe; a connection is only ever used
+   * by the thread that took it from the pool.
+   */
+  private static class Connection {
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    private final ByteArrayOutputStream request = new ByteArrayOutputStream(512);
+    private final StringBuilder line = new StringBuilder(128);
+
+    private int status;
+    private boolean keepAlive;
+    private boolean responseStarted;
+
+    Connection(final Socket socket) throws IOException {
+      this.socket = socket;
+      this.in = socket.getInputStream();
+      this.out = socket.getOutputStream();
+    }
+
+    void writeRequest(final String method, final URI uri, final Map<String, Object> headers,
+                      final byte[] body) throws IOException {
+      request.reset();
+
+      ascii(method).ascii(" ");
+      final String path = uri.getRawPath();
+      ascii((path == null || path.isEmpty()) ? "/" : path);
+      if (uri.getRawQuery() != null) {
+        ascii("?").ascii(uri.getRawQuery());
+      }
+      ascii(" HTTP/1.1\r\n");
+
+      ascii("Host: localhost\r\n");
+      ascii("Accept: application/json\r\n");
+      for (final Map.Entry<String, Object> header : headers.entrySet()) {
+        ascii(header.getKey()).ascii(": ").ascii(String.valueOf(header.getValue())).ascii("\r\n");
+      }
+      if (body != null) {
+        ascii("Content-Type: application/json\r\n");
+        ascii("Content-Length: ").ascii(Integer.toString(body.length)).ascii("\r\n");
+      } else if (!isIdempotent(method)) {
+        ascii("Content-Length: 0\r\n");
+      }
+      ascii("\r\n");
+
+      if (body != null) {
+        request.write(body, 0, body.length);
+      }
+
+      request.writeTo(out);
+      out.flush();
+    }
+
+    private Connection ascii(final String s) {
+      for (int i = 0; i < s.length(); i++) {
+        request.write(s.charAt(i));
+      }
+      return this;
+    }
+
+    /**
+     * Read the status line and headers of a response.
+     *
+     * @return A stream over the response body, which must be fully read before the connection can
+     *         be reused.
+     */
+    InputStream readResponse(final String method) throws IOException {
+      if (position == limit && fill() < 0) {
+        throw new NoHttpResponseException("The daemon closed the connection");
+      }
+      responseStarted = true;
+
+      final String statusLine = readLine();
+      final int start = statusLine.indexOf(' ') + 1;
+      if (start == 0 || statusLine.length() < start + 3) {
+        throw new IOException("Malformed status line: " + statusLine);
+      }
+      try {
+        status = Integer.parseInt(statusLine.substring(start, start + 3));
+      } catch (NumberFormatException e) {
+        throw new IOException("Malformed status line: " + statusLine);
+      }
+
+      long contentLength = -1;
+      boolean chunked = false;
+      keepAlive = true;
+      for (String header = readLine(); !header.isEmpty(); header = readLine()) {
+        final int colon = header.indexOf(':');
+        if (colon < 0) {
+          continue;
+        }
+        final String name = header.substring(0, colon).trim();
+        final String value = header.substring(colon + 1).trim();
+        if ("Content-Length".equalsIgnoreCase(name)) {
+          try {
+            contentLength = Long.parseLong(value);
+          } catch (NumberFormatException e) {
+            throw new IOException("Malformed content length: " + value);
+          }
+          if (contentLength < 0) {
+            throw new IOException("Malformed content length: " + value);
+          }
+        } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+          chunked = value.toLowerCase(Locale.ROOT).contains("chunked");
+        } else if ("Connection".equalsIgnoreCase(name)) {
+          keepAlive = !"close".equalsIgnoreCase(value);
+        }
+      }
+
+      if (HEAD.equals(method) || status == 204 || status == 304 || status < 200) {
+        return new FixedLengthBody(0);
+      } else if (chunked) {
+        return new ChunkedBody();
+      } else if (contentLength >= 0) {
+        return new FixedLengthBody(contentLength);
+      } else {
+        keepAlive = false;
+        return new UntilCloseBody();
+      }
+    }
+
+    void drain(final InputStream body) throws IOException {
+      final byte[] skip = new byte[256];
+      while (body.read(skip, 0, skip.length) >= 0) {
+        // discard
+      }
+    }
+
+    void close() {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        log.debug("Failed to close connection", e);
+      }
+    }
+
+    private int fill() throws IOException {
+      position = 0;
+      limit = 0;
+      final int n = in.read(buffer, 0, buffer.length);
+      if (n > 0) {
+        limit = n;
+      }
+      return n;
+    }
+
+    private String readLine() throws IOException {
+      line.setLength(0);
+      while (true) {
+        if (position == limit && fill() < 0) {
+          throw new EOFException("Unexpected end of response");
+        }
+        final byte b = buffer[position++];
+        if (b == '\n') {
+          return line.toString();
+        }
+        if (b != '\r') {
+          line.append((char) (b & 0xff));
+        }
+      }
+    }
+
+    private int read(final byte[] b, final int off, final int len) throws IOException {
+      if (position == limit) {
+        if (len >= buffer.length) {
+          // Large reads bypass the buffer
+          return in.read(b, off, len);
+        }
+        if (fill() < 0) {
+          return -1;
+        }
+      }
+      final int n = Math.min(len, limit - position);
+      System.arraycopy(buffer, position, b, off, n);
+      position += n;
+      return n;
+    }
+
+    private abstract class Body extends InputStream {
+
+      @Override
+      public int read() throws IOException {
+        final byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+      }
+    }
+
+    private class FixedLengthBody extends Body {
+
+      private long remaining;
+
+      FixedLengthBody(final long length) {
+        this.remaining = length;
+      }
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (remaining == 0) {
+          return -1;
+        }
+        final int n = Connection.this.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0) {
+          throw new EOFException("Unexpected end of response body");
+        }
+        remaining -= n;
+        return n;
+      }
+    }
+
+    private class ChunkedBody extends Body {
+
+      private long remaining;
+      private boolean first = true;
+      private boolean eof;
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        if (eof) {
+          return -1;
+        }
+        if (remaining == 0) {
+          if (!first) {
+            readLine(); // CRLF terminating the previous chunk
+          }
+          first = false;
+          final String size = readLine();
+          final int extension = size.indexOf(';');
+          try {
+            remaining = Long.parseLong(
+                (extension < 0 ? size : size.substring(0, extension)).trim(), 16);
+          } catch (NumberFormatException e) {
+            throw new IOException("Malformed chunk size: " + size);
+          }
+          if (remaining < 0) {
+            throw new IOException("Malformed chunk size: " + size);
+          }
+          if (remaining == 0) {
+            // Skip trailers
+            while (!readLine().isEmpty()) {
+              // discard
+            }
+            eof = true;
+            return -1;
+          }
+        }
+        final int n = Connection.this.read(b, off, (int) Math.min(len, remaining));
+        if (n < 0) {
+          throw new EOFException("Unexpected end of chunked response body");
+        }
+        remaining -= n;
+        return n;
+      }
+    }
+
+    private class UntilCloseBody extends Body {
+
+      @Override
+      public int read(final byte[] b, final int off, final int len) throws IOException {
+        return Connection.this.read(b, off, len);
+      }
+    }
+  }
+}
@@ -17,6 +17,8 @@
 
 package com.spotify.docker.client.messages;
 
+import com.google.common.base.MoreObjects;
+
 import com.spotify.docker.client.jackson.UnixTimestampDeserializer;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
@@ -24,6 +26,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import java.util.Date;
+import java.util.Map;
 
 import static com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility.ANY;
 import static com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility.NONE;
@@ -34,11 +37,16 @@ public class Event {
   @JsonProperty("status") private String status;
   @JsonProperty("id") private String id;
   @JsonProperty("from") private String from;
+  @JsonProperty("Type") private String type;
+  @JsonProperty("Action") private String action;
+  @JsonProperty("Actor") private Actor actor;
 
   @JsonProperty("time")
   @JsonDeserialize(using = UnixTimestampDeserializer.class)
   private Date time;
 
+  @JsonProperty("timeNano") private long timeNano;
+
   public String status() {
     return status;
   }
@@ -51,17 +59,130 @@ public class Event {
     return from;
   }
 
+  /**
+   * @return The type of object the event is about, e.g. {@code container}, {@code image} or
+   *         {@code network}. Only sent by daemons with API version 1.22 or later.
+   */
+  public String type() {
+    return type;
+  }
+
+  /**
+   * @return What happened, e.g. {@code create} or {@code die}. Only sent by daemons with API
+   *         version 1.22 or later.
+   */
+  public String action() {
+    return action;
+  }
+
+  /**
+   * @return The object the event is about. Only sent by daemons with API version 1.22 or later.
+   */
+  public Actor actor() {
+    return actor;
+  }
+
   public Date time() {
-    return time == null ? null : new Date(time.getTime());
+    if (time != null) {
+      return new Date(time.getTime());
+    }
+    return timeNano == 0 ? null : new Date(timeNano / 1000000);
+  }
+
+  /**
+   * @return The time of the event in nanoseconds since the epoch, or 0 if not known. Daemons
+   *         older than API version 1.22 only send the time in seconds.
+   */
+  public long timeNano() {
+    if (timeNano != 0) {
+      return timeNano;
+    }
+    return time == null ? 0 : time.getTime() * 1000000;
+  }
+
+  // For subclasses that decode events themselves, see EventReader
+
+  protected void setStatus(final String status) {
+    this.status = status;
+  }
+
+  protected void setId(final String id) {
+    this.id = id;
+  }
+
+  protected void setFrom(final String from) {
+    this.from = from;
+  }
+
+  protected void setType(final String type) {
+    this.type = type;
+  }
+
+  protected void setAction(final String action) {
+    this.action = action;
+  }
+
+  protected void setActor(final Actor actor) {
+    this.actor = actor;
+  }
+
+  /**
+   * @param time The time of the event, which is kept as is rather than copied.
+   */
+  protected void setTime(final Date time) {
+    this.time = time;
+  }
+
+  protected void setTimeNano(final long timeNano) {
+    this.timeNano = timeNano;
   }
 
   @Override
   public String toString() {
-    return "Event{" +
-           "status='" + status + '\'' +
-           ", id='" + id + '\'' +
-           ", from='" + from + '\'' +
-           ", time=" + time +
-           '}';
+    return MoreObjects.toStringHelper("Event")
+        .add("status", status())
+        .add("id", id())
+        .add("from", from())
+        .add("type", type())
+        .add("action", action())
+        .add("actor", actor())
+        .add("timeNano", timeNano())
+        .toString();
+  }
+
+  public static class Actor {
+
+    @JsonProperty("ID") private String id;
+    @JsonProperty("Attributes") private Map<String, String> attributes;
+
+    /**
+     * @return The id of the object, e.g. a container id or an image name.
+     */
+    public String id() {
+      return id;
+    }
+
+    /**
+     * @return Details of the object, such as the name and labels of a container.
+     */
+    public Map<String, String> attributes() {
+      return attributes;
+    }
+
+    protected void setId(final String id) {
+      this.id = id;
+    }
+
+    protected void setAttributes(final Map<String, String> attributes) {
+      this.attributes = attributes;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper("Actor")
+          .add("id", id())
+          .add("attributes", attributes())
+          .toString();
+    }
   }
 }
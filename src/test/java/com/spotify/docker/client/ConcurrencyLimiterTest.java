@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class ConcurrencyLimiterTest {
+
+  private static final URI REQUEST_URI = URI.create("unix://localhost/containers/create");
+
+  /**
+   * Run {@code limit} concurrent requests that take {@code millis} each.
+   */
+  private static void saturate(final ConcurrencyLimiter limiter, final long millis)
+      throws InterruptedException {
+    saturate(limiter, "POST containers/create", millis);
+  }
+
+  /**
+   * Run {@code limit} concurrent requests to an endpoint that take {@code millis} each.
+   */
+  private static void saturate(final ConcurrencyLimiter limiter, final String endpoint,
+                               final long millis)
+      throws InterruptedException {
+    final int limit = limiter.limit();
+    final ConcurrencyLimiter.Permit[] permits = new ConcurrencyLimiter.Permit[limit];
+    for (int i = 0; i < limit; i++) {
+      permits[i] = limiter.acquire(endpoint);
+    }
+    Thread.sleep(millis);
+    for (final ConcurrencyLimiter.Permit permit : permits) {
+      permit.completed(null);
+    }
+  }
+
+  @Test
+  public void testLimitGrowsWhileLatencyIsSteady() throws Exception {
+    final ConcurrencyLimiter sut = new ConcurrencyLimiter(4, 1, 20);
+
+    for (int i = 0; i < 10; i++) {
+      saturate(sut, 5);
+    }
+
+    assertThat(sut.limit(), greaterThan(4));
+    assertThat(sut.inFlight(), is(0));
+  }
+
+  @Test
+  public void testLimitShrinksWhenLatencyGrows() throws Exception {
+    final ConcurrencyLimiter sut = new ConcurrencyLimiter(20, 1, 20);
+
+    saturate(sut, 5);
+    for (int i = 0; i < 5; i++) {
+      saturate(sut, 50);
+    }
+
+    assertThat(sut.limit(), lessThan(20));
+  }
+
+  @Test
+  public void testEndpointsHaveTheirOwnLatency() throws Exception {
+    final ConcurrencyLimiter sut = new ConcurrencyLimiter(8, 1, 20);
+
+    // Creating containers is slower than inspecting them, without the daemon being overloaded
+    for (int i = 0; i < 10; i++) {
+      saturate(sut, "GET containers/{id}/json", 5);
+      saturate(sut, "POST containers/create", 50);
+    }
+
+    assertThat(sut.limit(), greaterThanOrEqualTo(8));
+  }
+
+  @Test
+  public void testLimitShrinksOnOverload() throws Exception {
+    final ConcurrencyLimiter sut = new ConcurrencyLimiter(10, 2, 20);
+
+    for (int i = 0; i < 50; i++) {
+      sut.acquire().failed(new DockerTimeoutException("POST", REQUEST_URI, null));
+    }
+
+    assertThat(sut.limit(), is(2));
+  }
+
+  @Test
+  public void testClientErrorsAreNotOverload() throws Exception {
+    final ConcurrencyLimiter sut = new ConcurrencyLimiter(10, 2, 20);
+
+    for (int i = 0; i < 50; i++) {
+      sut.acquire().failed(new DockerRequestException("POST", REQUEST_URI, 409, "conflict", null));
+      sut.acquire().failed(new InterruptedException());
+    }
+
+    assertThat(sut.limit(), is(10));
+    assertThat(ConcurrencyLimiter.isOverload(new DockerException("boom")), is(true));
+    assertThat(ConcurrencyLimiter.isOverload(
+        new DockerRequestException("POST", REQUEST_URI, 500, "boom", null)), is(true));
+  }
+
+  @Test
+  public void testRequestsOverTheLimitWait() throws Exception {
+    final ConcurrencyLimiter sut = new ConcurrencyLimiter(1, 1, 1);
+    final ConcurrencyLimiter.Permit permit = sut.acquire();
+
+    final CountDownLatch acquired = new CountDownLatch(1);
+    final AtomicReference<ConcurrencyLimiter.Permit> waiter = new AtomicReference<>();
+    final Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          waiter.set(sut.acquire());
+          acquired.countDown();
+        } catch (InterruptedException ignored) {
+          // test failed
+        }
+      }
+    });
+    thread.start();
+
+    while (sut.queued() == 0) {
+      Thread.sleep(1);
+    }
+    Thread.sleep(20);
+    assertThat(acquired.getCount(), is(1L));
+
+    permit.release();
+    acquired.await();
+    waiter.get().release();
+
+    assertThat(sut.queued(), is(0));
+    assertThat(sut.inFlight(), is(0));
+    assertThat(sut.totalQueueWaitMillis(), greaterThan(10L));
+    assertThat(sut.queueWaitMillis(), greaterThan(0.0));
+  }
+
+  @Test
+  public void testPermitIsReleasedOnce() throws Exception {
+    final ConcurrencyLimiter sut = new ConcurrencyLimiter(2, 1, 2);
+
+    final ConcurrencyLimiter.Permit permit = sut.acquire();
+    sut.acquire();
+    permit.completed(null);
+    permit.release();
+
+    assertThat(sut.inFlight(), is(1));
+  }
+}
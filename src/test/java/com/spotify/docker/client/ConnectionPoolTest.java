@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class ConnectionPoolTest {
+
+  private final List<SocketChannel> accepted = new CopyOnWriteArrayList<>();
+
+  private File socketFile;
+  private ServerSocketChannel server;
+  private DefaultDockerClient sut;
+
+  @Before
+  public void setup() throws Exception {
+    assumeTrue(UnixDomainSocket.isSupported());
+
+    socketFile = new File(Files.createTempDirectory("docker-client").toFile(), "docker.sock");
+    server = (ServerSocketChannel) ServerSocketChannel.class
+        .getMethod("open", ProtocolFamily.class)
+        .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+    server.bind(UnixDomainSocket.address(socketFile));
+
+    final Thread acceptor = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            accepted.add(server.accept());
+          }
+        } catch (Exception ignored) {
+          // server closed
+        }
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (sut != null) {
+      sut.close();
+    }
+    if (server != null) {
+      server.close();
+      socketFile.delete();
+      socketFile.getParentFile().delete();
+    }
+  }
+
+  private DefaultDockerClient.Builder builder() {
+    return DefaultDockerClient.builder().uri("unix://" + socketFile.getPath());
+  }
+
+  private void awaitAccepted(final int connections) throws InterruptedException {
+    for (int i = 0; i < 100 && accepted.size() < connections; i++) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testWarmup() throws Exception {
+    sut = builder().warmupConnections(3).build();
+
+    awaitAccepted(3);
+    assertThat(accepted.size(), is(3));
+  }
+
+  @Test
+  public void testWarmupIsCappedByPoolSize() throws Exception {
+    sut = builder().connectionPoolSize(2).warmupConnections(5).build();
+
+    awaitAccepted(5);
+    assertThat(accepted.size(), is(2));
+  }
+
+  @Test
+  public void testIdleConnectionsAreEvicted() throws Exception {
+    sut = builder().warmupConnections(1).idleConnectionTimeoutMillis(50).build();
+
+    awaitAccepted(1);
+    final SocketChannel connection = accepted.get(0);
+    // Reads return EOF once the evictor closes the client side
+    assertThat(connection.read(ByteBuffer.allocate(1)), is(-1));
+  }
+}
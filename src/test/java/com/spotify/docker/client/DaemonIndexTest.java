@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.DockerClient.ListImagesParam;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.Event;
+import com.spotify.docker.client.messages.Image;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DaemonIndexTest {
+
+  private static final AtomicInteger AGE = new AtomicInteger();
+
+  @Mock
+  private DockerClient docker;
+
+  // What the daemon has
+  private final Map<String, Container> containers = new ConcurrentHashMap<>();
+  private volatile List<Image> images = ImmutableList.of();
+  private volatile PipedOutputStream daemon;
+  // Called while all containers are being listed
+  private volatile Callable<Void> whileListing;
+
+  private final Container web = container("abc123", "/web-1", "busybox:latest", "sha256:111",
+                                          "Up %d minutes", ImmutableMap.of("service", "web"));
+  private final Container db = container("abd456", "/db", "postgres", "sha256:222",
+                                         "Exited (0) %d minutes ago",
+                                         ImmutableMap.of("service", "db"));
+  private final Image busybox = image("sha256:111", "busybox:latest");
+
+  private DaemonIndex sut;
+
+  @Before
+  public void setup() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    containers.put(web.id(), web);
+    containers.put(db.id(), db);
+    images = ImmutableList.of(busybox);
+
+    when(docker.listContainers(Matchers.<ListContainersParam>anyVararg()))
+        .thenAnswer(new Answer<List<Container>>() {
+          @Override
+          public List<Container> answer(final InvocationOnMock invocation) throws Exception {
+            for (final Object param : invocation.getArguments()) {
+              if (((ListContainersParam) param).name().equals("id")) {
+                final Container container = containers.get(((ListContainersParam) param).value());
+                return (container == null) ? ImmutableList.<Container>of()
+                                           : ImmutableList.of(relisted(container));
+              }
+            }
+            final ImmutableList.Builder<Container> listed = ImmutableList.builder();
+            for (final Container container : containers.values()) {
+              listed.add(relisted(container));
+            }
+            if (whileListing != null) {
+              whileListing.call();
+            }
+            return listed.build();
+          }
+        });
+    when(docker.listImages(Matchers.<ListImagesParam>anyVararg()))
+        .thenAnswer(new Answer<List<Image>>() {
+          @Override
+          public List<Image> answer(final InvocationOnMock invocation) {
+            return images;
+          }
+        });
+    when(docker.events(Matchers.<EventsParam>anyVararg())).thenAnswer(new Answer<EventStream>() {
+      @Override
+      public EventStream answer(final InvocationOnMock invocation) throws IOException {
+        return connect();
+      }
+    });
+
+    sut = DaemonIndex.builder(docker)
+        .reconcileIntervalMillis(0)
+        .imageRefreshDelayMillis(0)
+        .build();
+  }
+
+  @After
+  public void tearDown() {
+    sut.close();
+  }
+
+  private EventStream connect() throws IOException {
+    final PipedOutputStream out = new PipedOutputStream();
+    final PipedInputStream in = new PipedInputStream(out, 65536);
+    final HttpEntity entity = mock(HttpEntity.class);
+    when(entity.getContent()).thenReturn(in);
+    final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+    when(response.getEntity()).thenReturn(entity);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws IOException {
+        out.close();
+        return null;
+      }
+    }).when(response).close();
+    daemon = out;
+    return new EventStream(response, ObjectMapperProvider.objectMapper());
+  }
+
+  private static Container container(final String id, final String name, final String image,
+                                     final String imageId, final String status,
+                                     final Map<String, String> labels) {
+    final Container container = mock(Container.class);
+    when(container.id()).thenReturn(id);
+    when(container.names()).thenReturn(ImmutableList.of(name));
+    when(container.image()).thenReturn(image);
+    when(container.imageId()).thenReturn(imageId);
+    // Like the daemon's, e.g. Up 5 minutes, with the time moving on every time it is asked for
+    when(container.status()).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(final InvocationOnMock invocation) {
+        return String.format(status, AGE.incrementAndGet());
+      }
+    });
+    when(container.labels()).thenReturn(labels);
+    return container;
+  }
+
+  /**
+   * A new listing of a container, as the daemon returns for every request.
+   */
+  private static Container relisted(final Container container) {
+    final String id = container.id();
+    final List<String> names = container.names();
+    final String image = container.image();
+    final String imageId = container.imageId();
+    final String status = container.status();
+    final Map<String, String> labels = container.labels();
+    final Container relisted = mock(Container.class);
+    when(relisted.id()).thenReturn(id);
+    when(relisted.names()).thenReturn(names);
+    when(relisted.image()).thenReturn(image);
+    when(relisted.imageId()).thenReturn(imageId);
+    when(relisted.status()).thenReturn(status);
+    when(relisted.labels()).thenReturn(labels);
+    return relisted;
+  }
+
+  private static String id(final Container container) {
+    return (container == null) ? null : container.id();
+  }
+
+  private static List<String> ids(final Collection<Container> containers) {
+    final List<String> ids = Lists.newArrayList();
+    for (final Container container : containers) {
+      ids.add(container.id());
+    }
+    return ids;
+  }
+
+  private static Image image(final String id, final String tag) {
+    final Image image = mock(Image.class);
+    when(image.id()).thenReturn(id);
+    when(image.repoTags()).thenReturn(ImmutableList.of(tag));
+    return image;
+  }
+
+  private static String json(final String status, final String id, final String from) {
+    return String.format("{\"status\":\"%s\",\"id\":\"%s\",\"from\":%s,\"time\":1457526896}",
+                         status, id, from == null ? "null" : "\"" + from + "\"");
+  }
+
+  private static Event event(final String status, final String id, final String from)
+      throws IOException {
+    return ObjectMapperProvider.objectMapper().readValue(json(status, id, from), Event.class);
+  }
+
+  @Test
+  public void testLookups() {
+    assertThat(ids(sut.containers()), containsInAnyOrder(web.id(), db.id()));
+    assertThat(id(sut.container("abc123")), is(web.id()));
+    assertThat(id(sut.container("web-1")), is(web.id()));
+    assertThat(id(sut.container("/web-1")), is(web.id()));
+    assertThat(id(sut.container("abd")), is(db.id()));
+    // Ambiguous prefix
+    assertThat(sut.container("ab"), is(nullValue()));
+    assertThat(sut.container("abc1234"), is(nullValue()));
+    assertThat(ids(sut.containersWithLabel("service")), containsInAnyOrder(web.id(), db.id()));
+    assertThat(ids(sut.containersWithLabel("service", "web")), contains(web.id()));
+    assertThat(sut.containersWithLabel("service", "cache"), is(empty()));
+    assertThat(ids(sut.containersOfImage("busybox:latest")), contains(web.id()));
+    assertThat(ids(sut.containersOfImage("sha256:222")), contains(db.id()));
+    assertThat(ids(sut.containersWithState("running")), contains(web.id()));
+    assertThat(ids(sut.containersWithState("exited")), contains(db.id()));
+    assertThat(sut.images(), contains(busybox));
+    assertThat(sut.image("busybox:latest"), is(busybox));
+    assertThat(sut.image("sha256:111"), is(busybox));
+    assertThat(sut.image("postgres"), is(nullValue()));
+  }
+
+  @Test
+  public void testStateOfStatus() {
+    assertThat(state("Up 2 hours"), is("running"));
+    assertThat(state("Up 2 hours (Paused)"), is("paused"));
+    assertThat(state("Up 1 second (healthy)"), is("running"));
+    assertThat(state("Exited (137) 3 days ago"), is("exited"));
+    assertThat(state("Created"), is("created"));
+    assertThat(state("Restarting (1) 2 seconds ago"), is("restarting"));
+    assertThat(state("Dead"), is("dead"));
+  }
+
+  private static String state(final String status) {
+    return DaemonIndex.state(container("abc", "/abc", "busybox", "sha256:111", status,
+                                       ImmutableMap.<String, String>of()));
+  }
+
+  @Test
+  public void testContainerEventsUpdateIndex() throws Exception {
+    final long version = sut.version();
+    final Container stopped = container("abc123", "/web-1", "busybox:latest", "sha256:111",
+                                        "Exited (0) %d seconds ago",
+                                        ImmutableMap.of("service", "web"));
+    containers.put(web.id(), stopped);
+
+    sut.handle(event("die", "abc123", "busybox:latest"));
+
+    assertThat(DaemonIndex.state(sut.container("web-1")), is("exited"));
+    assertThat(sut.containersWithState("running"), is(empty()));
+    assertThat(ids(sut.containersWithState("exited")), containsInAnyOrder(stopped.id(), db.id()));
+    assertThat(sut.version(), greaterThan(version));
+  }
+
+  @Test
+  public void testDestroyedContainersAreRemoved() throws Exception {
+    containers.remove(db.id());
+    sut.handle(event("destroy", "abd456", "postgres"));
+
+    assertThat(sut.container("db"), is(nullValue()));
+    assertThat(ids(sut.containersWithLabel("service")), contains(web.id()));
+    // Seeding only
+    verify(docker, times(1)).listContainers(Matchers.<ListContainersParam>anyVararg());
+  }
+
+  @Test
+  public void testIgnoredEvents() throws Exception {
+    final long version = sut.version();
+    sut.handle(event("exec_start: sh", "abc123", "busybox:latest"));
+    sut.handle(event("attach", "abc123", "busybox:latest"));
+
+    verify(docker, times(1)).listContainers(Matchers.<ListContainersParam>anyVararg());
+    assertThat(sut.version(), is(version));
+  }
+
+  @Test
+  public void testImageEventsRefreshImages() throws Exception {
+    final Image postgres = image("sha256:222", "postgres:latest");
+    images = ImmutableList.of(busybox, postgres);
+
+    sut.handle(event("pull", "postgres:latest", null));
+
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (sut.image("postgres:latest") == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(sut.image("postgres:latest"), is(postgres));
+  }
+
+  @Test
+  public void testFollowsEvents() throws Exception {
+    final Container cache = container("fff789", "/cache", "redis", "sha256:333", "Created",
+                                      ImmutableMap.of("service", "cache"));
+    containers.put(cache.id(), cache);
+
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (daemon == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    daemon.write((json("create", "fff789", "redis") + "\n").getBytes(UTF_8));
+    daemon.flush();
+
+    while (sut.container("cache") == null && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(ids(sut.containersWithLabel("service", "cache")), contains(cache.id()));
+    assertThat(id(sut.container("f")), is(cache.id()));
+  }
+
+  @Test
+  public void testReconcileCorrectsIndex() throws Exception {
+    final Container restarted = container("abd456", "/db", "postgres", "sha256:222",
+                                          "Up %d seconds", ImmutableMap.of("service", "db"));
+    containers.put(db.id(), restarted);
+    containers.remove(web.id());
+    images = ImmutableList.of();
+
+    sut.reconcile();
+
+    assertThat(ids(sut.containers()), contains(restarted.id()));
+    assertThat(ids(sut.containersWithState("running")), contains(restarted.id()));
+    assertThat(sut.container("web-1"), is(nullValue()));
+    assertThat(sut.images(), is(empty()));
+    assertThat(sut.reconciliations(), is(1L));
+    assertThat(sut.corrections(), is(3L));
+  }
+
+  @Test
+  public void testReconcileKeepsNewerEvents() throws Exception {
+    final Container stopped = container("abc123", "/web-1", "busybox:latest", "sha256:111",
+                                        "Exited (0) %d seconds ago",
+                                        ImmutableMap.of("service", "web"));
+    // The container stops while everything is being listed
+    whileListing = new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        containers.put(web.id(), stopped);
+        sut.handle(event("die", "abc123", "busybox:latest"));
+        return null;
+      }
+    };
+
+    sut.reconcile();
+
+    assertThat(DaemonIndex.state(sut.container("abc123")), is("exited"));
+    assertThat(sut.corrections(), is(0L));
+  }
+
+  @Test
+  public void testContainerUpdatesAreOnlyKeptWhileReconciling() throws Exception {
+    final AtomicInteger kept = new AtomicInteger();
+    whileListing = new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        sut.handle(event("die", "abc123", "busybox:latest"));
+        kept.set(sut.containerUpdates());
+        return null;
+      }
+    };
+    for (int i = 0; i < 100; i++) {
+      sut.handle(event("create", "gone" + i, "busybox:latest"));
+      sut.handle(event("destroy", "gone" + i, "busybox:latest"));
+    }
+    assertThat(sut.containerUpdates(), is(0));
+
+    sut.reconcile();
+
+    assertThat(kept.get(), is(1));
+    assertThat(sut.containerUpdates(), is(0));
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+import com.spotify.docker.client.messages.ContainerInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.concurrent.ExecutionException;
+
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.client.AsyncInvoker;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyBoolean;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultAsyncDockerClientTest {
+
+  @Mock
+  private Client clientMock;
+
+  @Mock
+  private ClientBuilder clientBuilderMock;
+
+  @Mock
+  private Invocation.Builder builderMock;
+
+  @Mock
+  private AsyncInvoker asyncInvoker;
+
+  @Mock
+  private WebTarget webTargetMock;
+
+  @Mock
+  private Response responseMock;
+
+  @Captor
+  private ArgumentCaptor<InvocationCallback<Response>> callback;
+
+  private AsyncDockerClient sut;
+
+  @Before
+  public void setup() throws Exception {
+    MockitoAnnotations.initMocks(this);
+
+    when(clientBuilderMock.build()).thenReturn(clientMock);
+    when(clientBuilderMock.withConfig(any(Configuration.class))).thenReturn(clientBuilderMock);
+    when(clientBuilderMock.property(anyString(), any())).thenReturn(clientBuilderMock);
+
+    when(clientMock.target(any(URI.class))).thenReturn(webTargetMock);
+    when(webTargetMock.path(anyString())).thenReturn(webTargetMock);
+    when(webTargetMock.resolveTemplate(anyString(), any(), anyBoolean())).thenReturn(webTargetMock);
+    when(webTargetMock.getUri()).thenReturn(URI.create("https://perdu.com:2375/containers"));
+    when(webTargetMock.request(MediaType.APPLICATION_JSON_TYPE)).thenReturn(builderMock);
+    when(builderMock.async()).thenReturn(asyncInvoker);
+
+    final Supplier<ClientBuilder> clientBuilderSupplier = Suppliers.ofInstance(clientBuilderMock);
+    final DefaultDockerClient.Builder builder = DefaultDockerClient.builder()
+        .uri("https://perdu.com:2375");
+    sut = new DefaultDockerClient(builder, clientBuilderSupplier).async();
+  }
+
+  private InvocationCallback<Response> invoked() {
+    verify(asyncInvoker).method(eq("GET"), callback.capture());
+    return callback.getValue();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testInspectContainerCompletesWithoutBlocking() throws Exception {
+    final ContainerInfo info = new ContainerInfo();
+    when(responseMock.getStatusInfo()).thenReturn(Response.Status.OK);
+    when(responseMock.readEntity(any(GenericType.class))).thenReturn(info);
+
+    final ListenableFuture<ContainerInfo> future = sut.inspectContainer("foo");
+    assertThat(future.isDone(), is(false));
+
+    invoked().completed(responseMock);
+    assertThat(future.get(), sameInstance(info));
+  }
+
+  @Test
+  public void testInspectContainerNotFound() throws Exception {
+    final InputStream message = new ByteArrayInputStream("no such id".getBytes(UTF_8));
+    when(responseMock.getStatusInfo()).thenReturn(Response.Status.NOT_FOUND);
+    when(responseMock.getStatus()).thenReturn(404);
+    when(responseMock.readEntity(InputStream.class)).thenReturn(message);
+
+    final ListenableFuture<ContainerInfo> future = sut.inspectContainer("foo");
+    invoked().completed(responseMock);
+
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(ContainerNotFoundException.class));
+    }
+  }
+
+  @Test
+  public void testTimeoutIsMapped() throws Exception {
+    final ListenableFuture<ContainerInfo> future = sut.inspectContainer("foo");
+    invoked().failed(new ProcessingException(new SocketTimeoutException()));
+
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(DockerTimeoutException.class));
+    }
+  }
+
+  @Test
+  public void testClosingViewLeavesClientOpen() throws Exception {
+    sut.close();
+    verify(clientMock, never()).close();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCancelPropagates() throws Exception {
+    final SettableFuture<Response> responseFuture = SettableFuture.create();
+    when(asyncInvoker.method(anyString(), any(InvocationCallback.class)))
+        .thenReturn(responseFuture);
+
+    sut.inspectContainer("foo").cancel(true);
+    assertThat(responseFuture.isCancelled(), is(true));
+  }
+}
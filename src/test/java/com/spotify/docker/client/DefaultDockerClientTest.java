@@ -1478,6 +1478,37 @@ public class DefaultDockerClientTest {
     eventStream.close();
   }
 
+  @Test(timeout = 10000)
+  public void testEventStreamWithRepeatedFilters() throws Exception {
+    Thread.sleep(1000); // ensure we push to the next second
+    // so we don't get events from the last test
+    final long since = new Date().getTime() / 1000;
+    sut.pull(BUSYBOX_LATEST);
+    final ContainerConfig config = ContainerConfig.builder()
+        .image(BUSYBOX_LATEST)
+        .build();
+    final ContainerCreation first = sut.createContainer(config, randomName());
+    final ContainerCreation second = sut.createContainer(config, randomName());
+    sut.createContainer(config, randomName());
+    final long until = new Date().getTime() / 1000 + 1;
+
+    final Set<String> ids = Sets.newHashSet();
+    try (EventStream stream = sut.events(DockerClient.EventsParam.since(since),
+                                         DockerClient.EventsParam.until(until),
+                                         DockerClient.EventsParam.filter("container", first.id()),
+                                         DockerClient.EventsParam.filter("container", second.id()),
+                                         DockerClient.EventsParam.filter("event", "create"))) {
+      while (stream.hasNext()) {
+        final Event event = stream.next();
+        if (event.status() != null) {
+          assertThat(event.status(), equalTo("create"));
+          ids.add(event.id());
+        }
+      }
+    }
+    assertThat(ids, equalTo((Set<String>) ImmutableSet.of(first.id(), second.id())));
+  }
+
   @Test
   public void testListImages() throws Exception {
     sut.pull(BUSYBOX_LATEST);
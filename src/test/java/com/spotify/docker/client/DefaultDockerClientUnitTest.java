@@ -24,22 +24,37 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.Futures;
 
+import com.spotify.docker.client.RequestScheduler.Priority;
+import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.ContainerConfig;
 import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerExit;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.Info;
 
+import org.glassfish.jersey.client.ClientProperties;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.AsyncInvoker;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
@@ -48,14 +63,21 @@ import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Configuration;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Variant;
 
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -224,4 +246,303 @@ public class DefaultDockerClientUnitTest {
     assertThat(entityArg.getValue(), equalTo(expectedEntity));
     assertThat(classArg.getValue(), instanceOf(Class.class));
   }
+
+  @Test
+  public void testSingleClient() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+    dockerClient.close();
+
+    verify(clientBuilderMock, times(1)).build();
+    verify(clientMock, times(1)).close();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testNoReadTimeoutPerRequest() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    when(webTargetMock.property(anyString(), any())).thenReturn(webTargetMock);
+    when(asyncInvoker.method(anyString(), any(Class.class)))
+        .thenReturn(Futures.immediateFuture(new ContainerExit()));
+
+    dockerClient.waitContainer("foo");
+
+    verify(webTargetMock).property(ClientProperties.READ_TIMEOUT, 0);
+  }
+
+  @Test
+  public void testSynchronousRequests() throws Exception {
+    builder.synchronousRequests(true);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    final Info info = new Info();
+    when(builderMock.method("GET", Info.class)).thenReturn(info);
+
+    assertThat(dockerClient.info(), sameInstance(info));
+    verify(builderMock, never()).async();
+  }
+
+  @Test
+  public void testNetworkConnectionIgnoresConflict() throws Exception {
+    builder.synchronousRequests(true);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    final Response conflict = mock(Response.class);
+    when(conflict.getStatus()).thenReturn(409);
+    when(builderMock.method(eq("POST"), any(Entity.class), eq(Response.class)))
+        .thenReturn(conflict);
+
+    dockerClient.connectToNetwork("foo", "bar");
+    dockerClient.disconnectFromNetwork("foo", "bar");
+    verify(builderMock, times(2)).method(eq("POST"), any(Entity.class), eq(Response.class));
+  }
+
+  @Test
+  public void testSynchronousRequestInterrupted() throws Exception {
+    builder.synchronousRequests(true);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    when(builderMock.method("GET", Info.class))
+        .thenThrow(new ProcessingException(new InterruptedIOException()));
+
+    try {
+      dockerClient.info();
+      Assert.fail();
+    } catch (InterruptedException expected) {
+      assertThat(Thread.interrupted(), is(true));
+    }
+  }
+
+  @Test
+  public void testSynchronousRequestAlreadyInterrupted() throws Exception {
+    builder.synchronousRequests(true);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    Thread.currentThread().interrupt();
+    try {
+      dockerClient.info();
+      Assert.fail();
+    } catch (InterruptedException expected) {
+      assertThat(Thread.interrupted(), is(true));
+    }
+    verify(builderMock, never()).method("GET", Info.class);
+  }
+
+  @Test
+  public void testConcurrencyLimiterPermitReleasedOnError() throws Exception {
+    final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+    builder.synchronousRequests(true).unaryConcurrencyLimiter(limiter);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+    when(webTargetMock.getUri()).thenReturn(URI.create("https://perdu.com:2375/info"));
+
+    final Info info = new Info();
+    when(builderMock.method("GET", Info.class))
+        .thenThrow(new ProcessingException(new IOException("connection reset")))
+        .thenReturn(info);
+
+    try {
+      dockerClient.info();
+      Assert.fail();
+    } catch (DockerException expected) {
+      assertThat(limiter.inFlight(), is(0));
+    }
+    assertThat(dockerClient.info(), sameInstance(info));
+    assertThat(limiter.inFlight(), is(0));
+  }
+
+  @Test
+  public void testCoalesceReads() throws Exception {
+    builder.synchronousRequests(true).coalesceReads(true);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    final CountDownLatch requested = new CountDownLatch(1);
+    final CountDownLatch respond = new CountDownLatch(1);
+    final Info info = new Info();
+    when(builderMock.method("GET", Info.class)).thenAnswer(new Answer<Info>() {
+      @Override
+      public Info answer(final InvocationOnMock invocation) throws Exception {
+        requested.countDown();
+        respond.await();
+        return info;
+      }
+    });
+
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Callable<Info> getInfo = new Callable<Info>() {
+        @Override
+        public Info call() throws Exception {
+          return dockerClient.info();
+        }
+      };
+      final Future<Info> first = executor.submit(getInfo);
+      requested.await();
+      final Future<Info> second = executor.submit(getInfo);
+      while (dockerClient.singleFlight().coalesced() == 0) {
+        Thread.sleep(1);
+      }
+      respond.countDown();
+
+      assertThat(first.get(), sameInstance(info));
+      assertThat(second.get(), sameInstance(info));
+      verify(builderMock, times(1)).method("GET", Info.class);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRetriesSendHeadersOnce() throws Exception {
+    final RetryPolicy retryPolicy = RetryPolicy.builder().initialBackoffMillis(0).build();
+    builder.synchronousRequests(true).retryPolicy(retryPolicy).header("X-Foo", "bar");
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    final Info info = new Info();
+    when(webTargetMock.getUri()).thenReturn(URI.create("https://perdu.com:2375/info"));
+    when(builderMock.method("GET", Info.class))
+        .thenThrow(new ProcessingException(new IOException("connection reset")))
+        .thenThrow(new ProcessingException(new IOException("connection reset")))
+        .thenReturn(info);
+
+    assertThat(dockerClient.info(), sameInstance(info));
+    assertThat(retryPolicy.retries().get("GET info"), is(2L));
+    verify(builderMock, times(1)).header("X-Foo", "bar");
+  }
+
+  @Test
+  public void testRetryPolicy() throws Exception {
+    final RetryPolicy retryPolicy = RetryPolicy.builder().initialBackoffMillis(0).build();
+    builder.synchronousRequests(true).retryPolicy(retryPolicy);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    final Info info = new Info();
+    when(webTargetMock.getUri()).thenReturn(URI.create("https://perdu.com:2375/info"));
+    when(builderMock.method("GET", Info.class))
+        .thenThrow(new ProcessingException(new IOException("connection reset")))
+        .thenReturn(info);
+
+    assertThat(dockerClient.info(), sameInstance(info));
+    assertThat(retryPolicy.retries().get("GET info"), is(1L));
+  }
+
+  @Test
+  public void testInteractiveExecStartOvertakesQueuedBatchRequests() throws Exception {
+    final RequestScheduler scheduler = RequestScheduler.builder().maxConcurrentRequests(1).build();
+    builder.synchronousRequests(true).requestScheduler(scheduler);
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(
+        builder, clientBuilderSupplier);
+
+    final List<String> sent = Collections.synchronizedList(Lists.<String>newArrayList());
+    final CountDownLatch requested = new CountDownLatch(1);
+    final CountDownLatch respond = new CountDownLatch(1);
+    when(webTargetMock.getUri()).thenReturn(URI.create("https://perdu.com:2375/info"));
+    when(webTargetMock.request("application/vnd.docker.raw-stream")).thenReturn(builderMock);
+    when(builderMock.method("GET", Info.class)).thenAnswer(new Answer<Info>() {
+      @Override
+      public Info answer(final InvocationOnMock invocation) throws Exception {
+        requested.countDown();
+        respond.await();
+        sent.add("info");
+        return new Info();
+      }
+    });
+    when(builderMock.method(eq("POST"), any(Entity.class), eq(ContainerCreation.class)))
+        .thenAnswer(new Answer<ContainerCreation>() {
+          @Override
+          public ContainerCreation answer(final InvocationOnMock invocation) {
+            sent.add("create");
+            return mock(ContainerCreation.class);
+          }
+        });
+    when(builderMock.method(eq("POST"), any(Entity.class), eq(LogStream.class)))
+        .thenAnswer(new Answer<LogStream>() {
+          @Override
+          public LogStream answer(final InvocationOnMock invocation) {
+            sent.add("exec");
+            return mock(LogStream.class);
+          }
+        });
+
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      final Future<Info> info = executor.submit(new Callable<Info>() {
+        @Override
+        public Info call() throws Exception {
+          return dockerClient.info();
+        }
+      });
+      requested.await();
+
+      final Future<ContainerCreation> create = executor.submit(new Callable<ContainerCreation>() {
+        @Override
+        public ContainerCreation call() throws Exception {
+          final RequestScheduler.Scope scope = RequestScheduler.scope(Priority.BATCH);
+          try {
+            return dockerClient.createContainer(ContainerConfig.builder().image("busybox").build());
+          } finally {
+            scope.close();
+          }
+        }
+      });
+      while (scheduler.queued(Priority.BATCH) == 0) {
+        Thread.sleep(1);
+      }
+
+      final Future<LogStream> exec = executor.submit(new Callable<LogStream>() {
+        @Override
+        public LogStream call() throws Exception {
+          final RequestScheduler.Scope scope = RequestScheduler.scope(Priority.INTERACTIVE);
+          try {
+            return dockerClient.execStart("abc");
+          } finally {
+            scope.close();
+          }
+        }
+      });
+      while (scheduler.queued(Priority.INTERACTIVE) == 0) {
+        Thread.sleep(1);
+      }
+      respond.countDown();
+
+      info.get();
+      exec.get();
+      create.get();
+      assertThat(sent, contains("info", "exec", "create"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEndpointTemplates() throws Exception {
+    final DefaultDockerClient dockerClient = DefaultDockerClient.builder()
+        .uri("https://perdu.com:2375").apiVersion("v1.22").build();
+
+    assertThat(dockerClient.resource("containers/{id}/json", "foo").getUri(),
+               equalTo(URI.create("https://perdu.com:2375/v1.22/containers/foo/json")));
+    assertThat(dockerClient.resource("containers/{id}/json", "bar").getUri(),
+               equalTo(URI.create("https://perdu.com:2375/v1.22/containers/bar/json")));
+    assertThat(dockerClient.resource(), sameInstance(dockerClient.resource()));
+  }
+
+  @Test
+  public void testNoTimeoutDoesNotLeakIntoCachedResource() throws Exception {
+    final DefaultDockerClient dockerClient = DefaultDockerClient.builder()
+        .uri("https://perdu.com:2375").build();
+
+    assertThat(dockerClient.noTimeoutResource().getConfiguration()
+                   .getProperty(ClientProperties.READ_TIMEOUT), equalTo((Object) 0));
+    assertThat(dockerClient.resource().getConfiguration()
+                   .getProperty(ClientProperties.READ_TIMEOUT), nullValue());
+  }
 }
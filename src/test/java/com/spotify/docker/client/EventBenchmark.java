@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.docker.client.messages.Event;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares reading a stream of {@value #EVENTS} events by binding every event to an
+ * {@link Event}, as {@link EventReader} used to, with the token level decoding of
+ * {@link EventReader}, with and without reusing the event. Run {@link #main(String[])} from the
+ * test classpath; the GC profiler's {@code gc.alloc.rate.norm} shows the allocation per operation.
+ */
+@State(Scope.Thread)
+public class EventBenchmark {
+
+  private static final int EVENTS = 100;
+  private static final String EVENT =
+      "{\"status\":\"die\",\"id\":\"%064d\",\"from\":\"busybox:latest\","
+      + "\"Type\":\"container\",\"Action\":\"die\",\"Actor\":{\"ID\":\"%064d\","
+      + "\"Attributes\":{\"exitCode\":\"0\",\"image\":\"busybox:latest\",\"name\":\"foo-%d\"}},"
+      + "\"time\":1457526896,\"timeNano\":1457526896%09d}\n";
+
+  private final ObjectMapper objectMapper = ObjectMapperProvider.objectMapper();
+  private byte[] content;
+  private CloseableHttpResponse response;
+
+  @Setup
+  public void setup() throws IOException {
+    final StringBuilder events = new StringBuilder();
+    for (int i = 0; i < EVENTS; i++) {
+      events.append(String.format(EVENT, i, i, i, i));
+    }
+    content = events.toString().getBytes(UTF_8);
+
+    final HttpEntity entity = mock(HttpEntity.class);
+    when(entity.getContent()).thenAnswer(new Answer<InputStream>() {
+      @Override
+      public InputStream answer(final InvocationOnMock invocation) {
+        return new ByteArrayInputStream(content);
+      }
+    });
+    response = mock(CloseableHttpResponse.class);
+    when(response.getEntity()).thenReturn(entity);
+  }
+
+  @Benchmark
+  public void dataBinding(final Blackhole blackhole) throws IOException {
+    try (JsonParser parser = objectMapper.getFactory().createParser(content)) {
+      while (parser.nextToken() != null) {
+        blackhole.consume(parser.readValueAs(Event.class));
+      }
+    }
+  }
+
+  @Benchmark
+  public void eventReader(final Blackhole blackhole) throws IOException {
+    read(new EventReader(response, objectMapper, false), blackhole);
+  }
+
+  @Benchmark
+  public void reusedEvents(final Blackhole blackhole) throws IOException {
+    read(new EventReader(response, objectMapper, true), blackhole);
+  }
+
+  private static void read(final EventReader reader, final Blackhole blackhole)
+      throws IOException {
+    Event event;
+    while ((event = reader.nextMessage()) != null) {
+      blackhole.consume(event.action());
+      blackhole.consume(event.actor().attributes().get("name"));
+      blackhole.consume(event.timeNano());
+    }
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+                   .include(EventBenchmark.class.getSimpleName())
+                   .addProfiler(GCProfiler.class)
+                   .forks(1)
+                   .warmupIterations(5)
+                   .measurementIterations(5)
+                   .build())
+        .run();
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.messages.Event;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.spotify.docker.client.DockerClient.EventsParam.filter;
+import static com.spotify.docker.client.DockerClient.EventsParam.since;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventHubTest {
+
+  @Mock
+  private DockerClient docker;
+
+  private final BlockingQueue<EventStream> streams = new LinkedBlockingQueue<>();
+  private EventHub sut;
+
+  @Before
+  public void setup() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(docker.events()).thenAnswer(new Answer<EventStream>() {
+      @Override
+      public EventStream answer(final InvocationOnMock invocation) throws Exception {
+        return streams.take();
+      }
+    });
+    sut = EventHub.builder(docker).initialBackoffMillis(0).build();
+  }
+
+  @After
+  public void tearDown() {
+    sut.close();
+  }
+
+  /**
+   * @return The daemon side of a new event stream, which ends when closed.
+   */
+  private PipedOutputStream connect() throws Exception {
+    final PipedOutputStream out = new PipedOutputStream();
+    final PipedInputStream in = new PipedInputStream(out, 65536);
+    final HttpEntity entity = mock(HttpEntity.class);
+    when(entity.getContent()).thenReturn(in);
+    final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+    when(response.getEntity()).thenReturn(entity);
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(final InvocationOnMock invocation) throws IOException {
+        out.close();
+        return null;
+      }
+    }).when(response).close();
+    streams.add(new EventStream(response, ObjectMapperProvider.objectMapper()));
+    return out;
+  }
+
+  private static void send(final PipedOutputStream out, final String status, final String id,
+                           final String from) throws IOException {
+    out.write(String.format("{\"status\":\"%s\",\"id\":\"%s\",\"from\":%s,\"time\":1457526896}\n",
+                            status, id, from == null ? "null" : "\"" + from + "\"")
+                  .getBytes(UTF_8));
+    out.flush();
+  }
+
+  private static String describe(final Event event) {
+    return (event == null) ? null : event.status() + " " + event.id();
+  }
+
+  private static String poll(final EventHub.Subscription subscription) throws Exception {
+    return describe(subscription.poll(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testDispatchesToMatchingSubscribers() throws Exception {
+    final PipedOutputStream daemon = connect();
+    final EventHub.Subscription all = sut.subscribe();
+    final EventHub.Subscription deaths = sut.subscribe(filter("event", "die"));
+    final EventHub.Subscription containers = sut.subscribe(
+        filter("container", "abc"), filter("container", "def"), filter("event", "start"));
+    final EventHub.Subscription images = sut.subscribe(filter("image", "busybox"));
+
+    send(daemon, "start", "abc", "busybox");
+    send(daemon, "die", "abc", "busybox");
+    send(daemon, "start", "ghi", "busybox");
+    send(daemon, "pull", "busybox", null);
+
+    assertThat(poll(all), is("start abc"));
+    assertThat(poll(all), is("die abc"));
+    assertThat(poll(all), is("start ghi"));
+    assertThat(poll(all), is("pull busybox"));
+    assertThat(poll(deaths), is("die abc"));
+    assertThat(poll(containers), is("start abc"));
+    assertThat(poll(images), is("start abc"));
+    assertThat(poll(images), is("die abc"));
+    assertThat(poll(images), is("start ghi"));
+    assertThat(poll(images), is("pull busybox"));
+    assertThat(deaths.poll(0, TimeUnit.SECONDS), is(nullValue()));
+    assertThat(containers.poll(0, TimeUnit.SECONDS), is(nullValue()));
+    assertThat(sut.dispatched(), is(4L));
+    verify(docker).events();
+  }
+
+  @Test
+  public void testDropsEventsWhenFull() throws Exception {
+    final PipedOutputStream daemon = connect();
+    // Events are handed out in order of subscription, so once all has an event, slow has had it
+    final EventHub.Subscription slow = sut.subscribe(EventHub.filter(), 1,
+                                                     EventHub.Overflow.DROP);
+    final EventHub.Subscription all = sut.subscribe();
+
+    send(daemon, "start", "abc", "busybox");
+    send(daemon, "die", "abc", "busybox");
+    send(daemon, "destroy", "abc", "busybox");
+    poll(all);
+    poll(all);
+    poll(all);
+
+    assertThat(poll(slow), is("start abc"));
+    assertThat(slow.poll(0, TimeUnit.SECONDS), is(nullValue()));
+    assertThat(slow.dropped(), is(2L));
+    assertThat(all.dropped(), is(0L));
+  }
+
+  @Test
+  public void testBlocksWhenFull() throws Exception {
+    final PipedOutputStream daemon = connect();
+    final EventHub.Subscription slow = sut.subscribe(EventHub.filter(), 1,
+                                                     EventHub.Overflow.BLOCK);
+    final EventHub.Subscription all = sut.subscribe();
+
+    send(daemon, "start", "abc", "busybox");
+    send(daemon, "die", "abc", "busybox");
+
+    assertThat(poll(all), is("start abc"));
+    // Held up until the slow subscriber makes room
+    assertThat(all.poll(200, TimeUnit.MILLISECONDS), is(nullValue()));
+    assertThat(poll(slow), is("start abc"));
+    assertThat(poll(all), is("die abc"));
+    assertThat(poll(slow), is("die abc"));
+    assertThat(slow.dropped(), is(0L));
+  }
+
+  @Test
+  public void testReconnects() throws Exception {
+    final PipedOutputStream first = connect();
+    final EventHub.Subscription all = sut.subscribe();
+    send(first, "start", "abc", "busybox");
+    assertThat(poll(all), is("start abc"));
+
+    final PipedOutputStream second = connect();
+    first.close();
+    send(second, "die", "abc", "busybox");
+
+    assertThat(poll(all), is("die abc"));
+    assertThat(sut.reconnects(), is(1L));
+    verify(docker, times(2)).events();
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    connect();
+    final EventHub.Subscription first = sut.subscribe();
+    final EventHub.Subscription second = sut.subscribe();
+    assertThat(sut.subscribers(), is(2));
+
+    first.close();
+    assertThat(sut.subscribers(), is(1));
+    assertThat(first.take(), is(nullValue()));
+
+    sut.close();
+    assertThat(second.take(), is(nullValue()));
+    assertThat(second.isClosed(), is(true));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnsupportedFilter() {
+    EventHub.filter(filter("label", "foo=bar"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotAFilter() {
+    EventHub.filter(since(1L));
+  }
+}
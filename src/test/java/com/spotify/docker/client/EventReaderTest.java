@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.messages.Event;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.spotify.docker.client.ObjectMapperProvider.objectMapper;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EventReaderTest {
+
+  private static final String START =
+      "{\"status\":\"start\",\"id\":\"abc\",\"from\":\"busybox\","
+      + "\"Type\":\"container\",\"Action\":\"start\","
+      + "\"Actor\":{\"ID\":\"abc\",\"Attributes\":{\"image\":\"busybox\",\"name\":\"foo\"}},"
+      + "\"time\":1457526896,\"timeNano\":1457526896123456789}";
+
+  private static final String PULL =
+      "{\"status\":\"pull\",\"id\":\"busybox:latest\",\"time\":1457526897}";
+
+  private static final String UNKNOWN_FIELDS =
+      "{\"scope\":\"local\",\"extra\":{\"a\":[1,{\"b\":2}]},"
+      + "\"Actor\":{\"ID\":\"abc\",\"Other\":[\"x\"]},\"status\":\"die\"}";
+
+  private static CloseableHttpResponse response(final String content) throws IOException {
+    final HttpEntity entity = mock(HttpEntity.class);
+    when(entity.getContent()).thenReturn(new ByteArrayInputStream(content.getBytes(UTF_8)));
+    final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+    when(response.getEntity()).thenReturn(entity);
+    return response;
+  }
+
+  private static EventReader reader(final String content, final boolean reuseEvents)
+      throws IOException {
+    return new EventReader(response(content), objectMapper(), reuseEvents);
+  }
+
+  @Test
+  public void testDecodesEvent() throws Exception {
+    try (EventReader reader = reader(START, false)) {
+      final Event event = reader.nextMessage();
+      assertThat(event.status(), is("start"));
+      assertThat(event.id(), is("abc"));
+      assertThat(event.from(), is("busybox"));
+      assertThat(event.type(), is("container"));
+      assertThat(event.action(), is("start"));
+      assertThat(event.actor().id(), is("abc"));
+      assertThat(event.actor().attributes(), hasEntry("name", "foo"));
+      assertThat(event.actor().attributes(), hasEntry("image", "busybox"));
+      // Repeated values share the string read first
+      assertThat(event.actor().id(), is(sameInstance(event.id())));
+      assertThat(event.actor().attributes().get("image"), is(sameInstance(event.from())));
+      assertThat(event.timeNano(), is(1457526896123456789L));
+      assertThat(event.time(), is(new Date(1457526896000L)));
+      assertThat(reader.nextMessage(), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testDecodesEventOfOldDaemon() throws Exception {
+    try (EventReader reader = reader(PULL, false)) {
+      final Event event = reader.nextMessage();
+      assertThat(event.status(), is("pull"));
+      assertThat(event.id(), is("busybox:latest"));
+      assertThat(event.type(), is(nullValue()));
+      assertThat(event.actor(), is(nullValue()));
+      assertThat(event.timeNano(), is(1457526897000000000L));
+    }
+  }
+
+  @Test
+  public void testDecodesLikeDataBinding() throws Exception {
+    for (final String content : new String[] {START, PULL, UNKNOWN_FIELDS}) {
+      final Event bound = objectMapper().readValue(content, Event.class);
+      try (EventReader reader = reader(content, false)) {
+        final Event decoded = reader.nextMessage();
+        assertThat(decoded.toString(), is(bound.toString()));
+        assertThat(objectMapper().writeValueAsString(decoded),
+                   is(objectMapper().writeValueAsString(bound)));
+      }
+    }
+  }
+
+  @Test
+  public void testSkipsUnknownFields() throws Exception {
+    try (EventReader reader = reader(UNKNOWN_FIELDS, false)) {
+      final Event event = reader.nextMessage();
+      assertThat(event.status(), is("die"));
+      assertThat(event.actor().id(), is("abc"));
+      assertThat(event.actor().attributes(), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testReusedEventIsCleared() throws Exception {
+    try (EventReader reader = reader(START + "\n" + PULL, true)) {
+      final Event first = reader.nextMessage();
+      assertThat(first.actor().id(), is("abc"));
+      final Event second = reader.nextMessage();
+      assertThat(second, is(sameInstance(first)));
+      assertThat(second.status(), is("pull"));
+      assertThat(second.type(), is(nullValue()));
+      assertThat(second.actor(), is(nullValue()));
+      assertThat(second.timeNano(), is(1457526897000000000L));
+    }
+  }
+
+  @Test
+  public void testEventsAreNotReusedByDefault() throws Exception {
+    try (EventReader reader = reader(START + START, false)) {
+      final Event first = reader.nextMessage();
+      final Event second = reader.nextMessage();
+      assertThat(second, is(not(sameInstance(first))));
+      assertThat(second.actor(), is(not(sameInstance(first.actor()))));
+    }
+  }
+
+  @Test
+  public void testTypeAndActionAreCanonical() throws Exception {
+    final Event first;
+    final Event second;
+    try (EventReader reader = reader(START, false)) {
+      first = reader.nextMessage();
+    }
+    try (EventReader reader = reader(START, false)) {
+      second = reader.nextMessage();
+    }
+    assertThat(second.type(), is(sameInstance(first.type())));
+    assertThat(second.action(), is(sameInstance(first.action())));
+    assertThat(first.type(), is(sameInstance("container")));
+  }
+
+  @Test
+  public void testOnlyKnownStringsAreCanonical() {
+    final EventReader.StringTable table = new EventReader.StringTable("start", "die");
+    final char[] known = "xxstart".toCharArray();
+    assertThat(table.get(known, 2, 5), is(sameInstance("start")));
+    final char[] unknown = "exec_start: sh -c date".toCharArray();
+    assertThat(table.get(unknown, 0, unknown.length), is("exec_start: sh -c date"));
+    assertThat(table.get(unknown, 0, unknown.length),
+               is(not(sameInstance(table.get(unknown, 0, unknown.length)))));
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncatedEvent() throws Exception {
+    try (EventReader reader = reader("{\"status\":\"start\",\"Actor\":{\"ID\":", false)) {
+      reader.nextMessage();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReuseEventsAfterReading() throws Exception {
+    try (EventStream stream = new EventStream(response(START + PULL), objectMapper())) {
+      stream.next();
+      stream.reuseEvents();
+    }
+  }
+}
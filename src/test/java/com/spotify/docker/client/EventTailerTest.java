@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.Lists;
+
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.messages.Event;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.collect.Maps.newHashMap;
+import static com.spotify.docker.client.DockerClient.EventsParam.filter;
+import static com.spotify.docker.client.DockerClient.EventsParam.since;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EventTailerTest {
+
+  @Mock
+  private DockerClient docker;
+
+  private final Deque<InputStream> responses = new ArrayDeque<>();
+  private final List<Map<String, String>> requests = Lists.newArrayList();
+  private final List<String> seen = Lists.newArrayList();
+  private EventTailer sut;
+
+  @Before
+  public void setup() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(docker.events(Matchers.<EventsParam>anyVararg())).thenAnswer(new Answer<EventStream>() {
+      @Override
+      public EventStream answer(final InvocationOnMock invocation) throws Exception {
+        final Map<String, String> params = newHashMap();
+        for (final Object param : invocation.getArguments()) {
+          params.put(((EventsParam) param).name(), ((EventsParam) param).value());
+        }
+        requests.add(params);
+        final InputStream content = responses.isEmpty()
+                                    ? new ByteArrayInputStream(new byte[0])
+                                    : responses.poll();
+        final HttpEntity entity = mock(HttpEntity.class);
+        when(entity.getContent()).thenReturn(content);
+        final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        when(response.getEntity()).thenReturn(entity);
+        return new EventStream(response, ObjectMapperProvider.objectMapper());
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    if (sut != null) {
+      sut.close();
+    }
+  }
+
+  private EventTailer.Builder builder(final EventsParam... filters) {
+    return EventTailer.builder(docker, filters)
+        .since(100)
+        .initialBackoffMillis(0)
+        .listener(new EventTailer.ResyncListener() {
+          @Override
+          public void resyncNeeded(final long since) {
+            seen.add("resync since " + since);
+          }
+        });
+  }
+
+  private static String event(final long time, final String status, final String id) {
+    return String.format("{\"status\":\"%s\",\"id\":\"%s\",\"from\":\"busybox\",\"time\":%d}\n",
+                         status, id, time);
+  }
+
+  private void respond(final String... events) {
+    responses.add(new ByteArrayInputStream(join(events)));
+  }
+
+  private void respondAndFail(final String... events) {
+    responses.add(new SequenceInputStream(new ByteArrayInputStream(join(events)),
+                                          new InputStream() {
+                                            @Override
+                                            public int read() throws IOException {
+                                              throw new IOException("Connection reset");
+                                            }
+                                          }));
+  }
+
+  private static byte[] join(final String... events) {
+    final StringBuilder joined = new StringBuilder();
+    for (final String event : events) {
+      joined.append(event);
+    }
+    return joined.toString().getBytes(UTF_8);
+  }
+
+  private void read(final int count) {
+    for (int i = 0; i < count; i++) {
+      final Event event = sut.next();
+      seen.add(event.status() + " " + event.id() + " " + event.time().getTime() / 1000);
+    }
+  }
+
+  @Test
+  public void testResumesWithoutDuplicates() throws Exception {
+    respondAndFail(event(100, "start", "a"), event(101, "die", "a"), event(101, "start", "b"));
+    // Missed since the last second returned
+    respond(event(101, "die", "a"), event(101, "start", "b"), event(101, "start", "c"),
+            event(102, "destroy", "a"));
+    // Followed from the last second read
+    respond(event(102, "destroy", "a"), event(103, "die", "b"));
+    sut = builder().build();
+
+    read(6);
+
+    assertThat(seen, contains("start a 100", "die a 101", "start b 101", "start c 101",
+                              "destroy a 102", "die b 103"));
+    assertThat(sut.duplicates(), is(3L));
+    assertThat(sut.reconnects(), is(1L));
+    assertThat(sut.resyncs(), is(0L));
+    assertThat(requests.get(0), hasEntry("since", "100"));
+    assertThat(requests.get(0).containsKey("until"), is(false));
+    assertThat(requests.get(1), hasEntry("since", "101"));
+    assertThat(requests.get(1).containsKey("until"), is(true));
+    assertThat(requests.get(2), hasEntry("since", "102"));
+    assertThat(requests.get(2).containsKey("until"), is(false));
+  }
+
+  @Test
+  public void testResyncWhenHistoryIsGone() throws Exception {
+    respondAndFail(event(100, "start", "a"), event(101, "die", "a"));
+    // The daemon restarted, and only has events from after the gap
+    respond(event(105, "start", "b"));
+    respond(event(105, "start", "b"), event(106, "die", "b"));
+    sut = builder().build();
+
+    read(4);
+
+    assertThat(seen, contains("start a 100", "die a 101", "resync since 101", "start b 105",
+                              "die b 106"));
+    assertThat(sut.resyncs(), is(1L));
+  }
+
+  @Test
+  public void testResyncWhenNothingIsReplayed() throws Exception {
+    respondAndFail(event(100, "start", "a"));
+    respond();
+    respond(event(107, "die", "a"));
+    sut = builder().build();
+
+    read(2);
+
+    assertThat(seen, contains("start a 100", "resync since 100", "die a 107"));
+  }
+
+  @Test
+  public void testNoResyncWithoutEvents() throws Exception {
+    respondAndFail();
+    respond();
+    respond(event(107, "die", "a"));
+    sut = builder().build();
+
+    read(1);
+
+    assertThat(seen, contains("die a 107"));
+    assertThat(sut.reconnects(), is(1L));
+  }
+
+  @Test
+  public void testFiltersArePassedOn() throws Exception {
+    respond(event(100, "die", "a"));
+    sut = builder(filter("event", "die")).build();
+
+    read(1);
+
+    assertThat(requests.get(0), hasEntry("event", "die"));
+  }
+
+  @Test
+  public void testStreamOpenedWhileClosingIsClosed() throws Exception {
+    final EventStream stream = mock(EventStream.class);
+    doAnswer(new Answer<EventStream>() {
+      @Override
+      public EventStream answer(final InvocationOnMock invocation) {
+        // Another thread closes the tailer while it is connecting
+        sut.close();
+        return stream;
+      }
+    }).when(docker).events(Matchers.<EventsParam>anyVararg());
+    sut = builder().build();
+
+    assertThat(sut.hasNext(), is(false));
+    verify(stream).close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testOnlyFilters() {
+    EventTailer.builder(docker, since(1L));
+  }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.LogMessage.Stream;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class LogAggregatorTest {
+
+  private static final String HEADERS = "HTTP/1.1 200 OK\r\n"
+                                        + "Content-Type: application/vnd.docker.raw-stream\r\n"
+                                        + "Transfer-Encoding: chunked\r\n";
+
+  // The response body per container, sent in chunks
+  private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+  private final Map<String, String> headers = new ConcurrentHashMap<>();
+  // Containers whose body is not ended
+  private final Set<String> running = Sets.newConcurrentHashSet();
+  private final BlockingQueue<String> requests = new LinkedBlockingQueue<>();
+  private final int chunkSize = 7;
+
+  private File socketFile;
+  private ServerSocketChannel server;
+  private LogAggregator sut;
+
+  @Before
+  public void setup() throws Exception {
+    assumeTrue(UnixDomainSocket.isSupported());
+
+    socketFile = new File(Files.createTempDirectory("docker-client").toFile(), "docker.sock");
+    server = (ServerSocketChannel) ServerSocketChannel.class
+        .getMethod("open", ProtocolFamily.class)
+        .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+    server.bind(UnixDomainSocket.address(socketFile));
+
+    final Thread serverThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            final SocketChannel channel = server.accept();
+            final Thread connection = new Thread(new Runnable() {
+              @Override
+              public void run() {
+                serve(channel);
+              }
+            });
+            connection.setDaemon(true);
+            connection.start();
+          }
+        } catch (IOException ignored) {
+          // server closed
+        }
+      }
+    });
+    serverThread.setDaemon(true);
+    serverThread.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (sut != null) {
+      sut.close();
+    }
+    if (server != null) {
+      server.close();
+      socketFile.delete();
+      socketFile.getParentFile().delete();
+    }
+  }
+
+  private LogAggregator.Builder builder() {
+    return LogAggregator.builder(URI.create("unix://" + socketFile.getPath()));
+  }
+
+  private void serve(final SocketChannel channel) {
+    try {
+      final ByteBuffer buffer = ByteBuffer.allocate(8192);
+      final ByteArrayOutputStream request = new ByteArrayOutputStream();
+      while (!request.toString("UTF-8").endsWith("\r\n\r\n")) {
+        if (channel.read(buffer) < 0) {
+          return;
+        }
+        buffer.flip();
+        request.write(buffer.array(), 0, buffer.limit());
+        buffer.clear();
+      }
+      final String requestLine = request.toString("UTF-8").split("\r\n")[0];
+      requests.put(requestLine);
+      final String container = requestLine.replaceFirst(".*/containers/([^/]+)/.*", "$1");
+
+      final byte[] body = bodies.get(container);
+      if (body == null) {
+        write(channel, "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n".getBytes(UTF_8));
+        return;
+      }
+      final String extraHeaders = headers.containsKey(container) ? headers.get(container) : "";
+      write(channel, (HEADERS + extraHeaders + "\r\n").getBytes(UTF_8));
+      for (int i = 0; i < body.length; i += chunkSize) {
+        final int length = Math.min(chunkSize, body.length - i);
+        write(channel, (Integer.toHexString(length) + "\r\n").getBytes(UTF_8));
+        write(channel, ByteBuffer.wrap(body, i, length));
+        write(channel, "\r\n".getBytes(UTF_8));
+      }
+      if (!running.contains(container)) {
+        write(channel, "0\r\n\r\n".getBytes(UTF_8));
+      }
+      Thread.sleep(60000);
+    } catch (IOException | InterruptedException ignored) {
+      // connection closed
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+        // ignored
+      }
+    }
+  }
+
+  private static void write(final SocketChannel channel, final byte[] bytes) throws IOException {
+    write(channel, ByteBuffer.wrap(bytes));
+  }
+
+  private static void write(final SocketChannel channel, final ByteBuffer buffer)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static byte[] frames(final String prefix, final int count, final int padding) {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < count; i++) {
+      final StringBuilder content = new StringBuilder(prefix + i);
+      while (content.length() < padding) {
+        content.append('.');
+      }
+      final byte[] bytes = content.toString().getBytes(UTF_8);
+      final ByteBuffer frame = ByteBuffer.allocate(LogReader.HEADER_SIZE + bytes.length);
+      final Stream stream = (i % 2 == 0) ? Stream.STDOUT : Stream.STDERR;
+      frame.put((byte) stream.id()).put(new byte[3]).putInt(bytes.length).put(bytes);
+      out.write(frame.array(), 0, frame.capacity());
+    }
+    return out.toByteArray();
+  }
+
+  private static String string(final LogMessage message) {
+    return UTF_8.decode(message.content()).toString().replaceAll("\\.+$", "");
+  }
+
+  @Test
+  public void testMessagesOfManyContainers() throws Exception {
+    bodies.put("a", frames("a", 50, 0));
+    bodies.put("b", frames("b", 50, 0));
+    sut = builder().apiVersion("v1.22").selectorThreads(1).build();
+
+    sut.follow("a", LogsParam.timestamps());
+    sut.follow("b");
+
+    final Map<String, List<String>> received = new ConcurrentHashMap<>();
+    received.put("a", Lists.<String>newArrayList());
+    received.put("b", Lists.<String>newArrayList());
+    int ended = 0;
+    while (ended < 2) {
+      final LogAggregator.Entry entry = sut.poll(10, TimeUnit.SECONDS);
+      assertThat(entry, is(notNullValue()));
+      if (entry.message() == null) {
+        assertThat(entry.error(), is(nullValue()));
+        ended++;
+        continue;
+      }
+      final List<String> messages = received.get(entry.containerId());
+      final Stream expected = (messages.size() % 2 == 0) ? Stream.STDOUT : Stream.STDERR;
+      assertThat(entry.message().stream(), is(expected));
+      messages.add(string(entry.message()));
+    }
+
+    for (final String container : new String[]{"a", "b"}) {
+      final List<String> messages = received.get(container);
+      assertThat(messages.size(), is(50));
+      for (int i = 0; i < 50; i++) {
+        assertThat(messages.get(i), is(container + i));
+      }
+    }
+    assertThat(sut.following().isEmpty(), is(true));
+    final String first = requests.take();
+    final String second = requests.take();
+    assertThat(first.startsWith("GET /v1.22/containers/a/") ? first : second,
+               is("GET /v1.22/containers/a/logs?follow=1&timestamps=true&stdout=1&stderr=1 "
+                  + "HTTP/1.1"));
+  }
+
+  @Test
+  public void testBackpressure() throws Exception {
+    bodies.put("c", frames("c", 200, 1000));
+    sut = builder().containerCapacity(4).build();
+
+    sut.follow("c", LogsParam.stdout(), LogsParam.stderr());
+
+    // Reading stops once the container has its share of messages queued, and a buffer's worth
+    Thread.sleep(500);
+    assertThat(sut.queued(), is(lessThan(4 + 8192 / 1000 + 2)));
+    assertThat(requests.take(), startsWith("GET /containers/c/logs?follow=1&stdout=true&"));
+
+    for (int i = 0; i < 200; i++) {
+      final LogAggregator.Entry entry = sut.poll(10, TimeUnit.SECONDS);
+      assertThat(string(entry.message()), is("c" + i));
+    }
+    assertThat(sut.poll(10, TimeUnit.SECONDS).message(), is(nullValue()));
+  }
+
+  @Test
+  public void testContainerNotFound() throws Exception {
+    sut = builder().build();
+
+    sut.follow("missing");
+
+    final LogAggregator.Entry entry = sut.poll(10, TimeUnit.SECONDS);
+    assertThat(entry.containerId(), is("missing"));
+    assertThat(entry.message(), is(nullValue()));
+    assertThat(entry.error(), instanceOf(ContainerNotFoundException.class));
+  }
+
+  @Test
+  public void testMalformedResponseEndsOnlyThatContainer() throws Exception {
+    final ByteArrayOutputStream malformed = new ByteArrayOutputStream();
+    malformed.write(frames("bad", 1, 0));
+    // A frame header with a negative size
+    malformed.write(new byte[] {1, 0, 0, 0, -1, -1, -1, -1});
+    bodies.put("bad", malformed.toByteArray());
+    bodies.put("good", frames("good", 50, 0));
+    running.add("good");
+    sut = builder().selectorThreads(1).build();
+
+    sut.follow("bad");
+    sut.follow("good");
+
+    final List<String> received = Lists.newArrayList();
+    DockerException error = null;
+    while (error == null || received.size() < 50) {
+      final LogAggregator.Entry entry = sut.poll(10, TimeUnit.SECONDS);
+      assertThat(entry, is(notNullValue()));
+      if (entry.containerId().equals("bad")) {
+        if (entry.message() == null) {
+          error = entry.error();
+          assertThat(error, is(notNullValue()));
+        }
+      } else {
+        assertThat(entry.message(), is(notNullValue()));
+        received.add(string(entry.message()));
+      }
+    }
+
+    assertThat(received.get(49), is("good49"));
+    assertThat(sut.following(), contains("good"));
+  }
+
+  @Test
+  public void testListenerWithTty() throws Exception {
+    final byte[] output = new byte[100];
+    for (int i = 0; i < output.length; i++) {
+      output[i] = (byte) ('a' + i % 26);
+    }
+    // Raw output that happens to start like a frame header
+    System.arraycopy(new byte[] {1, 0, 0, 0, 0, 0, 0, 2}, 0, output, 0, LogReader.HEADER_SIZE);
+    bodies.put("tty", output);
+    headers.put("tty", "Api-Version: 1.43\r\n");
+
+    final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    final CountDownLatch ended = new CountDownLatch(1);
+    sut = builder().apiVersion("v1.43").listener(new LogAggregator.Listener() {
+      @Override
+      public void message(final String containerId, final LogMessage message) {
+        assertThat(message.stream(), is(Stream.STDOUT));
+        final ByteBuffer content = message.content();
+        while (content.hasRemaining()) {
+          received.write(content.get());
+        }
+      }
+
+      @Override
+      public void ended(final String containerId, final DockerException error) {
+        ended.countDown();
+      }
+    }).build();
+
+    sut.follow("tty");
+
+    assertThat(ended.await(10, TimeUnit.SECONDS), is(true));
+    assertThat(received.toByteArray(), is(output));
+  }
+
+  @Test
+  public void testUnfollow() throws Exception {
+    bodies.put("d", frames("d", 1, 0));
+    running.add("d");
+    sut = builder().build();
+
+    sut.follow("d");
+    assertThat(string(sut.poll(10, TimeUnit.SECONDS).message()), is("d0"));
+    assertThat(sut.following(), contains("d"));
+
+    sut.unfollow("d");
+    final LogAggregator.Entry end = sut.poll(10, TimeUnit.SECONDS);
+    assertThat(end.message(), is(nullValue()));
+    assertThat(end.error(), is(nullValue()));
+    assertThat(sut.following().isEmpty(), is(true));
+  }
+}
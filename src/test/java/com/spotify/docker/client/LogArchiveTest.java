@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LogArchiveTest {
+
+  // 2016-03-09T12:34:56Z
+  private static final long SECOND = 1457526896L;
+  private static final long NANOS = 1000000000L;
+
+  private Path directory;
+  private LogArchive sut;
+
+  @Before
+  public void setup() throws Exception {
+    directory = Files.createTempDirectory("docker-client");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (sut != null) {
+      sut.close();
+    }
+    delete(directory.toFile());
+  }
+
+  private static void delete(final File file) {
+    final File[] children = file.listFiles();
+    if (children != null) {
+      for (final File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private static String timestamp(final int second, final int nanos) {
+    return String.format("2016-03-09T12:%02d:%02d.%09dZ", 34 + (56 + second) / 60,
+                         (56 + second) % 60, nanos);
+  }
+
+  private static long nanos(final int second, final int nanos) {
+    return (SECOND + second) * NANOS + nanos;
+  }
+
+  private static LogStream logs(final String... lines) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (int i = 0; i < lines.length; i++) {
+      final byte[] content = (lines[i] + "\n").getBytes(UTF_8);
+      final ByteBuffer header = ByteBuffer.allocate(LogReader.HEADER_SIZE);
+      final Stream stream = (i % 2 == 0) ? Stream.STDOUT : Stream.STDERR;
+      header.put((byte) stream.id()).put(new byte[3]).putInt(content.length);
+      out.write(header.array());
+      out.write(content);
+    }
+    return new LogStream(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static List<String> contents(final List<LogArchive.Record> records) {
+    final List<String> contents = Lists.newArrayList();
+    for (final LogArchive.Record record : records) {
+      final ByteBuffer content = record.content();
+      final byte[] bytes = new byte[content.remaining()];
+      content.get(bytes);
+      contents.add(new String(bytes, UTF_8));
+    }
+    return contents;
+  }
+
+  private LogStream tenSeconds() throws Exception {
+    final String[] lines = new String[10];
+    for (int i = 0; i < lines.length; i++) {
+      lines[i] = timestamp(i, 500) + " line " + i;
+    }
+    return logs(lines);
+  }
+
+  @Test
+  public void testReadRange() throws Exception {
+    // Two lines per segment
+    sut = LogArchive.builder(directory).segmentBytes(40).indexIntervalBytes(10).build();
+
+    assertThat(sut.append("abc", tenSeconds()), is(10L));
+
+    assertThat(contents(sut.read("abc", nanos(2, 500), nanos(5, 0))),
+               contains("line 2", "line 3", "line 4"));
+    assertThat(contents(sut.read("abc", nanos(0, 0), nanos(1, 0))), contains("line 0"));
+    assertThat(contents(sut.read("abc", nanos(9, 0), Long.MAX_VALUE)), contains("line 9"));
+    assertThat(sut.read("abc", nanos(10, 0), Long.MAX_VALUE), is(empty()));
+    assertThat(sut.read("def", Long.MIN_VALUE, Long.MAX_VALUE), is(empty()));
+
+    final LogArchive.Record record = sut.read("abc", nanos(3, 0), nanos(4, 0)).get(0);
+    assertThat(record.stream(), is(Stream.STDERR));
+    assertThat(record.timestamp(), is(nanos(3, 500)));
+    assertThat(record.partial(), is(false));
+    assertThat(directory.resolve("abc").toFile().list().length, is(10));
+  }
+
+  @Test
+  public void testRollsSegmentsByTime() throws Exception {
+    sut = LogArchive.builder(directory).segmentMillis(3000).build();
+
+    sut.append("abc", tenSeconds());
+
+    assertThat(directory.resolve("abc").toFile().list().length, is(8));
+    assertThat(contents(sut.read("abc", nanos(2, 0), nanos(7, 0))),
+               contains("line 2", "line 3", "line 4", "line 5", "line 6"));
+  }
+
+  @Test
+  public void testLongLinesAreSplit() throws Exception {
+    // The timestamp and the space after it are part of the first 35 characters
+    sut = LogArchive.builder(directory).maxLineLength(35).build();
+    final String middle = Strings.repeat("x", 35);
+
+    sut.append("abc", logs(timestamp(0, 0) + " abcd" + middle + "yz", timestamp(1, 0) + " x"));
+
+    final List<LogArchive.Record> records = sut.read("abc", Long.MIN_VALUE, Long.MAX_VALUE);
+    assertThat(contents(records), contains("abcd", middle, "yz", "x"));
+    assertThat(records.get(0).partial(), is(true));
+    assertThat(records.get(1).partial(), is(true));
+    assertThat(records.get(2).partial(), is(false));
+    assertThat(records.get(2).timestamp(), is(nanos(0, 0)));
+    assertThat(records.get(3).timestamp(), is(nanos(1, 0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testLinesNeedTimestamps() throws Exception {
+    sut = LogArchive.builder(directory).build();
+    sut.append("abc", logs("no timestamp"));
+  }
+
+  @Test
+  public void testReopenDropsPartlyWrittenLine() throws Exception {
+    sut = LogArchive.builder(directory).build();
+    sut.append("abc", tenSeconds());
+    sut.close();
+
+    final File[] files = directory.resolve("abc").toFile().listFiles();
+    for (final File file : files) {
+      if (file.getName().endsWith(".log")) {
+        // The start of a record, as if the archive crashed while appending
+        Files.write(file.toPath(), new byte[]{0, 0, 0}, StandardOpenOption.APPEND);
+      }
+    }
+
+    sut = LogArchive.builder(directory).indexIntervalBytes(10).build();
+    assertThat(sut.containers(), contains("abc"));
+    sut.append("abc", Stream.STDOUT, nanos(10, 0), ByteBuffer.wrap("line 10".getBytes(UTF_8)));
+
+    assertThat(contents(sut.read("abc", nanos(8, 0), Long.MAX_VALUE)),
+               contains("line 8", "line 9", "line 10"));
+  }
+
+  @Test
+  public void testRetention() throws Exception {
+    sut = LogArchive.builder(directory).segmentBytes(40).maxBytesPerContainer(60).build();
+    sut.append("abc", tenSeconds());
+
+    // Segments are deleted when rolling, so the segment appended to comes on top of the limit
+    assertThat(contents(sut.read("abc", Long.MIN_VALUE, Long.MAX_VALUE)),
+               contains("line 6", "line 7", "line 8", "line 9"));
+    sut.close();
+
+    // The lines were logged in 2016
+    sut = LogArchive.builder(directory).retentionMillis(60000).build();
+    assertThat(sut.containers(), contains("abc"));
+    sut.enforceRetention();
+    assertThat(sut.containers(), is(empty()));
+    assertThat(directory.toFile().list().length, is(0));
+
+    sut.append("abc", Stream.STDOUT, System.currentTimeMillis() * 1000000,
+               ByteBuffer.wrap("now".getBytes(UTF_8)));
+    assertThat(sut.read("abc", Long.MIN_VALUE, Long.MAX_VALUE).size(), is(1));
+    assertThat(directory.toFile().list().length, greaterThan(0));
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.Lists;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class LogLineStreamTest {
+
+  private final ByteArrayOutputStream frames = new ByteArrayOutputStream();
+
+  private void frame(final Stream stream, final byte[] content) throws Exception {
+    final ByteBuffer header = ByteBuffer.allocate(LogReader.HEADER_SIZE);
+    header.put((byte) stream.id()).put(new byte[3]).putInt(content.length);
+    frames.write(header.array());
+    frames.write(content);
+  }
+
+  private void frame(final Stream stream, final String content) throws Exception {
+    frame(stream, content.getBytes(UTF_8));
+  }
+
+  private LogLineStream lines(final int maxLineLength) {
+    return new LogStream(new ByteArrayInputStream(frames.toByteArray())).lines(maxLineLength);
+  }
+
+  private static List<String> read(final LogLineStream lines) {
+    final List<String> read = Lists.newArrayList();
+    while (lines.hasNext()) {
+      final LogLine line = lines.next();
+      read.add(line.stream() + (line.partial() ? "+ " : " ") + line.content());
+    }
+    return read;
+  }
+
+  @Test
+  public void testLinesPerStream() throws Exception {
+    frame(Stream.STDOUT, "one\ntw");
+    frame(Stream.STDERR, "err");
+    frame(Stream.STDOUT, "o\nthree\n");
+    frame(Stream.STDERR, "or\n");
+    frame(Stream.STDOUT, "\nlast");
+
+    assertThat(read(lines(100)), contains("STDOUT one", "STDOUT two", "STDOUT three",
+                                          "STDERR error", "STDOUT ", "STDOUT last"));
+  }
+
+  @Test
+  public void testCharactersSplitBetweenFrames() throws Exception {
+    final byte[] text = "café € 🐳\n".getBytes(UTF_8);
+    // Every byte in a frame of its own, with frames of the other stream in between
+    for (final byte b : text) {
+      frame(Stream.STDOUT, new byte[]{b});
+      frame(Stream.STDERR, "é".getBytes(UTF_8));
+    }
+    frame(Stream.STDERR, "\n");
+
+    final String stderr = new String(new char[text.length]).replace('\0', 'é');
+    assertThat(read(lines(100)), contains("STDOUT café € 🐳",
+                                          "STDERR " + stderr));
+  }
+
+  @Test
+  public void testMalformedInput() throws Exception {
+    frame(Stream.STDOUT, new byte[]{'a', (byte) 0xff, 'b', '\n', (byte) 0xe2, (byte) 0x82});
+
+    assertThat(read(lines(100)), contains("STDOUT a�b", "STDOUT �"));
+  }
+
+  @Test
+  public void testLongLinesAreSplit() throws Exception {
+    frame(Stream.STDOUT, "abcdefghij");
+    frame(Stream.STDOUT, "klm\nno\n");
+    // A surrogate pair is not split
+    frame(Stream.STDOUT, "abc🐳\n");
+
+    assertThat(read(lines(4)), contains("STDOUT+ abcd", "STDOUT+ efgh", "STDOUT+ ijkl",
+                                        "STDOUT m", "STDOUT no", "STDOUT+ abc",
+                                        "STDOUT 🐳"));
+  }
+
+  @Test
+  public void testReuseBuffers() throws Exception {
+    final char[] longLine = new char[10000];
+    Arrays.fill(longLine, 'x');
+    frame(Stream.STDOUT, "first\nsecond\n");
+    frame(Stream.STDOUT, new String(longLine) + "\n");
+
+    final LogLineStream lines = lines(LogLineStream.DEFAULT_MAX_LINE_LENGTH).reuseBuffers();
+    final LogLine first = lines.next();
+    assertThat(first.content().toString(), is("first"));
+    final LogLine second = lines.next();
+    assertThat(second, is(sameInstance(first)));
+    assertThat(second.content().toString(), is("second"));
+    assertThat(lines.next().content().toString(), is(new String(longLine)));
+    assertThat(lines.hasNext(), is(false));
+  }
+}
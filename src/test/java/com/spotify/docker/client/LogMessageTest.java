@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LogMessageTest {
+
+  private static LogMessage message(final String content) {
+    return new LogMessage(Stream.STDOUT, ByteBuffer.wrap(content.getBytes(UTF_8)));
+  }
+
+  private static String string(final ByteBuffer buffer) {
+    return UTF_8.decode(buffer).toString();
+  }
+
+  @Test
+  public void testTimestamp() {
+    final LogMessage message = message("2016-03-09T12:34:56.123456789Z hello world\n");
+
+    assertThat(message.timestamp(), is(1457526896123456789L));
+    assertThat(string(message.payload()), is("hello world\n"));
+    // Neither changes the content
+    assertThat(string(message.content()), is("2016-03-09T12:34:56.123456789Z hello world\n"));
+  }
+
+  @Test
+  public void testOtherLayouts() {
+    assertThat(message("2016-03-09T12:34:56.1Z a").timestamp(), is(1457526896100000000L));
+    assertThat(message("2016-03-09T13:34:56.123456789+01:00 a").timestamp(),
+               is(1457526896123456789L));
+    assertThat(string(message("2016-03-09T12:34:56Z a").payload()), is("a"));
+  }
+
+  @Test
+  public void testNoTimestamp() {
+    assertThat(message("hello world").timestamp(), is(LogMessage.NO_TIMESTAMP));
+    assertThat(message("2016-03-09T12:34:56.12345678xZ a").timestamp(),
+               is(LogMessage.NO_TIMESTAMP));
+    assertThat(message("").timestamp(), is(LogMessage.NO_TIMESTAMP));
+    assertThat(string(message("hello world").payload()), is("hello world"));
+  }
+
+  @Test
+  public void testReusedMessages() throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (final String line : new String[]{"2016-03-09T12:34:56.000000001Z a",
+                                          "2016-03-09T12:34:57.000000002Z b"}) {
+      final byte[] content = line.getBytes(UTF_8);
+      final ByteBuffer header = ByteBuffer.allocate(LogReader.HEADER_SIZE);
+      header.put((byte) Stream.STDOUT.id()).put(new byte[3]).putInt(content.length);
+      out.write(header.array());
+      out.write(content);
+    }
+    final LogStream stream = new LogStream(new ByteArrayInputStream(out.toByteArray()))
+        .reuseBuffers();
+
+    final LogMessage first = stream.next();
+    assertThat(first.timestamp(), is(1457526896000000001L));
+    assertThat(string(first.payload()), is("a"));
+    final LogMessage second = stream.next();
+    assertThat(second.timestamp(), is(1457526897000000002L));
+    assertThat(string(second.payload()), is("b"));
+  }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.primitives.Bytes;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class LogReaderTest {
+
+  private static byte[] frame(final Stream stream, final byte[] content) {
+    final ByteBuffer frame = ByteBuffer.allocate(LogReader.HEADER_SIZE + content.length);
+    frame.put((byte) stream.id()).put(new byte[3]).putInt(content.length).put(content);
+    return frame.array();
+  }
+
+  private static byte[] frame(final Stream stream, final String content) {
+    return frame(stream, content.getBytes(UTF_8));
+  }
+
+  private static InputStream frames(final byte[]... frames) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (final byte[] frame : frames) {
+      out.write(frame);
+    }
+    return new NoMarkInputStream(out.toByteArray());
+  }
+
+  private static String string(final LogMessage message) {
+    return UTF_8.decode(message.content()).toString();
+  }
+
+  @Test
+  public void testMultiplexedFrames() throws Exception {
+    final byte[] hello = frame(Stream.STDOUT, "hello");
+    final byte[] world = frame(Stream.STDERR, "world");
+    for (final boolean reuse : new boolean[]{false, true}) {
+      // Only the default mode may use mark and reset
+      final InputStream stream = reuse
+                                 ? frames(hello, world)
+                                 : new ByteArrayInputStream(Bytes.concat(hello, world));
+      final LogReader reader = new LogReader(stream, reuse);
+
+      final LogMessage first = reader.nextMessage();
+      assertThat(first.stream(), is(Stream.STDOUT));
+      assertThat(string(first), is("hello"));
+
+      final LogMessage second = reader.nextMessage();
+      assertThat(second.stream(), is(Stream.STDERR));
+      assertThat(string(second), is("world"));
+
+      assertThat(reader.nextMessage(), is(nullValue()));
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testMessageIsReused() throws Exception {
+    final LogReader reader = new LogReader(frames(frame(Stream.STDOUT, "a"),
+                                                  frame(Stream.STDOUT, "bc")), true);
+
+    final LogMessage first = reader.nextMessage();
+    final ByteBuffer content = first.content();
+    assertThat(content.isReadOnly(), is(true));
+    assertThat(first.content(), is(sameInstance(content)));
+
+    final LogMessage second = reader.nextMessage();
+    assertThat(second, is(sameInstance(first)));
+    assertThat(string(second), is("bc"));
+    // The content can be read again
+    assertThat(string(second), is("bc"));
+    reader.close();
+  }
+
+  @Test
+  public void testLargeFrame() throws Exception {
+    final byte[] large = new byte[100000];
+    Arrays.fill(large, (byte) 'x');
+    final LogReader reader = new LogReader(frames(frame(Stream.STDOUT, "small"),
+                                                  frame(Stream.STDOUT, large),
+                                                  frame(Stream.STDERR, "small")), true);
+
+    assertThat(string(reader.nextMessage()), is("small"));
+    final ByteBuffer content = reader.nextMessage().content();
+    assertThat(content.remaining(), is(large.length));
+    final byte[] read = new byte[large.length];
+    content.get(read);
+    assertThat(read, is(large));
+    assertThat(string(reader.nextMessage()), is("small"));
+    reader.close();
+  }
+
+  @Test
+  public void testRawStream() throws Exception {
+    final byte[] raw = "not a multiplexed stream".getBytes(UTF_8);
+    final LogReader reader = new LogReader(
+        new NoMarkInputStream(raw), true);
+
+    final StringBuilder read = new StringBuilder();
+    for (LogMessage message; (message = reader.nextMessage()) != null; ) {
+      assertThat(message.stream(), is(Stream.STDOUT));
+      read.append(string(message));
+    }
+    assertThat(read.toString(), is("not a multiplexed stream"));
+    reader.close();
+  }
+
+  @Test
+  public void testTruncatedFrame() throws Exception {
+    final byte[] frame = frame(Stream.STDOUT, "truncated");
+    final LogReader reader = new LogReader(
+        frames(Arrays.copyOf(frame, frame.length - 2)), true);
+    try {
+      reader.nextMessage();
+      fail();
+    } catch (EOFException expected) {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testBuffersArePooled() throws Exception {
+    final ByteBufferPool pool = new ByteBufferPool(16, 64, 1);
+    final ByteBuffer buffer = pool.acquire();
+    assertThat(buffer.capacity(), is(16));
+    pool.release(buffer);
+    assertThat(pool.acquire(), is(sameInstance(buffer)));
+
+    final ByteBuffer grown = pool.grow(buffer, 20);
+    assertThat(grown.capacity(), is(32));
+    assertThat(pool.acquire(), is(sameInstance(buffer)));
+
+    // The buffer that is replaced goes back to the pool, the one that is too large does not
+    pool.release(pool.grow(grown, 100));
+    assertThat(pool.acquire(), is(sameInstance(grown)));
+    assertThat(pool.acquire().capacity(), is(16));
+  }
+
+  @Test
+  public void testLogStreamReusingBuffers() throws Exception {
+    final LogStream stream = new LogStream(frames(frame(Stream.STDOUT, "out "),
+                                                  frame(Stream.STDERR, "err")))
+        .reuseBuffers();
+    final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+    final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+
+    stream.attach(stdout, stderr);
+
+    assertThat(new String(stdout.toByteArray(), UTF_8), is("out "));
+    assertThat(new String(stderr.toByteArray(), UTF_8), is("err"));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReuseBuffersAfterReading() throws Exception {
+    final LogStream stream = new LogStream(
+        new ByteArrayInputStream(frame(Stream.STDOUT, "a")));
+    stream.hasNext();
+    stream.reuseBuffers();
+  }
+
+  @Test
+  public void testRawChunks() throws Exception {
+    final byte[] output = new byte[LogReader.RAW_CHUNK_SIZE + 100];
+    Arrays.fill(output, (byte) 'x');
+    // Output that starts like a frame header is still raw when the container has a TTY
+    output[0] = 1;
+    for (final boolean reuse : new boolean[]{false, true}) {
+      final LogReader reader = new LogReader(new NoMarkInputStream(output), reuse, true);
+
+      final LogMessage first = reader.nextMessage();
+      assertThat(first.stream(), is(Stream.STDOUT));
+      assertThat(first.content().remaining(), is(LogReader.RAW_CHUNK_SIZE));
+      assertThat(reader.nextMessage().content().remaining(), is(100));
+      assertThat(reader.nextMessage(), is(nullValue()));
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testRawChunksAreReturnedAsTheyArrive() throws Exception {
+    final PipedOutputStream out = new PipedOutputStream();
+    final LogReader reader = new LogReader(new PipedInputStream(out), true, true);
+
+    out.write("first".getBytes(UTF_8));
+    assertThat(string(reader.nextMessage()), is("first"));
+    out.write("second".getBytes(UTF_8));
+    out.close();
+    assertThat(string(reader.nextMessage()), is("second"));
+    assertThat(reader.nextMessage(), is(nullValue()));
+    reader.close();
+  }
+
+  @Test
+  public void testRawStreamDetectedOnce() throws Exception {
+    // After the first bytes show there is no header, later bytes that look like one are content
+    final byte[] raw = Bytes.concat("raw output".getBytes(UTF_8), frame(Stream.STDERR, "x"));
+    final LogReader reader = new LogReader(new ByteArrayInputStream(raw));
+
+    final ByteArrayOutputStream read = new ByteArrayOutputStream();
+    for (LogMessage message; (message = reader.nextMessage()) != null; ) {
+      assertThat(message.stream(), is(Stream.STDOUT));
+      final byte[] content = new byte[message.content().remaining()];
+      message.content().get(content);
+      read.write(content);
+    }
+    assertThat(read.toByteArray(), is(raw));
+    reader.close();
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidHeaderOfMultiplexedStream() throws Exception {
+    final LogReader reader = new LogReader(
+        new NoMarkInputStream("raw output".getBytes(UTF_8)), true, false);
+    reader.nextMessage();
+  }
+
+  @Test
+  public void testTtyFromContentType() throws Exception {
+    assertThat(LogsResponseReader.tty(LogsResponseReader.MULTIPLEXED_STREAM_TYPE, "1.42"),
+               is(false));
+    assertThat(LogsResponseReader.tty(LogsResponseReader.RAW_STREAM_TYPE, "1.42"), is(true));
+    assertThat(LogsResponseReader.tty(LogsResponseReader.RAW_STREAM_TYPE, "1.24"),
+               is(nullValue()));
+    assertThat(LogsResponseReader.tty(MediaType.TEXT_PLAIN_TYPE, "1.42"), is(nullValue()));
+    assertThat(LogsResponseReader.tty(LogsResponseReader.RAW_STREAM_TYPE, "v1.42"), is(true));
+    assertThat(LogsResponseReader.tty(LogsResponseReader.RAW_STREAM_TYPE, null), is(nullValue()));
+    assertThat(LogsResponseReader.tty(null, null), is(nullValue()));
+  }
+
+  @Test
+  public void testOldRequestedVersionOnNewDaemon() throws Exception {
+    // A daemon that supports 1.42 still answers a v1.24 request with multiplexed frames under
+    // the raw stream type, so the frames must not be taken for raw output
+    final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+    headers.putSingle("Api-Version", "1.43");
+    final LogStream stream = new LogsResponseReader("v1.24").readFrom(
+        LogStream.class, LogStream.class, new Annotation[0], LogsResponseReader.RAW_STREAM_TYPE,
+        headers, new ByteArrayInputStream(frame(Stream.STDERR, "frame")));
+
+    final LogMessage message = stream.next();
+    assertThat(message.stream(), is(Stream.STDERR));
+    assertThat(string(message), is("frame"));
+    assertThat(stream.hasNext(), is(false));
+  }
+
+  /**
+   * A stream without mark support, which the reader must not rely on when reusing buffers.
+   */
+  private static class NoMarkInputStream extends FilterInputStream {
+
+    private NoMarkInputStream(final byte[] bytes) {
+      super(new ByteArrayInputStream(bytes));
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void mark(final int readlimit) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
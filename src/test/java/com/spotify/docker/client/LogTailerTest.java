@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.Lists;
+
+import com.spotify.docker.client.DockerClient.LogsParam;
+import com.spotify.docker.client.LogMessage.Stream;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.collect.Maps.newHashMap;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogTailerTest {
+
+  private static final String T1 = "2016-03-09T12:34:56.100000000Z";
+  private static final String T2 = "2016-03-09T12:34:56.200000000Z";
+  private static final String T3 = "2016-03-09T12:34:57.000000000Z";
+  private static final int SECOND = 1457526896;
+
+  @Mock
+  private DockerClient docker;
+
+  private final Deque<InputStream> responses = new ArrayDeque<>();
+  private final List<Map<String, String>> requests = Lists.newArrayList();
+
+  @Before
+  public void setup() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(docker.logs(Matchers.eq("abc"), Matchers.<LogsParam>anyVararg()))
+        .thenAnswer(new Answer<LogStream>() {
+          @Override
+          public LogStream answer(final InvocationOnMock invocation) throws Exception {
+            final Map<String, String> params = newHashMap();
+            for (final Object param : invocation.getArguments()) {
+              if (param instanceof LogsParam) {
+                params.put(((LogsParam) param).name(), ((LogsParam) param).value());
+              }
+            }
+            requests.add(params);
+            if (responses.isEmpty()) {
+              throw new ContainerNotFoundException("abc");
+            }
+            return new LogStream(responses.poll());
+          }
+        });
+  }
+
+  private void running(final boolean running) throws Exception {
+    final ContainerState state = mock(ContainerState.class);
+    when(state.running()).thenReturn(running);
+    final ContainerInfo info = mock(ContainerInfo.class);
+    when(info.state()).thenReturn(state);
+    when(docker.inspectContainer("abc")).thenReturn(info);
+  }
+
+  private static byte[] lines(final String... lines) throws Exception {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (final String line : lines) {
+      final byte[] content = (line + "\n").getBytes(UTF_8);
+      final ByteBuffer header = ByteBuffer.allocate(LogReader.HEADER_SIZE);
+      header.put((byte) Stream.STDOUT.id()).put(new byte[3]).putInt(content.length);
+      out.write(header.array());
+      out.write(content);
+    }
+    return out.toByteArray();
+  }
+
+  private void respond(final String... lines) throws Exception {
+    responses.add(new ByteArrayInputStream(lines(lines)));
+  }
+
+  private void respondAndFail(final String... lines) throws Exception {
+    responses.add(new SequenceInputStream(new ByteArrayInputStream(lines(lines)),
+                                          new InputStream() {
+                                            @Override
+                                            public int read() throws IOException {
+                                              throw new IOException("Connection reset");
+                                            }
+                                          }));
+  }
+
+  private LogTailer tailer() {
+    return LogTailer.builder(docker, "abc").initialBackoffMillis(0).build();
+  }
+
+  private static List<String> read(final LogTailer tailer) {
+    final List<String> read = Lists.newArrayList();
+    while (tailer.hasNext()) {
+      read.add(tailer.next().content().toString());
+    }
+    return read;
+  }
+
+  @Test
+  public void testResumesWithoutDuplicates() throws Exception {
+    respondAndFail(T1 + " a", T2 + " b", T2 + " c");
+    respond(T1 + " a", T2 + " b", T2 + " c", T3 + " d");
+    running(false);
+    // Once the container has stopped, the rest of the logs are read without following
+    respond(T1 + " a", T2 + " b", T2 + " c", T3 + " d", T3 + " e");
+
+    final LogTailer tailer = tailer();
+
+    assertThat(read(tailer), contains("a", "b", "c", "d", "e"));
+    assertThat(tailer.reconnects(), is(2L));
+    assertThat(tailer.duplicates(), is(7L));
+    assertThat(requests.get(0).get("follow"), is("true"));
+    assertThat(requests.get(0).get("since"), is(nullValue()));
+    assertThat(requests.get(1).get("since"), is(String.valueOf(SECOND)));
+    assertThat(requests.get(2).get("since"), is(String.valueOf(SECOND + 1)));
+    assertThat(requests.get(2).get("follow"), is(nullValue()));
+  }
+
+  @Test
+  public void testIdenticalLinesAreKept() throws Exception {
+    respondAndFail(T1 + " same", T1 + " same");
+    respond(T1 + " same", T1 + " same", T1 + " same", T2 + " other");
+    running(false);
+    respond();
+
+    assertThat(read(tailer()), contains("same", "same", "same", "other"));
+  }
+
+  @Test
+  public void testReconnectsWhileContainerIsRunning() throws Exception {
+    respond(T1 + " a");
+    respond(T1 + " a", T2 + " b");
+    running(true);
+
+    // The third request finds the container removed
+    final LogTailer tailer = tailer();
+    assertThat(read(tailer), contains("a", "b"));
+    assertThat(requests.size(), is(3));
+    assertThat(requests.get(1).get("follow"), is("true"));
+  }
+
+  @Test
+  public void testTimestampAndLag() throws Exception {
+    respond(T1 + " a");
+    running(false);
+    respond();
+
+    final LogTailer tailer = tailer();
+    final LogTailer.Line line = tailer.next();
+    assertThat(line.timestamp(), is(SECOND * 1000000000L + 100000000L));
+    assertThat(System.currentTimeMillis() - tailer.lagMillis() - SECOND * 1000L,
+               is(lessThan(1000L)));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.RequestScheduler.Priority;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RequestSchedulerTest {
+
+  private static final URI REQUEST_URI = URI.create("unix://localhost:80/v1.22/images/json");
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final List<String> executed = new CopyOnWriteArrayList<>();
+  private final CountDownLatch unblock = new CountDownLatch(1);
+
+  private final RequestScheduler sut = RequestScheduler.builder()
+      .maxConcurrentRequests(1)
+      .queueCapacity(Priority.INTERACTIVE, 1)
+      .build();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Take the only slot until {@link #unblock} is counted down.
+   */
+  private Future<Object> block() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final Future<Object> future = submit(null, new DockerCall<Object>() {
+      @Override
+      public Object call() throws DockerException, InterruptedException {
+        started.countDown();
+        unblock.await();
+        return null;
+      }
+    });
+    started.await();
+    return future;
+  }
+
+  private Future<Object> submit(final Priority priority, final DockerCall<Object> call) {
+    return executor.submit(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        if (priority == null) {
+          return sut.execute("GET", REQUEST_URI, call);
+        }
+        final RequestScheduler.Scope scope = RequestScheduler.scope(priority);
+        try {
+          return sut.execute("GET", REQUEST_URI, call);
+        } finally {
+          scope.close();
+        }
+      }
+    });
+  }
+
+  /**
+   * Queue a request that records its name once executed.
+   */
+  private Future<Object> enqueue(final Priority priority, final String name) throws Exception {
+    final int queued = sut.queued(priority);
+    final Future<Object> future = submit(priority, new DockerCall<Object>() {
+      @Override
+      public Object call() {
+        executed.add(name);
+        return null;
+      }
+    });
+    while (sut.queued(priority) == queued) {
+      Thread.sleep(1);
+    }
+    return future;
+  }
+
+  @Test
+  public void testRequestsGoRightAwayUnderTheLimit() throws Exception {
+    assertThat(sut.execute("GET", REQUEST_URI, new DockerCall<String>() {
+      @Override
+      public String call() {
+        return "OK";
+      }
+    }), is("OK"));
+    assertThat(sut.inFlight(), is(0));
+  }
+
+  @Test
+  public void testInteractiveGoesFirst() throws Exception {
+    block();
+    final Future<Object> batch = enqueue(Priority.BATCH, "batch");
+    final Future<Object> normal = enqueue(Priority.NORMAL, "normal");
+    final Future<Object> interactive = enqueue(Priority.INTERACTIVE, "interactive");
+
+    unblock.countDown();
+    batch.get();
+    normal.get();
+    interactive.get();
+
+    assertThat(executed, contains("interactive", "normal", "batch"));
+  }
+
+  @Test
+  public void testWeightedSharing() throws Exception {
+    block();
+    final List<Future<Object>> futures = new CopyOnWriteArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(enqueue(Priority.BATCH, "batch"));
+    }
+    for (int i = 0; i < 8; i++) {
+      futures.add(enqueue(Priority.NORMAL, "normal"));
+    }
+
+    unblock.countDown();
+    for (final Future<Object> future : futures) {
+      future.get();
+    }
+
+    // Weights of 4 and 1: two batch requests in the first ten, but no starvation either
+    assertThat(Collections.frequency(executed.subList(0, 10), "batch"), is(2));
+    assertThat(Collections.frequency(executed, "batch"), is(8));
+  }
+
+  @Test
+  public void testDeadline() throws Exception {
+    block();
+    final RequestScheduler.Scope scope = RequestScheduler.scope(Priority.NORMAL, 20, MILLISECONDS);
+    try {
+      sut.execute("GET", REQUEST_URI, new DockerCall<Object>() {
+        @Override
+        public Object call() {
+          executed.add("late");
+          return null;
+        }
+      });
+      fail();
+    } catch (DockerTimeoutException e) {
+      assertThat(e.getCause(), instanceOf(TimeoutException.class));
+    } finally {
+      scope.close();
+    }
+
+    unblock.countDown();
+    assertThat(executed.isEmpty(), is(true));
+    assertThat(sut.expired(), is(1L));
+    assertThat(sut.queued(Priority.NORMAL), is(0));
+  }
+
+  @Test
+  public void testBoundedQueue() throws Exception {
+    block();
+    enqueue(Priority.INTERACTIVE, "queued");
+
+    final RequestScheduler.Scope scope = RequestScheduler.scope(Priority.INTERACTIVE);
+    try {
+      sut.execute("GET", REQUEST_URI, new DockerCall<Object>() {
+        @Override
+        public Object call() {
+          executed.add("rejected");
+          return null;
+        }
+      });
+      fail();
+    } catch (DockerException expected) {
+      assertThat(sut.rejected(), is(1L));
+    } finally {
+      scope.close();
+    }
+    unblock.countDown();
+  }
+
+}
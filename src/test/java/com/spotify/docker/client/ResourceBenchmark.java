@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import org.glassfish.jersey.client.ClientProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.URI;
+
+/**
+ * Compares building request URIs for the inspect/start/stop endpoints the way every request used
+ * to (a fresh versioned target plus one copy per path segment) with the cached base target and
+ * endpoint templates. Run {@link #main(String[])} from the test classpath; the GC profiler's
+ * {@code gc.alloc.rate.norm} shows the allocation per operation.
+ */
+@State(Scope.Benchmark)
+public class ResourceBenchmark {
+
+  private static final String ID = "3c5e2b5a8f1d";
+
+  private DefaultDockerClient docker;
+
+  @Setup
+  public void setup() {
+    docker = DefaultDockerClient.builder()
+        .uri("unix:///var/run/docker.sock")
+        .apiVersion("v1.22")
+        .build();
+  }
+
+  @TearDown
+  public void tearDown() {
+    docker.close();
+  }
+
+  @Benchmark
+  public URI inspectPerSegment() {
+    return docker.getClient().target(docker.getUri()).path("v1.22")
+        .path("containers").path(ID).path("json").getUri();
+  }
+
+  @Benchmark
+  public URI inspectTemplate() {
+    return docker.resource("containers/{id}/json", ID).getUri();
+  }
+
+  @Benchmark
+  public URI startPerSegment() {
+    return docker.getClient().target(docker.getUri()).path("v1.22")
+        .path("containers").path(ID).path("start").getUri();
+  }
+
+  @Benchmark
+  public URI startTemplate() {
+    return docker.resource("containers/{id}/start", ID).getUri();
+  }
+
+  @Benchmark
+  public URI stopPerSegment() {
+    return docker.getClient().target(docker.getUri()).path("v1.22")
+        .property(ClientProperties.READ_TIMEOUT, 0)
+        .path("containers").path(ID).path("stop").queryParam("t", "10").getUri();
+  }
+
+  @Benchmark
+  public URI stopTemplate() {
+    return docker.noTimeoutResource("containers/{id}/stop", ID).queryParam("t", "10").getUri();
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+                   .include(ResourceBenchmark.class.getSimpleName())
+                   .addProfiler(GCProfiler.class)
+                   .forks(1)
+                   .warmupIterations(5)
+                   .measurementIterations(5)
+                   .build())
+        .run();
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import javax.ws.rs.ProcessingException;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+
+  private static final URI INSPECT = URI.create("unix://localhost:80/v1.22/containers/abc/json");
+
+  private final RetryPolicy sut = RetryPolicy.builder()
+      .initialBackoffMillis(0)
+      .maxRetries(2)
+      .build();
+
+  private int calls;
+
+  /**
+   * A call that fails with the given exceptions, then returns "OK".
+   */
+  private DockerCall<String> failing(final DockerException... failures) {
+    final Deque<DockerException> remaining = new ArrayDeque<>(Arrays.asList(failures));
+    return new DockerCall<String>() {
+      @Override
+      public String call() throws DockerException {
+        calls++;
+        if (!remaining.isEmpty()) {
+          throw remaining.pop();
+        }
+        return "OK";
+      }
+    };
+  }
+
+  private static DockerException ioError() {
+    return new DockerException(new IOException(new SocketException("Connection reset")));
+  }
+
+  private static DockerRequestException status(final int status) {
+    return new DockerRequestException("GET", INSPECT, status, "", null);
+  }
+
+  @Test
+  public void testIdempotency() {
+    assertThat(RetryPolicy.isIdempotent("GET", INSPECT), is(true));
+    assertThat(RetryPolicy.isIdempotent(
+        "POST", URI.create("unix://localhost:80/v1.22/containers/abc/stop?t=10")), is(true));
+    assertThat(RetryPolicy.isIdempotent(
+        "POST", URI.create("unix://localhost:80/containers/abc/kill")), is(true));
+    assertThat(RetryPolicy.isIdempotent(
+        "POST", URI.create("unix://localhost:80/v1.22/containers/create")), is(false));
+    assertThat(RetryPolicy.isIdempotent(
+        "POST", URI.create("unix://localhost:80/v1.22/containers/abc/start")), is(false));
+    assertThat(RetryPolicy.isIdempotent(
+        "DELETE", URI.create("unix://localhost:80/v1.22/containers/abc")), is(false));
+  }
+
+  @Test
+  public void testEndpoint() {
+    assertThat(RetryPolicy.endpoint("GET", INSPECT), is("GET containers/{id}/json"));
+    assertThat(RetryPolicy.endpoint("GET", URI.create("unix://localhost:80/v1.22/containers/json")),
+               is("GET containers/json"));
+    assertThat(RetryPolicy.endpoint("GET", URI.create("unix://localhost:80/images/foo/bar/json")),
+               is("GET images/{name}/json"));
+    assertThat(RetryPolicy.endpoint("DELETE", URI.create("unix://localhost:80/images/foo/bar")),
+               is("DELETE images/{name}"));
+    assertThat(RetryPolicy.endpoint("GET", URI.create("unix://localhost:80/v1.22/_ping")),
+               is("GET _ping"));
+  }
+
+  @Test
+  public void testRetryable() {
+    assertThat(RetryPolicy.isRetryable(ioError()), is(true));
+    assertThat(RetryPolicy.isRetryable(new DockerTimeoutException("GET", INSPECT, null)), is(true));
+    assertThat(RetryPolicy.isRetryable(status(503)), is(true));
+    assertThat(RetryPolicy.isRetryable(status(404)), is(false));
+    assertThat(RetryPolicy.isRetryable(new DockerException("boom")), is(false));
+    assertThat(RetryPolicy.isRetryable(new ContainerNotFoundException("abc", ioError())),
+               is(false));
+    assertThat(RetryPolicy.isRetryable(new DockerException(new ProcessingException(
+                   new JsonParseException("Unexpected character", JsonLocation.NA)))),
+               is(false));
+  }
+
+  @Test
+  public void testRetriesTransientFailures() throws Exception {
+    assertThat(sut.execute("GET", INSPECT, failing(ioError(), status(500))), is("OK"));
+
+    assertThat(calls, is(3));
+    assertThat(sut.retries(), is((Object) ImmutableMap.of("GET containers/{id}/json", 2L)));
+  }
+
+  @Test
+  public void testGivesUpAfterMaxRetries() throws Exception {
+    final DockerException last = status(502);
+    try {
+      sut.execute("GET", INSPECT, failing(status(502), status(502), last));
+      fail();
+    } catch (DockerException e) {
+      assertThat(e, is((Object) last));
+    }
+    assertThat(calls, is(3));
+  }
+
+  @Test
+  public void testDoesNotRetryPermanentFailures() throws Exception {
+    try {
+      sut.execute("GET", INSPECT, failing(status(404)));
+      fail();
+    } catch (DockerRequestException e) {
+      assertThat(e.status(), is(404));
+    }
+    assertThat(calls, is(1));
+  }
+
+  @Test
+  public void testRetryBudget() throws Exception {
+    final RetryPolicy policy = RetryPolicy.builder()
+        .initialBackoffMillis(0)
+        .maxBudget(2)
+        .budgetRatio(0.5)
+        .build();
+
+    for (int i = 0; i < 4; i++) {
+      try {
+        policy.execute("GET", INSPECT, failing(ioError(), ioError(), ioError(), ioError()));
+      } catch (DockerException expected) {
+        // budget exhausted
+      }
+    }
+
+    // The 2 saved up, plus 1 earned by the requests made once the budget was no longer full
+    assertThat(policy.retries().get("GET containers/{id}/json"), is(3L));
+    assertThat(policy.budgetExhausted(), is(4L));
+  }
+
+  @Test
+  public void testBackoff() {
+    final RetryPolicy policy = RetryPolicy.builder()
+        .initialBackoffMillis(100)
+        .maxBackoffMillis(250)
+        .build();
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(policy.backoffMillis(0), lessThanOrEqualTo(100L));
+      assertThat(policy.backoffMillis(1), lessThanOrEqualTo(200L));
+      assertThat(policy.backoffMillis(5), lessThanOrEqualTo(250L));
+    }
+  }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.ImmutableMap;
+
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RoutingDockerClientTest {
+
+  @Mock
+  private DockerClient first;
+
+  @Mock
+  private DockerClient second;
+
+  private RoutingDockerClient sut;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    sut = new RoutingDockerClient(ImmutableMap.of("first", first, "second", second));
+  }
+
+  private RoutingDockerClient.Daemon daemon(final String name) {
+    for (final RoutingDockerClient.Daemon daemon : sut.daemons()) {
+      if (daemon.name().equals(name)) {
+        return daemon;
+      }
+    }
+    throw new AssertionError(name);
+  }
+
+  private static Container container(final String id) {
+    final Container container = mock(Container.class);
+    when(container.id()).thenReturn(id);
+    return container;
+  }
+
+  @Test
+  public void testCreatedContainersAreRoutedToTheirDaemon() throws Exception {
+    final ContainerConfig config = ContainerConfig.builder().image("busybox").build();
+    when(first.createContainer(config, "foo")).thenReturn(new ContainerCreation("abc"));
+    when(second.createContainer(config, "foo")).thenReturn(new ContainerCreation("abc"));
+
+    sut.createContainer(config, "foo");
+    final DockerClient owner = daemon("first").requests() == 1 ? first : second;
+    sut.startContainer("abc");
+    sut.stopContainer("foo", 10);
+
+    verify(owner).startContainer("abc");
+    verify(owner).stopContainer("foo", 10);
+    verify(first, never()).inspectContainer("abc");
+    verify(second, never()).inspectContainer("abc");
+  }
+
+  @Test
+  public void testContainersAreCreatedWhereTheirImageIs() throws Exception {
+    final ContainerConfig config = ContainerConfig.builder().image("busybox").build();
+    when(first.createContainer(config)).thenReturn(new ContainerCreation("abc"));
+    when(second.createContainer(config)).thenReturn(new ContainerCreation("abc"));
+
+    sut.pull("busybox");
+    final DockerClient owner = daemon("first").requests() == 1 ? first : second;
+    for (int i = 0; i < 10; i++) {
+      sut.createContainer(config);
+    }
+
+    verify(owner, times(10)).createContainer(config);
+  }
+
+  @Test
+  public void testCommittedImagesAreTaggedLatest() throws Exception {
+    final ContainerConfig config = ContainerConfig.builder().image("busybox").build();
+    final ContainerConfig committed = ContainerConfig.builder().image("foo:latest").build();
+    when(first.createContainer(config, "foo")).thenReturn(new ContainerCreation("abc"));
+    when(second.createContainer(config, "foo")).thenReturn(new ContainerCreation("abc"));
+    when(first.createContainer(committed)).thenReturn(new ContainerCreation("def"));
+    when(second.createContainer(committed)).thenReturn(new ContainerCreation("def"));
+
+    sut.createContainer(config, "foo");
+    final DockerClient owner = daemon("first").requests() == 1 ? first : second;
+    sut.commitContainer("abc", "foo", null, config, null, null);
+    for (int i = 0; i < 10; i++) {
+      sut.createContainer(committed);
+    }
+
+    verify(owner, times(10)).createContainer(committed);
+  }
+
+  @Test
+  public void testUnknownContainersAreLookedUp() throws Exception {
+    final ContainerInfo info = mock(ContainerInfo.class);
+    when(info.id()).thenReturn("abc");
+    when(first.inspectContainer("abc")).thenThrow(new ContainerNotFoundException("abc"));
+    when(second.inspectContainer("abc")).thenReturn(info);
+
+    sut.killContainer("abc");
+    sut.killContainer("abc");
+
+    verify(second, times(2)).killContainer("abc");
+    verify(first, never()).killContainer("abc");
+    // Looked up once, then remembered
+    verify(second).inspectContainer("abc");
+  }
+
+  @Test
+  public void testContainerNotFoundAnywhere() throws Exception {
+    when(first.inspectContainer("abc")).thenThrow(new ContainerNotFoundException("abc"));
+    when(second.inspectContainer("abc")).thenThrow(new ContainerNotFoundException("abc"));
+
+    try {
+      sut.startContainer("abc");
+      fail();
+    } catch (ContainerNotFoundException e) {
+      assertThat(e.getContainerId(), is("abc"));
+    }
+    assertThat(daemon("first").errors(), is(0L));
+  }
+
+  @Test
+  public void testRemovedContainersAreForgotten() throws Exception {
+    final Container container = container("abc");
+    when(first.listContainers()).thenReturn(Collections.singletonList(container));
+    when(second.listContainers()).thenReturn(Collections.<Container>emptyList());
+    when(first.inspectContainer("abc")).thenThrow(new ContainerNotFoundException("abc"));
+    when(second.inspectContainer("abc")).thenThrow(new ContainerNotFoundException("abc"));
+
+    sut.listContainers();
+    sut.removeContainer("abc");
+    verify(first).removeContainer("abc");
+
+    try {
+      sut.startContainer("abc");
+      fail();
+    } catch (ContainerNotFoundException expected) {
+      verify(first).inspectContainer("abc");
+    }
+  }
+
+  @Test
+  public void testRemovedContainersAreForgottenByAllKeys() throws Exception {
+    final ContainerConfig config = ContainerConfig.builder().image("busybox").build();
+    final ContainerCreation creation = new ContainerCreation("abc");
+    when(first.createContainer(config, "foo")).thenReturn(creation);
+    when(second.createContainer(config, "foo")).thenReturn(creation);
+    when(first.inspectContainer("abc")).thenThrow(new ContainerNotFoundException("abc"));
+    when(second.inspectContainer("abc")).thenThrow(new ContainerNotFoundException("abc"));
+
+    sut.createContainer(config, "foo");
+    sut.removeContainer("foo");
+
+    try {
+      sut.startContainer("abc");
+      fail();
+    } catch (ContainerNotFoundException expected) {
+      verify(first).inspectContainer("abc");
+      verify(second).inspectContainer("abc");
+    }
+  }
+
+  @Test
+  public void testLeastRecentlyUsedOwnersAreForgotten() throws Exception {
+    sut = RoutingDockerClient.builder(ImmutableMap.of("first", first, "second", second))
+        .maxOwners(1)
+        .build();
+    final Container a = container("a");
+    final Container b = container("b");
+    final ContainerInfo info = mock(ContainerInfo.class);
+    when(info.id()).thenReturn("a");
+    when(first.listContainers()).thenReturn(Arrays.asList(a, b));
+    when(second.listContainers()).thenReturn(Collections.<Container>emptyList());
+    when(first.inspectContainer("a")).thenReturn(info);
+    when(second.inspectContainer("a")).thenThrow(new ContainerNotFoundException("a"));
+
+    sut.listContainers();
+    sut.pauseContainer("b");
+    sut.pauseContainer("a");
+
+    verify(first, never()).inspectContainer("b");
+    verify(first).inspectContainer("a");
+    verify(first).pauseContainer("a");
+  }
+
+  @Test
+  public void testOwnersAreLookedUpOnAllDaemonsAtOnce() throws Exception {
+    final CountDownLatch done = new CountDownLatch(1);
+    final ContainerInfo info = mock(ContainerInfo.class);
+    when(info.id()).thenReturn("abc");
+    when(first.inspectContainer("abc")).thenAnswer(new Answer<ContainerInfo>() {
+      @Override
+      public ContainerInfo answer(final InvocationOnMock invocation) throws Exception {
+        done.await();
+        throw new ContainerNotFoundException("abc");
+      }
+    });
+    when(second.inspectContainer("abc")).thenReturn(info);
+
+    try {
+      sut.killContainer("abc");
+    } finally {
+      done.countDown();
+    }
+
+    verify(second).killContainer("abc");
+  }
+
+  @Test
+  public void testListContainersLeavesOutFailedDaemons() throws Exception {
+    final Container b = container("b");
+    when(first.listContainers()).thenThrow(new DockerException("boom"));
+    when(second.listContainers()).thenReturn(Collections.singletonList(b));
+
+    assertThat(sut.listContainers(), contains(b));
+    assertThat(daemon("first").errors(), is(1L));
+  }
+
+  @Test
+  public void testListContainersLeavesOutSlowDaemons() throws Exception {
+    sut = RoutingDockerClient.builder(ImmutableMap.of("first", first, "second", second))
+        .fanOutTimeoutMillis(100)
+        .build();
+    final CountDownLatch done = new CountDownLatch(1);
+    final Container b = container("b");
+    when(first.listContainers()).thenAnswer(new Answer<List<Container>>() {
+      @Override
+      public List<Container> answer(final InvocationOnMock invocation) throws Exception {
+        done.await();
+        return Collections.emptyList();
+      }
+    });
+    when(second.listContainers()).thenReturn(Collections.singletonList(b));
+
+    try {
+      assertThat(sut.listContainers(), contains(b));
+      assertThat(daemon("first").errors(), is(1L));
+    } finally {
+      done.countDown();
+    }
+  }
+
+  @Test(expected = DockerException.class)
+  public void testListContainersFailsIfAllDaemonsFail() throws Exception {
+    when(first.listContainers()).thenThrow(new DockerException("boom"));
+    when(second.listContainers()).thenThrow(new DockerException("boom"));
+
+    sut.listContainers();
+  }
+
+  @Test
+  public void testListContainersCombinesDaemons() throws Exception {
+    final Container a = container("a");
+    final Container b = container("b");
+    when(first.listContainers()).thenReturn(Collections.singletonList(a));
+    when(second.listContainers()).thenReturn(Collections.singletonList(b));
+
+    final List<Container> containers = sut.listContainers();
+
+    assertThat(containers, contains(a, b));
+    sut.pauseContainer("b");
+    verify(second).pauseContainer("b");
+  }
+
+  @Test
+  public void testMoreDaemonsThanFanOutThreads() throws Exception {
+    final Container a = container("a");
+    final Container b = container("b");
+    when(first.listContainers()).thenReturn(Collections.singletonList(a));
+    when(second.listContainers()).thenReturn(Collections.singletonList(b));
+    sut = RoutingDockerClient.builder(ImmutableMap.of("first", first, "second", second))
+        .fanOutThreads(1)
+        .build();
+
+    assertThat(sut.listContainers(), contains(a, b));
+  }
+
+  @Test
+  public void testLeastLoadedDaemonIsPicked() throws Exception {
+    when(first.ping()).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(final InvocationOnMock invocation) throws Exception {
+        Thread.sleep(20);
+        return "OK";
+      }
+    });
+    when(second.ping()).thenReturn("OK");
+
+    // Both daemons get a latency sample, after which the slow one is avoided
+    for (int i = 0; i < 10; i++) {
+      sut.ping();
+    }
+    final long before = daemon("first").requests();
+    for (int i = 0; i < 10; i++) {
+      sut.ping();
+    }
+
+    assertThat(daemon("first").requests(), is(before));
+  }
+
+  @Test
+  public void testServerErrorsAreCounted() throws Exception {
+    when(first.version()).thenThrow(new DockerException("boom"));
+    when(second.version()).thenThrow(new DockerException("boom"));
+
+    try {
+      sut.version();
+      fail();
+    } catch (DockerException expected) {
+      assertThat(daemon("first").errors() + daemon("second").errors(), is(1L));
+    }
+  }
+
+  @Test
+  public void testClientPerDaemon() throws Exception {
+    assertThat(sut.client("second"), is(second));
+    sut.close();
+    verify(first).close();
+    verify(second).close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownDaemon() {
+    sut.client("third");
+  }
+}
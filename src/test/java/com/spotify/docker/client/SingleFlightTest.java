@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.exceptions.DockerException;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+  private final SingleFlight sut = new SingleFlight();
+  private final AtomicInteger calls = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  /**
+   * A call that blocks until released, then returns or throws {@code result}.
+   */
+  private DockerCall<Object> call(final Object result) {
+    return new DockerCall<Object>() {
+      @Override
+      public Object call() throws DockerException, InterruptedException {
+        calls.incrementAndGet();
+        release.await();
+        if (result instanceof DockerException) {
+          throw (DockerException) result;
+        }
+        return result;
+      }
+    };
+  }
+
+  private Future<Object> submit(final ExecutorService executor, final String key,
+                                final DockerCall<Object> call) {
+    return executor.submit(new Callable<Object>() {
+      @Override
+      public Object call() throws Exception {
+        return sut.execute(key, call);
+      }
+    });
+  }
+
+  private void awaitCoalesced(final long coalesced) throws InterruptedException {
+    while (sut.coalesced() < coalesced) {
+      Thread.sleep(1);
+    }
+  }
+
+  @Test
+  public void testConcurrentCallsShareResult() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(3);
+    final Object result = new Object();
+    try {
+      final Future<Object> first = submit(executor, "a", call(result));
+      final Future<Object> second = submit(executor, "a", call(result));
+      final Future<Object> third = submit(executor, "a", call(result));
+      awaitCoalesced(2);
+      release.countDown();
+
+      assertThat(first.get(), sameInstance(result));
+      assertThat(second.get(), sameInstance(result));
+      assertThat(third.get(), sameInstance(result));
+      assertThat(calls.get(), is(1));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testConcurrentCallsShareException() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    final DockerException exception = new DockerException("boom");
+    try {
+      final Future<Object> first = submit(executor, "a", call(exception));
+      final Future<Object> second = submit(executor, "a", call(exception));
+      awaitCoalesced(1);
+      release.countDown();
+
+      for (final Future<?> future : Arrays.asList(first, second)) {
+        try {
+          future.get();
+          fail();
+        } catch (ExecutionException e) {
+          assertThat(e.getCause(), is((Throwable) exception));
+        }
+      }
+      assertThat(calls.get(), is(1));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testDifferentKeysAreNotShared() throws Exception {
+    release.countDown();
+
+    sut.execute("a", call("a"));
+    sut.execute("b", call("b"));
+    sut.execute("a", call("a"));
+
+    assertThat(calls.get(), is(3));
+    assertThat(sut.coalesced(), is(0L));
+  }
+
+  @Test
+  public void testInterruptOfLeaderIsNotShared() throws Exception {
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final Future<Object> leader = submit(executor, "a", call("result"));
+      while (calls.get() == 0) {
+        Thread.sleep(1);
+      }
+      final Future<Object> follower = submit(executor, "a", call("result"));
+      awaitCoalesced(1);
+
+      leader.cancel(true);
+      while (calls.get() < 2) {
+        Thread.sleep(1);
+      }
+      release.countDown();
+
+      assertThat(follower.get(), is((Object) "result"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.LogMessage.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+/**
+ * Compares reading the timestamp and payload of a message of logs requested with timestamps the
+ * way callers had to, by decoding the message and parsing its prefix with
+ * {@link DockerDateFormat}, with {@link LogMessage#timestamp()} and {@link LogMessage#payload()}.
+ * Run {@link #main(String[])} from the test classpath; the GC profiler's
+ * {@code gc.alloc.rate.norm} shows the allocation per operation.
+ */
+@State(Scope.Thread)
+public class TimestampBenchmark {
+
+  private static final byte[] LINE =
+      "2016-03-09T12:34:56.123456789Z GET /index.html HTTP/1.1 200\n".getBytes(UTF_8);
+
+  private final DockerDateFormat format = new DockerDateFormat();
+  private final LogMessage message = new LogMessage(Stream.STDOUT, ByteBuffer.wrap(LINE));
+
+  @Benchmark
+  public long dockerDateFormat(final Blackhole blackhole) throws ParseException {
+    final String line = UTF_8.decode(message.content()).toString();
+    final int space = line.indexOf(' ');
+    blackhole.consume(line.substring(space + 1));
+    return format.parse(line.substring(0, space)).getTime();
+  }
+
+  @Benchmark
+  public long timestamp(final Blackhole blackhole) {
+    blackhole.consume(message.payload());
+    return message.timestamp();
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder()
+                   .include(TimestampBenchmark.class.getSimpleName())
+                   .addProfiler(GCProfiler.class)
+                   .forks(1)
+                   .warmupIterations(5)
+                   .measurementIterations(5)
+                   .build())
+        .run();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import org.junit.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class TimestampsTest {
+
+  private static long parse(final String s) {
+    return Timestamps.parseNanos(s, 0, s.length());
+  }
+
+  private static long parseBytes(final String s) {
+    final ByteBuffer bytes = ByteBuffer.wrap(("xx" + s + " y").getBytes(UTF_8));
+    return Timestamps.parseNanos(bytes, 2, 2 + s.length());
+  }
+
+  @Test
+  public void testParse() {
+    assertThat(parse("1970-01-01T00:00:00Z"), is(0L));
+    assertThat(parse("2016-03-09T12:34:56.123456789Z"), is(1457526896123456789L));
+    assertThat(parse("2016-03-09T12:34:56.1Z"), is(1457526896100000000L));
+    assertThat(parse("2016-03-09T13:34:56.5+01:00"), is(1457526896500000000L));
+    assertThat(parse("2000-02-29T00:00:00Z"), is(951782400000000000L));
+    assertThat(parse("1969-12-31T23:59:59Z"), is(-1000000000L));
+    // Digits beyond nanoseconds are ignored
+    assertThat(parse("2016-03-09T12:34:56.1234567891Z"), is(1457526896123456789L));
+  }
+
+  @Test
+  public void testInvalid() {
+    assertThat(parse("2016-03-09 12:34:56Z"), is(Timestamps.INVALID));
+    assertThat(parse("2016-03-09T12:34:56"), is(Timestamps.INVALID));
+    assertThat(parse("2016-13-09T12:34:56Z"), is(Timestamps.INVALID));
+    assertThat(parse("2016-03-09T12:34:56.Z"), is(Timestamps.INVALID));
+    assertThat(parse("2016-03-09T12:34:56Zx"), is(Timestamps.INVALID));
+    assertThat(parse("hello"), is(Timestamps.INVALID));
+  }
+
+  @Test
+  public void testParseBytes() {
+    assertThat(parseBytes("2016-03-09T12:34:56.123456789Z"), is(1457526896123456789L));
+    assertThat(parseBytes("1969-12-31T23:59:59.000000000Z"), is(-1000000000L));
+    assertThat(parseBytes("2016-03-09T12:34:56.1Z"), is(1457526896100000000L));
+    assertThat(parseBytes("2016-03-09T13:34:56.5+01:00"), is(1457526896500000000L));
+    assertThat(parseBytes("2016-03-09T12:34:56.12345678xZ"), is(Timestamps.INVALID));
+    assertThat(parseBytes("2016-03-09T24:34:56.123456789Z"), is(Timestamps.INVALID));
+    assertThat(parseBytes("2016-03-09 12:34:56.123456789Z"), is(Timestamps.INVALID));
+  }
+
+  @Test
+  public void testSpaceAfter() {
+    final ByteBuffer bytes = ByteBuffer.wrap("2016-03-09T12:34:56.123456789Z a b".getBytes(UTF_8));
+    assertThat(Timestamps.spaceAfter(bytes), is(30));
+    ((Buffer) bytes).position(31);
+    assertThat(Timestamps.spaceAfter(bytes), is(32));
+    assertThat(Timestamps.spaceAfter(ByteBuffer.wrap(new byte[40])), is(-1));
+  }
+
+  @Test
+  public void testSpaceAfterInChars() {
+    assertThat(Timestamps.spaceAfter("2016-03-09T12:34:56.123456789Z a b"), is(30));
+    assertThat(Timestamps.spaceAfter("2016-03-09T12:34:56Z a"), is(20));
+    assertThat(Timestamps.spaceAfter("no-timestamp-in-this-line-before-the-space a"), is(-1));
+    assertThat(Timestamps.spaceAfter(""), is(-1));
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class UnixDomainSocketTest {
+
+  private File socketFile;
+  private ServerSocketChannel server;
+
+  @Before
+  public void setup() throws Exception {
+    assumeTrue(UnixDomainSocket.isSupported());
+
+    socketFile = new File(Files.createTempDirectory("docker-client").toFile(), "docker.sock");
+    // ServerSocketChannel.open(ProtocolFamily) only exists on Java 15+
+    server = (ServerSocketChannel) ServerSocketChannel.class
+        .getMethod("open", ProtocolFamily.class)
+        .invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+    server.bind(UnixDomainSocket.address(socketFile));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (server != null) {
+      server.close();
+      socketFile.delete();
+      socketFile.getParentFile().delete();
+    }
+  }
+
+  private Socket connect() throws Exception {
+    final UnixConnectionSocketFactory factory =
+        new UnixConnectionSocketFactory(URI.create("unix://" + socketFile.getPath()));
+    final Socket socket = factory.createSocket(null);
+    assertThat(socket, instanceOf(UnixDomainSocket.class));
+    return factory.connectSocket(1000, socket, null, null, null, null);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    final Socket socket = connect();
+    final SocketChannel peer = server.accept();
+
+    socket.getOutputStream().write("ping".getBytes(UTF_8));
+    final ByteBuffer received = ByteBuffer.allocate(4);
+    while (received.hasRemaining()) {
+      peer.read(received);
+    }
+    assertThat(new String(received.array(), UTF_8), is("ping"));
+
+    peer.write(ByteBuffer.wrap("pong".getBytes(UTF_8)));
+    peer.close();
+
+    final InputStream in = socket.getInputStream();
+    final byte[] buffer = new byte[16];
+    int n = 0;
+    for (int r; (r = in.read(buffer, n, buffer.length - n)) >= 0; ) {
+      n += r;
+    }
+    assertThat(new String(buffer, 0, n, UTF_8), is("pong"));
+
+    socket.close();
+    assertThat(socket.isClosed(), is(true));
+  }
+
+  @Test
+  public void testReadTimeout() throws Exception {
+    final Socket socket = connect();
+    server.accept();
+
+    socket.setSoTimeout(50);
+    try {
+      socket.getInputStream().read();
+      fail();
+    } catch (SocketTimeoutException expected) {
+      // expected
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testBufferSizes() throws Exception {
+    final Socket socket = connect();
+
+    socket.setReceiveBufferSize(256 * 1024);
+    socket.setSendBufferSize(256 * 1024);
+    assertThat(socket.getReceiveBufferSize(), greaterThan(0));
+    assertThat(socket.getSendBufferSize(), greaterThan(0));
+
+    socket.close();
+  }
+
+  @Test
+  public void testUnsupportedOptions() throws Exception {
+    final Socket socket = connect();
+
+    socket.setReuseAddress(true);
+    assertThat(socket.getReuseAddress(), is(false));
+    socket.setTrafficClass(0x10);
+    assertThat(socket.getTrafficClass(), is(0));
+    socket.setPerformancePreferences(0, 1, 2);
+    socket.setOOBInline(false);
+    assertThat(socket.getOOBInline(), is(false));
+    try {
+      socket.sendUrgentData(0);
+      fail();
+    } catch (SocketException expected) {
+      // expected
+    } finally {
+      socket.close();
+    }
+  }
+
+  @Test
+  public void testBind() throws Exception {
+    final Socket socket = new UnixDomainSocket();
+
+    assertThat(socket.isBound(), is(false));
+    socket.bind(null);
+    assertThat(socket.isBound(), is(true));
+
+    socket.close();
+  }
+}
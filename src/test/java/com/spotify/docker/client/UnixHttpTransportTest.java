@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2016 Spotify AB.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import javax.ws.rs.core.GenericType;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class UnixHttpTransportTest {
+
+  private static final URI SOCKET = URI.create("unix:///var/run/docker.sock");
+  private static final Map<String, Object> NO_HEADERS = Collections.emptyMap();
+
+  private final Queue<FakeSocket> sockets = new ArrayDeque<>();
+  private int connects;
+
+  private UnixHttpTransport sut;
+
+  @Before
+  public void setup() {
+    sut = new UnixHttpTransport(SOCKET, 1000, 1000, 2) {
+      @Override
+      Socket connect() throws IOException {
+        connects++;
+        return sockets.remove();
+      }
+    };
+  }
+
+  @After
+  public void tearDown() {
+    sut.close();
+  }
+
+  @Test
+  public void testContentLengthJson() throws Exception {
+    final FakeSocket socket = socket(response("200 OK", "Content-Length: 15",
+                                              "{\"Id\":\"abc123\"}"));
+
+    final ContainerInfo info = sut.request(
+        "GET", URI.create("unix://localhost:80/v1.22/containers/abc123/json?size=1"),
+        ImmutableMap.<String, Object>of("X-Foo", "bar"), ContainerInfo.class, null);
+
+    assertThat(info.id(), is("abc123"));
+    final String request = socket.written();
+    assertThat(request, startsWith("GET /v1.22/containers/abc123/json?size=1 HTTP/1.1\r\n"));
+    assertThat(request, containsString("\r\nX-Foo: bar\r\n"));
+  }
+
+  @Test
+  public void testChunkedJson() throws Exception {
+    socket(response("200 OK", "Transfer-Encoding: chunked",
+                    "a\r\n[{\"Id\":\"a\"\r\n5;ext\r\n},{\"I\r\n8\r\nd\":\"b\"}]\r\n0\r\n\r\n"));
+
+    final List<Container> containers = sut.request(
+        "GET", URI.create("unix://localhost:80/containers/json"), NO_HEADERS,
+        new GenericType<List<Container>>() {}.getType(), null);
+
+    assertThat(containers.size(), is(2));
+    assertThat(containers.get(1).id(), is("b"));
+  }
+
+  @Test
+  public void testErrorStatus() throws Exception {
+    socket(response("404 Not Found", "Content-Length: 13", "no such image"));
+
+    try {
+      sut.request("GET", URI.create("unix://localhost:80/images/foo/json"), NO_HEADERS,
+                  String.class, null);
+      fail();
+    } catch (DockerRequestException e) {
+      assertThat(e.status(), is(404));
+      assertThat(e.message(), is("no such image"));
+    }
+  }
+
+  @Test
+  public void testMalformedResponses() throws Exception {
+    final List<String> responses = ImmutableList.of(
+        response("2x0 OK", "Content-Length: 2", "OK"),
+        response("200 OK", "Content-Length: two", "OK"),
+        response("200 OK", "Content-Length: -2", "OK"),
+        response("200 OK", "Transfer-Encoding: chunked", "zz\r\nOK\r\n0\r\n\r\n"));
+    for (final String response : responses) {
+      final FakeSocket socket = socket(response);
+      try {
+        sut.request("GET", URI.create("unix://localhost:80/_ping"), NO_HEADERS, String.class,
+                    null);
+        fail(response);
+      } catch (DockerException e) {
+        assertThat(e.getCause(), instanceOf(IOException.class));
+        assertThat(e.getCause().getMessage(), startsWith("Malformed"));
+      }
+      assertThat(socket.isClosed(), is(true));
+    }
+  }
+
+  @Test
+  public void testKeepAliveReusesConnection() throws Exception {
+    final FakeSocket socket = socket(
+        response("204 No Content", "Server: Docker", "")
+        + response("200 OK", "Content-Length: 2", "OK"));
+
+    final String started = sut.request(
+        "POST", URI.create("unix://localhost:80/containers/foo/start"), NO_HEADERS,
+        String.class, null);
+    final String ping = sut.request(
+        "GET", URI.create("unix://localhost:80/_ping"), NO_HEADERS, String.class, null);
+
+    assertThat(started, is(""));
+    assertThat(ping, is("OK"));
+    assertThat(connects, is(1));
+    assertThat(socket.written(), containsString("\r\nContent-Length: 0\r\n"));
+  }
+
+  @Test
+  public void testStaleConnectionIsRetried() throws Exception {
+    socket(response("200 OK", "Content-Length: 2", "OK"));
+    socket(response("200 OK", "Content-Length: 2", "OK"));
+
+    sut.request("GET", URI.create("unix://localhost:80/_ping"), NO_HEADERS, String.class, null);
+    final String ping = sut.request(
+        "GET", URI.create("unix://localhost:80/_ping"), NO_HEADERS, String.class, null);
+
+    assertThat(ping, is("OK"));
+    assertThat(connects, is(2));
+  }
+
+  @Test
+  public void testConnectionCloseIsHonoured() throws Exception {
+    final FakeSocket socket = socket(response("200 OK", "Connection: close", "[\"a\"]"));
+
+    final List<String> body = sut.request(
+        "GET", URI.create("unix://localhost:80/foo"), NO_HEADERS,
+        new GenericType<List<String>>() {}.getType(), null);
+
+    assertThat(body, contains("a"));
+    assertThat(socket.isClosed(), is(true));
+  }
+
+  private FakeSocket socket(final String response) {
+    final FakeSocket socket = new FakeSocket(response.getBytes(UTF_8));
+    sockets.add(socket);
+    return socket;
+  }
+
+  private static String response(final String status, final String header, final String body) {
+    return "HTTP/1.1 " + status + "\r\n" + header + "\r\n\r\n" + body;
+  }
+
+  private static class FakeSocket extends Socket {
+
+    private final InputStream in;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private boolean closed;
+
+    FakeSocket(final byte[] response) {
+      this.in = new ByteArrayInputStream(response);
+    }
+
+    String written() {
+      return new String(out.toByteArray(), UTF_8);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return in;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return out;
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+  }
+}